@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.lucene50;
+
+import static org.apache.lucene.codecs.lucene50.Lucene50PostingsFormat.BLOCK_SIZE;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.RAMOutputStream;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.packed.PackedInts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks encoding and decoding of postings blocks with {@link ForUtil} and
+ * {@link VectorizedForUtil}, reading them back from a memory-mapped file like
+ * {@link Lucene50PostingsReader} does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForUtilBenchmark {
+
+  private static final int NUM_BLOCKS = 1024;
+
+  private static final long SEED = 0xC0FFEEL;
+
+  @Param({"1", "2", "3", "4", "5", "6", "7", "8", "10", "12", "16", "20", "24", "31"})
+  public int bitsPerValue;
+
+  @Param({"ForUtil", "VectorizedForUtil"})
+  public String codec;
+
+  private Path path;
+  private Directory dir;
+  private IndexInput in;
+  private long startFP;
+  private PostingsBlockCodec forUtil;
+  private int[][] blocks;
+  private final byte[] encoded = new byte[ForUtil.MAX_ENCODED_SIZE];
+  private final int[] decoded = new int[ForUtil.MAX_DATA_SIZE];
+  private final RAMOutputStream scratchOut = new RAMOutputStream();
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(SEED);
+    blocks = new int[NUM_BLOCKS][BLOCK_SIZE];
+    for (int[] block : blocks) {
+      for (int i = 0; i < BLOCK_SIZE; ++i) {
+        block[i] = (int) (random.nextLong() & PackedInts.maxValue(bitsPerValue));
+      }
+    }
+
+    path = Files.createTempDirectory("forutil");
+    dir = new MMapDirectory(path);
+    try (IndexOutput out = dir.createOutput("blocks", IOContext.DEFAULT)) {
+      PostingsBlockCodec writer = "ForUtil".equals(codec) ? new ForUtil(PackedInts.COMPACT, out) : new VectorizedForUtil();
+      for (int[] block : blocks) {
+        writer.writeBlock(block, encoded, out);
+      }
+    }
+    in = dir.openInput("blocks", IOContext.READ);
+    forUtil = "ForUtil".equals(codec) ? new ForUtil(in) : new VectorizedForUtil();
+    startFP = in.getFilePointer();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    IOUtils.close(in, dir);
+    IOUtils.rm(path);
+  }
+
+  @Benchmark
+  public int readBlocks() throws IOException {
+    in.seek(startFP);
+    int sum = 0;
+    for (int i = 0; i < NUM_BLOCKS; ++i) {
+      forUtil.readBlock(in, encoded, decoded);
+      sum += decoded[BLOCK_SIZE - 1];
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long skipBlocks() throws IOException {
+    in.seek(startFP);
+    for (int i = 0; i < NUM_BLOCKS; ++i) {
+      forUtil.skipBlock(in);
+    }
+    return in.getFilePointer();
+  }
+
+  @Benchmark
+  public long writeBlocks() throws IOException {
+    scratchOut.reset();
+    for (int[] block : blocks) {
+      forUtil.writeBlock(block, encoded, scratchOut);
+    }
+    return scratchOut.getFilePointer();
+  }
+}
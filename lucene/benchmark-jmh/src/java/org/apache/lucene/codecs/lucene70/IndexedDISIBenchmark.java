@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.lucene70;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks iterating and advancing an {@link IndexedDISI}, which is how doc values
+ * find the documents that have a value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexedDISIBenchmark {
+
+  private static final int MAX_DOC = 1 << 22;
+
+  private static final int NUM_TARGETS = 4096;
+
+  private static final long SEED = 0xC0FFEEL;
+
+  /** Ratio of the documents that have a value: blocks are sparse, dense or contain all documents. */
+  @Param({"0.01", "0.2", "1"})
+  public double density;
+
+  private Path path;
+  private Directory dir;
+  private IndexInput in;
+  private long length;
+  private int cost;
+  private int[] targets;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(SEED);
+    FixedBitSet docs = new FixedBitSet(MAX_DOC);
+    for (int doc = 0; doc < MAX_DOC; ++doc) {
+      if (density == 1 || random.nextDouble() < density) {
+        docs.set(doc);
+      }
+    }
+    cost = docs.cardinality();
+
+    path = Files.createTempDirectory("indexeddisi");
+    dir = new MMapDirectory(path);
+    try (IndexOutput out = dir.createOutput("docs", IOContext.DEFAULT)) {
+      IndexedDISI.writeBitSet(new BitSetIterator(docs, cost), out);
+      length = out.getFilePointer();
+    }
+    in = dir.openInput("docs", IOContext.READ);
+
+    targets = new int[NUM_TARGETS];
+    for (int i = 0; i < NUM_TARGETS; ++i) {
+      targets[i] = random.nextInt(MAX_DOC);
+    }
+    Arrays.sort(targets);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    IOUtils.close(in, dir);
+    IOUtils.rm(path);
+  }
+
+  private IndexedDISI newDISI() throws IOException {
+    return new IndexedDISI(in, 0L, length, cost);
+  }
+
+  @Benchmark
+  public long nextDoc() throws IOException {
+    IndexedDISI disi = newDISI();
+    long sum = 0;
+    for (int doc = disi.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = disi.nextDoc()) {
+      sum += disi.index();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long advance() throws IOException {
+    IndexedDISI disi = newDISI();
+    long sum = 0;
+    for (int target : targets) {
+      if (target > disi.docID()) {
+        int doc = disi.advance(target);
+        if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+          break;
+        }
+        sum += disi.index();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long advanceExact() throws IOException {
+    IndexedDISI disi = newDISI();
+    long sum = 0;
+    int previous = -1;
+    for (int target : targets) {
+      if (target != previous && disi.advanceExact(target)) {
+        sum += disi.index();
+      }
+      previous = target;
+    }
+    return sum;
+  }
+}
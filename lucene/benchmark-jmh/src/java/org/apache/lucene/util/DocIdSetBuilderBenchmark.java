@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building a {@link DocIdSetBuilder} from chunks of doc ids, like multi-term
+ * and point queries do, then iterating over the result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocIdSetBuilderBenchmark {
+
+  private static final int MAX_DOC = 1 << 20;
+
+  /** Doc ids are added in chunks of this size, like the postings of a term or a BKD leaf. */
+  private static final int CHUNK_SIZE = 512;
+
+  private static final long SEED = 0xC0FFEEL;
+
+  /** Ratio of {@link #MAX_DOC} that is added, above 1/128 the builder upgrades to a bit set. */
+  @Param({"0.0001", "0.001", "0.01", "0.1", "0.5"})
+  public double density;
+
+  /** Whether doc ids are added in order, or in sorted chunks like from the postings of several terms. */
+  @Param({"true", "false"})
+  public boolean sorted;
+
+  private int[] docs;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(SEED);
+    docs = new int[(int) (density * MAX_DOC)];
+    for (int i = 0; i < docs.length; ++i) {
+      docs[i] = random.nextInt(MAX_DOC);
+    }
+    if (sorted) {
+      Arrays.sort(docs);
+    } else {
+      for (int start = 0; start < docs.length; start += CHUNK_SIZE) {
+        Arrays.sort(docs, start, Math.min(docs.length, start + CHUNK_SIZE));
+      }
+    }
+  }
+
+  @Benchmark
+  public int buildAndIterate() throws IOException {
+    DocIdSetBuilder builder = new DocIdSetBuilder(MAX_DOC);
+    for (int start = 0; start < docs.length; start += CHUNK_SIZE) {
+      int end = Math.min(docs.length, start + CHUNK_SIZE);
+      DocIdSetBuilder.BulkAdder adder = builder.grow(end - start);
+      for (int i = start; i < end; ++i) {
+        adder.add(docs[i]);
+      }
+    }
+    DocIdSetIterator it = builder.build().iterator();
+    int count = 0;
+    while (it.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util.bkd;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PointValues.IntersectVisitor;
+import org.apache.lucene.index.PointValues.Relation;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.DocIdSetBuilder;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.StringHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link BKDReader#intersect} with a range over random {@link IntPoint}s,
+ * in a single segment index that is built at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BKDReaderBenchmark {
+
+  private static final String FIELD = "point";
+
+  private static final long SEED = 0xC0FFEEL;
+
+  @Param({"1000000"})
+  public int numDocs;
+
+  @Param({"1", "2"})
+  public int numDims;
+
+  /** Ratio of the documents that match the range. */
+  @Param({"0.001", "0.01", "0.1", "0.5"})
+  public double selectivity;
+
+  private Path path;
+  private Directory dir;
+  private DirectoryReader reader;
+  private BKDReader points;
+  private int maxDoc;
+  private byte[] lowerPoint;
+  private byte[] upperPoint;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(SEED);
+    path = Files.createTempDirectory("bkd");
+    dir = new MMapDirectory(path);
+    try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setRAMBufferSizeMB(256))) {
+      int[] values = new int[numDims];
+      for (int i = 0; i < numDocs; ++i) {
+        Document doc = new Document();
+        for (int dim = 0; dim < numDims; ++dim) {
+          values[dim] = random.nextInt(Integer.MAX_VALUE);
+        }
+        doc.add(new IntPoint(FIELD, values));
+        writer.addDocument(doc);
+      }
+      writer.forceMerge(1);
+    }
+    reader = DirectoryReader.open(dir);
+    LeafReader leaf = reader.leaves().get(0).reader();
+    points = (BKDReader) leaf.getPointValues(FIELD);
+    maxDoc = leaf.maxDoc();
+
+    // every dimension matches the same fraction of the values
+    long width = (long) (Math.pow(selectivity, 1d / numDims) * Integer.MAX_VALUE);
+    lowerPoint = new byte[numDims * Integer.BYTES];
+    upperPoint = new byte[numDims * Integer.BYTES];
+    for (int dim = 0; dim < numDims; ++dim) {
+      int lower = (int) (random.nextDouble() * (Integer.MAX_VALUE - width));
+      IntPoint.encodeDimension(lower, lowerPoint, dim * Integer.BYTES);
+      IntPoint.encodeDimension((int) (lower + width), upperPoint, dim * Integer.BYTES);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    IOUtils.close(reader, dir);
+    IOUtils.rm(path);
+  }
+
+  private boolean matches(byte[] packedValue) {
+    for (int dim = 0; dim < numDims; ++dim) {
+      int offset = dim * Integer.BYTES;
+      if (StringHelper.compare(Integer.BYTES, packedValue, offset, lowerPoint, offset) < 0
+          || StringHelper.compare(Integer.BYTES, packedValue, offset, upperPoint, offset) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Relation relate(byte[] minPackedValue, byte[] maxPackedValue) {
+    boolean crosses = false;
+    for (int dim = 0; dim < numDims; ++dim) {
+      int offset = dim * Integer.BYTES;
+      if (StringHelper.compare(Integer.BYTES, minPackedValue, offset, upperPoint, offset) > 0
+          || StringHelper.compare(Integer.BYTES, maxPackedValue, offset, lowerPoint, offset) < 0) {
+        return Relation.CELL_OUTSIDE_QUERY;
+      }
+      crosses |= StringHelper.compare(Integer.BYTES, minPackedValue, offset, lowerPoint, offset) < 0
+          || StringHelper.compare(Integer.BYTES, maxPackedValue, offset, upperPoint, offset) > 0;
+    }
+    return crosses ? Relation.CELL_CROSSES_QUERY : Relation.CELL_INSIDE_QUERY;
+  }
+
+  /** Counts matching documents, this only measures the tree traversal and the decoding of the leaves. */
+  @Benchmark
+  public int count() throws IOException {
+    int[] count = new int[1];
+    points.intersect(new IntersectVisitor() {
+      @Override
+      public void visit(int docID) {
+        count[0]++;
+      }
+
+      @Override
+      public void visit(int docID, byte[] packedValue) {
+        if (matches(packedValue)) {
+          count[0]++;
+        }
+      }
+
+      @Override
+      public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+        return relate(minPackedValue, maxPackedValue);
+      }
+    });
+    return count[0];
+  }
+
+  /** Collects matching documents into a {@link DocIdSetBuilder}, like {@code PointRangeQuery} does. */
+  @Benchmark
+  public DocIdSet docIdSet() throws IOException {
+    DocIdSetBuilder result = new DocIdSetBuilder(maxDoc, points, FIELD);
+    points.intersect(new IntersectVisitor() {
+      DocIdSetBuilder.BulkAdder adder;
+
+      @Override
+      public void grow(int count) {
+        adder = result.grow(count);
+      }
+
+      @Override
+      public void visit(int docID) {
+        adder.add(docID);
+      }
+
+      @Override
+      public void visit(int docID, byte[] packedValue) {
+        if (matches(packedValue)) {
+          adder.add(docID);
+        }
+      }
+
+      @Override
+      public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+        return relate(minPackedValue, maxPackedValue);
+      }
+    });
+    return result.build();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util.fst;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks exact and ceiling lookups in an {@link FST} that maps random terms to
+ * their ordinals, like the terms index of the block tree terms dictionary.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FSTBenchmark {
+
+  private static final int NUM_LOOKUPS = 1024;
+
+  private static final long SEED = 0xC0FFEEL;
+
+  @Param({"10000", "1000000"})
+  public int numTerms;
+
+  private FST<Long> fst;
+  private BytesRef[] lookups;
+
+  private static BytesRef randomTerm(Random random) {
+    byte[] bytes = new byte[4 + random.nextInt(13)];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) ('a' + random.nextInt(26));
+    }
+    return new BytesRef(bytes);
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(SEED);
+    TreeSet<BytesRef> terms = new TreeSet<>();
+    while (terms.size() < numTerms) {
+      terms.add(randomTerm(random));
+    }
+
+    Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE1, PositiveIntOutputs.getSingleton());
+    IntsRefBuilder scratch = new IntsRefBuilder();
+    long ord = 0;
+    for (BytesRef term : terms) {
+      builder.add(Util.toIntsRef(term, scratch), ord++);
+    }
+    fst = builder.finish();
+
+    // half of the lookups hit an existing term
+    BytesRef[] sortedTerms = terms.toArray(new BytesRef[0]);
+    lookups = new BytesRef[NUM_LOOKUPS];
+    for (int i = 0; i < NUM_LOOKUPS; ++i) {
+      lookups[i] = random.nextBoolean() ? sortedTerms[random.nextInt(sortedTerms.length)] : randomTerm(random);
+    }
+  }
+
+  @Benchmark
+  public long get() throws IOException {
+    long sum = 0;
+    for (BytesRef term : lookups) {
+      Long output = Util.get(fst, term);
+      if (output != null) {
+        sum += output;
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long seekCeil() throws IOException {
+    BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<>(fst);
+    long sum = 0;
+    for (BytesRef term : lookups) {
+      BytesRefFSTEnum.InputOutput<Long> result = fstEnum.seekCeil(term);
+      if (result != null) {
+        sum += result.output;
+      }
+    }
+    return sum;
+  }
+}
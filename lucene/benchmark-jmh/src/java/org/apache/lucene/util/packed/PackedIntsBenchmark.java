@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util.packed;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the bulk {@link PackedInts.Decoder}s and random access to a {@link PackedInts.Mutable}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedIntsBenchmark {
+
+  /** Number of values decoded per invocation, a multiple of every decoder's value count. */
+  private static final int NUM_VALUES = 8192;
+
+  private static final long SEED = 0xC0FFEEL;
+
+  @Param({"1", "2", "4", "7", "8", "12", "16", "21", "24", "32", "48", "64"})
+  public int bitsPerValue;
+
+  private PackedInts.Decoder decoder;
+  private long[] longBlocks;
+  private byte[] byteBlocks;
+  private long[] values;
+  private PackedInts.Mutable mutable;
+  private int[] randomIndexes;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(SEED);
+    long[] data = new long[NUM_VALUES];
+    for (int i = 0; i < NUM_VALUES; ++i) {
+      data[i] = bitsPerValue == 64 ? random.nextLong() : random.nextLong() & PackedInts.maxValue(bitsPerValue);
+    }
+
+    PackedInts.Encoder encoder = PackedInts.getEncoder(PackedInts.Format.PACKED, PackedInts.VERSION_CURRENT, bitsPerValue);
+    decoder = PackedInts.getDecoder(PackedInts.Format.PACKED, PackedInts.VERSION_CURRENT, bitsPerValue);
+    longBlocks = new long[NUM_VALUES / encoder.longValueCount() * encoder.longBlockCount()];
+    encoder.encode(data, 0, longBlocks, 0, NUM_VALUES / encoder.longValueCount());
+    byteBlocks = new byte[NUM_VALUES / encoder.byteValueCount() * encoder.byteBlockCount()];
+    encoder.encode(data, 0, byteBlocks, 0, NUM_VALUES / encoder.byteValueCount());
+    values = new long[NUM_VALUES];
+
+    mutable = PackedInts.getMutable(NUM_VALUES, bitsPerValue, PackedInts.COMPACT);
+    for (int i = 0; i < NUM_VALUES; ++i) {
+      mutable.set(i, data[i]);
+    }
+    randomIndexes = new int[NUM_VALUES];
+    for (int i = 0; i < NUM_VALUES; ++i) {
+      randomIndexes[i] = random.nextInt(NUM_VALUES);
+    }
+  }
+
+  @Benchmark
+  public long[] decodeLongBlocks() {
+    decoder.decode(longBlocks, 0, values, 0, NUM_VALUES / decoder.longValueCount());
+    return values;
+  }
+
+  @Benchmark
+  public long[] decodeByteBlocks() {
+    decoder.decode(byteBlocks, 0, values, 0, NUM_VALUES / decoder.byteValueCount());
+    return values;
+  }
+
+  @Benchmark
+  public long sequentialGet() {
+    long sum = 0;
+    for (int i = 0; i < NUM_VALUES; ++i) {
+      sum += mutable.get(i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long randomGet() {
+    long sum = 0;
+    for (int index : randomIndexes) {
+      sum += mutable.get(index);
+    }
+    return sum;
+  }
+}
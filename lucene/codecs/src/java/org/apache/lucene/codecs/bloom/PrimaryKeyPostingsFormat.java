@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.bloom;
+
+import java.io.IOException;
+
+import org.apache.lucene.codecs.FieldsConsumer;
+import org.apache.lucene.codecs.FieldsProducer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene50.Lucene50PostingsFormat;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+
+/**
+ * A {@link PostingsFormat} for primary key fields, which have a unique term
+ * per document and are looked up by {@link org.apache.lucene.index.IndexWriter#updateDocument}
+ * and {@link org.apache.lucene.index.IndexWriter#deleteDocuments(org.apache.lucene.index.Term...)}
+ * in every segment of the index.
+ * <p>
+ * This is a {@link BloomFilteringPostingsFormat} over {@link Lucene50PostingsFormat}
+ * with {@link DefaultBloomFilterFactory}, registered under its own name so
+ * that it can be configured by name, for instance by overriding
+ * {@code Lucene70Codec.getPostingsFormatForField}. The bloom filter rules out
+ * most segments that do not contain a key without looking at the terms
+ * dictionary, and terms that match a single document are stored with their
+ * document ID in the terms dictionary, so that the postings file is not read
+ * either. {@code IndexWriter} resolves deleted terms of such fields with
+ * exact lookups in sorted order, which is what the bloom filter speeds up.
+ * @lucene.experimental
+ */
+public final class PrimaryKeyPostingsFormat extends PostingsFormat {
+
+  private final BloomFilteringPostingsFormat delegate;
+
+  /** Sole constructor. */
+  public PrimaryKeyPostingsFormat() {
+    super("PrimaryKey");
+    delegate = new BloomFilteringPostingsFormat(new Lucene50PostingsFormat(), new DefaultBloomFilterFactory());
+  }
+
+  @Override
+  public FieldsConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+    return delegate.fieldsConsumer(state);
+  }
+
+  @Override
+  public FieldsProducer fieldsProducer(SegmentReadState state) throws IOException {
+    return delegate.fieldsProducer(state);
+  }
+
+  @Override
+  public String toString() {
+    return "PrimaryKey(" + delegate + ")";
+  }
+}
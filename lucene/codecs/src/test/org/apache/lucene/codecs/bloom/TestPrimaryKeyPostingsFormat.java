@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.bloom;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.BasePostingsFormatTestCase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.TestUtil;
+
+/**
+ * Basic tests for PrimaryKeyPostingsFormat
+ */
+public class TestPrimaryKeyPostingsFormat extends BasePostingsFormatTestCase {
+  private final Codec codec = TestUtil.alwaysPostingsFormat(new PrimaryKeyPostingsFormat());
+
+  @Override
+  protected Codec getCodec() {
+    return codec;
+  }
+
+  public void testLoadByName() {
+    assertTrue(PostingsFormat.forName("PrimaryKey") instanceof PrimaryKeyPostingsFormat);
+  }
+
+  public void testUpdates() throws IOException {
+    final Pattern lookedUp = Pattern.compile("(\\d+) seg terms looked up");
+    final AtomicLong lookups = new AtomicLong();
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setCodec(codec)
+        .setMaxBufferedDocs(100)
+        .setInfoStream(new InfoStream() {
+          @Override
+          public void message(String component, String message) {
+            Matcher m = lookedUp.matcher(message);
+            if (m.find()) {
+              lookups.addAndGet(Long.parseLong(m.group(1)));
+            }
+          }
+
+          @Override
+          public boolean isEnabled(String component) {
+            return "BD".equals(component);
+          }
+
+          @Override
+          public void close() {}
+        });
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final int numIds = atLeast(500);
+    for (int i = 0; i < numIds; i++) {
+      w.addDocument(newDoc(i, 0));
+    }
+    w.commit();
+    final int numUpdates = atLeast(500);
+    final int[] versions = new int[numIds];
+    for (int i = 0; i < numUpdates; i++) {
+      final int id = random().nextInt(numIds);
+      w.updateDocument(new Term("id", Integer.toString(id)), newDoc(id, ++versions[id]));
+    }
+
+    try (DirectoryReader reader = DirectoryReader.open(w)) {
+      assertEquals(numIds, reader.numDocs());
+      IndexSearcher searcher = newSearcher(reader);
+      for (int id = 0; id < numIds; id++) {
+        assertEquals(1, searcher.count(new TermQuery(new Term("id", Integer.toString(id)))));
+        assertEquals(1, searcher.count(new TermQuery(new Term("version", id + "_" + versions[id]))));
+      }
+    }
+    // deleted ids were looked up in previous segments rather than merge sorted with their terms
+    assertTrue(lookups.get() > 0);
+    w.close();
+    dir.close();
+  }
+
+  private static Document newDoc(int id, int version) {
+    Document doc = new Document();
+    doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+    doc.add(new StringField("version", id + "_" + version, Field.Store.NO));
+    return doc;
+  }
+}
@@ -68,6 +68,7 @@ import org.apache.lucene.util.BitUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.packed.PackedInts;
 
 /**
@@ -169,6 +170,10 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
         if (numDirtyChunks > numChunks) {
           throw new CorruptIndexException("invalid chunk counts: dirty=" + numDirtyChunks + ", total=" + numChunks, fieldsStream);
         }
+        if (decompressor instanceof DictionaryCompressionMode.DictionaryDecompressor) {
+          // the dictionary that all chunks of this segment were compressed against
+          ((DictionaryCompressionMode.DictionaryDecompressor) decompressor).readDictionary(fieldsStream);
+        }
       } else {
         numChunks = numDirtyChunks = -1;
       }
@@ -656,7 +661,11 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
 
   @Override
   public long ramBytesUsed() {
-    return indexReader.ramBytesUsed();
+    long ramBytesUsed = indexReader.ramBytesUsed();
+    if (decompressor instanceof DictionaryCompressionMode.DictionaryDecompressor) {
+      ramBytesUsed += RamUsageEstimator.sizeOf(((DictionaryCompressionMode.DictionaryDecompressor) decompressor).dictionary);
+    }
+    return ramBytesUsed;
   }
   
   @Override
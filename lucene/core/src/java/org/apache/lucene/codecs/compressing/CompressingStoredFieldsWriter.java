@@ -217,6 +217,11 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   private void flush() throws IOException {
     indexWriter.writeIndex(numBufferedDocs, fieldsStream.getFilePointer());
 
+    if (compressor instanceof DictionaryCompressionMode.DictionaryCompressor) {
+      // train the dictionary of the segment on its first chunk
+      ((DictionaryCompressionMode.DictionaryCompressor) compressor).train(bufferedDocs.bytes, endOffsets, numBufferedDocs);
+    }
+
     // transform end offsets into lengths
     final int[] lengths = endOffsets;
     for (int i = numBufferedDocs - 1; i > 0; --i) {
@@ -467,6 +472,11 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
     indexWriter.finish(numDocs, fieldsStream.getFilePointer());
     fieldsStream.writeVLong(numChunks);
     fieldsStream.writeVLong(numDirtyChunks);
+    if (compressor instanceof DictionaryCompressionMode.DictionaryCompressor) {
+      final byte[] dictionary = ((DictionaryCompressionMode.DictionaryCompressor) compressor).getDictionary();
+      fieldsStream.writeVInt(dictionary.length);
+      fieldsStream.writeBytes(dictionary, dictionary.length);
+    }
     CodecUtil.writeFooter(fieldsStream);
     assert bufferedDocs.length == 0;
   }
@@ -528,6 +538,7 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
           ++docCount;
         }
       } else if (matchingFieldsReader.getCompressionMode() == compressionMode && 
+                 !(compressionMode instanceof DictionaryCompressionMode) && // chunks depend on the dictionary of their segment
                  matchingFieldsReader.getChunkSize() == chunkSize && 
                  matchingFieldsReader.getPackedIntsVersion() == PackedInts.VERSION_CURRENT &&
                  liveDocs == null &&
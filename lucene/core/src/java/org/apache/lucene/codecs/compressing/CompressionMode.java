@@ -113,6 +113,15 @@ public abstract class CompressionMode {
 
   };
 
+  /**
+   * A compression mode that compresses small blocks against a dictionary that
+   * is trained on, and shared by, all documents of a segment. This mode gives
+   * good compression ratios on indices whose documents are small and look alike
+   * while keeping the cost of loading a single document low.
+   * @see DictionaryCompressionMode
+   */
+  public static final CompressionMode DICTIONARY = new DictionaryCompressionMode(6, 1 << 12, 1 << 14);
+
   /** Sole constructor. */
   protected CompressionMode() {}
 
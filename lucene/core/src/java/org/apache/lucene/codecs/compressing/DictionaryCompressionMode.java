@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.compressing;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A {@link CompressionMode} that compresses data in small blocks with the
+ * <a href="http://en.wikipedia.org/wiki/DEFLATE">DEFLATE</a> algorithm, using a
+ * preset dictionary that is shared by all the blocks of a segment.
+ * <p>
+ * {@link CompressingStoredFieldsWriter} trains the dictionary on the first
+ * chunk of documents of every segment that it writes (on flush as well as on
+ * merge) and stores it once, after the last chunk. Because the dictionary
+ * captures what documents have in common (field names, keys of JSON documents,
+ * recurring values, ...), small documents compress much better than when every
+ * chunk is compressed on its own. And because blocks are small and compressed
+ * independently, loading a single document only decompresses the blocks that
+ * contain it instead of the whole chunk.
+ * <p>
+ * Compressors and decompressors that have not been given a dictionary, for
+ * instance when they are used for term vectors, just compress blocks
+ * independently.
+ * @lucene.experimental
+ */
+public final class DictionaryCompressionMode extends CompressionMode {
+
+  // length of the byte sequences whose frequencies are counted when training dictionaries
+  static final int KMER_LENGTH = 8;
+  // dictionaries are made of segments of this length
+  static final int SEGMENT_LENGTH = 64;
+  // at most this many bytes of the first chunk are used to train the dictionary
+  static final int MAX_SAMPLE_LENGTH = 1 << 20;
+  private static final int HASH_BITS = 16;
+
+  private final int level;
+  private final int blockSize;
+  private final int maxDictionaryLength;
+
+  /**
+   * Create a new instance.
+   *
+   * @param level the DEFLATE compression level
+   * @param blockSize the number of bytes that are compressed together, the
+   *        minimum amount of data that needs to be decompressed to load a document
+   * @param maxDictionaryLength the maximum length of the trained dictionaries,
+   *        DEFLATE only uses the last 32KB of the dictionary
+   */
+  public DictionaryCompressionMode(int level, int blockSize, int maxDictionaryLength) {
+    if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("level must be between " + Deflater.BEST_SPEED + " and " + Deflater.BEST_COMPRESSION + ", got " + level);
+    }
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be at least 1, got " + blockSize);
+    }
+    if (maxDictionaryLength < 0 || maxDictionaryLength > 1 << 15) {
+      throw new IllegalArgumentException("maxDictionaryLength must be between 0 and " + (1 << 15) + ", got " + maxDictionaryLength);
+    }
+    this.level = level;
+    this.blockSize = blockSize;
+    this.maxDictionaryLength = maxDictionaryLength;
+  }
+
+  @Override
+  public Compressor newCompressor() {
+    return new DictionaryCompressor(level, blockSize, maxDictionaryLength);
+  }
+
+  @Override
+  public Decompressor newDecompressor() {
+    return new DictionaryDecompressor(blockSize, maxDictionaryLength, BytesRef.EMPTY_BYTES);
+  }
+
+  /** Return the maximum length of the dictionaries that this mode trains. */
+  public int getMaxDictionaryLength() {
+    return maxDictionaryLength;
+  }
+
+  @Override
+  public String toString() {
+    return "DICTIONARY(level=" + level + ",blockSize=" + blockSize + ",maxDictionaryLength=" + maxDictionaryLength + ")";
+  }
+
+  private static int hash(byte[] bytes, int offset) {
+    long kmer = 0;
+    for (int i = 0; i < KMER_LENGTH; ++i) {
+      kmer = (kmer << 8) | (bytes[offset + i] & 0xFF);
+    }
+    return (int) ((kmer * 0x9E3779B97F4A7C15L) >>> (64 - HASH_BITS));
+  }
+
+  /**
+   * Train a dictionary of at most <code>maxLength</code> bytes on the
+   * documents that are stored in <code>bytes</code>, document <code>i</code>
+   * ending at offset <code>docEnds[i]</code>.
+   * <p>
+   * This is a simplified version of the COVER algorithm: the frequency of
+   * every sequence of {@link #KMER_LENGTH} bytes is the number of documents
+   * that contain it, the sample is divided into as many epochs as the
+   * dictionary has segments, and the segment of {@link #SEGMENT_LENGTH} bytes
+   * of each epoch whose sequences are the most frequent is added to the
+   * dictionary. Sequences stop counting once they are in the dictionary.
+   * Sequences that only occur in a single document are not worth adding to
+   * the dictionary and are ignored. Segments with higher scores come last in
+   * the dictionary since DEFLATE encodes closer matches more efficiently.
+   */
+  static byte[] train(byte[] bytes, int[] docEnds, int numDocs, int maxLength) {
+    int sampleLength = 0;
+    int sampleDocs = 0;
+    while (sampleDocs < numDocs && docEnds[sampleDocs] <= MAX_SAMPLE_LENGTH) {
+      sampleLength = docEnds[sampleDocs++];
+    }
+    final int maxSegments = maxLength / SEGMENT_LENGTH;
+    if (sampleDocs < 2 || sampleLength < SEGMENT_LENGTH || maxSegments == 0) {
+      return BytesRef.EMPTY_BYTES;
+    }
+
+    // count the number of documents that contain every sequence
+    final int[] frequencies = new int[1 << HASH_BITS];
+    final int[] lastDocs = new int[1 << HASH_BITS];
+    Arrays.fill(lastDocs, -1);
+    for (int doc = 0, start = 0; doc < sampleDocs; start = docEnds[doc++]) {
+      for (int i = start, end = docEnds[doc] - KMER_LENGTH; i <= end; ++i) {
+        final int h = hash(bytes, i);
+        if (lastDocs[h] != doc) {
+          lastDocs[h] = doc;
+          frequencies[h]++;
+        }
+      }
+    }
+
+    final int numEpochs = Math.min(maxSegments, sampleLength / SEGMENT_LENGTH);
+    final int epochLength = sampleLength / numEpochs;
+    final long[] segments = new long[numEpochs]; // score << 32 | start
+    int numSegments = 0;
+    for (int epoch = 0; epoch < numEpochs; ++epoch) {
+      final int epochStart = epoch * epochLength;
+      final int lastStart = Math.min(epochStart + epochLength, sampleLength) - SEGMENT_LENGTH;
+      // slide a window over the epoch: the score of a segment is the sum of
+      // the frequencies of the sequences that start in it
+      long score = 0;
+      for (int i = epochStart, end = epochStart + SEGMENT_LENGTH - KMER_LENGTH; i <= end; ++i) {
+        score += score(frequencies[hash(bytes, i)]);
+      }
+      long bestScore = score;
+      int bestStart = epochStart;
+      for (int start = epochStart + 1; start <= lastStart; ++start) {
+        score -= score(frequencies[hash(bytes, start - 1)]);
+        score += score(frequencies[hash(bytes, start + SEGMENT_LENGTH - KMER_LENGTH)]);
+        if (score > bestScore) {
+          bestScore = score;
+          bestStart = start;
+        }
+      }
+      if (bestScore > 0) {
+        for (int i = bestStart, end = bestStart + SEGMENT_LENGTH - KMER_LENGTH; i <= end; ++i) {
+          frequencies[hash(bytes, i)] = 0;
+        }
+        segments[numSegments++] = Math.min(bestScore, Integer.MAX_VALUE) << 32 | bestStart;
+      }
+    }
+
+    Arrays.sort(segments, 0, numSegments);
+    final byte[] dictionary = new byte[numSegments * SEGMENT_LENGTH];
+    for (int i = 0; i < numSegments; ++i) {
+      System.arraycopy(bytes, (int) segments[i], dictionary, i * SEGMENT_LENGTH, SEGMENT_LENGTH);
+    }
+    return dictionary;
+  }
+
+  private static int score(int frequency) {
+    return frequency > 1 ? frequency : 0;
+  }
+
+  /** Compresses blocks against the dictionary of the segment. */
+  static final class DictionaryCompressor extends Compressor {
+
+    final Deflater compressor;
+    final int blockSize;
+    final int maxDictionaryLength;
+    byte[] dictionary;
+    boolean trained;
+    byte[] compressed;
+    int[] compressedLengths;
+
+    DictionaryCompressor(int level, int blockSize, int maxDictionaryLength) {
+      this.compressor = new Deflater(level, true);
+      this.blockSize = blockSize;
+      this.maxDictionaryLength = maxDictionaryLength;
+      this.dictionary = BytesRef.EMPTY_BYTES;
+      this.compressed = new byte[64];
+      this.compressedLengths = new int[8];
+    }
+
+    /**
+     * Train the dictionary on the given documents, unless it has been trained
+     * already. See {@link DictionaryCompressionMode#train}.
+     */
+    void train(byte[] bytes, int[] docEnds, int numDocs) {
+      if (trained == false) {
+        dictionary = DictionaryCompressionMode.train(bytes, docEnds, numDocs, maxDictionaryLength);
+        trained = true;
+      }
+    }
+
+    /** Return the dictionary that blocks are compressed against. */
+    byte[] getDictionary() {
+      return dictionary;
+    }
+
+    @Override
+    public void compress(byte[] bytes, int off, int len, DataOutput out) throws IOException {
+      final int numBlocks = (len + blockSize - 1) / blockSize;
+      compressedLengths = ArrayUtil.grow(compressedLengths, numBlocks);
+      int totalCount = 0;
+      for (int block = 0; block < numBlocks; ++block) {
+        final int blockOffset = block * blockSize;
+        compressor.reset();
+        if (dictionary.length > 0) {
+          compressor.setDictionary(dictionary);
+        }
+        compressor.setInput(bytes, off + blockOffset, Math.min(blockSize, len - blockOffset));
+        compressor.finish();
+        final int start = totalCount;
+        for (;;) {
+          final int count = compressor.deflate(compressed, totalCount, compressed.length - totalCount);
+          totalCount += count;
+          assert totalCount <= compressed.length;
+          if (compressor.finished()) {
+            break;
+          } else {
+            compressed = ArrayUtil.grow(compressed);
+          }
+        }
+        compressedLengths[block] = totalCount - start;
+      }
+
+      // write all lengths first so that blocks can be skipped on decompression
+      for (int block = 0; block < numBlocks; ++block) {
+        out.writeVInt(compressedLengths[block]);
+      }
+      out.writeBytes(compressed, totalCount);
+    }
+
+  }
+
+  /** Decompresses the blocks that contain the requested bytes. */
+  static final class DictionaryDecompressor extends Decompressor {
+
+    final Inflater decompressor;
+    final int blockSize;
+    final int maxDictionaryLength;
+    byte[] dictionary;
+    byte[] compressed;
+    int[] compressedLengths;
+
+    DictionaryDecompressor(int blockSize, int maxDictionaryLength, byte[] dictionary) {
+      this.decompressor = new Inflater(true);
+      this.blockSize = blockSize;
+      this.maxDictionaryLength = maxDictionaryLength;
+      this.dictionary = dictionary;
+      this.compressed = new byte[0];
+      this.compressedLengths = new int[8];
+    }
+
+    /** Read the dictionary of the segment. */
+    void readDictionary(DataInput in) throws IOException {
+      final int length = in.readVInt();
+      if (length > maxDictionaryLength) {
+        throw new CorruptIndexException("Dictionary is too long: " + length + " > " + maxDictionaryLength, in);
+      }
+      final byte[] dictionary = new byte[length];
+      in.readBytes(dictionary, 0, length);
+      this.dictionary = dictionary;
+    }
+
+    @Override
+    public void decompress(DataInput in, int originalLength, int offset, int length, BytesRef bytes) throws IOException {
+      assert offset + length <= originalLength;
+      final int numBlocks = (originalLength + blockSize - 1) / blockSize;
+      compressedLengths = ArrayUtil.grow(compressedLengths, numBlocks);
+      for (int block = 0; block < numBlocks; ++block) {
+        compressedLengths[block] = in.readVInt();
+      }
+      if (length == 0) {
+        skipBlocks(in, 0, numBlocks);
+        bytes.length = 0;
+        return;
+      }
+
+      final int firstBlock = offset / blockSize;
+      final int lastBlock = (offset + length - 1) / blockSize;
+      skipBlocks(in, 0, firstBlock);
+      bytes.bytes = ArrayUtil.grow(bytes.bytes, Math.min(originalLength - firstBlock * blockSize, (lastBlock - firstBlock + 1) * blockSize));
+      int decompressed = 0;
+      for (int block = firstBlock; block <= lastBlock; ++block) {
+        final int compressedLength = compressedLengths[block];
+        // pad with extra "dummy byte": see javadocs for using Inflater(true)
+        compressed = ArrayUtil.grow(compressed, compressedLength + 1);
+        in.readBytes(compressed, 0, compressedLength);
+        compressed[compressedLength] = 0;
+
+        final int blockLength = Math.min(blockSize, originalLength - block * blockSize);
+        decompressor.reset();
+        if (dictionary.length > 0) {
+          decompressor.setDictionary(dictionary);
+        }
+        decompressor.setInput(compressed, 0, compressedLength + 1);
+        final int count;
+        try {
+          count = decompressor.inflate(bytes.bytes, decompressed, blockLength);
+        } catch (DataFormatException e) {
+          throw new IOException(e);
+        }
+        if (!decompressor.finished()) {
+          throw new CorruptIndexException("Invalid decoder state: needsInput=" + decompressor.needsInput() 
+                                                              + ", needsDict=" + decompressor.needsDictionary(), in);
+        }
+        if (count != blockLength) {
+          throw new CorruptIndexException("Lengths mismatch: " + count + " != " + blockLength, in);
+        }
+        decompressed += count;
+      }
+      // leave the input positioned after the compressed data
+      skipBlocks(in, lastBlock + 1, numBlocks);
+
+      bytes.offset = offset - firstBlock * blockSize;
+      bytes.length = length;
+    }
+
+    private void skipBlocks(DataInput in, int from, int to) throws IOException {
+      long numBytes = 0;
+      for (int block = from; block < to; ++block) {
+        numBytes += compressedLengths[block];
+      }
+      in.skipBytes(numBytes);
+    }
+
+    @Override
+    public Decompressor clone() {
+      // the dictionary is never modified once read, it can be shared
+      return new DictionaryDecompressor(blockSize, maxDictionaryLength, dictionary);
+    }
+
+  }
+
+}
@@ -61,11 +61,21 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
   private final IndexInput posIn;
   private final IndexInput payIn;
 
-  final ForUtil forUtil;
+  final PostingsBlockCodec forUtil;
+  private final boolean vectorized;
   private int version;
 
   /** Sole constructor. */
   public Lucene50PostingsReader(SegmentReadState state) throws IOException {
+    this(state, false);
+  }
+
+  /**
+   * Creates a reader for files that were written by a {@link Lucene50PostingsWriter}
+   * using {@link VectorizedForUtil} if <code>vectorized</code> is true.
+   */
+  Lucene50PostingsReader(SegmentReadState state, boolean vectorized) throws IOException {
+    this.vectorized = vectorized;
     boolean success = false;
     IndexInput docIn = null;
     IndexInput posIn = null;
@@ -79,20 +89,21 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
     String docName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, Lucene50PostingsFormat.DOC_EXTENSION);
     try {
       docIn = state.directory.openInput(docName, state.context);
-      version = CodecUtil.checkIndexHeader(docIn, DOC_CODEC, VERSION_START, VERSION_CURRENT, state.segmentInfo.getId(), state.segmentSuffix);
-      forUtil = new ForUtil(docIn);
+      version = CodecUtil.checkIndexHeader(docIn, vectorized ? Lucene50VectorizedPostingsFormat.DOC_CODEC : DOC_CODEC,
+          VERSION_START, VERSION_CURRENT, state.segmentInfo.getId(), state.segmentSuffix);
+      forUtil = vectorized ? new VectorizedForUtil() : new ForUtil(docIn);
       CodecUtil.retrieveChecksum(docIn);
 
       if (state.fieldInfos.hasProx()) {
         String proxName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, Lucene50PostingsFormat.POS_EXTENSION);
         posIn = state.directory.openInput(proxName, state.context);
-        CodecUtil.checkIndexHeader(posIn, POS_CODEC, version, version, state.segmentInfo.getId(), state.segmentSuffix);
+        CodecUtil.checkIndexHeader(posIn, vectorized ? Lucene50VectorizedPostingsFormat.POS_CODEC : POS_CODEC, version, version, state.segmentInfo.getId(), state.segmentSuffix);
         CodecUtil.retrieveChecksum(posIn);
 
         if (state.fieldInfos.hasPayloads() || state.fieldInfos.hasOffsets()) {
           String payName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, Lucene50PostingsFormat.PAY_EXTENSION);
           payIn = state.directory.openInput(payName, state.context);
-          CodecUtil.checkIndexHeader(payIn, PAY_CODEC, version, version, state.segmentInfo.getId(), state.segmentSuffix);
+          CodecUtil.checkIndexHeader(payIn, vectorized ? Lucene50VectorizedPostingsFormat.PAY_CODEC : PAY_CODEC, version, version, state.segmentInfo.getId(), state.segmentSuffix);
           CodecUtil.retrieveChecksum(payIn);
         }
       }
@@ -111,7 +122,7 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
   @Override
   public void init(IndexInput termsIn, SegmentReadState state) throws IOException {
     // Make sure we are talking to the matching postings writer
-    CodecUtil.checkIndexHeader(termsIn, TERMS_CODEC, VERSION_START, VERSION_CURRENT, state.segmentInfo.getId(), state.segmentSuffix);
+    CodecUtil.checkIndexHeader(termsIn, vectorized ? Lucene50VectorizedPostingsFormat.TERMS_CODEC : TERMS_CODEC, VERSION_START, VERSION_CURRENT, state.segmentInfo.getId(), state.segmentSuffix);
     final int indexBlockSize = termsIn.readVInt();
     if (indexBlockSize != BLOCK_SIZE) {
       throw new IllegalStateException("index-time BLOCK_SIZE (" + indexBlockSize + ") != read-time BLOCK_SIZE (" + BLOCK_SIZE + ")");
@@ -236,6 +247,8 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
 
   final class BlockDocsEnum extends PostingsEnum {
     private final byte[] encoded;
+    // decoding may use scratch space of the codec, so every enum has its own copy
+    private final PostingsBlockCodec forUtil;
     
     private final int[] docDeltaBuffer = new int[MAX_DATA_SIZE];
     private final int[] freqBuffer = new int[MAX_DATA_SIZE];
@@ -283,6 +296,7 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
       indexHasOffsets = fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
       indexHasPayloads = fieldInfo.hasPayloads();
       encoded = new byte[MAX_ENCODED_SIZE];    
+      forUtil = Lucene50PostingsReader.this.forUtil.copy();
     }
 
     public boolean canReuse(IndexInput docIn, FieldInfo fieldInfo) {
@@ -471,6 +485,8 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
   final class BlockPostingsEnum extends PostingsEnum {
     
     private final byte[] encoded;
+    // decoding may use scratch space of the codec, so every enum has its own copy
+    private final PostingsBlockCodec forUtil;
 
     private final int[] docDeltaBuffer = new int[MAX_DATA_SIZE];
     private final int[] freqBuffer = new int[MAX_DATA_SIZE];
@@ -535,6 +551,7 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
       this.docIn = null;
       this.posIn = Lucene50PostingsReader.this.posIn.clone();
       encoded = new byte[MAX_ENCODED_SIZE];
+      forUtil = Lucene50PostingsReader.this.forUtil.copy();
       indexHasOffsets = fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
       indexHasPayloads = fieldInfo.hasPayloads();
     }
@@ -803,6 +820,8 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
   final class EverythingEnum extends PostingsEnum {
     
     private final byte[] encoded;
+    // decoding may use scratch space of the codec, so every enum has its own copy
+    private final PostingsBlockCodec forUtil;
 
     private final int[] docDeltaBuffer = new int[MAX_DATA_SIZE];
     private final int[] freqBuffer = new int[MAX_DATA_SIZE];
@@ -888,6 +907,7 @@ public final class Lucene50PostingsReader extends PostingsReaderBase {
       this.posIn = Lucene50PostingsReader.this.posIn.clone();
       this.payIn = Lucene50PostingsReader.this.payIn.clone();
       encoded = new byte[MAX_ENCODED_SIZE];
+      forUtil = Lucene50PostingsReader.this.forUtil.copy();
       indexHasOffsets = fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
       if (indexHasOffsets) {
         offsetStartDeltaBuffer = new int[MAX_DATA_SIZE];
@@ -50,12 +50,17 @@ import org.apache.lucene.util.packed.PackedInts;
  * compression, you can choose ({@link Mode#BEST_COMPRESSION BEST_COMPRESSION}), which uses 
  * the <a href="http://en.wikipedia.org/wiki/DEFLATE">DEFLATE</a> algorithm with 60KB blocks 
  * for a better ratio at the expense of slower performance. 
- * These two options can be configured like this:
+ * Indices of many small, similar documents can choose ({@link Mode#DICTIONARY DICTIONARY}),
+ * which compresses 4KB blocks with DEFLATE against a dictionary that is trained on the
+ * first chunk of every segment and stored once per segment.
+ * These options can be configured like this:
  * <pre class="prettyprint">
  *   // the default: for high performance
  *   indexWriterConfig.setCodec(new Lucene54Codec(Mode.BEST_SPEED));
  *   // instead for higher performance (but slower):
  *   // indexWriterConfig.setCodec(new Lucene54Codec(Mode.BEST_COMPRESSION));
+ *   // or for small documents that share a lot of content:
+ *   // indexWriterConfig.setCodec(new Lucene54Codec(Mode.DICTIONARY));
  * </pre>
  * <p><b>File formats</b>
  * <p>Stored fields are represented by two files:
@@ -71,7 +76,7 @@ import org.apache.lucene.util.packed.PackedInts;
  * <a href="http://fastcompression.blogspot.fr/2011/05/lz4-explained.html">compression format</a>.</p>
  * <p>Here is a more detailed description of the field data file format:</p>
  * <ul>
- * <li>FieldData (.fdt) --&gt; &lt;Header&gt;, PackedIntsVersion, &lt;Chunk&gt;<sup>ChunkCount</sup>, ChunkCount, DirtyChunkCount, Footer</li>
+ * <li>FieldData (.fdt) --&gt; &lt;Header&gt;, PackedIntsVersion, &lt;Chunk&gt;<sup>ChunkCount</sup>, ChunkCount, DirtyChunkCount, Dictionary?, Footer</li>
  * <li>Header --&gt; {@link CodecUtil#writeIndexHeader IndexHeader}</li>
  * <li>PackedIntsVersion --&gt; {@link PackedInts#VERSION_CURRENT} as a {@link DataOutput#writeVInt VInt}</li>
  * <li>ChunkCount is not known in advance and is the number of chunks necessary to store all document of the segment</li>
@@ -104,6 +109,8 @@ import org.apache.lucene.util.packed.PackedInts;
  * <li>BinaryValue --&gt; ValueLength &lt;Byte&gt;<sup>ValueLength</sup></li>
  * <li>ChunkCount --&gt; the number of chunks in this file</li>
  * <li>DirtyChunkCount --&gt; the number of prematurely flushed chunks in this file</li>
+ * <li>Dictionary --&gt; DictionaryLength, Byte<sup>DictionaryLength</sup>, the dictionary that chunks are
+ * compressed against, only present in {@link Mode#DICTIONARY DICTIONARY} mode</li>
  * <li>Footer --&gt; {@link CodecUtil#writeFooter CodecFooter}</li>
  * </ul>
  * <p>Notes
@@ -145,7 +152,9 @@ public final class Lucene50StoredFieldsFormat extends StoredFieldsFormat {
     /** Trade compression ratio for retrieval speed. */
     BEST_SPEED,
     /** Trade retrieval speed for compression ratio. */
-    BEST_COMPRESSION
+    BEST_COMPRESSION,
+    /** Compress small blocks against a dictionary that is shared by all documents of a segment. */
+    DICTIONARY
   }
   
   /** Attribute key for compression mode. */
@@ -189,6 +198,8 @@ public final class Lucene50StoredFieldsFormat extends StoredFieldsFormat {
         return new CompressingStoredFieldsFormat("Lucene50StoredFieldsFast", CompressionMode.FAST, 1 << 14, 128, 1024);
       case BEST_COMPRESSION: 
         return new CompressingStoredFieldsFormat("Lucene50StoredFieldsHigh", CompressionMode.HIGH_COMPRESSION, 61440, 512, 1024);
+      case DICTIONARY:
+        return new CompressingStoredFieldsFormat("Lucene50StoredFieldsDict", CompressionMode.DICTIONARY, 61440, 512, 1024);
       default: throw new AssertionError();
     }
   }
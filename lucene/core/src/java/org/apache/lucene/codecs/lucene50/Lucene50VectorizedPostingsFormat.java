@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.lucene50;
+
+import java.io.IOException;
+
+import org.apache.lucene.codecs.FieldsConsumer;
+import org.apache.lucene.codecs.FieldsProducer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.PostingsReaderBase;
+import org.apache.lucene.codecs.PostingsWriterBase;
+import org.apache.lucene.codecs.blocktree.BlockTreeTermsReader;
+import org.apache.lucene.codecs.blocktree.BlockTreeTermsWriter;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.util.IOUtils;
+
+import static org.apache.lucene.codecs.lucene50.Lucene50PostingsFormat.BLOCK_SIZE;
+
+/**
+ * Variant of the {@link Lucene50PostingsFormat} whose packed blocks are laid out so
+ * that the JIT can auto-vectorize decoding.
+ * <p>
+ * Files, skip data and VInt-encoded tail blocks are the same as in
+ * {@link Lucene50PostingsFormat}, but headers use different codec names and packed
+ * blocks of doc deltas, freqs, position deltas, payload lengths and offsets are
+ * encoded as follows:
+ * <ul>
+ *   <li>PackedBlock --&gt; NumBits, PackedInts<sup>4 * NumBits</sup> | 0, Value</li>
+ *   <li>NumBits --&gt; {@link org.apache.lucene.store.DataOutput#writeByte Byte}</li>
+ *   <li>PackedInts --&gt; {@link org.apache.lucene.store.DataOutput#writeInt Int32}</li>
+ *   <li>Value --&gt; {@link org.apache.lucene.store.DataOutput#writeVInt VInt}</li>
+ * </ul>
+ * <p>
+ * The 128 values of a block are first stored into lanes of 8, 16 or 32 bits
+ * (the smallest width that fits NumBits), value <code>k * 4 * LaneBits + i</code> going
+ * to lane <code>k</code> of int <code>i</code>. These ints are then bit-packed
+ * column-wise, so that decoding a block consists of shifting and masking whole int
+ * arrays with a fixed shift, which decodes several values per instruction even
+ * when the JIT does not use SIMD instructions.
+ * <p>
+ * Blocks use about the same space as with {@link Lucene50PostingsFormat}; this format
+ * trades compatibility with the default codec for faster decoding.
+ *
+ * @lucene.experimental
+ */
+public final class Lucene50VectorizedPostingsFormat extends PostingsFormat {
+
+  final static String TERMS_CODEC = "Lucene50VectorizedPostingsWriterTerms";
+  final static String DOC_CODEC = "Lucene50VectorizedPostingsWriterDoc";
+  final static String POS_CODEC = "Lucene50VectorizedPostingsWriterPos";
+  final static String PAY_CODEC = "Lucene50VectorizedPostingsWriterPay";
+
+  private final int minTermBlockSize;
+  private final int maxTermBlockSize;
+
+  /** Creates {@code Lucene50VectorizedPostingsFormat} with default
+   *  settings. */
+  public Lucene50VectorizedPostingsFormat() {
+    this(BlockTreeTermsWriter.DEFAULT_MIN_BLOCK_SIZE, BlockTreeTermsWriter.DEFAULT_MAX_BLOCK_SIZE);
+  }
+
+  /** Creates {@code Lucene50VectorizedPostingsFormat} with custom
+   *  values for {@code minBlockSize} and {@code
+   *  maxBlockSize} passed to block terms dictionary.
+   *  @see BlockTreeTermsWriter#BlockTreeTermsWriter(SegmentWriteState,PostingsWriterBase,int,int) */
+  public Lucene50VectorizedPostingsFormat(int minTermBlockSize, int maxTermBlockSize) {
+    super("Lucene50Vectorized");
+    BlockTreeTermsWriter.validateSettings(minTermBlockSize, maxTermBlockSize);
+    this.minTermBlockSize = minTermBlockSize;
+    this.maxTermBlockSize = maxTermBlockSize;
+  }
+
+  @Override
+  public String toString() {
+    return getName() + "(blocksize=" + BLOCK_SIZE + ")";
+  }
+
+  @Override
+  public FieldsConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+    PostingsWriterBase postingsWriter = new Lucene50PostingsWriter(state, true);
+
+    boolean success = false;
+    try {
+      FieldsConsumer ret = new BlockTreeTermsWriter(state, 
+                                                    postingsWriter,
+                                                    minTermBlockSize, 
+                                                    maxTermBlockSize);
+      success = true;
+      return ret;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(postingsWriter);
+      }
+    }
+  }
+
+  @Override
+  public FieldsProducer fieldsProducer(SegmentReadState state) throws IOException {
+    PostingsReaderBase postingsReader = new Lucene50PostingsReader(state, true);
+    boolean success = false;
+    try {
+      FieldsProducer ret = new BlockTreeTermsReader(postingsReader, state);
+      success = true;
+      return ret;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(postingsReader);
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.lucene50;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+/**
+ * Encodes and decodes blocks of {@link Lucene50PostingsFormat#BLOCK_SIZE} postings
+ * values (doc deltas, freqs, position deltas, payload lengths and offsets).
+ * <p>
+ * Implementations may use scratch space, so instances are not thread-safe: every
+ * enum of a {@link Lucene50PostingsReader} uses its own {@link #copy()}.
+ *
+ * @see ForUtil
+ * @see VectorizedForUtil
+ */
+interface PostingsBlockCodec {
+
+  /**
+   * Returns an instance that reads and writes the same format, and that can be used
+   * concurrently with this one.
+   */
+  PostingsBlockCodec copy();
+
+  /**
+   * Write a block of data.
+   *
+   * @param data     the data to write
+   * @param encoded  a buffer of {@link ForUtil#MAX_ENCODED_SIZE} bytes to use to encode data
+   * @param out      the destination output
+   * @throws IOException If there is a low-level I/O error
+   */
+  void writeBlock(int[] data, byte[] encoded, IndexOutput out) throws IOException;
+
+  /**
+   * Read the next block of data.
+   *
+   * @param in        the input to use to read data
+   * @param encoded   a buffer of {@link ForUtil#MAX_ENCODED_SIZE} bytes that can be used to store encoded data
+   * @param decoded   where to write decoded data, at least {@link ForUtil#MAX_DATA_SIZE} values long
+   * @throws IOException If there is a low-level I/O error
+   */
+  void readBlock(IndexInput in, byte[] encoded, int[] decoded) throws IOException;
+
+  /**
+   * Skip the next block of data.
+   *
+   * @param in      the input where to read data
+   * @throws IOException If there is a low-level I/O error
+   */
+  void skipBlock(IndexInput in) throws IOException;
+}
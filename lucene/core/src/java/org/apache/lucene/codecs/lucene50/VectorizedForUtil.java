@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.lucene50;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.packed.PackedInts;
+
+import static org.apache.lucene.codecs.lucene50.Lucene50PostingsFormat.BLOCK_SIZE;
+
+/**
+ * Encode all values of a block with a fixed bit width like {@link ForUtil}, but with
+ * a layout that makes decoding a sequence of simple loops over int arrays, which
+ * decode several values per instruction and that the JIT can auto-vectorize.
+ * <p>
+ * Values are first collapsed into lanes of 8, 16 or 32 bits (the smallest width that
+ * fits the number of bits per value): lane <code>k</code> of int <code>i</code> holds
+ * value <code>k * numInts + i</code>. These ints are then packed column-wise into
+ * <code>4 * bitsPerValue</code> ints, so that every packed int is decoded with the
+ * same shift and mask, for all its lanes at once. As with {@link ForUtil}, a header
+ * byte records the number of bits per value, and <code>0</code> means that all values
+ * are equal and that the value follows as a VInt.
+ * <p>
+ * Instances hold scratch space for encoding and decoding and are not thread-safe.
+ */
+final class VectorizedForUtil implements PostingsBlockCodec {
+
+  /**
+   * Special number of bits per value used whenever all values to encode are equal.
+   */
+  private static final int ALL_VALUES_EQUAL = 0;
+
+  /** Masks of the <code>n</code> lowest bits of every lane, for each lane width. */
+  private static final int[] MASKS8 = new int[9];
+  private static final int[] MASKS16 = new int[17];
+  private static final int[] MASKS32 = new int[33];
+  static {
+    for (int i = 0; i < 9; ++i) {
+      MASKS8[i] = (int) (0x01010101L * ((1L << i) - 1));
+    }
+    for (int i = 0; i < 17; ++i) {
+      MASKS16[i] = (int) (0x00010001L * ((1L << i) - 1));
+    }
+    for (int i = 0; i < 33; ++i) {
+      MASKS32[i] = (int) ((1L << i) - 1);
+    }
+  }
+
+  private final int[] collapsed = new int[BLOCK_SIZE];
+  private final int[] packed = new int[BLOCK_SIZE];
+
+  /** Sole constructor. Unlike {@link ForUtil}, this format has no per-file configuration. */
+  VectorizedForUtil() {}
+
+  @Override
+  public VectorizedForUtil copy() {
+    return new VectorizedForUtil();
+  }
+
+  /** Returns the width of the lanes used to store values of <code>bitsPerValue</code> bits. */
+  static int laneBits(int bitsPerValue) {
+    if (bitsPerValue <= 8) {
+      return 8;
+    } else if (bitsPerValue <= 16) {
+      return 16;
+    } else {
+      return 32;
+    }
+  }
+
+  private static int[] masks(int laneBits) {
+    switch (laneBits) {
+      case 8:
+        return MASKS8;
+      case 16:
+        return MASKS16;
+      default:
+        return MASKS32;
+    }
+  }
+
+  /** Number of bytes of a block of values that are encoded with <code>bitsPerValue</code> bits. */
+  static int encodedSize(int bitsPerValue) {
+    // BLOCK_SIZE * bitsPerValue bits
+    return bitsPerValue << 4;
+  }
+
+  /**
+   * Write a block of data. The <code>encoded</code> buffer is not used.
+   */
+  @Override
+  public void writeBlock(int[] data, byte[] encoded, IndexOutput out) throws IOException {
+    if (isAllEqual(data)) {
+      out.writeByte((byte) ALL_VALUES_EQUAL);
+      out.writeVInt(data[0]);
+      return;
+    }
+
+    final int numBits = bitsRequired(data);
+    assert numBits > 0 && numBits <= 32 : numBits;
+    out.writeByte((byte) numBits);
+
+    final int laneBits = laneBits(numBits);
+    collapse(data, collapsed, laneBits);
+    pack(collapsed, packed, laneBits, numBits);
+    final int numPacked = numBits << 2;
+    for (int i = 0; i < numPacked; i += 2) {
+      out.writeLong(((long) packed[i] << 32) | (packed[i + 1] & 0xFFFFFFFFL));
+    }
+  }
+
+  /**
+   * Read the next block of data. The <code>encoded</code> buffer is not used.
+   */
+  @Override
+  public void readBlock(IndexInput in, byte[] encoded, int[] decoded) throws IOException {
+    final int numBits = in.readByte();
+    assert numBits <= 32 : numBits;
+
+    if (numBits == ALL_VALUES_EQUAL) {
+      final int value = in.readVInt();
+      Arrays.fill(decoded, 0, BLOCK_SIZE, value);
+      return;
+    }
+
+    final int laneBits = laneBits(numBits);
+    final int numPacked = numBits << 2;
+    for (int i = 0; i < numPacked; i += 2) {
+      final long l = in.readLong();
+      packed[i] = (int) (l >>> 32);
+      packed[i + 1] = (int) l;
+    }
+    if (laneBits == 32) {
+      // one value per int, no need to expand
+      unpack(packed, decoded, laneBits, numBits);
+    } else {
+      unpack(packed, collapsed, laneBits, numBits);
+      expand(collapsed, decoded, laneBits);
+    }
+  }
+
+  @Override
+  public void skipBlock(IndexInput in) throws IOException {
+    final int numBits = in.readByte();
+    if (numBits == ALL_VALUES_EQUAL) {
+      in.readVInt();
+      return;
+    }
+    assert numBits > 0 && numBits <= 32 : numBits;
+    in.seek(in.getFilePointer() + encodedSize(numBits));
+  }
+
+  /** Store the {@link Lucene50PostingsFormat#BLOCK_SIZE} values of <code>data</code> into <code>4 * laneBits</code> ints. */
+  static void collapse(int[] data, int[] collapsed, int laneBits) {
+    switch (laneBits) {
+      case 8:
+        for (int i = 0; i < 32; ++i) {
+          collapsed[i] = (data[i] << 24) | (data[32 + i] << 16) | (data[64 + i] << 8) | data[96 + i];
+        }
+        break;
+      case 16:
+        for (int i = 0; i < 64; ++i) {
+          collapsed[i] = (data[i] << 16) | data[64 + i];
+        }
+        break;
+      default:
+        System.arraycopy(data, 0, collapsed, 0, BLOCK_SIZE);
+        break;
+    }
+  }
+
+  /** Reverse of {@link #collapse}. */
+  static void expand(int[] collapsed, int[] values, int laneBits) {
+    // one loop per lane with a constant shift, so that the JIT can vectorize them
+    switch (laneBits) {
+      case 8:
+        for (int i = 0; i < 32; ++i) {
+          values[i] = collapsed[i] >>> 24;
+        }
+        for (int i = 0; i < 32; ++i) {
+          values[32 + i] = (collapsed[i] >>> 16) & 0xFF;
+        }
+        for (int i = 0; i < 32; ++i) {
+          values[64 + i] = (collapsed[i] >>> 8) & 0xFF;
+        }
+        for (int i = 0; i < 32; ++i) {
+          values[96 + i] = collapsed[i] & 0xFF;
+        }
+        break;
+      case 16:
+        for (int i = 0; i < 64; ++i) {
+          values[i] = collapsed[i] >>> 16;
+        }
+        for (int i = 0; i < 64; ++i) {
+          values[64 + i] = collapsed[i] & 0xFFFF;
+        }
+        break;
+      default:
+        System.arraycopy(collapsed, 0, values, 0, BLOCK_SIZE);
+        break;
+    }
+  }
+
+  private static int gcd(int a, int b) {
+    while (b != 0) {
+      final int t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  /**
+   * Pack the <code>4 * laneBits</code> collapsed ints into <code>4 * bitsPerValue</code>
+   * ints. Collapsed int <code>j * numPacked + i</code> goes to packed int <code>i</code>
+   * shifted by <code>laneBits - (j + 1) * bitsPerValue</code> for as many columns
+   * <code>j</code> as fit. The remaining collapsed ints are spread over the lowest bits
+   * of the packed ints, row by row, so that every row is also handled with a single
+   * shift and mask.
+   */
+  static void pack(int[] collapsed, int[] packed, int laneBits, int bitsPerValue) {
+    final int[] masks = masks(laneBits);
+    final int numCollapsed = laneBits << 2;
+    final int numPacked = bitsPerValue << 2;
+
+    int idx = 0;
+    int shift = laneBits - bitsPerValue;
+    for (int i = 0; i < numPacked; ++i) {
+      packed[i] = collapsed[idx++] << shift;
+    }
+    for (shift = shift - bitsPerValue; shift >= 0; shift -= bitsPerValue) {
+      for (int i = 0; i < numPacked; ++i) {
+        packed[i] |= collapsed[idx++] << shift;
+      }
+    }
+
+    if (idx == numCollapsed) {
+      return;
+    }
+    // the remaining collapsed ints are written as a stream of rows over the
+    // remainingBitsPerInt lowest bits of rows of packed ints
+    final int remainingBitsPerInt = shift + bitsPerValue;
+    final int maskRemainingBitsPerInt = masks[remainingBitsPerInt];
+    final int rowLength = gcd(remainingBitsPerInt, bitsPerValue) << 2;
+    int packedRow = 0;
+    int remainingBitsPerValue = bitsPerValue;
+    while (idx < numCollapsed) {
+      if (remainingBitsPerValue >= remainingBitsPerInt) {
+        remainingBitsPerValue -= remainingBitsPerInt;
+        for (int i = 0; i < rowLength; ++i) {
+          packed[packedRow + i] |= (collapsed[idx + i] >>> remainingBitsPerValue) & maskRemainingBitsPerInt;
+        }
+        packedRow += rowLength;
+        if (remainingBitsPerValue == 0) {
+          idx += rowLength;
+          remainingBitsPerValue = bitsPerValue;
+        }
+      } else {
+        final int fill = remainingBitsPerInt - remainingBitsPerValue;
+        final int mask = masks[remainingBitsPerValue];
+        for (int i = 0; i < rowLength; ++i) {
+          packed[packedRow + i] |= (collapsed[idx + i] & mask) << fill;
+        }
+        idx += rowLength;
+        remainingBitsPerValue = bitsPerValue - fill;
+        final int fillMask = masks[fill];
+        for (int i = 0; i < rowLength; ++i) {
+          packed[packedRow + i] |= (collapsed[idx + i] >>> remainingBitsPerValue) & fillMask;
+        }
+        packedRow += rowLength;
+      }
+    }
+    assert packedRow == numPacked : packedRow;
+  }
+
+  /** Reverse of {@link #pack}. */
+  static void unpack(int[] packed, int[] collapsed, int laneBits, int bitsPerValue) {
+    final int[] masks = masks(laneBits);
+    final int numCollapsed = laneBits << 2;
+    final int numPacked = bitsPerValue << 2;
+    final int mask = masks[bitsPerValue];
+
+    int idx = 0;
+    int shift = laneBits - bitsPerValue;
+    for (; shift >= 0; shift -= bitsPerValue) {
+      for (int i = 0; i < numPacked; ++i) {
+        collapsed[idx + i] = (packed[i] >>> shift) & mask;
+      }
+      idx += numPacked;
+    }
+
+    if (idx == numCollapsed) {
+      return;
+    }
+    final int remainingBitsPerInt = shift + bitsPerValue;
+    final int maskRemainingBitsPerInt = masks[remainingBitsPerInt];
+    final int rowLength = gcd(remainingBitsPerInt, bitsPerValue) << 2;
+    int packedRow = 0;
+    int remainingBits = remainingBitsPerInt;
+    for (; idx < numCollapsed; idx += rowLength) {
+      int b = bitsPerValue - remainingBits;
+      final int firstMask = masks[remainingBits];
+      for (int i = 0; i < rowLength; ++i) {
+        collapsed[idx + i] = (packed[packedRow + i] & firstMask) << b;
+      }
+      packedRow += rowLength;
+      while (b >= remainingBitsPerInt) {
+        b -= remainingBitsPerInt;
+        for (int i = 0; i < rowLength; ++i) {
+          collapsed[idx + i] |= (packed[packedRow + i] & maskRemainingBitsPerInt) << b;
+        }
+        packedRow += rowLength;
+      }
+      if (b > 0) {
+        final int lastShift = remainingBitsPerInt - b;
+        final int lastMask = masks[b];
+        for (int i = 0; i < rowLength; ++i) {
+          collapsed[idx + i] |= (packed[packedRow + i] >>> lastShift) & lastMask;
+        }
+        remainingBits = lastShift;
+      } else {
+        remainingBits = remainingBitsPerInt;
+      }
+    }
+  }
+
+  private static boolean isAllEqual(final int[] data) {
+    final int v = data[0];
+    for (int i = 1; i < BLOCK_SIZE; ++i) {
+      if (data[i] != v) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compute the number of bits required to serialize any of the ints in
+   * <code>data</code>.
+   */
+  private static int bitsRequired(final int[] data) {
+    long or = 0;
+    for (int i = 0; i < BLOCK_SIZE; ++i) {
+      assert data[i] >= 0;
+      or |= data[i];
+    }
+    return PackedInts.bitsRequired(or);
+  }
+}
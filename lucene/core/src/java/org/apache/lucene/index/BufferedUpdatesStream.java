@@ -24,6 +24,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -36,9 +40,10 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.DocIdSetBuilder;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
-import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /* Tracks the stream of {@link BufferedDeletes}.
  * When DocumentsWriterPerThread flushes, its buffered
@@ -65,15 +70,19 @@ class BufferedUpdatesStream implements Accountable {
   // will be correct:
   private long nextGen = 1;
 
-  // used only by assert
-  private BytesRef lastDeleteTerm;
-
   private final InfoStream infoStream;
+  private final Executor executor;
   private final AtomicLong bytesUsed = new AtomicLong();
   private final AtomicInteger numTerms = new AtomicInteger();
 
   public BufferedUpdatesStream(InfoStream infoStream) {
+    this(infoStream, null);
+  }
+
+  /** Creates a new instance that resolves deleted terms of different segments concurrently using the given executor, if not null. */
+  public BufferedUpdatesStream(InfoStream infoStream, Executor executor) {
     this.infoStream = infoStream;
+    this.executor = executor;
   }
 
   // Appends a new packet of buffered deletes to the stream,
@@ -373,9 +382,6 @@ class BufferedUpdatesStream implements Accountable {
     final SegmentReader reader;
     final int startDelCount;
 
-    TermsEnum termsEnum;
-    PostingsEnum postingsEnum;
-    BytesRef term;
     boolean any;
 
     public SegmentState(IndexWriter.ReaderPool pool, SegmentCommitInfo info) throws IOException {
@@ -394,18 +400,6 @@ class BufferedUpdatesStream implements Accountable {
     }
   }
 
-  /** Does a merge sort by current term across all segments. */
-  static class SegmentQueue extends PriorityQueue<SegmentState> {
-    public SegmentQueue(int size) {
-      super(size);
-    }
-
-    @Override
-    protected boolean lessThan(SegmentState a, SegmentState b) {
-      return a.term.compareTo(b.term) < 0;
-    }
-  }
-
   /** Opens SegmentReader and inits SegmentState for each segment. */
   private SegmentState[] openSegmentStates(IndexWriter.ReaderPool pool, List<SegmentCommitInfo> infos) throws IOException {
     int numReaders = infos.size();
@@ -474,134 +468,256 @@ class BufferedUpdatesStream implements Accountable {
     return new ApplyDeletesResult(totDelCount > 0, gen, allDeleted);      
   }
 
-  /** Merge sorts the deleted terms and all segments to resolve terms to docIDs for deletion. */
+  /**
+   * Resolves the deleted terms to docIDs in every segment, and deletes them. Each segment intersects
+   * the sorted deleted terms with its terms dictionary in a single forward pass, in parallel across
+   * segments if an executor was configured with {@link IndexWriterConfig#setApplyDeletesExecutor}.
+   * Documents are then deleted by the calling thread, which holds the {@link IndexWriter} lock.
+   */
   private synchronized long applyTermDeletes(CoalescedUpdates updates, SegmentState[] segStates) throws IOException {
 
     long startNS = System.nanoTime();
 
-    int numReaders = segStates.length;
-
-    long delTermVisitedCount = 0;
-    long segTermVisitedCount = 0;
-
-    FieldTermIterator iter = updates.termIterator();
-
-    String field = null;
-    SegmentQueue queue = null;
-
-    BytesRef term;
-
-    while ((term = iter.next()) != null) {
-
-      if (iter.field() != field) {
-        // field changed
-        field = iter.field();
+    final List<SegmentTermDeletes> segDeletes = new ArrayList<>(segStates.length);
+    for (SegmentState state : segStates) {
+      segDeletes.add(new SegmentTermDeletes(state, updates));
+    }
+    resolveTermDeletes(segDeletes);
 
-        queue = new SegmentQueue(numReaders);
+    long resolveNS = System.nanoTime() - startNS;
 
-        long segTermCount = 0;
-        for(int i=0;i<numReaders;i++) {
-          SegmentState state = segStates[i];
-          Terms terms = state.reader.fields().terms(field);
-          if (terms != null) {
-            segTermCount += terms.size();
-            state.termsEnum = terms.iterator();
-            state.term = state.termsEnum.next();
-            if (state.term != null) {
-              queue.add(state);
-            }
+    long segTermVisitedCount = 0;
+    long segTermLookupCount = 0;
+    for (SegmentTermDeletes deletes : segDeletes) {
+      final SegmentState state = deletes.state;
+      int delCount = 0;
+      if (deletes.docs != null) {
+        final DocIdSetIterator it = deletes.docs.build().iterator();
+        for (int docID = it.nextDoc(); docID != DocIdSetIterator.NO_MORE_DOCS; docID = it.nextDoc()) {
+          if (!state.any) {
+            state.rld.initWritableLiveDocs();
+            state.any = true;
+          }
+          // NOTE: there is no limit check on the docID
+          // when deleting by Term (unlike by Query)
+          // because on flush we apply all Term deletes to
+          // each segment.  So all Term deleting here is
+          // against prior segments:
+          if (state.rld.delete(docID)) {
+            delCount++;
           }
         }
-
-        assert checkDeleteTerm(null);
       }
+      segTermVisitedCount += deletes.segTermVisitedCount;
+      segTermLookupCount += deletes.segTermLookupCount;
 
-      assert checkDeleteTerm(term);
-
-      delTermVisitedCount++;
+      if (infoStream.isEnabled("BD")) {
+        infoStream.message("BD",
+                           String.format(Locale.ROOT, "applyTermDeletes: seg=%s resolving took %.1f msec; %d seg terms visited; %d seg terms looked up; %d newly deleted docs",
+                                         state.rld.info.info.name, deletes.nanos/1000000., deletes.segTermVisitedCount, deletes.segTermLookupCount, delCount));
+      }
+    }
 
-      long delGen = iter.delGen();
+    if (infoStream.isEnabled("BD")) {
+      infoStream.message("BD",
+                         String.format(Locale.ROOT, "applyTermDeletes took %.1f msec (%.1f msec resolving terms) for %d segments and %d packets; %d del terms; %d seg terms visited; %d seg terms looked up",
+                                       (System.nanoTime()-startNS)/1000000.,
+                                       resolveNS/1000000.,
+                                       segStates.length,
+                                       updates.terms.size(),
+                                       updates.totalTermCount, segTermVisitedCount, segTermLookupCount));
+    }
 
-      while (queue.size() != 0) {
+    return updates.totalTermCount;
+  }
 
-        // Get next term merged across all segments
-        SegmentState state = queue.top();
-        segTermVisitedCount++;
+  /** Resolves the deleted terms of every segment, using the executor if there is one. */
+  private void resolveTermDeletes(List<SegmentTermDeletes> segDeletes) throws IOException {
+    if (executor == null || segDeletes.size() == 1) {
+      for (SegmentTermDeletes deletes : segDeletes) {
+        deletes.resolve();
+      }
+      return;
+    }
 
-        int cmp = term.compareTo(state.term);
+    final List<FutureTask<Void>> tasks = new ArrayList<>();
+    for (SegmentTermDeletes deletes : segDeletes) {
+      tasks.add(new FutureTask<>(() -> {
+        deletes.resolve();
+        return null;
+      }));
+    }
+    for (int i = 1; i < tasks.size(); ++i) {
+      try {
+        executor.execute(tasks.get(i));
+      } catch (RejectedExecutionException e) {
+        tasks.get(i).run();
+      }
+    }
+    // the current thread would be waiting anyway, so it runs all tasks that did not start yet: this also prevents
+    // deadlocks when deletes are applied from a thread of the executor
+    for (FutureTask<Void> task : tasks) {
+      task.run();
+    }
 
-        if (cmp < 0) {
+    Throwable th = null;
+    boolean interrupted = false;
+    for (FutureTask<Void> task : tasks) {
+      while (true) {
+        try {
+          task.get();
           break;
-        } else if (cmp == 0) {
-          // fall through
-        } else {
-          TermsEnum.SeekStatus status = state.termsEnum.seekCeil(term);
-          if (status == TermsEnum.SeekStatus.FOUND) {
-            // fallthrough
+        } catch (ExecutionException e) {
+          if (th == null) {
+            th = e.getCause();
           } else {
-            if (status == TermsEnum.SeekStatus.NOT_FOUND) {
-              state.term = state.termsEnum.term();
-              queue.updateTop();
-            } else {
-              // No more terms in this segment
-              queue.pop();
-            }
-
-            continue;
+            th.addSuppressed(e.getCause());
           }
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
         }
+      }
+    }
+    IOUtils.reThrow(th);
+    if (interrupted) {
+      throw new ThreadInterruptedException(new InterruptedException());
+    }
+  }
 
-        assert state.delGen != delGen;
+  /**
+   * Resolves the deleted terms of a single segment to docIDs. This only reads the segment, so that
+   * segments can be resolved concurrently without holding the {@link IndexWriter} lock.
+   */
+  private static final class SegmentTermDeletes {
+    final SegmentState state;
+    final CoalescedUpdates updates;
+    final Bits liveDocs;
+
+    DocIdSetBuilder docs;
+    long segTermVisitedCount;
+    long segTermLookupCount;
+    long nanos;
+
+    SegmentTermDeletes(SegmentState state, CoalescedUpdates updates) {
+      this.state = state;
+      this.updates = updates;
+      // read while holding the IndexWriter lock, live docs don't change until deletes are resolved
+      this.liveDocs = state.rld.getLiveDocs();
+    }
 
-        if (state.delGen < delGen) {
+    /**
+     * Intersects the sorted deleted terms with the segment's terms in a single forward pass. Fields
+     * that look like a primary key, i.e. where every term matches a single document, are not
+     * iterated: each deleted term is looked up with {@link TermsEnum#seekExact}, in order, which lets
+     * postings formats that can rule out absent terms cheaply (such as bloom filtered ones) skip the
+     * terms dictionary entirely.
+     */
+    void resolve() throws IOException {
+      final long startNS = System.nanoTime();
+      final Fields fields = state.reader.fields();
+      final FieldTermIterator iter = updates.termIterator();
+
+      String field = null;
+      TermsEnum termsEnum = null;
+      PostingsEnum postingsEnum = null;
+      boolean lookup = false;
+      BytesRef segTerm = null;
+      BytesRef minTerm = null;
+      BytesRef maxTerm = null;
+      BytesRef lastTerm = null;
+
+      BytesRef term;
+      while ((term = iter.next()) != null) {
+        if (iter.field() != field) {
+          // field changed
+          field = iter.field();
+          lastTerm = null;
+          termsEnum = null;
+          Terms terms = fields.terms(field);
+          if (terms != null) {
+            termsEnum = terms.iterator();
+            lookup = isPrimaryKey(terms);
+            if (lookup) {
+              minTerm = terms.getMin();
+              maxTerm = terms.getMax();
+            } else {
+              segTerm = termsEnum.next();
+              if (segTerm == null) {
+                termsEnum = null;
+              }
+            }
+          }
+        }
 
-          // we don't need term frequencies for this
-          final Bits acceptDocs = state.rld.getLiveDocs();
-          state.postingsEnum = state.termsEnum.postings(state.postingsEnum, PostingsEnum.NONE);
+        assert lastTerm == null || term.compareTo(lastTerm) >= 0: "lastTerm=" + lastTerm + " vs term=" + term;
+        assert (lastTerm = BytesRef.deepCopyOf(term)) != null;
 
-          assert state.postingsEnum != null;
+        final long delGen = iter.delGen();
+        assert state.delGen != delGen;
+        if (termsEnum == null || state.delGen > delGen) {
+          // no more terms in this segment, or the delete is older than the segment
+          continue;
+        }
 
-          while (true) {
-            final int docID = state.postingsEnum.nextDoc();
-            if (docID == DocIdSetIterator.NO_MORE_DOCS) {
-              break;
-            }
-            if (acceptDocs != null && acceptDocs.get(docID) == false) {
-              continue;
-            }
-            if (!state.any) {
-              state.rld.initWritableLiveDocs();
-              state.any = true;
+        if (lookup) {
+          if (term.compareTo(minTerm) >= 0 && term.compareTo(maxTerm) <= 0) {
+            segTermLookupCount++;
+            if (termsEnum.seekExact(term)) {
+              postingsEnum = collect(termsEnum, postingsEnum);
             }
+          }
+          continue;
+        }
 
-            // NOTE: there is no limit check on the docID
-            // when deleting by Term (unlike by Query)
-            // because on flush we apply all Term deletes to
-            // each segment.  So all Term deleting here is
-            // against prior segments:
-            state.rld.delete(docID);
+        final int cmp = term.compareTo(segTerm);
+        if (cmp < 0) {
+          continue;
+        } else if (cmp > 0) {
+          segTermVisitedCount++;
+          final TermsEnum.SeekStatus status = termsEnum.seekCeil(term);
+          if (status == TermsEnum.SeekStatus.END) {
+            // No more terms in this segment
+            termsEnum = null;
+            continue;
+          } else if (status == TermsEnum.SeekStatus.NOT_FOUND) {
+            segTerm = termsEnum.term();
+            continue;
           }
         }
 
-        state.term = state.termsEnum.next();
-        if (state.term == null) {
-          queue.pop();
-        } else {
-          queue.updateTop();
+        postingsEnum = collect(termsEnum, postingsEnum);
+        segTerm = termsEnum.next();
+        if (segTerm == null) {
+          termsEnum = null;
         }
       }
+
+      nanos = System.nanoTime() - startNS;
     }
 
-    if (infoStream.isEnabled("BD")) {
-      infoStream.message("BD",
-                         String.format(Locale.ROOT, "applyTermDeletes took %.1f msec for %d segments and %d packets; %d del terms visited; %d seg terms visited",
-                                       (System.nanoTime()-startNS)/1000000.,
-                                       numReaders,
-                                       updates.terms.size(),
-                                       delTermVisitedCount, segTermVisitedCount));
+    /** Collects the live documents matching the term the given {@link TermsEnum} is positioned on. */
+    private PostingsEnum collect(TermsEnum termsEnum, PostingsEnum reuse) throws IOException {
+      // we don't need term frequencies for this
+      final PostingsEnum postingsEnum = termsEnum.postings(reuse, PostingsEnum.NONE);
+      assert postingsEnum != null;
+      if (docs == null) {
+        docs = new DocIdSetBuilder(state.reader.maxDoc());
+      }
+      final DocIdSetBuilder.BulkAdder adder = docs.grow(termsEnum.docFreq());
+      for (int docID = postingsEnum.nextDoc(); docID != DocIdSetIterator.NO_MORE_DOCS; docID = postingsEnum.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(docID)) {
+          adder.add(docID);
+        }
+      }
+      return postingsEnum;
     }
+  }
 
-    return delTermVisitedCount;
+  /** Returns true if every term of the given {@link Terms} matches a single document. */
+  private static boolean isPrimaryKey(Terms terms) throws IOException {
+    final long size = terms.size();
+    return size != -1 && size == terms.getSumDocFreq();
   }
 
   private synchronized void applyDocValuesUpdatesList(List<List<DocValuesUpdate>> updates, 
@@ -732,16 +848,6 @@ class BufferedUpdatesStream implements Accountable {
     return delCount;
   }
 
-  // used only by assert
-  private boolean checkDeleteTerm(BytesRef term) {
-    if (term != null) {
-      assert lastDeleteTerm == null || term.compareTo(lastDeleteTerm) >= 0: "lastTerm=" + lastDeleteTerm + " vs term=" + term;
-    }
-    // TODO: we re-use term now in our merged iterable, but we shouldn't clone, instead copy for this assert
-    lastDeleteTerm = term == null ? null : BytesRef.deepCopyOf(term);
-    return true;
-  }
-
   // only for assert
   private boolean checkDeleteStats() {
     int numTerms2 = 0;
@@ -21,12 +21,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.index.MergePolicy.OneMerge;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.CollectionUtil;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 /** A {@link MergeScheduler} that runs each merge using a
@@ -404,6 +410,27 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
   @Override
   public void close() {
     sync();
+    final ThreadPoolExecutor pool;
+    synchronized (this) {
+      pool = intraMergePool;
+      intraMergePool = null;
+    }
+    if (pool != null) {
+      // all merges are done, so are their tasks: this only stops idle threads
+      pool.shutdown();
+      boolean interrupted = false;
+      while (true) {
+        try {
+          pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 
   /** Wait for any running merge threads to finish. This call is not interruptible as used by {@link #close()}. */
@@ -596,6 +623,57 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     return thread;
   }
 
+  /** Pool of threads that merge parts of the index on behalf of merge threads, created lazily. */
+  private ThreadPoolExecutor intraMergePool;
+
+  /** Number of tasks that currently run on {@link #intraMergePool}. */
+  private int intraMergeThreadCount;
+
+  /** Returns an executor that runs tasks on another thread as long as
+   *  the total number of threads that are merging, including {@link
+   *  MergeThread}s, does not exceed {@code maxThreadCount}, and on the
+   *  calling thread otherwise. */
+  @Override
+  public Executor getIntraMergeExecutor(OneMerge merge) {
+    return this::executeIntraMerge;
+  }
+
+  private void executeIntraMerge(Runnable task) {
+    final ThreadPoolExecutor pool;
+    synchronized (this) {
+      if (mergeThreads.size() + intraMergeThreadCount >= maxThreadCount) {
+        pool = null;
+      } else {
+        if (intraMergePool == null) {
+          intraMergePool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.SECONDS, new SynchronousQueue<>(),
+              new NamedThreadFactory("Lucene Merge Worker"));
+        }
+        pool = intraMergePool;
+        intraMergeThreadCount++;
+      }
+    }
+    if (pool == null) {
+      task.run();
+    } else {
+      try {
+        pool.execute(() -> {
+          try {
+            task.run();
+          } finally {
+            synchronized (ConcurrentMergeScheduler.this) {
+              intraMergeThreadCount--;
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        synchronized (this) {
+          intraMergeThreadCount--;
+        }
+        task.run();
+      }
+    }
+  }
+
   /** Runs a merge thread to execute a single merge, then exits. */
   protected class MergeThread extends Thread implements Comparable<MergeThread> {
 
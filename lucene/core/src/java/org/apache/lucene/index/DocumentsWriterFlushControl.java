@@ -64,6 +64,8 @@ final class DocumentsWriterFlushControl implements Accountable {
   long peakNetBytes = 0;// only with assert
   long peakDelta = 0; // only with assert
   boolean flushByRAMWasDisabled; // only with assert
+  boolean spillWasEnabled; // only with assert
+  long numSpills = 0;
   final DocumentsWriterStallControl stallControl;
   private final DocumentsWriterPerThreadPool perThreadPool;
   private final FlushPolicy flushPolicy;
@@ -95,11 +97,40 @@ final class DocumentsWriterFlushControl implements Accountable {
   public synchronized long netBytes() {
     return flushBytes + activeBytes;
   }
+
+  /**
+   * Returns the number of DWPTs that were flushed because their thread
+   * spilled them on a flush backlog instead of stalling.
+   * @see LiveIndexWriterConfig#setSpillOnFlushBacklog(boolean)
+   */
+  public synchronized long numSpills() {
+    return numSpills;
+  }
   
   private long stallLimitBytes() {
     final double maxRamMB = config.getRAMBufferSizeMB();
     return maxRamMB != IndexWriterConfig.DISABLE_AUTO_FLUSH ? (long)(2 * (maxRamMB * 1024 * 1024)) : Long.MAX_VALUE;
   }
+
+  /**
+   * Returns the flush bytes above which threads stall even if they spill on a
+   * flush backlog: spilling only moves RAM from active to flushing DWPTs, so if
+   * flushes can't keep up at all we still need to block indexing.
+   */
+  private long spillStallLimitBytes() {
+    final long limit = stallLimitBytes();
+    return limit != Long.MAX_VALUE ? 2 * limit : Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns the minimum RAM a DWPT must use before its thread spills it on a
+   * flush backlog, ie. its share of the RAM buffer. This prevents spilling
+   * tiny segments, eg. one per document, while the backlog lasts.
+   */
+  private long minSpillBytes() {
+    final long ramBufferBytes = (long) (config.getRAMBufferSizeMB() * 1024 * 1024);
+    return ramBufferBytes / Math.max(1, perThreadPool.getActiveThreadStateCount());
+  }
   
   private boolean assertMemory() {
     final double maxRamMB = config.getRAMBufferSizeMB();
@@ -116,7 +147,9 @@ final class DocumentsWriterFlushControl implements Accountable {
       // (numPending + numFlushingDWPT() + numBlockedFlushes()) * peakDelta) -> those are the total number of DWPT that are not active but not yet fully flushed
       // all of them could theoretically be taken out of the loop once they crossed the RAM buffer and the last document was the peak delta
       // (numDocsSinceStalled * peakDelta) -> at any given time there could be n threads in flight that crossed the stall control before we reached the limit and each of them could hold a peak document
-      final long expected = (2 * ramBufferBytes) + ((numPending + numFlushingDWPT() + numBlockedFlushes()) * peakDelta) + (numDocsSinceStalled * peakDelta);
+      // if threads ever spilled, flushing DWPTs may use up to 4xRAM Buffer before we stall, on top of up to 2xRAM Buffer of active DWPTs
+      final long stallBytes = spillWasEnabled ? 6 * ramBufferBytes : 2 * ramBufferBytes;
+      final long expected = stallBytes + ((numPending + numFlushingDWPT() + numBlockedFlushes()) * peakDelta) + (numDocsSinceStalled * peakDelta);
       // the expected ram consumption is an upper bound at this point and not really the expected consumption
       if (peakDelta < (ramBufferBytes >> 1)) {
         /*
@@ -181,6 +214,20 @@ final class DocumentsWriterFlushControl implements Accountable {
           // is super important since we can not address more than 2048 MB per DWPT
           setFlushPending(perThread);
         }
+        if (!perThread.flushPending && !fullFlush && config.getSpillOnFlushBacklog()
+            && isFlushBacklogged() && perThread.bytesUsed >= minSpillBytes()) {
+          // Instead of stalling until ongoing flushes free enough memory, this
+          // thread flushes its own DWPT and continues with an empty one
+          spillWasEnabled = true;
+          if (infoStream.isEnabled("DWFC")) {
+            infoStream.message("DWFC", String.format(Locale.ROOT, "spill DWPT: bytesUsed: %.1f MB netBytes: %.1f MB flushBytes: %.1f MB",
+                                                     perThread.bytesUsed/1024./1024., netBytes()/1024./1024., flushBytes()/1024./1024.));
+          }
+          setFlushPending(perThread);
+          if (perThread.flushPending) {
+            numSpills++;
+          }
+        }
       }
       final DocumentsWriterPerThread flushingDWPT;
       if (fullFlush) {
@@ -234,20 +281,31 @@ final class DocumentsWriterFlushControl implements Accountable {
 
   private long stallStartNS;
 
-  private boolean updateStallState() {
-    
+  /**
+   * Returns <code>true</code> if net bytes grew over the stall limit due to
+   * slow flushes.
+   */
+  private boolean isFlushBacklogged() {
     assert Thread.holdsLock(this);
     final long limit = stallLimitBytes();
     /*
-     * we block indexing threads if net byte grows due to slow flushes
-     * yet, for small ram buffers and large documents we can easily
+     * for small ram buffers and large documents we can easily
      * reach the limit without any ongoing flushes. we need to ensure
      * that we don't stall/block if an ongoing or pending flush can
      * not free up enough memory to release the stall lock.
      */
-    final boolean stall = (activeBytes + flushBytes) > limit &&
+    return (activeBytes + flushBytes) > limit &&
       activeBytes < limit &&
       !closed;
+  }
+
+  private boolean updateStallState() {
+    
+    assert Thread.holdsLock(this);
+    // we block indexing threads if net byte grows due to slow flushes,
+    // unless they spill their own DWPT instead and flushing still has a chance to catch up
+    final boolean stall = isFlushBacklogged()
+        && (config.getSpillOnFlushBacklog() == false || flushBytes > spillStallLimitBytes());
 
     if (infoStream.isEnabled("DWFC")) {
       if (stall != stallControl.anyStalledThreads()) {
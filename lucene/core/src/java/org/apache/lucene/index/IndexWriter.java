@@ -33,6 +33,9 @@ import java.util.Map.Entry;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -317,6 +320,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
 
   final AtomicInteger flushCount = new AtomicInteger();
   final AtomicInteger flushDeletesCount = new AtomicInteger();
+  private final AtomicBoolean applyDeletesInBackgroundPending = new AtomicBoolean();
 
   final ReaderPool readerPool = new ReaderPool();
   final BufferedUpdatesStream bufferedUpdatesStream;
@@ -790,6 +794,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       throw new IllegalArgumentException("Directory " + d + " still has pending deleted files; cannot initialize IndexWriter");
     }
 
+    if (conf.getApplyDeletesInBackground() && conf.getApplyDeletesExecutor() == null) {
+      throw new IllegalArgumentException("applyDeletesInBackground requires an applyDeletesExecutor");
+    }
+
     conf.setIndexWriter(this); // prevent reuse by other instances
     config = conf;
     infoStream = config.getInfoStream();
@@ -812,7 +820,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       mergeScheduler.setInfoStream(infoStream);
       codec = config.getCodec();
 
-      bufferedUpdatesStream = new BufferedUpdatesStream(infoStream);
+      bufferedUpdatesStream = new BufferedUpdatesStream(infoStream, config.getApplyDeletesExecutor());
       poolReaders = config.getReaderPooling();
 
       OpenMode mode = config.getOpenMode();
@@ -2481,6 +2489,52 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     synchronized (bufferedUpdatesStream) {
       bufferedUpdatesStream.push(packet);
     }
+    maybeApplyDeletesInBackground();
+  }
+
+  /**
+   * Schedules the application of buffered deletes and updates on the apply
+   * deletes executor, if deletes should be applied in the background and
+   * this is not scheduled already.
+   *
+   * @see IndexWriterConfig#setApplyDeletesInBackground(boolean)
+   */
+  private void maybeApplyDeletesInBackground() {
+    if (config.getApplyDeletesInBackground() && applyDeletesInBackgroundPending.compareAndSet(false, true)) {
+      try {
+        config.getApplyDeletesExecutor().execute(this::applyDeletesInBackground);
+      } catch (RejectedExecutionException e) {
+        // the next NRT reopen, commit or merge will apply them
+        applyDeletesInBackgroundPending.set(false);
+      }
+    }
+  }
+
+  private void applyDeletesInBackground() {
+    // packets that get pushed from now on need another run
+    applyDeletesInBackgroundPending.set(false);
+    try {
+      final boolean anyDeletes;
+      synchronized (this) {
+        if (closed || closing || tragedy != null || bufferedUpdatesStream.any() == false) {
+          return;
+        }
+        final long startNS = System.nanoTime();
+        anyDeletes = applyAllDeletesAndUpdates();
+        if (infoStream.isEnabled("IW")) {
+          infoStream.message("IW", String.format(Locale.ROOT, "applied deletes in background in %.1f msec", (System.nanoTime()-startNS)/1000000.));
+        }
+      }
+      if (anyDeletes) {
+        maybeMerge(config.getMergePolicy(), MergeTrigger.SEGMENT_FLUSH, UNBOUNDED_MAX_MERGE_SEGMENTS);
+      }
+    } catch (IOException | RuntimeException e) {
+      // the deletes that could not be applied remain buffered: the next NRT reopen, commit or merge will apply
+      // them again and report the exception
+      if (infoStream.isEnabled("IW")) {
+        infoStream.message("IW", "hit exception applying deletes in background: " + e);
+      }
+    }
   }
   
   /**
@@ -2518,6 +2572,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
           segmentInfos.add(newSegment);
           checkpoint();
         }
+        if ((globalPacket != null && globalPacket.any()) || (packet != null && packet.any())) {
+          maybeApplyDeletesInBackground();
+        }
       }
     } finally {
       flushCount.incrementAndGet();
@@ -4284,7 +4341,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       final SegmentMerger merger = new SegmentMerger(mergeReaders,
                                                      merge.info.info, infoStream, dirWrapper,
                                                      globalFieldNumberMap, 
-                                                     context);
+                                                     context, getIntraMergeExecutor(merge));
 
       merge.rateLimiter.checkAbort();
 
@@ -5010,6 +5067,24 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     throw new IllegalArgumentException("number of documents in the index cannot exceed " + actualMaxDocs + " (current document count is " + pendingNumDocs.get() + "; added numDocs is " + addedNumDocs + ")");
   }
 
+  /** Returns the executor to merge the parts of the index of this merge
+   *  concurrently, or null.  Tasks run with the {@link MergeRateLimiter}
+   *  of the merge, so that their outputs are rate limited and aborted
+   *  together with the merge. */
+  private Executor getIntraMergeExecutor(MergePolicy.OneMerge merge) {
+    final Executor executor = mergeScheduler.getIntraMergeExecutor(merge);
+    if (executor == null) {
+      return null;
+    }
+    return task -> executor.execute(() -> {
+      // no need to restore the previous rate limiter: either this runs on
+      // the merge thread, which already uses this one, or on a pool thread
+      // that will set its own before running its next task
+      rateLimiters.set(merge.rateLimiter);
+      task.run();
+    });
+  }
+
   /** Wraps the incoming {@link Directory} so that we assign a per-thread
    *  {@link MergeRateLimiter} to all created {@link IndexOutput}s. */
   private Directory addMergeRateLimiters(Directory in) {
@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.PrintStream;
 import java.util.EnumSet;
+import java.util.concurrent.Executor;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
@@ -100,8 +101,14 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
    *  ram buffers use <code>false</code> */
   public final static boolean DEFAULT_USE_COMPOUND_FILE_SYSTEM = true;
   
+  /** Default setting for {@link #setSpillOnFlushBacklog}. */
+  public final static boolean DEFAULT_SPILL_ON_FLUSH_BACKLOG = false;
+
   /** Default value for whether calls to {@link IndexWriter#close()} include a commit. */
   public final static boolean DEFAULT_COMMIT_ON_CLOSE = true;
+
+  /** Default setting for {@link #setApplyDeletesInBackground}. */
+  public final static boolean DEFAULT_APPLY_DELETES_IN_BACKGROUND = false;
   
   // indicates whether this config instance is already attached to a writer.
   // not final so that it can be cloned properly.
@@ -442,6 +449,11 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return (IndexWriterConfig) super.setRAMBufferSizeMB(ramBufferSizeMB);
   }
   
+  @Override
+  public IndexWriterConfig setSpillOnFlushBacklog(boolean spillOnFlushBacklog) {
+    return (IndexWriterConfig) super.setSpillOnFlushBacklog(spillOnFlushBacklog);
+  }
+  
   @Override
   public IndexWriterConfig setUseCompoundFile(boolean useCompoundFile) {
     return (IndexWriterConfig) super.setUseCompoundFile(useCompoundFile);
@@ -477,6 +489,41 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return this;
   }
 
+  /**
+   * Sets the {@link Executor} used to resolve deleted terms of different
+   * segments concurrently when deletes are applied, for instance on NRT
+   * reopen. Only terms are resolved concurrently: documents are still
+   * deleted by the thread that applies deletes, which also resolves some
+   * of the segments. By default, this is null and all segments are resolved
+   * by the thread that applies deletes.
+   *
+   * <p>Only takes effect when IndexWriter is first created.
+   */
+  public IndexWriterConfig setApplyDeletesExecutor(Executor executor) {
+    this.applyDeletesExecutor = executor;
+    return this;
+  }
+
+  /**
+   * Sets whether deletes and doc values updates should be applied to
+   * existing segments in the background, on the executor set with
+   * {@link #setApplyDeletesExecutor(Executor)}, as soon as segments are
+   * flushed. Near-real-time readers, commits and merges still apply all
+   * pending deletes, but most of them will have been applied already, so
+   * that {@link DirectoryReader#openIfChanged(DirectoryReader, IndexWriter)}
+   * latency depends on how much changed since the last flush rather than
+   * since the last reopen. Applying deletes holds the {@link IndexWriter}
+   * lock, like when deletes are applied because they use too much RAM, so
+   * flushes may have to wait for it.
+   *
+   * <p>Only takes effect when IndexWriter is first created, which fails if no
+   * executor was set.
+   */
+  public IndexWriterConfig setApplyDeletesInBackground(boolean applyDeletesInBackground) {
+    this.applyDeletesInBackground = applyDeletesInBackground;
+    return this;
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder(super.toString());
@@ -17,6 +17,8 @@
 package org.apache.lucene.index;
 
 
+import java.util.concurrent.Executor;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.index.DocumentsWriterPerThread.IndexingChain;
@@ -41,6 +43,7 @@ public class LiveIndexWriterConfig {
   private volatile double ramBufferSizeMB;
   private volatile int maxBufferedDeleteTerms;
   private volatile IndexReaderWarmer mergedSegmentWarmer;
+  private volatile boolean spillOnFlushBacklog;
 
   // modified by IndexWriterConfig
   /** {@link IndexDeletionPolicy} controlling when commit
@@ -98,6 +101,12 @@ public class LiveIndexWriterConfig {
   /** The sort order to use to write merged segments. */
   protected Sort indexSort = null;
 
+  /** Executor used to resolve deleted terms of different segments concurrently, or null. */
+  protected Executor applyDeletesExecutor = null;
+
+  /** True if deletes should be applied in the background as segments get flushed. */
+  protected boolean applyDeletesInBackground = IndexWriterConfig.DEFAULT_APPLY_DELETES_IN_BACKGROUND;
+
   // used by IndexWriterConfig
   LiveIndexWriterConfig(Analyzer analyzer) {
     this.analyzer = analyzer;
@@ -105,6 +114,7 @@ public class LiveIndexWriterConfig {
     maxBufferedDocs = IndexWriterConfig.DEFAULT_MAX_BUFFERED_DOCS;
     maxBufferedDeleteTerms = IndexWriterConfig.DEFAULT_MAX_BUFFERED_DELETE_TERMS;
     mergedSegmentWarmer = null;
+    spillOnFlushBacklog = IndexWriterConfig.DEFAULT_SPILL_ON_FLUSH_BACKLOG;
     delPolicy = new KeepOnlyLastCommitDeletionPolicy();
     commit = null;
     useCompoundFile = IndexWriterConfig.DEFAULT_USE_COMPOUND_FILE_SYSTEM;
@@ -231,6 +241,41 @@ public class LiveIndexWriterConfig {
     return ramBufferSizeMB;
   }
   
+  /**
+   * Expert: sets what indexing threads do when flushing falls behind, ie. when
+   * flushing and buffered documents use more than twice the
+   * {@link #setRAMBufferSizeMB RAM buffer}. By default, indexing threads help
+   * flushing pending segments and then block until enough memory is freed by
+   * ongoing flushes. If <code>true</code>, an indexing thread that buffered at
+   * least its share of the RAM buffer instead flushes (spills) the documents
+   * it has buffered to a new segment once its current document is indexed, and
+   * then continues indexing with an empty buffer. Threads still block once
+   * flushing segments use more than four times the RAM buffer.
+   * <p>
+   * This trades stalls for more, smaller flushed segments, which are then
+   * merged by the {@link MergePolicy}, and for up to three times as much RAM
+   * for flushing segments. It only applies when flushing by RAM usage.
+   * <p>
+   * The default value is {@link IndexWriterConfig#DEFAULT_SPILL_ON_FLUSH_BACKLOG}.
+   * <p>
+   * Takes effect immediately, but only the next time a document is added or
+   * updated.
+   */
+  public LiveIndexWriterConfig setSpillOnFlushBacklog(boolean spillOnFlushBacklog) {
+    this.spillOnFlushBacklog = spillOnFlushBacklog;
+    return this;
+  }
+
+  /**
+   * Returns <code>true</code> if indexing threads flush their own buffered
+   * documents instead of blocking when flushing falls behind.
+   *
+   * @see #setSpillOnFlushBacklog(boolean)
+   */
+  public boolean getSpillOnFlushBacklog() {
+    return spillOnFlushBacklog;
+  }
+
   /**
    * Determines the minimal number of documents required before the buffered
    * in-memory documents are flushed as a new Segment. Large values generally
@@ -457,6 +502,27 @@ public class LiveIndexWriterConfig {
     return indexSort;
   }
 
+  /**
+   * Returns the {@link Executor} used to resolve deleted terms of
+   * different segments concurrently, or null if they are resolved by the
+   * thread that applies deletes.
+   *
+   * @see IndexWriterConfig#setApplyDeletesExecutor(Executor)
+   */
+  public Executor getApplyDeletesExecutor() {
+    return applyDeletesExecutor;
+  }
+
+  /**
+   * Returns <code>true</code> if deletes are applied in the background as
+   * segments get flushed.
+   *
+   * @see IndexWriterConfig#setApplyDeletesInBackground(boolean)
+   */
+  public boolean getApplyDeletesInBackground() {
+    return applyDeletesInBackground;
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
@@ -464,6 +530,7 @@ public class LiveIndexWriterConfig {
     sb.append("ramBufferSizeMB=").append(getRAMBufferSizeMB()).append("\n");
     sb.append("maxBufferedDocs=").append(getMaxBufferedDocs()).append("\n");
     sb.append("maxBufferedDeleteTerms=").append(getMaxBufferedDeleteTerms()).append("\n");
+    sb.append("spillOnFlushBacklog=").append(getSpillOnFlushBacklog()).append("\n");
     sb.append("mergedSegmentWarmer=").append(getMergedSegmentWarmer()).append("\n");
     sb.append("delPolicy=").append(getIndexDeletionPolicy().getClass().getName()).append("\n");
     IndexCommit commit = getIndexCommit();
@@ -480,6 +547,8 @@ public class LiveIndexWriterConfig {
     sb.append("useCompoundFile=").append(getUseCompoundFile()).append("\n");
     sb.append("commitOnClose=").append(getCommitOnClose()).append("\n");
     sb.append("indexSort=").append(getIndexSort()).append("\n");
+    sb.append("applyDeletesExecutor=").append(getApplyDeletesExecutor()).append("\n");
+    sb.append("applyDeletesInBackground=").append(getApplyDeletesInBackground()).append("\n");
     return sb.toString();
   }
 }
@@ -81,7 +81,10 @@ public class MergeRateLimiter extends RateLimiter {
   @Override
   public long pause(long bytes) throws MergePolicy.MergeAbortedException {
 
-    totalBytesWritten += bytes;
+    // a merge may write several files concurrently, see MergeScheduler.getIntraMergeExecutor
+    synchronized (this) {
+      totalBytesWritten += bytes;
+    }
 
     long startNS = System.nanoTime();
     long curNS = startNS;
@@ -95,7 +98,9 @@ public class MergeRateLimiter extends RateLimiter {
       if (result == PauseResult.NO) {
         // Set to curNS, not targetNS, to enforce the instant rate, not
         // the "averaaged over all history" rate:
-        lastNS = curNS;
+        synchronized (this) {
+          lastNS = curNS;
+        }
         break;
       }
       curNS = System.nanoTime();
@@ -103,11 +108,13 @@ public class MergeRateLimiter extends RateLimiter {
       startNS = curNS;
 
       // Separately track when merge was stopped vs rate limited:
-      if (result == PauseResult.STOPPED) {
-        totalStoppedNS += ns;
-      } else {
-        assert result == PauseResult.PAUSED;
-        totalPausedNS += ns;
+      synchronized (this) {
+        if (result == PauseResult.STOPPED) {
+          totalStoppedNS += ns;
+        } else {
+          assert result == PauseResult.PAUSED;
+          totalPausedNS += ns;
+        }
       }
       pausedNS += ns;
     }
@@ -19,7 +19,9 @@ package org.apache.lucene.index;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
+import org.apache.lucene.index.MergePolicy.OneMerge;
 import org.apache.lucene.util.InfoStream;
 
 /** <p>Expert: {@link IndexWriter} uses an instance
@@ -45,6 +47,17 @@ public abstract class MergeScheduler implements Closeable {
    * */
   public abstract void merge(IndexWriter writer, MergeTrigger trigger, boolean newMergesFound) throws IOException;
 
+  /** Returns an executor that {@link IndexWriter} may use to merge the
+   *  different parts of the index (postings, doc values, stored fields,
+   *  ...) of the given merge concurrently, or <code>null</code> to merge
+   *  them one after the other on the thread that runs the merge.  Tasks
+   *  that are executed still write through the rate limiter of the merge
+   *  and stop when the merge is aborted.  The default implementation
+   *  returns <code>null</code>. */
+  public Executor getIntraMergeExecutor(OneMerge merge) {
+    return null;
+  }
+
   /** Close this MergeScheduler. */
   @Override
   public abstract void close() throws IOException;
@@ -84,7 +84,7 @@ public class MergeState {
   /** Indicates if the index needs to be sorted **/
   public boolean needsIndexSort;
 
-  /** Sole constructor. */
+  /** Creates the state to merge the given readers into the given segment. */
   MergeState(List<CodecReader> originalReaders, SegmentInfo segmentInfo, InfoStream infoStream) throws IOException {
 
     this.infoStream = infoStream;
@@ -146,6 +146,26 @@ public class MergeState {
     this.docMaps = buildDocMaps(readers, indexSort);
   }
 
+  /** Creates a copy of <code>other</code> that can be modified, like per-field
+   *  formats do, while other parts of the index are merged concurrently. */
+  MergeState(MergeState other) {
+    this.docMaps = other.docMaps;
+    this.leafDocMaps = other.leafDocMaps;
+    this.segmentInfo = other.segmentInfo;
+    this.mergeFieldInfos = other.mergeFieldInfos;
+    this.storedFieldsReaders = other.storedFieldsReaders.clone();
+    this.termVectorsReaders = other.termVectorsReaders.clone();
+    this.normsProducers = other.normsProducers.clone();
+    this.docValuesProducers = other.docValuesProducers.clone();
+    this.fieldInfos = other.fieldInfos.clone();
+    this.liveDocs = other.liveDocs.clone();
+    this.fieldsProducers = other.fieldsProducers.clone();
+    this.pointsReaders = other.pointsReaders.clone();
+    this.maxDocs = other.maxDocs.clone();
+    this.infoStream = other.infoStream;
+    this.needsIndexSort = other.needsIndexSort;
+  }
+
   // Remap docIDs around deletions
   private DocMap[] buildDeletionDocMaps(List<CodecReader> readers) {
 
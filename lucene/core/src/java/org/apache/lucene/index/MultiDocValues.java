@@ -755,7 +755,194 @@ public class MultiDocValues {
 
       // enums are not sorted, so let's sort to save memory
       final SegmentMap segmentMap = new SegmentMap(weights);
-      return new OrdinalMap(owner, subs, segmentMap, acceptableOverheadRatio);
+      return merge(owner, subs, segmentMap, acceptableOverheadRatio);
+    }
+
+    /**
+     * Create an ordinal map for <code>values</code> by updating <code>previous</code>, an
+     * ordinal map that was built over a subset of <code>values</code>, typically the segments
+     * of a reader that has been reopened since. Only the terms of the segments that
+     * <code>previous</code> does not know about are merged with the global terms of
+     * <code>previous</code>, which is much cheaper than merging the terms of all segments
+     * when most of them did not change.
+     * @param previousSegments for every segment of <code>previous</code>, its index in <code>values</code>
+     * @see #build(Object, SortedDocValues[], float)
+     */
+    public static OrdinalMap build(Object owner, OrdinalMap previous, int[] previousSegments,
+        SortedDocValues[] values, float acceptableOverheadRatio) throws IOException {
+      final TermsEnum[] subs = new TermsEnum[values.length];
+      final long[] valueCounts = new long[values.length];
+      for (int i = 0; i < values.length; ++i) {
+        subs[i] = values[i].termsEnum();
+        valueCounts[i] = values[i].getValueCount();
+      }
+      return update(owner, previous, previousSegments, subs, valueCounts, acceptableOverheadRatio);
+    }
+
+    /**
+     * Create an ordinal map for <code>values</code> by updating <code>previous</code>, an
+     * ordinal map that was built over a subset of <code>values</code>.
+     * @param previousSegments for every segment of <code>previous</code>, its index in <code>values</code>
+     * @see #build(Object, OrdinalMap, int[], SortedDocValues[], float)
+     */
+    public static OrdinalMap build(Object owner, OrdinalMap previous, int[] previousSegments,
+        SortedSetDocValues[] values, float acceptableOverheadRatio) throws IOException {
+      final TermsEnum[] subs = new TermsEnum[values.length];
+      final long[] valueCounts = new long[values.length];
+      for (int i = 0; i < values.length; ++i) {
+        subs[i] = values[i].termsEnum();
+        valueCounts[i] = values[i].getValueCount();
+      }
+      return update(owner, previous, previousSegments, subs, valueCounts, acceptableOverheadRatio);
+    }
+
+    private static OrdinalMap update(Object owner, OrdinalMap previous, int[] previousSegments,
+        TermsEnum[] subs, long[] valueCounts, float acceptableOverheadRatio) throws IOException {
+      final int numPrevious = previous.segmentToGlobalOrds.length;
+      if (previousSegments.length != numPrevious) {
+        throw new IllegalArgumentException("previousSegments must have one entry per segment of the previous ordinal map");
+      }
+      final int[] subToPrevious = new int[subs.length];
+      Arrays.fill(subToPrevious, -1);
+      final TermsEnum[] previousSubs = new TermsEnum[numPrevious];
+      for (int i = 0; i < numPrevious; ++i) {
+        final int sub = previousSegments[i];
+        if (sub < 0 || sub >= subs.length || subToPrevious[sub] != -1) {
+          throw new IllegalArgumentException("invalid or duplicate segment in previousSegments: " + sub);
+        }
+        subToPrevious[sub] = i;
+        previousSubs[i] = subs[sub];
+      }
+
+      // merge the terms of the previous map, in global ord order, with the terms of the new segments
+      final int[] subToDelta = new int[subs.length];
+      final int[] newSubs = new int[subs.length - numPrevious];
+      final TermsEnum[] deltaSubs = new TermsEnum[1 + newSubs.length];
+      final long[] deltaWeights = new long[deltaSubs.length];
+      deltaSubs[0] = new GlobalTermsEnum(previous, previousSubs);
+      deltaWeights[0] = previous.getValueCount();
+      for (int sub = 0, i = 0; sub < subs.length; ++sub) {
+        if (subToPrevious[sub] == -1) {
+          newSubs[i] = sub;
+          subToDelta[sub] = 1 + i;
+          deltaSubs[1 + i] = subs[sub];
+          deltaWeights[1 + i] = valueCounts[sub];
+          ++i;
+        }
+      }
+      final OrdinalMap delta = merge(null, deltaSubs, new SegmentMap(deltaWeights), acceptableOverheadRatio);
+
+      final SegmentMap segmentMap = new SegmentMap(valueCounts);
+      final PackedLongValues.Builder globalOrdDeltas = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+      final PackedLongValues.Builder firstSegments = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+      for (long globalOrd = 0; globalOrd < delta.getValueCount(); ++globalOrd) {
+        final int deltaSegment = delta.getFirstSegmentNumber(globalOrd);
+        final long deltaOrd = delta.getFirstSegmentOrd(globalOrd);
+        final int segment;
+        final long segmentOrd;
+        if (deltaSegment == 0) {
+          segment = previousSegments[previous.getFirstSegmentNumber(deltaOrd)];
+          segmentOrd = previous.getFirstSegmentOrd(deltaOrd);
+        } else {
+          segment = newSubs[deltaSegment - 1];
+          segmentOrd = deltaOrd;
+        }
+        firstSegments.add(segmentMap.oldToNew(segment));
+        globalOrdDeltas.add(globalOrd - segmentOrd);
+      }
+
+      // segments of the previous map: compose the previous mapping with the mapping of previous global ords
+      final LongValues previousToGlobal = delta.getGlobalOrds(0);
+      final PackedLongValues.Builder[] ordDeltas = new PackedLongValues.Builder[subs.length];
+      final long[] ordDeltaBits = new long[subs.length];
+      for (int i = 0; i < subs.length; ++i) {
+        final int sub = segmentMap.newToOld(i);
+        final LongValues previousOrds = subToPrevious[sub] == -1 ? null : previous.getGlobalOrds(subToPrevious[sub]);
+        final LongValues deltaOrds = delta.getGlobalOrds(subToDelta[sub]);
+        ordDeltas[i] = PackedLongValues.monotonicBuilder(acceptableOverheadRatio);
+        for (long ord = 0; ord < valueCounts[sub]; ++ord) {
+          final long globalOrd = previousOrds == null ? deltaOrds.get(ord) : previousToGlobal.get(previousOrds.get(ord));
+          final long ordDelta = globalOrd - ord;
+          ordDeltaBits[i] |= ordDelta;
+          ordDeltas[i].add(ordDelta);
+        }
+      }
+      return new OrdinalMap(owner, segmentMap, globalOrdDeltas, firstSegments, ordDeltas, ordDeltaBits, acceptableOverheadRatio);
+    }
+
+    /**
+     * Enumerates the terms of an ordinal map in global ord order, by reading every term
+     * from the first segment that contains it.
+     */
+    private static class GlobalTermsEnum extends TermsEnum {
+      private final OrdinalMap map;
+      private final TermsEnum[] segments;
+      private final long[] segmentOrds;
+      private long ord = -1;
+      private BytesRef term;
+
+      GlobalTermsEnum(OrdinalMap map, TermsEnum[] segments) {
+        this.map = map;
+        this.segments = segments;
+        this.segmentOrds = new long[segments.length];
+        Arrays.fill(segmentOrds, -1);
+      }
+
+      @Override
+      public BytesRef next() throws IOException {
+        if (ord + 1 >= map.getValueCount()) {
+          ord = map.getValueCount();
+          return term = null;
+        }
+        ++ord;
+        final int segment = map.getFirstSegmentNumber(ord);
+        final long segmentOrd = map.getFirstSegmentOrd(ord);
+        final TermsEnum te = segments[segment];
+        if (segmentOrd == segmentOrds[segment] + 1) {
+          // global ords are mostly dense in each segment, so we can often avoid seeking
+          term = te.next();
+        } else {
+          te.seekExact(segmentOrd);
+          term = te.term();
+        }
+        segmentOrds[segment] = segmentOrd;
+        return term;
+      }
+
+      @Override
+      public BytesRef term() {
+        return term;
+      }
+
+      @Override
+      public long ord() {
+        return ord;
+      }
+
+      @Override
+      public SeekStatus seekCeil(BytesRef text) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void seekExact(long ord) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public int docFreq() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public long totalTermFreq() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public PostingsEnum postings(PostingsEnum reuse, int flags) {
+        throw new UnsupportedOperationException();
+      }
     }
 
     private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OrdinalMap.class);
@@ -773,11 +960,9 @@ public class MultiDocValues {
     // ram usage
     final long ramBytesUsed;
     
-    OrdinalMap(Object owner, TermsEnum subs[], SegmentMap segmentMap, float acceptableOverheadRatio) throws IOException {
+    private static OrdinalMap merge(Object owner, TermsEnum subs[], SegmentMap segmentMap, float acceptableOverheadRatio) throws IOException {
       // create the ordinal mappings by pulling a termsenum over each sub's 
       // unique terms, and walking a multitermsenum over those
-      this.owner = owner;
-      this.segmentMap = segmentMap;
       // even though we accept an overhead ratio, we keep these ones with COMPACT
       // since they are only used to resolve values given a global ord, which is
       // slow anyway
@@ -826,10 +1011,17 @@ public class MultiDocValues {
         globalOrdDeltas.add(globalOrdDelta);
         globalOrd++;
       }
+      return new OrdinalMap(owner, segmentMap, globalOrdDeltas, firstSegments, ordDeltas, ordDeltaBits, acceptableOverheadRatio);
+    }
+
+    private OrdinalMap(Object owner, SegmentMap segmentMap, PackedLongValues.Builder globalOrdDeltas, PackedLongValues.Builder firstSegments,
+        PackedLongValues.Builder[] ordDeltas, long[] ordDeltaBits, float acceptableOverheadRatio) {
+      this.owner = owner;
+      this.segmentMap = segmentMap;
       this.firstSegments = firstSegments.build();
       this.globalOrdDeltas = globalOrdDeltas.build();
       // ordDeltas is typically the bottleneck, so let's see what we can do to make it faster
-      segmentToGlobalOrds = new LongValues[subs.length];
+      segmentToGlobalOrds = new LongValues[ordDeltas.length];
       long ramBytesUsed = BASE_RAM_BYTES_USED + this.globalOrdDeltas.ramBytesUsed()
           + this.firstSegments.ramBytesUsed() + RamUsageEstimator.shallowSizeOf(segmentToGlobalOrds)
           + segmentMap.ramBytesUsed();
@@ -17,6 +17,10 @@
 package org.apache.lucene.index;
 
 
+import java.util.concurrent.Executor;
+
+import org.apache.lucene.index.MergePolicy.OneMerge;
+
 /**
  * A {@link MergeScheduler} which never executes any merges. It is also a
  * singleton and can be accessed through {@link NoMergeScheduler#INSTANCE}. Use
@@ -42,6 +46,11 @@ public final class NoMergeScheduler extends MergeScheduler {
   @Override
   public void merge(IndexWriter writer, MergeTrigger trigger, boolean newMergesFound) {}
 
+  @Override
+  public Executor getIntraMergeExecutor(OneMerge merge) {
+    return null;
+  }
+
   @Override
   public MergeScheduler clone() {
     return this;
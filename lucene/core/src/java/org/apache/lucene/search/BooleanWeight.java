@@ -174,6 +174,27 @@ final class BooleanWeight extends Weight {
     return new BooleanScorer(this, optional, Math.max(1, query.getMinimumNumberShouldMatch()), needsScores);
   }
 
+  // Return the scorers of the optional clauses, or null if the
+  // minimum number of optional clauses that should match is not met
+  List<Scorer> optionalScorers(LeafReaderContext context) throws IOException {
+    List<Scorer> optional = new ArrayList<>();
+    Iterator<BooleanClause> cIter = query.iterator();
+    for (Weight w  : weights) {
+      BooleanClause c =  cIter.next();
+      if (c.getOccur() != Occur.SHOULD) {
+        continue;
+      }
+      Scorer subScorer = w.scorer(context);
+      if (subScorer != null) {
+        optional.add(subScorer);
+      }
+    }
+    if (optional.isEmpty() || query.getMinimumNumberShouldMatch() > optional.size()) {
+      return null;
+    }
+    return optional;
+  }
+
   // Return a BulkScorer for the required clauses only,
   // or null if it is not applicable
   private BulkScorer requiredBulkScorer(LeafReaderContext context) throws IOException {
@@ -263,6 +284,11 @@ final class BooleanWeight extends Weight {
     }
 
     if (prohibited.isEmpty()) {
+      if (needsScores && positiveScorer instanceof BooleanScorer
+          && query.getMinimumNumberShouldMatch() <= 1) {
+        // allow to skip non-competitive documents if the collector only needs top hits
+        return new WANDBulkScorer(this, context, positiveScorer);
+      }
       return positiveScorer;
     } else {
       Scorer prohibitedScorer = opt(prohibited, 1);
@@ -498,6 +498,10 @@ public class LRUQueryCache implements QueryCache, Accountable {
    * otherwise.
    */
   protected DocIdSet cacheImpl(BulkScorer scorer, int maxDoc) throws IOException {
+    return defaultCacheImpl(scorer, maxDoc);
+  }
+
+  static DocIdSet defaultCacheImpl(BulkScorer scorer, int maxDoc) throws IOException {
     if (scorer.cost() * 100 >= maxDoc) {
       // FixedBitSet is faster for dense sets and will enable the random-access
       // optimization in ConjunctionDISI
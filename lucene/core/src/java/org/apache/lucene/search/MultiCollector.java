@@ -139,10 +139,14 @@ public class MultiCollector implements Collector {
 
     private final boolean cacheScores;
     private final LeafCollector[] collectors;
+    private final MinCompetitiveScoreScorer[] scorers;
     private int numCollectors;
+    private Scorer scorer;
+    private float minCompetitiveScore;
 
     private MultiLeafCollector(List<LeafCollector> collectors, boolean cacheScores) {
       this.collectors = collectors.toArray(new LeafCollector[collectors.size()]);
+      this.scorers = new MinCompetitiveScoreScorer[this.collectors.length];
       this.cacheScores = cacheScores;
       this.numCollectors = this.collectors.length;
     }
@@ -152,16 +156,41 @@ public class MultiCollector implements Collector {
       if (cacheScores) {
         scorer = new ScoreCachingWrappingScorer(scorer);
       }
+      this.scorer = scorer;
+      this.minCompetitiveScore = Float.NEGATIVE_INFINITY;
+      // every collector gets a scorer of its own, so that a collector that does not need all
+      // hits can not make the scorer skip documents that another collector needs
+      for (int i = 0; i < numCollectors; ++i) {
+        scorers[i] = new MinCompetitiveScoreScorer(scorer);
+      }
       for (int i = 0; i < numCollectors; ++i) {
         final LeafCollector c = collectors[i];
-        c.setScorer(scorer);
+        c.setScorer(scorers[i]);
+      }
+    }
+
+    /** Forwards the minimum competitive score that all the collectors agree on. */
+    private void updateMinCompetitiveScore() {
+      float minScore = Float.POSITIVE_INFINITY;
+      for (int i = 0; i < numCollectors; ++i) {
+        minScore = Math.min(minScore, scorers[i].minCompetitiveScore);
+      }
+      if (minScore > minCompetitiveScore) {
+        minCompetitiveScore = minScore;
+        scorer.setMinCompetitiveScore(minScore);
       }
     }
 
     private void removeCollector(int i) {
       System.arraycopy(collectors, i + 1, collectors, i, numCollectors - i - 1);
+      System.arraycopy(scorers, i + 1, scorers, i, numCollectors - i - 1);
       --numCollectors;
       collectors[numCollectors] = null;
+      scorers[numCollectors] = null;
+      if (scorer != null && numCollectors > 0) {
+        // the collector that is gone does not hold the others back anymore
+        updateMinCompetitiveScore();
+      }
     }
 
     @Override
@@ -183,6 +212,26 @@ public class MultiCollector implements Collector {
       }
     }
 
+    /** Records the minimum competitive score of a single collector. */
+    private final class MinCompetitiveScoreScorer extends FilterScorer {
+
+      float minCompetitiveScore = Float.NEGATIVE_INFINITY;
+
+      MinCompetitiveScoreScorer(Scorer in) {
+        super(in);
+      }
+
+      @Override
+      public void setMinCompetitiveScore(float minScore) {
+        minCompetitiveScore = minScore;
+        updateMinCompetitiveScore();
+      }
+
+      @Override
+      public float maxScore() {
+        return in.maxScore();
+      }
+    }
   }
 
 }
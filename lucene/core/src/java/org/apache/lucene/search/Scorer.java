@@ -122,6 +122,32 @@ public abstract class Scorer {
    */
   public abstract DocIdSetIterator iterator();
 
+  /**
+   * Optional method: Tell the scorer that its iterator may safely ignore all
+   * documents whose score is less than the given {@code minScore}. This is a
+   * no-op by default.
+   *
+   * This method may only be called from collectors that don't need the total
+   * hit count, eg. {@link TopScoreDocCollector} when created with
+   * {@code trackTotalHits=false}.
+   * @lucene.experimental
+   */
+  public void setMinCompetitiveScore(float minScore) {
+    // no-op by default
+  }
+
+  /**
+   * Return an upper bound of the score that this scorer may produce for any
+   * document, or {@link Float#POSITIVE_INFINITY} if no bound is known. This
+   * is used by disjunctions to skip documents that cannot be competitive
+   * once a minimum competitive score has been set.
+   * @see #setMinCompetitiveScore(float)
+   * @lucene.experimental
+   */
+  public float maxScore() {
+    return Float.POSITIVE_INFINITY;
+  }
+
   /**
    * Optional method: Return a {@link TwoPhaseIterator} view of this
    * {@link Scorer}. A return value of {@code null} indicates that
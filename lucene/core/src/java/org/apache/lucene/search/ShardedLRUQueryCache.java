@@ -0,0 +1,718 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Accountables;
+
+import static org.apache.lucene.search.LRUQueryCache.HASHTABLE_RAM_BYTES_PER_ENTRY;
+import static org.apache.lucene.search.LRUQueryCache.LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY;
+import static org.apache.lucene.search.LRUQueryCache.QUERY_DEFAULT_RAM_BYTES_USED;
+
+/**
+ * A {@link QueryCache} that evicts least-recently-used queries in order to
+ * remain under a given maximum size and number of bytes used, like
+ * {@link LRUQueryCache}, but that is designed for high numbers of concurrent
+ * search threads.
+ *
+ * This class is thread-safe.
+ *
+ * Unlike {@link LRUQueryCache}, which guards all operations with a single
+ * lock, this cache:
+ * <ul>
+ *   <li>serves lookups without any locking: cached entries are stored in
+ *       concurrent hash maps and looking up an entry only records its last
+ *       access time,</li>
+ *   <li>splits the cached queries across shards, based on their hash code,
+ *       that each have their own lock so that insertions of different queries
+ *       rarely contend,</li>
+ *   <li>evicts entries outside of the insertion path: evictions are submitted
+ *       to an {@link Executor} by the thread that grows the cache over its
+ *       limits, and at most one eviction runs at a time. Entries may
+ *       temporarily exceed the configured limits until the eviction has run.</li>
+ * </ul>
+ * Eviction orders queries by their last access time, so it is only
+ * approximately LRU when queries are accessed concurrently.
+ *
+ * This cache exposes the same statistics and callbacks as {@link LRUQueryCache}.
+ * However callbacks are not called under a lock: {@link #onHit} and
+ * {@link #onMiss} may be called concurrently by any number of search threads
+ * and other callbacks may be called concurrently with them, so overrides need
+ * to be thread-safe.
+ *
+ * @see LRUQueryCache
+ * @lucene.experimental
+ */
+public class ShardedLRUQueryCache implements QueryCache, Accountable {
+
+  private final int maxSize;
+  private final long maxRamBytesUsed;
+  private final Predicate<LeafReaderContext> leavesToCache;
+  private final Shard[] shards;
+  // core keys of the segments that have cache entries
+  private final Set<Object> segments;
+  private final AtomicInteger numQueries;
+  private final Executor evictionExecutor;
+  private final AtomicBoolean evictionPending;
+
+  private final LongAdder ramBytesUsed;
+  private final LongAdder hitCount;
+  private final LongAdder missCount;
+  private final LongAdder cacheCount;
+  private final LongAdder cacheSize;
+
+  /**
+   * Expert: Create a new instance that will cache at most <code>maxSize</code>
+   * queries with at most <code>maxRamBytesUsed</code> bytes of memory, only on
+   * leaves that satisfy {@code leavesToCache}. Queries are split across
+   * <code>numShards</code> shards, which must be a power of two, and evictions
+   * run on the given {@link Executor}.
+   */
+  public ShardedLRUQueryCache(int maxSize, long maxRamBytesUsed,
+      Predicate<LeafReaderContext> leavesToCache, int numShards, Executor evictionExecutor) {
+    if (numShards <= 0 || Integer.bitCount(numShards) != 1) {
+      throw new IllegalArgumentException("numShards must be a power of two, got " + numShards);
+    }
+    this.maxSize = maxSize;
+    this.maxRamBytesUsed = maxRamBytesUsed;
+    this.leavesToCache = leavesToCache;
+    shards = new Shard[numShards];
+    for (int i = 0; i < numShards; ++i) {
+      shards[i] = new Shard();
+    }
+    segments = ConcurrentHashMap.newKeySet();
+    numQueries = new AtomicInteger();
+    this.evictionExecutor = evictionExecutor;
+    evictionPending = new AtomicBoolean();
+    ramBytesUsed = new LongAdder();
+    hitCount = new LongAdder();
+    missCount = new LongAdder();
+    cacheCount = new LongAdder();
+    cacheSize = new LongAdder();
+  }
+
+  /**
+   * Expert: Create a new instance that will cache at most <code>maxSize</code>
+   * queries with at most <code>maxRamBytesUsed</code> bytes of memory, only on
+   * leaves that satisfy {@code leavesToCache}. Evictions are performed by the
+   * search thread that triggers them, unless another thread is already
+   * evicting entries.
+   */
+  public ShardedLRUQueryCache(int maxSize, long maxRamBytesUsed,
+      Predicate<LeafReaderContext> leavesToCache) {
+    this(maxSize, maxRamBytesUsed, leavesToCache, defaultNumShards(), Runnable::run);
+  }
+
+  /**
+   * Create a new instance that will cache at most <code>maxSize</code> queries
+   * with at most <code>maxRamBytesUsed</code> bytes of memory. Queries will
+   * only be cached on leaves that have more than 10k documents and have more
+   * than 3% of the total number of documents in the index.
+   * @see LRUQueryCache#LRUQueryCache(int, long)
+   */
+  public ShardedLRUQueryCache(int maxSize, long maxRamBytesUsed) {
+    this(maxSize, maxRamBytesUsed, new LRUQueryCache.MinSegmentSizePredicate(10000, .03f));
+  }
+
+  /** The smallest power of two that is greater than or equal to the number of processors, at most 64. */
+  static int defaultNumShards() {
+    final int numProcessors = Math.min(64, Runtime.getRuntime().availableProcessors());
+    return numProcessors <= 1 ? 1 : Integer.highestOneBit(numProcessors - 1) << 1;
+  }
+
+  /**
+   * Expert: callback when there is a cache hit on a given query.
+   * This method may be called concurrently.
+   * @see #onMiss
+   * @lucene.experimental
+   */
+  protected void onHit(Object readerCoreKey, Query query) {
+    hitCount.increment();
+  }
+
+  /**
+   * Expert: callback when there is a cache miss on a given query.
+   * This method may be called concurrently.
+   * @see #onHit
+   * @lucene.experimental
+   */
+  protected void onMiss(Object readerCoreKey, Query query) {
+    assert query != null;
+    missCount.increment();
+  }
+
+  /**
+   * Expert: callback when a query is added to this cache.
+   * @see #onQueryEviction
+   * @lucene.experimental
+   */
+  protected void onQueryCache(Query query, long ramBytesUsed) {
+    this.ramBytesUsed.add(ramBytesUsed);
+  }
+
+  /**
+   * Expert: callback when a query is evicted from this cache.
+   * @see #onQueryCache
+   * @lucene.experimental
+   */
+  protected void onQueryEviction(Query query, long ramBytesUsed) {
+    this.ramBytesUsed.add(-ramBytesUsed);
+  }
+
+  /**
+   * Expert: callback when a {@link DocIdSet} is added to this cache.
+   * @see #onDocIdSetEviction
+   * @lucene.experimental
+   */
+  protected void onDocIdSetCache(Object readerCoreKey, long ramBytesUsed) {
+    cacheSize.increment();
+    cacheCount.increment();
+    this.ramBytesUsed.add(ramBytesUsed);
+  }
+
+  /**
+   * Expert: callback when one or more {@link DocIdSet}s are removed from this
+   * cache.
+   * @see #onDocIdSetCache
+   * @lucene.experimental
+   */
+  protected void onDocIdSetEviction(Object readerCoreKey, int numEntries, long sumRamBytesUsed) {
+    this.ramBytesUsed.add(-sumRamBytesUsed);
+    cacheSize.add(-numEntries);
+  }
+
+  /**
+   * Expert: callback when the cache is completely cleared.
+   * @lucene.experimental
+   */
+  protected void onClear() {
+    ramBytesUsed.reset();
+    cacheSize.reset();
+  }
+
+  private Shard shard(Query query) {
+    final int h = query.hashCode();
+    return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+  }
+
+  private void lockAll() {
+    for (Shard shard : shards) {
+      shard.lock.lock();
+    }
+  }
+
+  private void unlockAll() {
+    for (Shard shard : shards) {
+      shard.lock.unlock();
+    }
+  }
+
+  /** Whether evictions are required. */
+  boolean requiresEviction() {
+    final int size = numQueries.get();
+    if (size == 0) {
+      return false;
+    } else {
+      return size > maxSize || ramBytesUsed() > maxRamBytesUsed;
+    }
+  }
+
+  DocIdSet get(Query key, LeafReaderContext context) {
+    assert key instanceof BoostQuery == false;
+    assert key instanceof ConstantScoreQuery == false;
+    final Object readerKey = context.reader().getCoreCacheKey();
+    final CacheEntry entry = shard(key).entries.get(key);
+    if (entry == null) {
+      onMiss(readerKey, key);
+      return null;
+    }
+    // moves the query to the most-recently-used position
+    entry.lastUsed = System.nanoTime();
+    final DocIdSet cached = entry.sets.get(readerKey);
+    if (cached == null) {
+      onMiss(readerKey, entry.query);
+    } else {
+      onHit(readerKey, entry.query);
+    }
+    return cached;
+  }
+
+  void putIfAbsent(Query query, LeafReaderContext context, DocIdSet set) {
+    assert query instanceof BoostQuery == false;
+    assert query instanceof ConstantScoreQuery == false;
+    final Object key = context.reader().getCoreCacheKey();
+    final Shard shard = shard(query);
+    shard.lock.lock();
+    try {
+      CacheEntry entry = shard.entries.get(query);
+      if (entry == null) {
+        entry = new CacheEntry(shard, query);
+        shard.entries.put(query, entry);
+        numQueries.incrementAndGet();
+        onQueryCache(query, LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + ramBytesUsed(query));
+      }
+      entry.lastUsed = System.nanoTime();
+      if (segments.add(key)) {
+        ramBytesUsed.add(HASHTABLE_RAM_BYTES_PER_ENTRY);
+        // first entry for this segment, need to register a close listener
+        context.reader().addCoreClosedListener(this::clearCoreCacheKey);
+      }
+      if (entry.sets.putIfAbsent(key, set) == null) {
+        // the set was actually put
+        onDocIdSetCache(key, HASHTABLE_RAM_BYTES_PER_ENTRY + set.ramBytesUsed());
+      }
+    } finally {
+      shard.lock.unlock();
+    }
+    if (requiresEviction() && evictionPending.compareAndSet(false, true)) {
+      evictionExecutor.execute(this::runEviction);
+    }
+  }
+
+  private void runEviction() {
+    do {
+      try {
+        evictIfNecessary();
+      } finally {
+        evictionPending.set(false);
+      }
+      // entries might have been added after the last check of the eviction above
+    } while (requiresEviction() && evictionPending.compareAndSet(false, true));
+  }
+
+  void evictIfNecessary() {
+    if (requiresEviction() == false) {
+      return;
+    }
+    // take a stable snapshot of access times so that sorting does not see them change
+    final List<CacheEntry> entries = new ArrayList<>(numQueries.get());
+    for (Shard shard : shards) {
+      for (CacheEntry entry : shard.entries.values()) {
+        entry.evictionOrder = entry.lastUsed;
+        entries.add(entry);
+      }
+    }
+    entries.sort(Comparator.comparingLong(entry -> entry.evictionOrder));
+    for (int i = 0; i < entries.size() && requiresEviction(); ++i) {
+      final CacheEntry entry = entries.get(i);
+      final Shard shard = entry.shard;
+      shard.lock.lock();
+      try {
+        final CacheEntry current = shard.entries.get(entry.query);
+        if (current == entry) {
+          shard.entries.remove(entry.query);
+          onEviction(entry);
+        } else if (current != entry && shard.entries.containsValue(entry)) {
+          // the hash of the query changed since it has been put into the cache
+          throw new ConcurrentModificationException("Removal from the cache failed! This " +
+              "is probably due to a query which has been modified after having been put into " +
+              " the cache or a badly implemented clone(). Query class: [" + entry.query.getClass() +
+              "], query: [" + entry.query + "]");
+        }
+      } finally {
+        shard.lock.unlock();
+      }
+    }
+  }
+
+  private void onEviction(CacheEntry entry) {
+    assert entry.shard.lock.isHeldByCurrentThread();
+    numQueries.decrementAndGet();
+    onQueryEviction(entry.query, LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + ramBytesUsed(entry.query));
+    for (Map.Entry<Object, DocIdSet> set : entry.sets.entrySet()) {
+      onDocIdSetEviction(set.getKey(), 1, HASHTABLE_RAM_BYTES_PER_ENTRY + set.getValue().ramBytesUsed());
+    }
+  }
+
+  /**
+   * Remove all cache entries for the given core cache key.
+   */
+  public void clearCoreCacheKey(Object coreKey) {
+    lockAll();
+    try {
+      if (segments.remove(coreKey)) {
+        ramBytesUsed.add(-HASHTABLE_RAM_BYTES_PER_ENTRY);
+        int numEntries = 0;
+        long sumRamBytesUsed = 0;
+        for (Shard shard : shards) {
+          for (CacheEntry entry : shard.entries.values()) {
+            final DocIdSet removed = entry.sets.remove(coreKey);
+            if (removed != null) {
+              numEntries++;
+              sumRamBytesUsed += HASHTABLE_RAM_BYTES_PER_ENTRY + removed.ramBytesUsed();
+            }
+          }
+        }
+        if (numEntries > 0) {
+          onDocIdSetEviction(coreKey, numEntries, sumRamBytesUsed);
+        }
+      }
+    } finally {
+      unlockAll();
+    }
+  }
+
+  /**
+   * Remove all cache entries for the given query.
+   */
+  public void clearQuery(Query query) {
+    final Shard shard = shard(query);
+    shard.lock.lock();
+    try {
+      final CacheEntry entry = shard.entries.remove(query);
+      if (entry != null) {
+        onEviction(entry);
+      }
+    } finally {
+      shard.lock.unlock();
+    }
+  }
+
+  /**
+   * Clear the content of this cache.
+   */
+  public void clear() {
+    lockAll();
+    try {
+      for (Shard shard : shards) {
+        shard.entries.clear();
+      }
+      segments.clear();
+      numQueries.set(0);
+      onClear();
+    } finally {
+      unlockAll();
+    }
+  }
+
+  // pkg-private for testing
+  void assertConsistent() {
+    lockAll();
+    try {
+      if (evictionPending.get() == false && requiresEviction()) {
+        throw new AssertionError("requires evictions: size=" + numQueries.get()
+            + ", maxSize=" + maxSize + ", ramBytesUsed=" + ramBytesUsed() + ", maxRamBytesUsed=" + maxRamBytesUsed);
+      }
+      int recomputedNumQueries = 0;
+      long recomputedRamBytesUsed = HASHTABLE_RAM_BYTES_PER_ENTRY * segments.size();
+      long recomputedCacheSize = 0;
+      for (Shard shard : shards) {
+        for (CacheEntry entry : shard.entries.values()) {
+          if (entry.shard != shard) {
+            throw new AssertionError("Query is cached in the wrong shard: " + entry.query);
+          }
+          recomputedNumQueries++;
+          recomputedRamBytesUsed += LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + ramBytesUsed(entry.query);
+          for (Map.Entry<Object, DocIdSet> set : entry.sets.entrySet()) {
+            if (segments.contains(set.getKey()) == false) {
+              throw new AssertionError("Query is cached on an unknown segment: " + entry.query);
+            }
+            recomputedCacheSize++;
+            recomputedRamBytesUsed += HASHTABLE_RAM_BYTES_PER_ENTRY + set.getValue().ramBytesUsed();
+          }
+        }
+      }
+      if (recomputedNumQueries != numQueries.get()) {
+        throw new AssertionError("numQueries mismatch : " + numQueries.get() + " != " + recomputedNumQueries);
+      }
+      if (recomputedRamBytesUsed != ramBytesUsed()) {
+        throw new AssertionError("ramBytesUsed mismatch : " + ramBytesUsed() + " != " + recomputedRamBytesUsed);
+      }
+      if (recomputedCacheSize != getCacheSize()) {
+        throw new AssertionError("cacheSize mismatch : " + getCacheSize() + " != " + recomputedCacheSize);
+      }
+    } finally {
+      unlockAll();
+    }
+  }
+
+  // pkg-private for testing
+  // return the list of cached queries in LRU order
+  List<Query> cachedQueries() {
+    lockAll();
+    try {
+      final List<CacheEntry> entries = new ArrayList<>();
+      for (Shard shard : shards) {
+        for (CacheEntry entry : shard.entries.values()) {
+          entry.evictionOrder = entry.lastUsed;
+          entries.add(entry);
+        }
+      }
+      entries.sort(Comparator.comparingLong(entry -> entry.evictionOrder));
+      final List<Query> queries = new ArrayList<>(entries.size());
+      for (CacheEntry entry : entries) {
+        queries.add(entry.query);
+      }
+      return queries;
+    } finally {
+      unlockAll();
+    }
+  }
+
+  @Override
+  public Weight doCache(Weight weight, QueryCachingPolicy policy) {
+    while (weight instanceof CachingWrapperWeight) {
+      weight = ((CachingWrapperWeight) weight).in;
+    }
+
+    return new CachingWrapperWeight(weight, policy);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed.sum();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    lockAll();
+    try {
+      final Map<Object, Long> segmentRamBytesUsed = new HashMap<>();
+      for (Shard shard : shards) {
+        for (CacheEntry entry : shard.entries.values()) {
+          for (Map.Entry<Object, DocIdSet> set : entry.sets.entrySet()) {
+            segmentRamBytesUsed.merge(set.getKey(), HASHTABLE_RAM_BYTES_PER_ENTRY + set.getValue().ramBytesUsed(), Long::sum);
+          }
+        }
+      }
+      final Map<Object, Accountable> segmentResources = new HashMap<>();
+      for (Map.Entry<Object, Long> segment : segmentRamBytesUsed.entrySet()) {
+        segmentResources.put(segment.getKey(), Accountables.namedAccountable("segment", segment.getValue()));
+      }
+      return Accountables.namedAccountables("segment", segmentResources);
+    } finally {
+      unlockAll();
+    }
+  }
+
+  /**
+   * Return the number of bytes used by the given query. The default
+   * implementation returns {@link Accountable#ramBytesUsed()} if the query
+   * implements {@link Accountable} and a constant otherwise.
+   */
+  protected long ramBytesUsed(Query query) {
+    if (query instanceof Accountable) {
+      return ((Accountable) query).ramBytesUsed();
+    }
+    return QUERY_DEFAULT_RAM_BYTES_USED;
+  }
+
+  /**
+   * Default cache implementation: uses {@link org.apache.lucene.util.RoaringDocIdSet}
+   * for sets that have a density &lt; 1% and a {@link org.apache.lucene.util.BitDocIdSet}
+   * otherwise.
+   * @see LRUQueryCache#cacheImpl(BulkScorer, int)
+   */
+  protected DocIdSet cacheImpl(BulkScorer scorer, int maxDoc) throws IOException {
+    return LRUQueryCache.defaultCacheImpl(scorer, maxDoc);
+  }
+
+  /**
+   * Return the total number of times that a {@link Query} has been looked up
+   * in this {@link QueryCache}.
+   * @see LRUQueryCache#getTotalCount()
+   */
+  public final long getTotalCount() {
+    return getHitCount() + getMissCount();
+  }
+
+  /**
+   * Over the {@link #getTotalCount() total} number of times that a query has
+   * been looked up, return how many times a cached {@link DocIdSet} has been
+   * found and returned.
+   */
+  public final long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Over the {@link #getTotalCount() total} number of times that a query has
+   * been looked up, return how many times this query was not contained in the
+   * cache.
+   */
+  public final long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Return the total number of {@link DocIdSet}s which are currently stored
+   * in the cache.
+   */
+  public final long getCacheSize() {
+    return cacheSize.sum();
+  }
+
+  /**
+   * Return the total number of cache entries that have been generated and put
+   * in the cache.
+   */
+  public final long getCacheCount() {
+    return cacheCount.sum();
+  }
+
+  /**
+   * Return the number of cache entries that have been removed from the cache
+   * either in order to stay under the maximum configured size/ram usage, or
+   * because a segment has been closed.
+   */
+  public final long getEvictionCount() {
+    return getCacheCount() - getCacheSize();
+  }
+
+  // a set of queries, structural modifications need to be performed under the lock
+  private static final class Shard {
+    final ReentrantLock lock = new ReentrantLock();
+    final Map<Query, CacheEntry> entries = new ConcurrentHashMap<>();
+  }
+
+  // a cached query and its DocIdSets, keyed by segment core key
+  private static final class CacheEntry {
+    final Shard shard;
+    final Query query;
+    final Map<Object, DocIdSet> sets;
+    volatile long lastUsed;
+    long evictionOrder; // snapshot of lastUsed, only used while holding evictionPending or all locks
+
+    CacheEntry(Shard shard, Query query) {
+      this.shard = shard;
+      this.query = query;
+      sets = new ConcurrentHashMap<>();
+    }
+  }
+
+  private class CachingWrapperWeight extends ConstantScoreWeight {
+
+    private final Weight in;
+    private final QueryCachingPolicy policy;
+    // we use an AtomicBoolean because Weight.scorer may be called from multiple
+    // threads when IndexSearcher is created with threads
+    private final AtomicBoolean used;
+
+    CachingWrapperWeight(Weight in, QueryCachingPolicy policy) {
+      super(in.getQuery(), 1f);
+      this.in = in;
+      this.policy = policy;
+      used = new AtomicBoolean(false);
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+      in.extractTerms(terms);
+    }
+
+    private boolean cacheEntryHasReasonableWorstCaseSize(int maxDoc) {
+      // The worst-case (dense) is a bit set which needs one bit per document
+      final long worstCaseRamUsage = maxDoc / 8;
+      // only cache on an IndexReader if we have available room for
+      // 5 different filters on this reader to avoid excessive trashing
+      return worstCaseRamUsage * 5 < maxRamBytesUsed;
+    }
+
+    private DocIdSet cache(LeafReaderContext context) throws IOException {
+      final BulkScorer scorer = in.bulkScorer(context);
+      if (scorer == null) {
+        return DocIdSet.EMPTY;
+      } else {
+        return cacheImpl(scorer, context.reader().maxDoc());
+      }
+    }
+
+    /** Check whether this segment is eligible for caching, regardless of the query. */
+    private boolean shouldCache(LeafReaderContext context) throws IOException {
+      return cacheEntryHasReasonableWorstCaseSize(ReaderUtil.getTopLevelContext(context).reader().maxDoc())
+          && leavesToCache.test(context);
+    }
+
+    /** Return the cached {@link DocIdSet}, caching it if necessary, or null if it should not be cached. */
+    private DocIdSet getOrCache(LeafReaderContext context) throws IOException {
+      DocIdSet docIdSet = get(in.getQuery(), context);
+      if (docIdSet == null && policy.shouldCache(in.getQuery())) {
+        docIdSet = cache(context);
+        putIfAbsent(in.getQuery(), context, docIdSet);
+      }
+      return docIdSet;
+    }
+
+    @Override
+    public Scorer scorer(LeafReaderContext context) throws IOException {
+      if (used.compareAndSet(false, true)) {
+        policy.onUse(getQuery());
+      }
+      if (shouldCache(context) == false) {
+        return in.scorer(context);
+      }
+
+      final DocIdSet docIdSet = getOrCache(context);
+      if (docIdSet == null) {
+        return in.scorer(context);
+      } else if (docIdSet == DocIdSet.EMPTY) {
+        return null;
+      }
+      final DocIdSetIterator disi = docIdSet.iterator();
+      if (disi == null) {
+        return null;
+      }
+
+      return new ConstantScoreScorer(this, 0f, disi);
+    }
+
+    @Override
+    public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
+      if (used.compareAndSet(false, true)) {
+        policy.onUse(getQuery());
+      }
+      if (shouldCache(context) == false) {
+        return in.bulkScorer(context);
+      }
+
+      final DocIdSet docIdSet = getOrCache(context);
+      if (docIdSet == null) {
+        return in.bulkScorer(context);
+      } else if (docIdSet == DocIdSet.EMPTY) {
+        return null;
+      }
+      final DocIdSetIterator disi = docIdSet.iterator();
+      if (disi == null) {
+        return null;
+      }
+
+      return new DefaultBulkScorer(new ConstantScoreScorer(this, 0f, disi));
+    }
+
+  }
+}
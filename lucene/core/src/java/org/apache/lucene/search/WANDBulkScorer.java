@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.Bits;
+
+/**
+ * A {@link BulkScorer} for pure disjunctions that first delegates to a
+ * {@link BooleanScorer} and switches to a {@link WANDScorer} as soon as the
+ * collector {@link Scorer#setMinCompetitiveScore(float) publishes} a minimum
+ * competitive score, so that documents that cannot make it to the top hits
+ * can be skipped. Collectors that need to count all hits never publish a
+ * minimum score and keep running on the {@link BooleanScorer}.
+ */
+final class WANDBulkScorer extends BulkScorer {
+
+  /** Number of documents to score with the {@link BooleanScorer} between two
+   *  checks of whether a minimum competitive score has been published. */
+  static final int INTERVAL = BooleanScorer.SIZE * 4;
+
+  private final BooleanWeight weight;
+  private final LeafReaderContext context;
+  private final BulkScorer in;
+  private float minCompetitiveScore;
+  // whether we already tried to create the WAND scorer
+  private boolean wandTried;
+  private BulkScorer wandBulkScorer;
+
+  WANDBulkScorer(BooleanWeight weight, LeafReaderContext context, BulkScorer in) {
+    this.weight = weight;
+    this.context = context;
+    this.in = in;
+  }
+
+  @Override
+  public int score(LeafCollector collector, Bits acceptDocs, int min, int max) throws IOException {
+    if (wandBulkScorer != null) {
+      return wandBulkScorer.score(collector, acceptDocs, min, max);
+    }
+
+    final LeafCollector recordingCollector = new FilterLeafCollector(collector) {
+      @Override
+      public void setScorer(Scorer scorer) throws IOException {
+        super.setScorer(new FilterScorer(scorer) {
+          @Override
+          public void setMinCompetitiveScore(float minScore) {
+            minCompetitiveScore = minScore;
+          }
+        });
+      }
+    };
+
+    while (min < max) {
+      final int windowMax = (int) Math.min(max, (long) min + INTERVAL);
+      min = in.score(recordingCollector, acceptDocs, min, windowMax);
+      if (min < max && minCompetitiveScore > 0 && switchToWAND()) {
+        return wandBulkScorer.score(collector, acceptDocs, min, max);
+      }
+    }
+    return min;
+  }
+
+  /** Create the {@link WANDScorer} and return whether it may be used. */
+  private boolean switchToWAND() throws IOException {
+    if (wandTried) {
+      return false;
+    }
+    wandTried = true;
+    final List<Scorer> optional = weight.optionalScorers(context);
+    if (optional == null) {
+      return false;
+    }
+    for (Scorer scorer : optional) {
+      if (Float.isFinite(scorer.maxScore()) == false) {
+        return false;
+      }
+    }
+    final WANDScorer wand = new WANDScorer(weight, optional);
+    wand.setMinCompetitiveScore(minCompetitiveScore);
+    wandBulkScorer = new Weight.DefaultBulkScorer(wand);
+    return true;
+  }
+
+  @Override
+  public long cost() {
+    return in.cost();
+  }
+}
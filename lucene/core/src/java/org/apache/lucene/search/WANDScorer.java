@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link Scorer} for pure disjunctions that implements the WAND
+ * (Weak AND) algorithm from "Efficient query evaluation using a two-level
+ * retrieval process" by Broder et al. Sub scorers are sorted by their current
+ * doc ID and their {@link Scorer#maxScore() maximum scores} are summed up
+ * until the sum exceeds the {@link #setMinCompetitiveScore(float) minimum
+ * competitive score}: documents before the so-called pivot cannot be
+ * competitive and are skipped.
+ * <p>
+ * Until a minimum competitive score is set, this scorer behaves like a
+ * regular disjunction. It requires all sub scorers to have a finite
+ * {@link Scorer#maxScore()}.
+ */
+final class WANDScorer extends Scorer {
+
+  /** Return an upper bound of the sum of {@code numValues} floats whose
+   *  exact sum is {@code sum}, taking into account that summing up floats
+   *  in a different order may produce a slightly greater result. */
+  static double sumUpperBound(double sum, int numValues) {
+    // relative error of a float summation is bounded by (n-1)*ulp(1)/2, we
+    // use n*ulp(1) to also account for rounding in sub scorers' max scores
+    return sum * (1 + numValues * (double) Math.ulp(1f));
+  }
+
+  private final Scorer[] scorers;
+  private final DocIdSetIterator[] iterators;
+  private final float[] maxScores;
+  private final long cost;
+  // indices into the above arrays, sorted by current doc ID
+  private final int[] order;
+  private float minCompetitiveScore;
+  private int doc = -1;
+
+  WANDScorer(Weight weight, List<Scorer> scorers) {
+    super(weight);
+    final int numScorers = scorers.size();
+    this.scorers = scorers.toArray(new Scorer[numScorers]);
+    this.iterators = new DocIdSetIterator[numScorers];
+    this.maxScores = new float[numScorers];
+    this.order = new int[numScorers];
+    long cost = 0;
+    for (int i = 0; i < numScorers; ++i) {
+      final Scorer scorer = this.scorers[i];
+      final float maxScore = scorer.maxScore();
+      if (Float.isFinite(maxScore) == false || maxScore < 0) {
+        throw new IllegalArgumentException("WANDScorer requires finite and positive max scores, got " + maxScore);
+      }
+      iterators[i] = scorer.iterator();
+      maxScores[i] = maxScore;
+      order[i] = i;
+      cost += iterators[i].cost();
+    }
+    this.cost = cost;
+  }
+
+  @Override
+  public void setMinCompetitiveScore(float minScore) {
+    assert minScore >= minCompetitiveScore : "min competitive scores must not decrease";
+    this.minCompetitiveScore = minScore;
+  }
+
+  @Override
+  public float maxScore() {
+    double maxScore = 0;
+    for (float score : maxScores) {
+      maxScore += score;
+    }
+    return (float) sumUpperBound(maxScore, maxScores.length);
+  }
+
+  @Override
+  public int docID() {
+    return doc;
+  }
+
+  @Override
+  public float score() throws IOException {
+    double score = 0;
+    for (int i = 0; i < scorers.length; ++i) {
+      if (iterators[i].docID() == doc) {
+        score += scorers[i].score();
+      }
+    }
+    return (float) score;
+  }
+
+  @Override
+  public int freq() throws IOException {
+    int freq = 0;
+    for (DocIdSetIterator iterator : iterators) {
+      if (iterator.docID() == doc) {
+        freq++;
+      }
+    }
+    return freq;
+  }
+
+  @Override
+  public Collection<ChildScorer> getChildren() {
+    List<ChildScorer> children = new ArrayList<>();
+    for (Scorer scorer : scorers) {
+      children.add(new ChildScorer(scorer, "SHOULD"));
+    }
+    return children;
+  }
+
+  /** Sort {@link #order} by current doc ID. Iterators are only moved one at
+   *  a time between calls so insertion sort runs in linear time in practice. */
+  private void sortByDocID() {
+    for (int i = 1; i < order.length; ++i) {
+      final int idx = order[i];
+      final int idxDoc = iterators[idx].docID();
+      int j = i - 1;
+      while (j >= 0 && iterators[order[j]].docID() > idxDoc) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = idx;
+    }
+  }
+
+  /** Return the next document that is greater than or equal to {@code target}
+   *  and may be competitive. */
+  private int doNext(int target) throws IOException {
+    for (DocIdSetIterator iterator : iterators) {
+      if (iterator.docID() < target) {
+        iterator.advance(target);
+      }
+    }
+
+    while (true) {
+      sortByDocID();
+
+      // find the pivot: the first iterator so that the sum of the max scores
+      // of the iterators up to it (included) may be competitive
+      double maxScoreSum = 0;
+      int pivot = -1;
+      for (int i = 0; i < order.length; ++i) {
+        final int idx = order[i];
+        if (iterators[idx].docID() == DocIdSetIterator.NO_MORE_DOCS) {
+          break;
+        }
+        maxScoreSum += maxScores[idx];
+        if (sumUpperBound(maxScoreSum, i + 1) >= minCompetitiveScore) {
+          pivot = i;
+          break;
+        }
+      }
+
+      if (pivot == -1) {
+        // no document may be competitive anymore
+        return doc = DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      final int pivotDoc = iterators[order[pivot]].docID();
+      if (iterators[order[0]].docID() == pivotDoc) {
+        // all iterators up to the pivot are on the pivot doc
+        return doc = pivotDoc;
+      }
+
+      // advance the iterator before the pivot that has the highest max score,
+      // it is the most likely to make documents non competitive
+      int toAdvance = -1;
+      for (int i = 0; i < pivot; ++i) {
+        final int idx = order[i];
+        if (iterators[idx].docID() < pivotDoc
+            && (toAdvance == -1 || maxScores[idx] > maxScores[toAdvance])) {
+          toAdvance = idx;
+        }
+      }
+      iterators[toAdvance].advance(pivotDoc);
+    }
+  }
+
+  @Override
+  public DocIdSetIterator iterator() {
+    return new DocIdSetIterator() {
+
+      @Override
+      public int docID() {
+        return doc;
+      }
+
+      @Override
+      public int nextDoc() throws IOException {
+        return doNext(doc + 1);
+      }
+
+      @Override
+      public int advance(int target) throws IOException {
+        return doNext(target);
+      }
+
+      @Override
+      public long cost() {
+        return cost;
+      }
+    };
+  }
+}
@@ -252,6 +252,12 @@ public class BM25Similarity extends Similarity {
       }
       return weightValue * freq / (freq + norm);
     }
+
+    @Override
+    public float maxScore(float maxFreq) {
+      // freq / (freq + norm) is always less than 1
+      return Math.max(weightValue, 0f);
+    }
     
     @Override
     public Explanation explain(int doc, Explanation freq) throws IOException {
@@ -163,6 +163,17 @@ public abstract class Similarity {
      */
     public abstract float score(int doc, float freq) throws IOException;
 
+    /**
+     * Return an upper bound of the score that {@link #score(int, float)} may
+     * return for any document whose frequency is less than or equal to
+     * {@code maxFreq}, or {@link Float#POSITIVE_INFINITY} if no bound is
+     * known, which is the default.
+     * @lucene.experimental
+     */
+    public float maxScore(float maxFreq) {
+      return Float.POSITIVE_INFINITY;
+    }
+
     /** Computes the amount of a sloppy phrase match, based on an edit distance. */
     public abstract float computeSlopFactor(int distance);
     
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.compressing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
+
+public class TestDictionaryCompressionMode extends AbstractTestCompressionMode {
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    mode = CompressionMode.DICTIONARY;
+  }
+
+  /** Small documents that have a lot in common, like JSON documents with the same keys. */
+  private static byte[] similarDocs(int numDocs, int[] docEnds) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numDocs; ++i) {
+      sb.append("{\"title\":\"").append(TestUtil.randomSimpleString(random(), 5, 20))
+        .append("\",\"category\":\"books\",\"price\":").append(random().nextInt(1000))
+        .append(",\"description\":\"a short description of the item\"}");
+      docEnds[i] = sb.length();
+    }
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  public void testTrainedDictionary() throws IOException {
+    final int numDocs = TestUtil.nextInt(random(), 100, 500);
+    final int[] docEnds = new int[numDocs];
+    final byte[] docs = similarDocs(numDocs, docEnds);
+
+    DictionaryCompressionMode.DictionaryCompressor compressor = (DictionaryCompressionMode.DictionaryCompressor) mode.newCompressor();
+    compressor.train(docs, docEnds, numDocs);
+    final byte[] dictionary = compressor.getDictionary();
+    assertTrue(dictionary.length > 0);
+    assertTrue(dictionary.length <= ((DictionaryCompressionMode) mode).getMaxDictionaryLength());
+    assertEquals(0, dictionary.length % DictionaryCompressionMode.SEGMENT_LENGTH);
+    // training only happens once per segment
+    compressor.train(new byte[DictionaryCompressionMode.SEGMENT_LENGTH * 2], new int[] {64, 128}, 2);
+    assertSame(dictionary, compressor.getDictionary());
+
+    // a single small document compresses better with the dictionary
+    final int doc = random().nextInt(numDocs);
+    final int start = doc == 0 ? 0 : docEnds[doc - 1];
+    final int length = docEnds[doc] - start;
+    final byte[] withDictionary = compress(compressor, docs, start, length);
+    final byte[] withoutDictionary = compress(docs, start, length);
+    assertTrue(withDictionary.length < withoutDictionary.length);
+
+    DictionaryCompressionMode.DictionaryDecompressor decompressor = (DictionaryCompressionMode.DictionaryDecompressor) mode.newDecompressor();
+    decompressor.dictionary = dictionary;
+    assertArrayEquals(Arrays.copyOfRange(docs, start, start + length), decompress(decompressor, withDictionary, length));
+    // clones share the dictionary
+    assertArrayEquals(Arrays.copyOfRange(docs, start, start + length), decompress(decompressor.clone(), withDictionary, length));
+
+    // partial decompression of multiple blocks
+    final byte[] compressed = compress(compressor, docs, 0, docs.length);
+    final int offset = random().nextInt(docs.length);
+    final int len = random().nextInt(docs.length - offset);
+    final BytesRef bytes = new BytesRef();
+    final ByteArrayDataInput in = new ByteArrayDataInput(compressed);
+    decompressor.decompress(in, docs.length, offset, len, bytes);
+    assertEquals(new BytesRef(docs, offset, len), bytes);
+    // the input is positioned after the compressed data
+    assertTrue(in.eof());
+  }
+
+  public void testNotEnoughDataToTrain() {
+    assertEquals(0, DictionaryCompressionMode.train(new byte[10], new int[] {10}, 1, 1 << 14).length);
+    assertEquals(0, DictionaryCompressionMode.train(new byte[1000], new int[] {500, 1000}, 2, 10).length);
+  }
+}
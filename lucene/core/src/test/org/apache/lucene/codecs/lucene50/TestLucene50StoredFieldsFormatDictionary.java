@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.codecs.lucene50;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat.Mode;
+import org.apache.lucene.codecs.lucene70.Lucene70Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.BaseStoredFieldsFormatTestCase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.TestUtil;
+
+public class TestLucene50StoredFieldsFormatDictionary extends BaseStoredFieldsFormatTestCase {
+  @Override
+  protected Codec getCodec() {
+    return new Lucene70Codec(Mode.DICTIONARY);
+  }
+
+  /**
+   * Merges segments that were compressed against different dictionaries.
+   */
+  public void testMergeDifferentDictionaries() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig();
+    iwc.setCodec(getCodec());
+    IndexWriter iw = new IndexWriter(dir, iwc);
+    final int numSegments = TestUtil.nextInt(random(), 2, 5);
+    final int docsPerSegment = TestUtil.nextInt(random(), 100, 1000);
+    for (int i = 0; i < numSegments; i++) {
+      for (int j = 0; j < docsPerSegment; j++) {
+        Document doc = new Document();
+        doc.add(new StoredField("id", i * docsPerSegment + j));
+        doc.add(new StoredField("field" + i, "segment " + i + " value " + j));
+        iw.addDocument(doc);
+      }
+      iw.commit();
+    }
+    iw.forceMerge(1);
+    iw.close();
+
+    DirectoryReader ir = DirectoryReader.open(dir);
+    assertEquals(1, ir.leaves().size());
+    assertEquals(numSegments * docsPerSegment, ir.numDocs());
+    for (int i = 0; i < ir.maxDoc(); i++) {
+      Document doc = ir.document(i);
+      final int id = doc.getField("id").numericValue().intValue();
+      final int segment = id / docsPerSegment;
+      assertEquals("segment " + segment + " value " + (id % docsPerSegment), doc.get("field" + segment));
+    }
+    ir.close();
+    dir.close();
+  }
+}
@@ -18,6 +18,9 @@ package org.apache.lucene.index;
 
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -26,12 +29,15 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MockDirectoryWrapper;
+import org.apache.lucene.util.InfoStream;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.TestUtil;
 
@@ -390,6 +396,54 @@ public class TestConcurrentMergeScheduler extends LuceneTestCase {
     d.close();
   }
 
+  public void testIntraMergeConcurrency() throws Exception {
+    Directory d = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(10);
+    iwc.setMergePolicy(new LogDocMergePolicy());
+    ((LogMergePolicy) iwc.getMergePolicy()).setMergeFactor(1000);
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    cms.setMaxMergesAndThreads(4, 4);
+    iwc.setMergeScheduler(cms);
+    // records the threads that merged the parts of the index
+    final Set<String> mergingThreads = Collections.synchronizedSet(new HashSet<>());
+    iwc.setInfoStream(new InfoStream() {
+      @Override
+      public void message(String component, String message) {
+        if (message.contains("msec to merge")) {
+          mergingThreads.add(Thread.currentThread().getName());
+        }
+      }
+
+      @Override
+      public boolean isEnabled(String component) {
+        return "SM".equals(component);
+      }
+
+      @Override
+      public void close() {}
+    });
+    IndexWriter w = new IndexWriter(d, iwc);
+    for (int i = 0; i < 100; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", "" + i, Field.Store.YES));
+      doc.add(new TextField("body", "some text " + i, Field.Store.NO));
+      doc.add(new NumericDocValuesField("dv", i));
+      doc.add(new IntPoint("point", i));
+      w.addDocument(doc);
+    }
+    w.forceMerge(1);
+    assertEquals(1, w.getSegmentCount());
+    assertTrue(mergingThreads.toString(), mergingThreads.size() > 1);
+    w.close();
+
+    DirectoryReader r = DirectoryReader.open(d);
+    assertEquals(100, r.numDocs());
+    assertEquals(100, r.leaves().get(0).reader().getPointValues("point").size());
+    r.close();
+    d.close();
+  }
+
   public void testInvalidMaxMergeCountAndThreads() throws Exception {
     ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
     expectThrows(IllegalArgumentException.class, () -> {
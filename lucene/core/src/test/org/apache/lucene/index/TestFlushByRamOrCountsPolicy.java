@@ -20,16 +20,22 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DocumentsWriterPerThreadPool.ThreadState;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.util.LineFileDocs;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.TestUtil;
+import org.apache.lucene.util.ThreadInterruptedException;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
@@ -278,6 +284,99 @@ public class TestFlushByRamOrCountsPolicy extends LuceneTestCase {
     }
   }
 
+  public void testSpillOnFlushBacklog() throws Exception {
+    final double ramBufferSizeMB = 1;
+    final long ramBufferBytes = (long) (ramBufferSizeMB * 1024 * 1024);
+    final AtomicReference<IndexWriter> writerRef = new AtomicReference<>();
+    // block flushes until a thread spilled so that flushing falls behind
+    Directory dir = new FilterDirectory(newDirectory()) {
+      @Override
+      public IndexOutput createOutput(String name, IOContext context) throws IOException {
+        if (isFlushing()) {
+          final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+          while (writerRef.get().getDocsWriter().flushControl.numSpills() == 0 && System.nanoTime() < deadline) {
+            try {
+              Thread.sleep(10);
+            } catch (InterruptedException e) {
+              throw new ThreadInterruptedException(e);
+            }
+          }
+        }
+        return super.createOutput(name, context);
+      }
+    };
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMaxBufferedDeleteTerms(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setRAMBufferSizeMB(ramBufferSizeMB);
+    iwc.setIndexerThreadPool(new DocumentsWriterPerThreadPool());
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    iwc.setSpillOnFlushBacklog(true);
+    // flush a single DWPT of 0.9x the RAM buffer, so that the other thread is backlogged as soon as it buffered
+    // more than 1.1x the RAM buffer, which is more than its share of the RAM buffer
+    iwc.setFlushPolicy(new FlushByRamOrCountsPolicy() {
+      boolean flushedLargeDWPT = false;
+
+      @Override
+      public void onInsert(DocumentsWriterFlushControl control, ThreadState state) {
+        if (control.numSpills() > 0) {
+          super.onInsert(control, state);
+        } else if (flushedLargeDWPT == false && state.bytesUsed > ramBufferBytes * 9 / 10) {
+          flushedLargeDWPT = true;
+          control.setFlushPending(state);
+        }
+      }
+    });
+    final IndexWriter writer = new IndexWriter(dir, iwc);
+    writerRef.set(writer);
+    final DocumentsWriterFlushControl flushControl = writer.getDocsWriter().flushControl;
+    final AtomicInteger numDocs = new AtomicInteger();
+    Thread[] threads = new Thread[2];
+    for (int x = 0; x < threads.length; x++) {
+      threads[x] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (flushControl.numSpills() == 0 && numDocs.get() < 100000) {
+              writer.addDocument(lineDocFile.nextDoc());
+              numDocs.incrementAndGet();
+            }
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[x].start();
+    }
+    for (int x = 0; x < threads.length; x++) {
+      threads[x].join();
+    }
+    assertEquals("one thread must spill", 1, flushControl.numSpills());
+    assertFalse("must spill instead of stalling", flushControl.stallControl.wasStalled());
+    assertFalse("must spill instead of blocking", flushControl.stallControl.hasBlocked());
+    assertEquals(" all flushes must be due", 0, flushControl.flushBytes());
+    writer.commit();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numDocs.get(), reader.numDocs());
+    // the flushed and the spilled DWPT
+    assertEquals(2, reader.leaves().size());
+    for (LeafReaderContext context : reader.leaves()) {
+      assertTrue("segment too small: " + context.reader().maxDoc(), context.reader().maxDoc() > 1);
+    }
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  private static boolean isFlushing() {
+    for (StackTraceElement element : new Exception().getStackTrace()) {
+      if (DocumentsWriterPerThread.class.getName().equals(element.getClassName()) && "flush".equals(element.getMethodName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   protected void assertActiveBytesAfter(DocumentsWriterFlushControl flushControl) {
     Iterator<ThreadState> allActiveThreads = flushControl.allActiveThreadStates();
     long bytesUsed = 0;
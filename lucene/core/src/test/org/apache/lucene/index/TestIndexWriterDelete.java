@@ -25,6 +25,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,6 +47,7 @@ import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.LuceneTestCase.SuppressCodecs;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 @SuppressCodecs("SimpleText") // too slow here
@@ -1400,4 +1403,116 @@ public class TestIndexWriterDelete extends LuceneTestCase {
     w.close();
     dir.close();
   }
+
+  public void testConcurrentApplyDeletes() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestIndexWriterDelete"));
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setApplyDeletesExecutor(executor);
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random(), 10, 100));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+
+    final int numDocs = atLeast(1000);
+    final boolean[] live = new boolean[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new StringField("group", Integer.toString(i % 37), Field.Store.NO));
+      w.addDocument(doc);
+      live[i] = true;
+    }
+
+    final int iters = atLeast(5);
+    for (int iter = 0; iter < iters; iter++) {
+      final int numDeletes = TestUtil.nextInt(random(), 1, 200);
+      for (int i = 0; i < numDeletes; i++) {
+        if (random().nextInt(20) == 0) {
+          final int group = random().nextInt(37);
+          w.deleteDocuments(new Term("group", Integer.toString(group)));
+          for (int id = group; id < numDocs; id += 37) {
+            live[id] = false;
+          }
+        } else {
+          final int id = random().nextInt(numDocs);
+          w.deleteDocuments(new Term("id", Integer.toString(id)));
+          live[id] = false;
+        }
+      }
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        int numLive = 0;
+        for (boolean l : live) {
+          if (l) {
+            numLive++;
+          }
+        }
+        assertEquals(numLive, reader.numDocs());
+        IndexSearcher searcher = newSearcher(reader);
+        for (int i = 0; i < 50; i++) {
+          final int id = random().nextInt(numDocs);
+          assertEquals(live[id] ? 1 : 0, searcher.count(new TermQuery(new Term("id", Integer.toString(id)))));
+        }
+      }
+    }
+
+    w.close();
+    dir.close();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+  }
+
+  public void testApplyDeletesInBackground() throws Exception {
+    IndexWriterConfig noExecutor = newIndexWriterConfig(new MockAnalyzer(random())).setApplyDeletesInBackground(true);
+    Directory dir = newDirectory();
+    expectThrows(IllegalArgumentException.class, () -> new IndexWriter(dir, noExecutor));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("TestIndexWriterDelete"));
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setApplyDeletesExecutor(executor);
+    iwc.setApplyDeletesInBackground(true);
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+
+    final int numDocs = atLeast(100);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      w.addDocument(doc);
+      if (random().nextInt(10) == 0) {
+        w.flush(false, false);
+      }
+    }
+    w.flush(false, false);
+
+    DirectoryReader reader = DirectoryReader.open(w);
+    assertEquals(numDocs, reader.numDocs());
+    int numDeleted = 0;
+    for (int i = 0; i < numDocs; i += 3) {
+      w.deleteDocuments(new Term("id", Integer.toString(i)));
+      numDeleted++;
+    }
+    w.flush(false, false);
+    // the executor is single-threaded, so the deletes are applied once this task runs
+    executor.submit(() -> {}).get();
+    synchronized (w) {
+      assertFalse(w.bufferedUpdatesStream.any());
+    }
+
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader, w);
+    assertNotNull(newReader);
+    reader.close();
+    reader = newReader;
+    assertEquals(numDocs - numDeleted, reader.numDocs());
+    IndexSearcher searcher = newSearcher(reader);
+    for (int i = 0; i < numDocs; i++) {
+      assertEquals(i % 3 == 0 ? 0 : 1, searcher.count(new TermQuery(new Term("id", Integer.toString(i)))));
+    }
+    reader.close();
+
+    w.close();
+    dir.close();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+  }
 }
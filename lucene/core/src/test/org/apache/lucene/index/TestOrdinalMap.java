@@ -32,6 +32,7 @@ import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.RamUsageTester;
 import org.apache.lucene.util.TestUtil;
+import org.apache.lucene.util.packed.PackedInts;
 
 public class TestOrdinalMap extends LuceneTestCase {
 
@@ -96,4 +97,81 @@ public class TestOrdinalMap extends LuceneTestCase {
     dir.close();
   }
 
+  private static SortedSetDocValues[] getSortedSetValues(IndexReader r, String field) throws IOException {
+    final SortedSetDocValues[] values = new SortedSetDocValues[r.leaves().size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = DocValues.getSortedSet(r.leaves().get(i).reader(), field);
+    }
+    return values;
+  }
+
+  public void testIncrementalBuild() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig cfg = new IndexWriterConfig(new MockAnalyzer(random()));
+    cfg.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter iw = new IndexWriter(dir, cfg);
+    final int numSegments = TestUtil.nextInt(random(), 2, 10);
+    final int maxTermLength = TestUtil.nextInt(random(), 1, 3);
+    for (int i = 0; i < numSegments; ++i) {
+      final int numDocs = TestUtil.nextInt(random(), 1, 200);
+      for (int j = 0; j < numDocs; ++j) {
+        Document d = new Document();
+        final int numValues = random().nextInt(3);
+        for (int k = 0; k < numValues; ++k) {
+          d.add(new SortedSetDocValuesField("ssdv", new BytesRef(TestUtil.randomSimpleString(random(), maxTermLength))));
+        }
+        iw.addDocument(d);
+      }
+      iw.commit();
+    }
+    DirectoryReader r = DirectoryReader.open(iw);
+    assertEquals(numSegments, r.leaves().size());
+
+    // build the previous map over a random subset of the segments, in random order
+    final int numPrevious = TestUtil.nextInt(random(), 1, numSegments);
+    final int[] segments = new int[numSegments];
+    for (int i = 0; i < numSegments; ++i) {
+      segments[i] = i;
+    }
+    for (int i = numSegments - 1; i > 0; --i) {
+      final int j = random().nextInt(i + 1);
+      final int tmp = segments[i];
+      segments[i] = segments[j];
+      segments[j] = tmp;
+    }
+    final int[] previousSegments = new int[numPrevious];
+    System.arraycopy(segments, 0, previousSegments, 0, numPrevious);
+    final SortedSetDocValues[] all = getSortedSetValues(r, "ssdv");
+    final SortedSetDocValues[] subset = new SortedSetDocValues[numPrevious];
+    for (int i = 0; i < numPrevious; ++i) {
+      subset[i] = all[previousSegments[i]];
+    }
+    final OrdinalMap previous = OrdinalMap.build(null, subset, PackedInts.DEFAULT);
+
+    final OrdinalMap expected = OrdinalMap.build(null, getSortedSetValues(r, "ssdv"), PackedInts.DEFAULT);
+    final OrdinalMap actual = OrdinalMap.build(null, previous, previousSegments, getSortedSetValues(r, "ssdv"), PackedInts.DEFAULT);
+    assertEquals(expected.getValueCount(), actual.getValueCount());
+    final SortedSetDocValues[] values = getSortedSetValues(r, "ssdv");
+    for (int i = 0; i < numSegments; ++i) {
+      final LongValues expectedOrds = expected.getGlobalOrds(i);
+      final LongValues actualOrds = actual.getGlobalOrds(i);
+      for (long ord = 0; ord < values[i].getValueCount(); ++ord) {
+        assertEquals(expectedOrds.get(ord), actualOrds.get(ord));
+      }
+    }
+    for (long globalOrd = 0; globalOrd < expected.getValueCount(); ++globalOrd) {
+      final BytesRef expectedTerm = BytesRef.deepCopyOf(values[expected.getFirstSegmentNumber(globalOrd)].lookupOrd(expected.getFirstSegmentOrd(globalOrd)));
+      final BytesRef actualTerm = values[actual.getFirstSegmentNumber(globalOrd)].lookupOrd(actual.getFirstSegmentOrd(globalOrd));
+      assertEquals(expectedTerm, actualTerm);
+    }
+
+    expectThrows(IllegalArgumentException.class, () -> {
+      OrdinalMap.build(null, previous, new int[numPrevious + 1], getSortedSetValues(r, "ssdv"), PackedInts.DEFAULT);
+    });
+
+    iw.close();
+    r.close();
+    dir.close();
+  }
+
 }
@@ -27,9 +27,14 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.TestUtil;
@@ -163,4 +168,98 @@ public class TestMultiCollector extends LuceneTestCase {
     assertFalse(setScorerCalled2.get());
   }
 
+  public void testMinCompetitiveScoreIsSharedByAllCollectors() throws IOException {
+    final float[] minCompetitiveScore = new float[] {Float.NEGATIVE_INFINITY};
+    Scorer scorer = new FilterScorer(new FakeScorer()) {
+      @Override
+      public void setMinCompetitiveScore(float minScore) {
+        minCompetitiveScore[0] = minScore;
+      }
+    };
+
+    final List<Scorer> scorers = new ArrayList<>();
+    List<Collector> collectors = new ArrayList<>();
+    for (int i = 0; i < 2; ++i) {
+      collectors.add(new SimpleCollector() {
+        @Override
+        public void setScorer(Scorer scorer) {
+          scorers.add(scorer);
+        }
+
+        @Override
+        public void collect(int doc) {}
+
+        @Override
+        public boolean needsScores() {
+          return true;
+        }
+      });
+    }
+    LeafCollector leafCollector = MultiCollector.wrap(collectors).getLeafCollector(null);
+    leafCollector.setScorer(scorer);
+    assertEquals(2, scorers.size());
+
+    // a collector that still needs every hit holds the others back
+    scorers.get(0).setMinCompetitiveScore(2f);
+    assertEquals(Float.NEGATIVE_INFINITY, minCompetitiveScore[0], 0f);
+    scorers.get(1).setMinCompetitiveScore(1f);
+    assertEquals(1f, minCompetitiveScore[0], 0f);
+    scorers.get(1).setMinCompetitiveScore(3f);
+    assertEquals(2f, minCompetitiveScore[0], 0f);
+  }
+
+  public void testNonTrackingTopDocsWithTotalHitCount() throws IOException {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      final int numValues = random().nextInt(5);
+      for (int j = 0; j < numValues; ++j) {
+        // skewed distribution so that some terms are much more frequent than others
+        doc.add(new StringField("foo", Integer.toString(Math.abs((int) (random().nextGaussian() * 10))), Store.NO));
+      }
+      w.addDocument(doc);
+    }
+    IndexReader reader = w.getReader();
+    w.close();
+    IndexSearcher searcher = newSearcher(reader);
+    searcher.setSimilarity(new BM25Similarity());
+
+    final int iters = atLeast(10);
+    for (int iter = 0; iter < iters; ++iter) {
+      BooleanQuery.Builder builder = new BooleanQuery.Builder();
+      final int numClauses = 2 + random().nextInt(4);
+      for (int i = 0; i < numClauses; ++i) {
+        Query q = new TermQuery(new Term("foo", Integer.toString(random().nextInt(30))));
+        if (random().nextBoolean()) {
+          q = new BoostQuery(q, random().nextInt(5) + 1);
+        }
+        builder.add(q, Occur.SHOULD);
+      }
+      Query query = builder.build();
+      final int numHits = 1 + random().nextInt(5);
+
+      TopScoreDocCollector exhaustive = TopScoreDocCollector.create(numHits, null, true);
+      searcher.search(query, exhaustive);
+
+      // the top docs collector may prune, but the hit count collector still sees every hit
+      TopScoreDocCollector pruning = TopScoreDocCollector.create(numHits, null, false);
+      TotalHitCountCollector totalHits = new TotalHitCountCollector();
+      searcher.search(query, MultiCollector.wrap(pruning, totalHits));
+
+      TopDocs expected = exhaustive.topDocs();
+      TopDocs actual = pruning.topDocs();
+      assertEquals(query.toString(), expected.totalHits, totalHits.getTotalHits());
+      assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; ++i) {
+        assertEquals(query.toString(), expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(query.toString(), expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+    }
+
+    reader.close();
+    dir.close();
+  }
+
 }
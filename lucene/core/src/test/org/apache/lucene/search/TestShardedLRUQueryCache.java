@@ -0,0 +1,439 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.carrotsearch.randomizedtesting.generators.RandomPicks;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestShardedLRUQueryCache extends LuceneTestCase {
+
+  private static final QueryCachingPolicy NEVER_CACHE = new QueryCachingPolicy() {
+
+    @Override
+    public void onUse(Query query) {}
+
+    @Override
+    public boolean shouldCache(Query query) throws IOException {
+      return false;
+    }
+
+  };
+
+  private static int randomNumShards() {
+    return 1 << random().nextInt(4);
+  }
+
+  public void testInvalidNumShards() {
+    expectThrows(IllegalArgumentException.class, () -> {
+      new ShardedLRUQueryCache(10, 10000, context -> true, 3, Runnable::run);
+    });
+    expectThrows(IllegalArgumentException.class, () -> {
+      new ShardedLRUQueryCache(10, 10000, context -> true, 0, Runnable::run);
+    });
+    final int numShards = ShardedLRUQueryCache.defaultNumShards();
+    assertEquals(1, Integer.bitCount(numShards));
+    assertTrue(numShards >= Math.min(64, Runtime.getRuntime().availableProcessors()));
+  }
+
+  public void testConcurrency() throws Throwable {
+    final ShardedLRUQueryCache queryCache = new ShardedLRUQueryCache(1 + random().nextInt(20), 1 + random().nextInt(10000),
+        context -> random().nextBoolean(), randomNumShards(), Runnable::run);
+    Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final SearcherFactory searcherFactory = new SearcherFactory() {
+      @Override
+      public IndexSearcher newSearcher(IndexReader reader, IndexReader previous) throws IOException {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setQueryCachingPolicy(MAYBE_CACHE_POLICY);
+        searcher.setQueryCache(queryCache);
+        return searcher;
+      }
+    };
+    final SearcherManager mgr = new SearcherManager(w.w, random().nextBoolean(), false, searcherFactory);
+    final AtomicBoolean indexing = new AtomicBoolean(true);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    final int numDocs = atLeast(10000);
+    final String[] colors = new String[] {"blue", "red", "yellow", "green", "purple", "orange"};
+    Thread[] threads = new Thread[1 + TestUtil.nextInt(random(), 2, 4)];
+    threads[0] = new Thread() {
+      public void run() {
+        Document doc = new Document();
+        StringField f = new StringField("color", "", Store.NO);
+        doc.add(f);
+        for (int i = 0; indexing.get() && i < numDocs; ++i) {
+          f.setStringValue(RandomPicks.randomFrom(random(), colors));
+          try {
+            w.addDocument(doc);
+            if ((i & 63) == 0) {
+              mgr.maybeRefresh();
+              if (rarely()) {
+                queryCache.clear();
+              }
+              if (rarely()) {
+                w.deleteDocuments(new Term("color", RandomPicks.randomFrom(random(), colors)));
+              }
+            }
+          } catch (Throwable t) {
+            error.compareAndSet(null, t);
+            break;
+          }
+        }
+        indexing.set(false);
+      }
+    };
+    for (int i = 1; i < threads.length; ++i) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          while (indexing.get()) {
+            try {
+              final IndexSearcher searcher = mgr.acquire();
+              try {
+                final String value = RandomPicks.randomFrom(random(), colors);
+                final Query q = new TermQuery(new Term("color", value));
+                TotalHitCountCollector collector = new TotalHitCountCollector();
+                searcher.search(q, collector); // will use the cache
+                final int totalHits1 = collector.getTotalHits();
+                final int totalHits2 = searcher.search(q, 1).totalHits; // will not use the cache because of scores
+                assertEquals(totalHits2, totalHits1);
+              } finally {
+                mgr.release(searcher);
+              }
+            } catch (Throwable t) {
+              error.compareAndSet(null, t);
+            }
+          }
+        }
+      };
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    if (error.get() != null) {
+      throw error.get();
+    }
+    queryCache.assertConsistent();
+    mgr.close();
+    w.close();
+    dir.close();
+    queryCache.assertConsistent();
+    // all segments have been closed
+    assertEquals(0, queryCache.getCacheSize());
+  }
+
+  public void testLRUEviction() throws Exception {
+    Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+
+    Document doc = new Document();
+    StringField f = new StringField("color", "blue", Store.NO);
+    doc.add(f);
+    w.addDocument(doc);
+    f.setStringValue("red");
+    w.addDocument(doc);
+    f.setStringValue("green");
+    w.addDocument(doc);
+    final DirectoryReader reader = w.getReader();
+    final IndexSearcher searcher = newSearcher(reader);
+    final ShardedLRUQueryCache queryCache = new ShardedLRUQueryCache(2, 100000, context -> true, randomNumShards(), Runnable::run);
+
+    final Query blue = new TermQuery(new Term("color", "blue"));
+    final Query red = new TermQuery(new Term("color", "red"));
+    final Query green = new TermQuery(new Term("color", "green"));
+
+    assertEquals(Collections.emptyList(), queryCache.cachedQueries());
+
+    searcher.setQueryCache(queryCache);
+    // the filter is not cached on any segment: no changes
+    searcher.setQueryCachingPolicy(NEVER_CACHE);
+    searcher.search(new ConstantScoreQuery(green), 1);
+    assertEquals(Collections.emptyList(), queryCache.cachedQueries());
+
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+    searcher.search(new ConstantScoreQuery(red), 1);
+    assertEquals(Collections.singletonList(red), queryCache.cachedQueries());
+
+    searcher.search(new ConstantScoreQuery(green), 1);
+    assertEquals(Arrays.asList(red, green), queryCache.cachedQueries());
+
+    searcher.search(new ConstantScoreQuery(red), 1);
+    assertEquals(Arrays.asList(green, red), queryCache.cachedQueries());
+
+    searcher.search(new ConstantScoreQuery(blue), 1);
+    assertEquals(Arrays.asList(red, blue), queryCache.cachedQueries());
+
+    searcher.search(new ConstantScoreQuery(blue), 1);
+    assertEquals(Arrays.asList(red, blue), queryCache.cachedQueries());
+
+    searcher.search(new ConstantScoreQuery(green), 1);
+    assertEquals(Arrays.asList(blue, green), queryCache.cachedQueries());
+
+    searcher.setQueryCachingPolicy(NEVER_CACHE);
+    searcher.search(new ConstantScoreQuery(red), 1);
+    assertEquals(Arrays.asList(blue, green), queryCache.cachedQueries());
+    queryCache.assertConsistent();
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testAsynchronousEviction() throws Exception {
+    Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    for (String color : new String[] {"blue", "red", "green"}) {
+      Document doc = new Document();
+      doc.add(new StringField("color", color, Store.NO));
+      w.addDocument(doc);
+    }
+    final DirectoryReader reader = w.getReader();
+    final IndexSearcher searcher = newSearcher(reader);
+    final List<Runnable> pendingEvictions = new ArrayList<>();
+    final ShardedLRUQueryCache queryCache = new ShardedLRUQueryCache(1, 100000, context -> true, randomNumShards(), pendingEvictions::add);
+    searcher.setQueryCache(queryCache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+
+    final Query blue = new TermQuery(new Term("color", "blue"));
+    final Query red = new TermQuery(new Term("color", "red"));
+    final Query green = new TermQuery(new Term("color", "green"));
+
+    searcher.search(new ConstantScoreQuery(blue), 1);
+    searcher.search(new ConstantScoreQuery(red), 1);
+    assertEquals(1, pendingEvictions.size());
+    // evictions are not scheduled twice
+    searcher.search(new ConstantScoreQuery(green), 1);
+    assertEquals(1, pendingEvictions.size());
+    // the cache may exceed its size until the eviction runs
+    assertEquals(Arrays.asList(blue, red, green), queryCache.cachedQueries());
+    // hits on cached entries do not need the eviction to run
+    final long hitCount = queryCache.getHitCount();
+    assertEquals(1, searcher.search(new ConstantScoreQuery(blue), 1).totalHits);
+    assertTrue(queryCache.getHitCount() > hitCount);
+
+    pendingEvictions.remove(0).run();
+    assertEquals(Collections.singletonList(blue), queryCache.cachedQueries());
+    queryCache.assertConsistent();
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testClearQueryAndStats() throws IOException {
+    Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    Document doc = new Document();
+    StringField f = new StringField("color", "", Store.NO);
+    doc.add(f);
+    final int numDocs = atLeast(10);
+    for (int i = 0; i < numDocs; ++i) {
+      f.setStringValue(random().nextBoolean() ? "red" : "blue");
+      w.addDocument(doc);
+    }
+    final DirectoryReader reader = w.getReader();
+    final IndexSearcher searcher = newSearcher(reader);
+    final int numLeaves = searcher.getIndexReader().leaves().size();
+
+    final ShardedLRUQueryCache queryCache = new ShardedLRUQueryCache(Integer.MAX_VALUE, Long.MAX_VALUE, context -> true, randomNumShards(), Runnable::run);
+    searcher.setQueryCache(queryCache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+
+    final Query query1 = new TermQuery(new Term("color", "blue"));
+    // different instance yet equal
+    final Query query2 = new TermQuery(new Term("color", "blue"));
+    final Query query3 = new TermQuery(new Term("color", "red"));
+
+    searcher.search(new BoostQuery(new ConstantScoreQuery(query1), random().nextFloat()), 1);
+    assertEquals(1, queryCache.cachedQueries().size());
+    assertEquals(0, queryCache.getHitCount());
+    assertEquals(numLeaves, queryCache.getMissCount());
+    assertEquals(numLeaves, queryCache.getCacheCount());
+    assertEquals(numLeaves, queryCache.getCacheSize());
+
+    searcher.search(new ConstantScoreQuery(query2), 1);
+    assertEquals(numLeaves, queryCache.getHitCount());
+    searcher.search(new ConstantScoreQuery(query3), 1);
+    assertEquals(2 * numLeaves, queryCache.getCacheSize());
+    queryCache.assertConsistent();
+
+    queryCache.clearQuery(query2);
+    assertEquals(Collections.singletonList(query3), queryCache.cachedQueries());
+    assertEquals(numLeaves, queryCache.getCacheSize());
+    assertEquals(numLeaves, queryCache.getEvictionCount());
+    queryCache.assertConsistent();
+
+    for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+      queryCache.clearCoreCacheKey(context.reader().getCoreCacheKey());
+    }
+    assertEquals(0, queryCache.getCacheSize());
+    assertEquals(Collections.singletonList(query3), queryCache.cachedQueries());
+    queryCache.assertConsistent();
+
+    queryCache.clear();
+    assertTrue(queryCache.cachedQueries().isEmpty());
+    assertEquals(0, queryCache.ramBytesUsed());
+    queryCache.assertConsistent();
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  private static Query randomQuery() {
+    final Term term = new Term("foo", RandomPicks.randomFrom(random(), Arrays.asList("foo", "bar", "baz", "quux")));
+    switch (random().nextInt(3)) {
+      case 0:
+        return new TermQuery(term);
+      case 1:
+        return new BooleanQuery.Builder()
+            .add(new TermQuery(term), Occur.MUST)
+            .add(randomQuery(), random().nextBoolean() ? Occur.FILTER : Occur.MUST_NOT)
+            .build();
+      default:
+        return new MatchAllDocsQuery();
+    }
+  }
+
+  public void testRandom() throws IOException {
+    Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    Document doc = new Document();
+    StringField f = new StringField("foo", "foo", Store.NO);
+    doc.add(f);
+    w.addDocument(doc);
+    IndexReader reader = w.getReader();
+
+    final int maxSize = TestUtil.nextInt(random(), 1, 1000);
+    final long maxRamBytesUsed = TestUtil.nextLong(random(), 1, 500000);
+    final ShardedLRUQueryCache queryCache = new ShardedLRUQueryCache(maxSize, maxRamBytesUsed,
+        context -> random().nextBoolean(), randomNumShards(), Runnable::run);
+    IndexSearcher uncachedSearcher = null;
+    IndexSearcher cachedSearcher = null;
+
+    final int iters = atLeast(2000);
+    for (int i = 0; i < iters; ++i) {
+      if (i == 0 || random().nextInt(100) == 1) {
+        reader.close();
+        f.setStringValue(RandomPicks.randomFrom(random(), Arrays.asList("foo", "bar", "baz")));
+        w.addDocument(doc);
+        if (random().nextBoolean()) {
+          w.deleteDocuments(randomQuery());
+        }
+        reader = w.getReader();
+        uncachedSearcher = newSearcher(reader);
+        uncachedSearcher.setQueryCache(null);
+        cachedSearcher = newSearcher(reader);
+        cachedSearcher.setQueryCache(queryCache);
+        cachedSearcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+      }
+      final Query q = randomQuery();
+      assertEquals(uncachedSearcher.count(q), cachedSearcher.count(q));
+      if (rarely()) {
+        queryCache.assertConsistent();
+      }
+    }
+    queryCache.assertConsistent();
+    w.close();
+    reader.close();
+    dir.close();
+    queryCache.assertConsistent();
+  }
+
+  private static class BadQuery extends Query {
+
+    int[] i = new int[] {42}; // an array so that clone keeps the reference
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores, float boost) throws IOException {
+      return new ConstantScoreWeight(this, boost) {
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+          return null;
+        }
+      };
+    }
+
+    @Override
+    public String toString(String field) {
+      return "BadQuery";
+    }
+
+    @Override
+    public int hashCode() {
+      return classHash() ^ i[0];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return sameClassAs(other) &&
+             i[0] == ((BadQuery) other).i[0];
+    }
+  }
+
+  public void testDetectMutatedQueries() throws IOException {
+    Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    w.addDocument(new Document());
+    IndexReader reader = w.getReader();
+
+    // size of 1 so that 2nd query evicts from the cache
+    final ShardedLRUQueryCache queryCache = new ShardedLRUQueryCache(1, 10000, context -> true, randomNumShards(), Runnable::run);
+    final IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setQueryCache(queryCache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+
+    BadQuery query = new BadQuery();
+    searcher.count(query);
+    query.i[0] += 1; // change the hashCode!
+
+    // trigger an eviction
+    expectThrows(ConcurrentModificationException.class, () -> {
+      searcher.search(new MatchAllDocsQuery(), new TotalHitCountCollector());
+    });
+
+    IOUtils.close(w, reader, dir);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+
+import java.util.Arrays;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestWANDScorer extends LuceneTestCase {
+
+  public void testSumUpperBound() {
+    assertEquals(0, WANDScorer.sumUpperBound(0, 3), 0d);
+    for (int i = 1; i < 10; ++i) {
+      assertTrue(WANDScorer.sumUpperBound(i, i) > i);
+    }
+  }
+
+  public void testSameTopHitsAsExhaustiveSearch() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      final int numValues = random().nextInt(5);
+      for (int j = 0; j < numValues; ++j) {
+        // skewed distribution so that some terms are much more frequent than others
+        doc.add(new StringField("foo", Integer.toString(Math.abs((int) (random().nextGaussian() * 10))), Store.NO));
+      }
+      w.addDocument(doc);
+    }
+    IndexReader reader = w.getReader();
+    w.close();
+    IndexSearcher searcher = newSearcher(reader);
+    searcher.setSimilarity(new BM25Similarity());
+
+    final int iters = atLeast(20);
+    for (int iter = 0; iter < iters; ++iter) {
+      BooleanQuery.Builder builder = new BooleanQuery.Builder();
+      final int numClauses = 2 + random().nextInt(4);
+      for (int i = 0; i < numClauses; ++i) {
+        Query q = new TermQuery(new Term("foo", Integer.toString(random().nextInt(30))));
+        if (random().nextBoolean()) {
+          q = new BoostQuery(q, random().nextInt(5) + 1);
+        }
+        builder.add(q, Occur.SHOULD);
+      }
+      Query query = builder.build();
+      final int numHits = 1 + random().nextInt(20);
+
+      TopScoreDocCollector exhaustive = TopScoreDocCollector.create(numHits, null, true);
+      searcher.search(query, exhaustive);
+      TopScoreDocCollector pruning = TopScoreDocCollector.create(numHits, null, false);
+      searcher.search(query, pruning);
+
+      TopDocs expected = exhaustive.topDocs();
+      TopDocs actual = pruning.topDocs();
+      assertTrue(actual.totalHits <= expected.totalHits);
+      assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; ++i) {
+        assertEquals(query.toString(), expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(query.toString(), expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+    }
+
+    reader.close();
+    dir.close();
+  }
+
+  public void testMaxScoreSkipsNonCompetitiveDocs() throws Exception {
+    Directory dir = newDirectory();
+    // use a log merge policy so that doc IDs are preserved on forceMerge
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig().setMergePolicy(newLogMergePolicy()));
+    for (String value : Arrays.asList("a", "b", "a", "c", "b")) {
+      Document doc = new Document();
+      doc.add(new StringField("foo", value, Store.NO));
+      w.addDocument(doc);
+    }
+    w.forceMerge(1);
+    IndexReader reader = w.getReader();
+    w.close();
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setSimilarity(new BM25Similarity());
+
+    BooleanQuery query = new BooleanQuery.Builder()
+        .add(new TermQuery(new Term("foo", "a")), Occur.SHOULD)
+        .add(new BoostQuery(new TermQuery(new Term("foo", "b")), 100), Occur.SHOULD)
+        .build();
+    BooleanWeight weight = (BooleanWeight) searcher.createNormalizedWeight(query, true);
+    Scorer a = weight.optionalScorers(reader.leaves().get(0)).get(0);
+    assertTrue(Float.isFinite(a.maxScore()));
+
+    WANDScorer scorer = new WANDScorer(weight, weight.optionalScorers(reader.leaves().get(0)));
+    scorer.setMinCompetitiveScore(a.maxScore() * 2);
+    // only documents that match "b" may be competitive
+    DocIdSetIterator it = scorer.iterator();
+    assertEquals(1, it.nextDoc());
+    assertEquals(4, it.nextDoc());
+    assertEquals(DocIdSetIterator.NO_MORE_DOCS, it.nextDoc());
+
+    reader.close();
+    dir.close();
+  }
+}
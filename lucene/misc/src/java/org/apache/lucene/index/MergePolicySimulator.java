@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.SuppressForbidden;
+import org.apache.lucene.util.Version;
+
+/**
+ * Replays a recorded history of flushes, deletes and searches against
+ * merge policies in order to compare them offline: how many bytes they
+ * merge, how many segments searches need to visit, and how expensive
+ * searches are according to a simple cost model where searching a segment
+ * costs a fixed overhead plus a cost per document.
+ * <p>
+ * Histories have one event per line, empty lines and lines starting with
+ * {@code #} are ignored:
+ * <ul>
+ *   <li>{@code flush <maxDoc> <sizeInBytes>}: a new segment is flushed,</li>
+ *   <li>{@code delete <numDocs>}: documents are deleted, proportionally
+ *       to the number of live documents of each segment,</li>
+ *   <li>{@code search <count> [<newestDocs>]}: searches are run, against
+ *       all segments, or only against the most recently written segments
+ *       that hold the {@code newestDocs} newest documents, like searches
+ *       on time-based data that only hit recent data.</li>
+ * </ul>
+ * Merges complete as soon as the policy selects them, and every event
+ * advances the simulated clock by one second, which is the clock that
+ * {@link SegmentQueryCosts} instances returned by
+ * {@link #newQueryCosts(long)} decay costs with.
+ * <p>
+ * No files are written: segments only exist as {@link SegmentCommitInfo}
+ * instances whose size is tracked in memory.
+ *
+ * @lucene.experimental
+ */
+public class MergePolicySimulator {
+
+  /** Default overhead of searching a segment, in nanoseconds. */
+  public static final long DEFAULT_SEGMENT_OVERHEAD_NANOS = 50_000;
+
+  /** Default cost of searching a document, deleted or not, in nanoseconds. */
+  public static final long DEFAULT_DOC_NANOS = 10;
+
+  private static final long EVENT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private enum EventType { FLUSH, DELETE, SEARCH }
+
+  private static final class Event {
+    final EventType type;
+    final long[] args;
+
+    Event(EventType type, long[] args) {
+      this.type = type;
+      this.args = args;
+    }
+  }
+
+  /** Outcome of running a history against a merge policy. */
+  public static final class Result {
+    /** Number of merges that ran. */
+    public final int merges;
+    /** Total size of the segments written by merges. */
+    public final long mergedBytes;
+    /** Number of searches that ran. */
+    public final long searches;
+    /** Total number of segments that searches visited. */
+    public final long searchedSegments;
+    /** Total simulated cost of searches, in nanoseconds. */
+    public final long searchNanos;
+    /** Number of segments in the index at the end of the history. */
+    public final int finalSegmentCount;
+
+    Result(int merges, long mergedBytes, long searches, long searchedSegments, long searchNanos, int finalSegmentCount) {
+      this.merges = merges;
+      this.mergedBytes = mergedBytes;
+      this.searches = searches;
+      this.searchedSegments = searchedSegments;
+      this.searchNanos = searchNanos;
+      this.finalSegmentCount = finalSegmentCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT,
+          "merges=%d mergedMB=%.1f searches=%d avgSegmentsPerSearch=%.2f avgSearchMillis=%.3f finalSegments=%d",
+          merges, mergedBytes / 1024. / 1024., searches,
+          searches == 0 ? 0. : (double) searchedSegments / searches,
+          searches == 0 ? 0. : searchNanos / 1000000. / searches,
+          finalSegmentCount);
+    }
+  }
+
+  private final List<Event> events;
+  private final long segmentOverheadNanos;
+  private final long docNanos;
+  private long now;
+
+  private MergePolicySimulator(List<Event> events, long segmentOverheadNanos, long docNanos) {
+    this.events = events;
+    this.segmentOverheadNanos = segmentOverheadNanos;
+    this.docNanos = docNanos;
+  }
+
+  /** Parses a history, using {@link #DEFAULT_SEGMENT_OVERHEAD_NANOS} and {@link #DEFAULT_DOC_NANOS} as a cost model. */
+  public static MergePolicySimulator parse(BufferedReader history) throws IOException {
+    return parse(history, DEFAULT_SEGMENT_OVERHEAD_NANOS, DEFAULT_DOC_NANOS);
+  }
+
+  /** Parses a history, using the given cost model. */
+  public static MergePolicySimulator parse(BufferedReader history, long segmentOverheadNanos, long docNanos) throws IOException {
+    if (segmentOverheadNanos < 0 || docNanos < 0) {
+      throw new IllegalArgumentException("costs must be >= 0 (got segmentOverheadNanos=" + segmentOverheadNanos + ", docNanos=" + docNanos + ")");
+    }
+    final List<Event> events = new ArrayList<>();
+    int lineNumber = 0;
+    for (String line = history.readLine(); line != null; line = history.readLine()) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      final String[] tokens = line.split("\\s+");
+      final EventType type;
+      try {
+        type = EventType.valueOf(tokens[0].toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("line " + lineNumber + ": unknown event '" + tokens[0] + "'");
+      }
+      final int minArgs = type == EventType.FLUSH ? 2 : 1;
+      final int maxArgs = type == EventType.SEARCH ? 2 : minArgs;
+      if (tokens.length - 1 < minArgs || tokens.length - 1 > maxArgs) {
+        throw new IllegalArgumentException("line " + lineNumber + ": wrong number of arguments for event '" + tokens[0] + "'");
+      }
+      final long[] args = new long[tokens.length - 1];
+      for (int i = 0; i < args.length; i++) {
+        try {
+          args[i] = Long.parseLong(tokens[i + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("line " + lineNumber + ": invalid number '" + tokens[i + 1] + "'");
+        }
+        if (args[i] < 0) {
+          throw new IllegalArgumentException("line " + lineNumber + ": negative number '" + tokens[i + 1] + "'");
+        }
+      }
+      if (type == EventType.FLUSH && (args[0] == 0 || args[0] > IndexWriter.MAX_DOCS)) {
+        throw new IllegalArgumentException("line " + lineNumber + ": invalid maxDoc '" + tokens[1] + "'");
+      }
+      events.add(new Event(type, args));
+    }
+    return new MergePolicySimulator(events, segmentOverheadNanos, docNanos);
+  }
+
+  /**
+   * Returns a new {@link SegmentQueryCosts} that decays costs according to
+   * the simulated clock, to be used with a {@link QueryCostMergePolicy}.
+   */
+  public SegmentQueryCosts newQueryCosts(long halfLifeMillis) {
+    return new SegmentQueryCosts(halfLifeMillis, () -> now);
+  }
+
+  /**
+   * Replays the history against the given merge policy. If this policy is a
+   * {@link QueryCostMergePolicy}, the cost of searches is recorded into its
+   * {@link QueryCostMergePolicy#getQueryCosts() query costs}, which should
+   * have been created with {@link #newQueryCosts(long)}.
+   */
+  public Result run(MergePolicy mergePolicy) throws IOException {
+    final SegmentQueryCosts queryCosts;
+    if (mergePolicy instanceof QueryCostMergePolicy) {
+      queryCosts = ((QueryCostMergePolicy) mergePolicy).getQueryCosts();
+      queryCosts.retainAll(Collections.emptySet());
+    } else {
+      queryCosts = null;
+    }
+
+    now = 0;
+    try (SimulatedDirectory dir = new SimulatedDirectory();
+         IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(null).setMergePolicy(NoMergePolicy.INSTANCE))) {
+      final Run run = new Run(dir, writer, mergePolicy);
+      for (Event event : events) {
+        now += EVENT_NANOS;
+        switch (event.type) {
+          case FLUSH:
+            run.add(run.newSegment((int) event.args[0], 0, event.args[1]));
+            run.maybeMerge(MergeTrigger.SEGMENT_FLUSH);
+            break;
+          case DELETE:
+            run.delete(event.args[0]);
+            run.maybeMerge(MergeTrigger.FULL_FLUSH);
+            break;
+          case SEARCH:
+            run.search(event.args[0], event.args.length > 1 ? event.args[1] : Long.MAX_VALUE, queryCosts);
+            break;
+          default:
+            throw new AssertionError();
+        }
+      }
+      return new Result(run.merges, run.mergedBytes, run.searches, run.searchedSegments, run.searchNanos, run.infos.size());
+    }
+  }
+
+  /** Holds simulated segment sizes in memory. */
+  private static final class SimulatedDirectory extends FilterDirectory {
+    final Map<String,Long> fileLengths = new HashMap<>();
+
+    SimulatedDirectory() {
+      super(new RAMDirectory());
+    }
+
+    @Override
+    public long fileLength(String name) throws IOException {
+      final Long length = fileLengths.get(name);
+      return length == null ? super.fileLength(name) : length;
+    }
+  }
+
+  /** State of a single replay. */
+  private final class Run {
+    final SimulatedDirectory dir;
+    final IndexWriter writer;
+    final MergePolicy mergePolicy;
+    final SegmentInfos infos = new SegmentInfos();
+    // when each segment was written, merged segments count as written when the newest segment they merged was
+    final Map<SegmentCommitInfo,Long> writeOrder = new HashMap<>();
+    long counter;
+    int merges;
+    long mergedBytes;
+    long searches;
+    long searchedSegments;
+    long searchNanos;
+
+    Run(SimulatedDirectory dir, IndexWriter writer, MergePolicy mergePolicy) {
+      this.dir = dir;
+      this.writer = writer;
+      this.mergePolicy = mergePolicy;
+    }
+
+    SegmentCommitInfo newSegment(int maxDoc, int delCount, long sizeInBytes) {
+      final String name = "_" + Long.toString(counter++, Character.MAX_RADIX);
+      final SegmentInfo info = new SegmentInfo(dir, Version.LATEST, name, maxDoc, false, Codec.getDefault(),
+          Collections.emptyMap(), StringHelper.randomId(), new HashMap<>(), null);
+      final String fileName = IndexFileNames.segmentFileName(name, "", "sim");
+      info.setFiles(Collections.singleton(fileName));
+      dir.fileLengths.put(fileName, sizeInBytes);
+      return new SegmentCommitInfo(info, delCount, -1, -1, -1);
+    }
+
+    void add(SegmentCommitInfo info) {
+      infos.add(info);
+      writeOrder.put(info, counter);
+    }
+
+    void maybeMerge(MergeTrigger trigger) throws IOException {
+      for (MergePolicy.MergeSpecification spec = mergePolicy.findMerges(trigger, infos, writer);
+          spec != null && spec.merges.isEmpty() == false;
+          spec = mergePolicy.findMerges(MergeTrigger.MERGE_FINISHED, infos, writer)) {
+        for (MergePolicy.OneMerge merge : spec.merges) {
+          merge(merge.segments);
+        }
+      }
+    }
+
+    void merge(List<SegmentCommitInfo> segments) throws IOException {
+      long maxDoc = 0;
+      long sizeInBytes = 0;
+      long order = 0;
+      for (SegmentCommitInfo info : segments) {
+        final int liveDocs = info.info.maxDoc() - info.getDelCount();
+        maxDoc += liveDocs;
+        sizeInBytes += (long) ((double) info.sizeInBytes() * liveDocs / info.info.maxDoc());
+        order = Math.max(order, writeOrder.remove(info));
+        dir.fileLengths.keySet().removeAll(info.files());
+        infos.remove(info);
+      }
+      merges++;
+      if (maxDoc > 0) {
+        final SegmentCommitInfo merged = newSegment((int) maxDoc, 0, sizeInBytes);
+        infos.add(merged);
+        writeOrder.put(merged, order);
+        mergedBytes += sizeInBytes;
+      }
+    }
+
+    void delete(long numDocs) {
+      long liveDocs = 0;
+      for (SegmentCommitInfo info : infos) {
+        liveDocs += info.info.maxDoc() - info.getDelCount();
+      }
+      long remaining = Math.min(numDocs, liveDocs);
+      if (remaining == 0) {
+        return;
+      }
+      // first delete proportionally to the number of live docs, then spread what rounding left over
+      final long toDelete = remaining;
+      for (int pass = 0; pass < 2 && remaining > 0; pass++) {
+        for (SegmentCommitInfo info : infos) {
+          final int segLiveDocs = info.info.maxDoc() - info.getDelCount();
+          long segDeletes = pass == 0 ? (long) ((double) toDelete * segLiveDocs / liveDocs) : segLiveDocs;
+          segDeletes = Math.min(segDeletes, Math.min(remaining, segLiveDocs));
+          info.setDelCount(info.getDelCount() + (int) segDeletes);
+          remaining -= segDeletes;
+        }
+      }
+      // fully deleted segments are dropped, like IndexWriter does
+      for (SegmentCommitInfo info : new ArrayList<>(infos.asList())) {
+        if (info.getDelCount() == info.info.maxDoc()) {
+          writeOrder.remove(info);
+          infos.remove(info);
+        }
+      }
+    }
+
+    void search(long count, long newestDocs, SegmentQueryCosts queryCosts) {
+      final List<SegmentCommitInfo> newestFirst = new ArrayList<>(infos.asList());
+      Collections.sort(newestFirst, Comparator.comparing(writeOrder::get, Comparator.reverseOrder()));
+      long docs = 0;
+      for (SegmentCommitInfo info : newestFirst) {
+        if (docs >= newestDocs) {
+          break;
+        }
+        docs += info.info.maxDoc() - info.getDelCount();
+        final long segmentNanos = segmentOverheadNanos + docNanos * info.info.maxDoc();
+        searchedSegments += count;
+        searchNanos += count * segmentNanos;
+        if (queryCosts != null) {
+          queryCosts.record(info.info.name, count * segmentNanos);
+        }
+      }
+      searches += count;
+    }
+  }
+
+  @SuppressForbidden(reason = "System.out required: command line tool")
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 4) {
+      System.err.println("Usage: MergePolicySimulator <historyFile> [<halfLifeSeconds> [<segmentOverheadNanos> <docNanos>]]");
+      System.exit(1);
+    }
+    final long halfLifeSeconds = args.length > 1 ? Long.parseLong(args[1]) : TimeUnit.MILLISECONDS.toSeconds(SegmentQueryCosts.DEFAULT_HALF_LIFE_MILLIS);
+    final long segmentOverheadNanos = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEGMENT_OVERHEAD_NANOS;
+    final long docNanos = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_DOC_NANOS;
+
+    final MergePolicySimulator simulator;
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+      simulator = parse(reader, segmentOverheadNanos, docNanos);
+    }
+
+    final List<MergePolicy> policies = new ArrayList<>();
+    policies.add(new TieredMergePolicy());
+    policies.add(new QueryCostMergePolicy(simulator.newQueryCosts(TimeUnit.SECONDS.toMillis(halfLifeSeconds))));
+    for (MergePolicy policy : policies) {
+      System.out.println(policy);
+      System.out.println("  " + simulator.run(policy));
+    }
+  }
+}
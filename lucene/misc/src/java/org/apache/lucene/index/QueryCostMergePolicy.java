@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link TieredMergePolicy} that also takes query-time cost into
+ * account. Each segment adds a fixed overhead to every query (creating
+ * scorers, looking up terms, ...), so merging hot segments together saves
+ * more than merging segments that are rarely searched. This policy:
+ * <ul>
+ *   <li>favors merging the segments that searches spend the most time in
+ *       among merges that are otherwise similar, and</li>
+ *   <li>when {@link TieredMergePolicy} finds nothing to merge, still merges
+ *       segments that are hotter than average, as long as there are at
+ *       least half {@link #getSegmentsPerTier() segments per tier} of them
+ *       and the merge is balanced, in order to reduce the number of
+ *       segments that hot queries need to visit at the expense of more
+ *       merging.</li>
+ * </ul>
+ * <p>
+ * Costs are read from a {@link SegmentQueryCosts} instance, which should be
+ * fed by searches, for instance through
+ * {@link org.apache.lucene.search.CostRecordingIndexSearcher}. Because
+ * these costs are decayed over time, they also reflect the temperature of
+ * the data: segments that are no longer searched are progressively scored
+ * like {@link TieredMergePolicy} would. Small and heavily deleted segments
+ * are already favored by {@link TieredMergePolicy}.
+ *
+ * @see MergePolicySimulator
+ * @lucene.experimental
+ */
+public class QueryCostMergePolicy extends TieredMergePolicy {
+
+  /** Default weight of query costs, see {@link #setQueryCostWeight(double)}. */
+  public static final double DEFAULT_QUERY_COST_WEIGHT = 2.0;
+
+  private final SegmentQueryCosts queryCosts;
+  private double queryCostWeight = DEFAULT_QUERY_COST_WEIGHT;
+
+  /** Creates a new instance that reads per-segment query costs from the given {@link SegmentQueryCosts}. */
+  public QueryCostMergePolicy(SegmentQueryCosts queryCosts) {
+    if (queryCosts == null) {
+      throw new IllegalArgumentException("queryCosts must not be null");
+    }
+    this.queryCosts = queryCosts;
+  }
+
+  /** Returns the {@link SegmentQueryCosts} this policy reads query costs from. */
+  public SegmentQueryCosts getQueryCosts() {
+    return queryCosts;
+  }
+
+  /**
+   * Sets how strongly merges of segments that are expensive to search are
+   * favored. A merge whose segments account for a fraction {@code share} of
+   * the total query cost sees its score divided by
+   * {@code 1 + weight * share * (n-1)/n}, where {@code n} is the number of
+   * segments being merged, since merging {@code n} segments removes the
+   * per-segment overhead of all but one of them. A weight of 0 makes this
+   * policy behave like {@link TieredMergePolicy}. Default is 2.0.
+   */
+  public QueryCostMergePolicy setQueryCostWeight(double weight) {
+    if (weight < 0.0) {
+      throw new IllegalArgumentException("queryCostWeight must be >= 0.0 (got " + weight + ")");
+    }
+    queryCostWeight = weight;
+    return this;
+  }
+
+  /** See {@link #setQueryCostWeight}. */
+  public double getQueryCostWeight() {
+    return queryCostWeight;
+  }
+
+  @Override
+  public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos infos, IndexWriter writer) throws IOException {
+    // segments that got merged away won't be searched anymore
+    final Set<String> segmentNames = new HashSet<>();
+    for (SegmentCommitInfo info : infos) {
+      segmentNames.add(info.info.name);
+    }
+    queryCosts.retainAll(segmentNames);
+    final MergeSpecification spec = super.findMerges(mergeTrigger, infos, writer);
+    if (spec != null || queryCostWeight == 0) {
+      return spec;
+    }
+    return findHotMerge(infos, writer);
+  }
+
+  private MergeSpecification findHotMerge(SegmentInfos infos, IndexWriter writer) throws IOException {
+    final double totalCost = queryCosts.getTotalCost();
+    if (totalCost <= 0) {
+      return null;
+    }
+    final double averageCost = totalCost / infos.size();
+    final long maxMergedSegmentBytes = (long) (getMaxMergedSegmentMB() * 1024 * 1024);
+    final long floorSegmentBytes = (long) (getFloorSegmentMB() * 1024 * 1024);
+    final int minMergeAtOnce = Math.max(2, (int) (getSegmentsPerTier() / 2));
+
+    final Collection<SegmentCommitInfo> merging = writer.getMergingSegments();
+    final Map<SegmentCommitInfo,Long> sizes = new HashMap<>();
+    final List<SegmentCommitInfo> hot = new ArrayList<>();
+    for (SegmentCommitInfo info : infos) {
+      final long size = size(info, writer);
+      if (merging.contains(info) == false && size < maxMergedSegmentBytes / 2 && queryCosts.getCost(info.info.name) >= averageCost) {
+        sizes.put(info, size);
+        hot.add(info);
+      }
+    }
+    if (hot.size() < minMergeAtOnce) {
+      return null;
+    }
+    Collections.sort(hot, Comparator.comparing((SegmentCommitInfo info) -> sizes.get(info)).reversed()
+        .thenComparing(info -> info.info.name));
+
+    // like TieredMergePolicy, consider windows of segments sorted by decreasing size
+    MergeScore bestScore = null;
+    List<SegmentCommitInfo> best = null;
+    for (int start = 0; start <= hot.size() - minMergeAtOnce; start++) {
+      final List<SegmentCommitInfo> candidate = new ArrayList<>();
+      long totBytes = 0;
+      long totBytesFloored = 0;
+      for (int i = start; i < hot.size() && candidate.size() < getMaxMergeAtOnce(); i++) {
+        final long size = sizes.get(hot.get(i));
+        if (totBytes + size > maxMergedSegmentBytes) {
+          continue;
+        }
+        candidate.add(hot.get(i));
+        totBytes += size;
+        totBytesFloored += Math.max(floorSegmentBytes, size);
+      }
+      // only balanced merges, otherwise we would keep merging recently flushed segments into the same hot segment
+      if (candidate.size() < minMergeAtOnce || 2 * Math.max(floorSegmentBytes, sizes.get(candidate.get(0))) > totBytesFloored) {
+        continue;
+      }
+      final MergeScore score = score(candidate, false, 0, writer);
+      if (bestScore == null || score.getScore() < bestScore.getScore()) {
+        bestScore = score;
+        best = candidate;
+      }
+    }
+    if (best == null) {
+      return null;
+    }
+
+    if (writer.infoStream.isEnabled("TMP")) {
+      writer.infoStream.message("TMP", "add hot merge=" + writer.segString(best) + " score=" + String.format(Locale.ROOT, "%.3f", bestScore.getScore()) + " " + bestScore.getExplanation());
+    }
+    final MergeSpecification spec = new MergeSpecification();
+    spec.add(new OneMerge(best));
+    return spec;
+  }
+
+  @Override
+  protected MergeScore score(List<SegmentCommitInfo> candidate, boolean hitTooLarge, long mergingBytes, IndexWriter writer) throws IOException {
+    final MergeScore score = super.score(candidate, hitTooLarge, mergingBytes, writer);
+    final double totalCost = queryCosts.getTotalCost();
+    if (totalCost <= 0 || queryCostWeight == 0) {
+      return score;
+    }
+
+    double candidateCost = 0;
+    for (SegmentCommitInfo info : candidate) {
+      candidateCost += queryCosts.getCost(info.info.name);
+    }
+    final double costShare = Math.min(1.0, candidateCost / totalCost);
+    final int numSegments = candidate.size();
+    final double savedShare = costShare * (numSegments - 1) / numSegments;
+    final double finalScore = score.getScore() / (1 + queryCostWeight * savedShare);
+
+    return new MergeScore() {
+
+      @Override
+      double getScore() {
+        return finalScore;
+      }
+
+      @Override
+      String getExplanation() {
+        return score.getExplanation() + " queryCostShare=" + String.format(Locale.ROOT, "%.3f", costShare);
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + ", queryCostWeight=" + queryCostWeight;
+  }
+}
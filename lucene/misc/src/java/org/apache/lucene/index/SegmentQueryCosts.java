@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of how much time queries spend in each segment, so that
+ * merge policies can favor merging the segments that are the most
+ * expensive to search, see {@link QueryCostMergePolicy}.
+ * <p>
+ * Costs are decayed exponentially over time with a configurable half-life,
+ * so that a segment that used to be hot but is no longer searched (or whose
+ * queries got cheaper) gradually stops being considered expensive. Costs
+ * are tracked by segment name, which stays the same across reopens as
+ * long as the segment is not merged away.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see org.apache.lucene.search.CostRecordingIndexSearcher
+ * @lucene.experimental
+ */
+public class SegmentQueryCosts {
+
+  /** Default half-life of recorded costs: 10 minutes. */
+  public static final long DEFAULT_HALF_LIFE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final class Cost {
+    double value;
+    long lastUpdate;
+  }
+
+  private final Map<String,Cost> costs = new HashMap<>();
+  private final double halfLifeNanos;
+  private final LongSupplier clock;
+
+  /** Creates a new instance with {@link #DEFAULT_HALF_LIFE_MILLIS}. */
+  public SegmentQueryCosts() {
+    this(DEFAULT_HALF_LIFE_MILLIS);
+  }
+
+  /** Creates a new instance whose costs halve every {@code halfLifeMillis} milliseconds. */
+  public SegmentQueryCosts(long halfLifeMillis) {
+    this(halfLifeMillis, System::nanoTime);
+  }
+
+  /** Expert: creates a new instance that reads the current time, in nanoseconds, from the given clock. */
+  SegmentQueryCosts(long halfLifeMillis, LongSupplier clock) {
+    if (halfLifeMillis <= 0) {
+      throw new IllegalArgumentException("halfLifeMillis must be > 0 (got " + halfLifeMillis + ")");
+    }
+    this.halfLifeNanos = TimeUnit.MILLISECONDS.toNanos(halfLifeMillis);
+    this.clock = clock;
+  }
+
+  /**
+   * Records time spent searching the given leaf. This is a no-op if the
+   * leaf is not backed by a {@link SegmentReader}.
+   */
+  public void record(LeafReader reader, long nanos) {
+    final LeafReader unwrapped = FilterLeafReader.unwrap(reader);
+    if (unwrapped instanceof SegmentReader) {
+      record(((SegmentReader) unwrapped).getSegmentName(), nanos);
+    }
+  }
+
+  /** Records time spent searching the segment with the given name. */
+  public synchronized void record(String segmentName, long nanos) {
+    if (nanos < 0) {
+      throw new IllegalArgumentException("nanos must be >= 0 (got " + nanos + ")");
+    }
+    final long now = clock.getAsLong();
+    Cost cost = costs.get(segmentName);
+    if (cost == null) {
+      cost = new Cost();
+      cost.lastUpdate = now;
+      costs.put(segmentName, cost);
+    }
+    cost.value = decay(cost, now) + nanos;
+    cost.lastUpdate = now;
+  }
+
+  /** Returns the decayed cost of the segment with the given name, or 0 if no cost was recorded for it. */
+  public synchronized double getCost(String segmentName) {
+    final Cost cost = costs.get(segmentName);
+    return cost == null ? 0 : decay(cost, clock.getAsLong());
+  }
+
+  /** Returns the sum of the decayed costs of all segments. */
+  public synchronized double getTotalCost() {
+    final long now = clock.getAsLong();
+    double total = 0;
+    for (Cost cost : costs.values()) {
+      total += decay(cost, now);
+    }
+    return total;
+  }
+
+  /** Forgets about the costs of all segments whose names are not in the given collection. */
+  public synchronized void retainAll(Collection<String> segmentNames) {
+    costs.keySet().retainAll(segmentNames);
+  }
+
+  /** Returns the number of segments that costs are tracked for. */
+  public synchronized int size() {
+    return costs.size();
+  }
+
+  private double decay(Cost cost, long now) {
+    return cost.value * Math.pow(0.5, (now - cost.lastUpdate) / halfLifeNanos);
+  }
+}
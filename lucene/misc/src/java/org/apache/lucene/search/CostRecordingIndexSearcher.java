@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentQueryCosts;
+
+/**
+ * An {@link IndexSearcher} that records the time spent searching each
+ * segment into a {@link SegmentQueryCosts} instance, typically the one
+ * that a {@link org.apache.lucene.index.QueryCostMergePolicy} reads from.
+ *
+ * @lucene.experimental
+ */
+public class CostRecordingIndexSearcher extends IndexSearcher {
+
+  private final SegmentQueryCosts queryCosts;
+
+  /** Creates a searcher over the given reader that records per-segment costs into {@code queryCosts}. */
+  public CostRecordingIndexSearcher(IndexReader r, SegmentQueryCosts queryCosts) {
+    this(r, null, queryCosts);
+  }
+
+  /**
+   * Creates a searcher over the given reader that searches segments using
+   * the given executor, see {@link IndexSearcher#IndexSearcher(IndexReader, ExecutorService)},
+   * and records per-segment costs into {@code queryCosts}.
+   */
+  public CostRecordingIndexSearcher(IndexReader r, ExecutorService executor, SegmentQueryCosts queryCosts) {
+    super(r, executor);
+    if (queryCosts == null) {
+      throw new IllegalArgumentException("queryCosts must not be null");
+    }
+    this.queryCosts = queryCosts;
+  }
+
+  /** Returns the {@link SegmentQueryCosts} this searcher records costs into. */
+  public SegmentQueryCosts getQueryCosts() {
+    return queryCosts;
+  }
+
+  @Override
+  protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
+    for (LeafReaderContext ctx : leaves) {
+      final long start = System.nanoTime();
+      try {
+        super.search(Collections.singletonList(ctx), weight, collector);
+      } finally {
+        queryCosts.record(ctx.reader(), System.nanoTime() - start);
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.CostRecordingIndexSearcher;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestQueryCostMergePolicy extends LuceneTestCase {
+
+  public void testDecay() {
+    final AtomicLong clock = new AtomicLong();
+    final SegmentQueryCosts costs = new SegmentQueryCosts(1000, clock::get);
+    costs.record("_0", 800);
+    costs.record("_1", 200);
+    assertEquals(800, costs.getCost("_0"), 0d);
+    assertEquals(1000, costs.getTotalCost(), 0d);
+    assertEquals(0, costs.getCost("_2"), 0d);
+
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(400, costs.getCost("_0"), 1e-6);
+    assertEquals(500, costs.getTotalCost(), 1e-6);
+
+    costs.record("_0", 100);
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    assertEquals(125, costs.getCost("_0"), 1e-6);
+    assertEquals(25, costs.getCost("_1"), 1e-6);
+
+    costs.retainAll(new HashSet<>(Arrays.asList("_1", "_2")));
+    assertEquals(1, costs.size());
+    assertEquals(0, costs.getCost("_0"), 0d);
+    assertEquals(25, costs.getTotalCost(), 1e-6);
+
+    expectThrows(IllegalArgumentException.class, () -> new SegmentQueryCosts(0));
+    expectThrows(IllegalArgumentException.class, () -> costs.record("_0", -1));
+  }
+
+  public void testRecordSearchCosts() throws Exception {
+    Directory dir = newDirectory();
+    SegmentQueryCosts costs = new SegmentQueryCosts();
+    QueryCostMergePolicy mp = new QueryCostMergePolicy(costs);
+    mp.setSegmentsPerTier(2).setMaxMergeAtOnce(2);
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMaxBufferedDocs(10).setMergePolicy(mp).setMergeScheduler(new SerialMergeScheduler()));
+    final int numDocs = atLeast(200);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new StringField("even", i % 2 == 0 ? "true" : "false", Field.Store.NO));
+      w.addDocument(doc);
+      if (i % 20 == 0) {
+        try (DirectoryReader reader = DirectoryReader.open(w)) {
+          IndexSearcher searcher = new CostRecordingIndexSearcher(reader, costs);
+          assertEquals(i + 1, searcher.count(new MatchAllDocsQuery()));
+          searcher.search(new TermQuery(new Term("even", "true")), 10);
+
+          Set<String> segmentNames = new HashSet<>();
+          for (LeafReaderContext ctx : reader.leaves()) {
+            segmentNames.add(((SegmentReader) ctx.reader()).getSegmentName());
+          }
+          costs.retainAll(segmentNames);
+          assertEquals(segmentNames.size(), costs.size());
+        }
+      }
+    }
+
+    w.forceMerge(1);
+    try (DirectoryReader reader = DirectoryReader.open(w)) {
+      assertEquals(1, reader.leaves().size());
+      // merges forget about segments that got merged away
+      w.addDocument(new Document());
+      w.commit();
+      mp.findMerges(MergeTrigger.EXPLICIT, SegmentInfos.readLatestCommit(dir), w);
+      assertTrue(costs.size() <= 2);
+    }
+    w.close();
+    dir.close();
+  }
+
+  public void testSettings() {
+    QueryCostMergePolicy mp = new QueryCostMergePolicy(new SegmentQueryCosts());
+    assertEquals(QueryCostMergePolicy.DEFAULT_QUERY_COST_WEIGHT, mp.getQueryCostWeight(), 0d);
+    mp.setQueryCostWeight(0.5);
+    assertEquals(0.5, mp.getQueryCostWeight(), 0d);
+    assertTrue(mp.toString(), mp.toString().contains("queryCostWeight=0.5"));
+    expectThrows(IllegalArgumentException.class, () -> mp.setQueryCostWeight(-1));
+    expectThrows(IllegalArgumentException.class, () -> new QueryCostMergePolicy(null));
+  }
+
+  /** Time-based data: documents are only appended, and most searches only hit recent data. */
+  private static String timeBasedHistory() {
+    StringBuilder history = new StringBuilder("# time-based data\n");
+    for (int i = 0; i < 500; i++) {
+      history.append("flush 1000 ").append(100_000 + (i % 7) * 10_000).append('\n');
+      history.append("search 100 5000\n");
+      if (i % 50 == 0) {
+        history.append("search 1\n");
+      }
+    }
+    return history.toString();
+  }
+
+  public void testSimulator() throws Exception {
+    MergePolicySimulator simulator = MergePolicySimulator.parse(new BufferedReader(new StringReader(timeBasedHistory())));
+
+    MergePolicySimulator.Result tiered = simulator.run(new TieredMergePolicy());
+    // the same policy yields the same result
+    assertEquals(tiered.toString(), simulator.run(new TieredMergePolicy()).toString());
+    // no query cost weight means no difference with TieredMergePolicy
+    assertEquals(tiered.toString(),
+        simulator.run(new QueryCostMergePolicy(simulator.newQueryCosts(60_000)).setQueryCostWeight(0)).toString());
+
+    MergePolicySimulator.Result queryCost = simulator.run(new QueryCostMergePolicy(simulator.newQueryCosts(60_000)));
+    assertEquals(500 * 100 + 10, tiered.searches);
+    assertEquals(tiered.searches, queryCost.searches);
+    assertTrue(tiered.merges > 0);
+    assertTrue(queryCost.merges > 0);
+    assertTrue(tiered + " vs " + queryCost, queryCost.searchNanos <= tiered.searchNanos);
+  }
+
+  public void testSimulatorDeletes() throws Exception {
+    String history = "flush 100 1000\nflush 100 1000\ndelete 150\nsearch 1\ndelete 100\nsearch 1\n";
+    MergePolicySimulator simulator = MergePolicySimulator.parse(new BufferedReader(new StringReader(history)), 10, 1);
+    MergePolicySimulator.Result result = simulator.run(new TieredMergePolicy());
+    assertEquals(2, result.searches);
+    // first search: 2 segments of 100 docs, the second one finds no segments since all docs are deleted
+    assertEquals(2, result.searchedSegments);
+    assertEquals(2 * (10 + 100), result.searchNanos);
+    assertEquals(0, result.finalSegmentCount);
+  }
+
+  public void testSimulatorParseErrors() throws Exception {
+    for (String history : new String[] { "foo 1", "flush 1", "flush 0 10", "flush 1 -2", "delete", "search 1 2 3", "search x" }) {
+      expectThrows(IllegalArgumentException.class, () -> MergePolicySimulator.parse(new BufferedReader(new StringReader(history))));
+    }
+  }
+}
@@ -72,6 +72,20 @@ public class AssertingScorer extends Scorer {
     return score;
   }
 
+  @Override
+  public void setMinCompetitiveScore(float minScore) {
+    assert needsScores;
+    assert minScore >= 0 : "minScore=" + minScore;
+    in.setMinCompetitiveScore(minScore);
+  }
+
+  @Override
+  public float maxScore() {
+    final float maxScore = in.maxScore();
+    assert Float.isNaN(maxScore) == false;
+    return maxScore;
+  }
+
   @Override
   public Collection<ChildScorer> getChildren() {
     // We cannot hide that we hold a single child, else
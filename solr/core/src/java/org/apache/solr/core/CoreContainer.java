@@ -65,7 +65,10 @@ import org.apache.solr.handler.admin.ZookeeperInfoHandler;
 import org.apache.solr.handler.component.ShardHandlerFactory;
 import org.apache.solr.logging.LogWatcher;
 import org.apache.solr.logging.MDCLoggingContext;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.request.SolrRequestHandler;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.security.AuthenticationPlugin;
 import org.apache.solr.security.AuthorizationPlugin;
 import org.apache.solr.security.HttpClientBuilderPlugin;
@@ -138,6 +141,8 @@ public class CoreContainer {
 
   protected final String solrHome;
 
+  private final SolrMetricManager metricManager = new SolrMetricManager();
+
   protected final CoresLocator coresLocator;
 
   private String hostName;
@@ -433,6 +438,9 @@ public class CoreContainer {
   public void load()  {
     log.debug("Loading cores into CoreContainer [instanceDir={}]", loader.getInstancePath());
 
+    // work that executors do for a request, eg. faceting or searching segments, belongs to that request
+    ExecutorUtil.addThreadLocalProvider(SolrRequestInfo.getInheritableThreadLocalProvider());
+
     // add the sharedLib to the shared resource loader before initializing cfg based plugins
     String libDir = cfg.getSharedLibDirectory();
     if (libDir != null) {
@@ -448,9 +456,17 @@ public class CoreContainer {
     }
 
 
+    String nodeRegistry = SolrMetricManager.getRegistryName(SolrMetricManager.Group.node);
+    metricManager.loadReporters(cfg.getMetricReporterPlugins(), loader, SolrMetricManager.Group.node, nodeRegistry);
+    solrCores.initializeMetrics(metricManager, nodeRegistry, "CONTAINER.cores");
+
     shardHandlerFactory = ShardHandlerFactory.newInstance(cfg.getShardHandlerFactoryPluginInfo(), loader);
+    if (shardHandlerFactory instanceof SolrMetricProducer) {
+      ((SolrMetricProducer) shardHandlerFactory).initializeMetrics(metricManager, nodeRegistry, "httpShardHandler");
+    }
 
     updateShardHandler = new UpdateShardHandler(cfg.getUpdateShardHandlerConfig());
+    updateShardHandler.initializeMetrics(metricManager, nodeRegistry, "updateShardHandler");
 
     solrCores.allocateLazyCores(cfg.getTransientCacheSize(), loader);
 
@@ -677,6 +693,8 @@ public class CoreContainer {
       log.warn("Exception while closing authentication plugin.", e);
     }
 
+    metricManager.closeReporters();
+
     org.apache.lucene.util.IOUtils.closeWhileHandlingException(loader); // best effort
   }
 
@@ -895,6 +913,13 @@ public class CoreContainer {
 
   }
 
+  /**
+   * @return the manager of node and core metrics
+   */
+  public SolrMetricManager getMetricManager() {
+    return metricManager;
+  }
+
   /**
    * @return a Collection of registered SolrCores
    */
@@ -1049,6 +1074,8 @@ public class CoreContainer {
     if (close)
       core.closeAndWait();
 
+    metricManager.removeRegistry(core.getMetricRegistryName());
+
     if (zkSys.getZkController() != null) {
       try {
         zkSys.getZkController().unregister(name, cd);
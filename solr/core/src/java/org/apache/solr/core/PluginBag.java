@@ -40,6 +40,7 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.handler.RequestHandlerBase;
 import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.util.CryptoKeys;
 import org.apache.solr.util.SimplePostTool;
@@ -256,6 +257,11 @@ public class PluginBag<T> implements AutoCloseable {
       String name = (inst instanceof SolrRequestHandler) ? pluginKey : mBean.getName();
       core.registerInfoBean(name, mBean);
     }
+    if (inst instanceof SolrMetricProducer) {
+      String scope = (inst instanceof SolrRequestHandler || !(inst instanceof SolrInfoMBean))
+          ? pluginKey : ((SolrInfoMBean) inst).getName();
+      ((SolrMetricProducer) inst).initializeMetrics(core.getMetricManager(), core.getMetricRegistryName(), scope);
+    }
   }
 
 
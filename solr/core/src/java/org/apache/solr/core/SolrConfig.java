@@ -249,6 +249,10 @@ public class SolrConfig extends Config implements MapSerializable {
     queryResultWindowSize = Math.max(1, getInt("query/queryResultWindowSize", 1));
     queryResultMaxDocsCached = getInt("query/queryResultMaxDocsCached", Integer.MAX_VALUE);
     enableLazyFieldLoading = getBool("query/enableLazyFieldLoading", false);
+    searchThreads = Math.max(0, getInt("query/searchThreads", 0));
+    exportThreads = Math.max(0, getInt("query/exportThreads", Runtime.getRuntime().availableProcessors()));
+    segmentJoinCacheRamMB = Math.max(0, getInt("query/segmentJoinCacheRamMB", 32));
+    segmentFilterCacheRamMB = Math.max(0, getInt("query/segmentFilterCacheRamMB", 0));
     
     useRangeVersionsForPeerSync = getBool("peerSync/useRangeVersions", true);
 
@@ -489,6 +493,14 @@ public class SolrConfig extends Config implements MapSerializable {
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
+  // number of threads used to search segments concurrently, 0 to disable
+  public final int searchThreads;
+  // number of threads shared by all /export requests to sort segments concurrently, 0 to disable
+  public final int exportThreads;
+  // RAM budget of the per-segment cache of {!join method=segment}, 0 to disable
+  public final int segmentJoinCacheRamMB;
+  // RAM budget of the per-segment results of filters, which filterCache misses and autowarming reuse, 0 to disable
+  public final int segmentFilterCacheRamMB;
   
   public final boolean useRangeVersionsForPeerSync;
   
@@ -853,6 +865,10 @@ public class SolrConfig extends Config implements MapSerializable {
     result.put("query", m);
     m.put("useFilterForSortedQuery", useFilterForSortedQuery);
     m.put("queryResultWindowSize", queryResultWindowSize);
+    m.put("searchThreads", searchThreads);
+    m.put("exportThreads", exportThreads);
+    m.put("segmentJoinCacheRamMB", segmentJoinCacheRamMB);
+    m.put("segmentFilterCacheRamMB", segmentFilterCacheRamMB);
     m.put("queryResultMaxDocsCached", queryResultMaxDocsCached);
     m.put("enableLazyFieldLoading", enableLazyFieldLoading);
     m.put("maxBooleanClauses", booleanQueryMaxClauseCount);
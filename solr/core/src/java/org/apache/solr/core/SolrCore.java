@@ -93,7 +93,11 @@ import org.apache.solr.handler.ReplicationHandler;
 import org.apache.solr.handler.RequestHandlerBase;
 import org.apache.solr.handler.component.HighlightComponent;
 import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.index.OrdinalMapCache;
 import org.apache.solr.logging.MDCLoggingContext;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
+import org.apache.solr.metrics.SolrMetricReporter;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.response.BinaryResponseWriter;
@@ -122,6 +126,7 @@ import org.apache.solr.schema.ManagedIndexSchema;
 import org.apache.solr.schema.SchemaManager;
 import org.apache.solr.schema.SimilarityFactory;
 import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.SegmentDocIdSetCache;
 import org.apache.solr.search.SolrFieldCacheMBean;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.ValueSourceParser;
@@ -198,6 +203,10 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
 
   private final List<Runnable> confListeners = new CopyOnWriteArrayList<>();
 
+  private final SolrMetricManager metricManager;
+  private final String metricRegistryName;
+  private List<SolrMetricReporter> metricReporters = Collections.emptyList();
+
   private final ReentrantLock ruleExpiryLock;
   private final ReentrantLock snapshotDelLock; // A lock instance to guard against concurrent deletions.
 
@@ -205,6 +214,13 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
 
   private final Map<Object, IndexFingerprint> perSegmentFingerprintCache = new MapMaker().weakKeys().makeMap();
 
+  private final OrdinalMapCache ordinalMapCache = new OrdinalMapCache();
+
+  /** Returns the cache that keeps ordinal maps up to date across searchers of this core. */
+  public OrdinalMapCache getOrdinalMapCache() {
+    return ordinalMapCache;
+  }
+
   public long getStartNanoTime() {
     return startNanoTime;
   }
@@ -392,6 +408,29 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
     this.coreDescriptor = new CoreDescriptor(v, this.coreDescriptor);
   }
 
+  /** Returns the manager of the metrics of this core. */
+  public SolrMetricManager getMetricManager() {
+    return metricManager;
+  }
+
+  /**
+   * Returns the name of the registry that holds the metrics of this core, see
+   * {@link SolrMetricManager#getRegistryName(SolrMetricManager.Group, String...)}.
+   */
+  public String getMetricRegistryName() {
+    return metricRegistryName;
+  }
+
+  private static String createMetricRegistryName(CoreDescriptor cd, String name) {
+    CloudDescriptor cloudDescriptor = cd.getCloudDescriptor();
+    if (cloudDescriptor != null && cloudDescriptor.getCollectionName() != null
+        && cloudDescriptor.getShardId() != null && cloudDescriptor.getCoreNodeName() != null) {
+      return SolrMetricManager.getRegistryName(SolrMetricManager.Group.core,
+          cloudDescriptor.getCollectionName(), cloudDescriptor.getShardId(), cloudDescriptor.getCoreNodeName());
+    }
+    return SolrMetricManager.getRegistryName(SolrMetricManager.Group.core, name);
+  }
+
   public String getLogId()
   {
     return this.logid;
@@ -818,6 +857,10 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
     this.coreDescriptor = Objects.requireNonNull(coreDescriptor, "coreDescriptor cannot be null");
     setName(name);
     MDCLoggingContext.setCore(this);
+
+    final CoreContainer cc = coreDescriptor.getCoreContainer();
+    this.metricManager = cc != null ? cc.getMetricManager() : new SolrMetricManager();
+    this.metricRegistryName = createMetricRegistryName(coreDescriptor, name);
     
     resourceLoader = config.getResourceLoader();
     this.solrConfig = config;
@@ -843,9 +886,25 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
     this.infoRegistry = initInfoRegistry(name, config);
     infoRegistry.put("fieldCache", new SolrFieldCacheMBean());
 
+    // Initialize metrics reporters
+    if (cc != null && cc.getConfig() != null) {
+      metricReporters = metricManager.loadReporters(cc.getConfig().getMetricReporterPlugins(),
+          resourceLoader, SolrMetricManager.Group.core, metricRegistryName);
+    }
+
     initSchema(config, schema);
 
     this.maxWarmingSearchers = config.maxWarmingSearchers;
+    this.segmentSearchExecutor = config.searchThreads > 0
+        ? ExecutorUtil.newMDCAwareFixedThreadPool(config.searchThreads, new DefaultSolrThreadFactory("segmentSearch"))
+        : null;
+    this.exportExecutor = config.exportThreads > 0
+        ? ExecutorUtil.newMDCAwareFixedThreadPool(config.exportThreads, new DefaultSolrThreadFactory("exportSegmentSort"))
+        : null;
+    this.segmentJoinCache = new SegmentDocIdSetCache(config.segmentJoinCacheRamMB * 1024L * 1024L);
+    this.segmentFilterCache = config.segmentFilterCacheRamMB > 0
+        ? new SegmentDocIdSetCache(config.segmentFilterCacheRamMB * 1024L * 1024L)
+        : null;
     this.slowQueryThresholdMillis = config.slowQueryThresholdMillis;
 
     booleanQueryMaxClauseCount();
@@ -1026,6 +1085,9 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
       newUpdateHandler = createUpdateHandler(updateHandlerClass, updateHandler);
     }
     infoRegistry.put("updateHandler", newUpdateHandler);
+    if (newUpdateHandler instanceof SolrMetricProducer) {
+      ((SolrMetricProducer) newUpdateHandler).initializeMetrics(metricManager, metricRegistryName, "updateHandler");
+    }
     return newUpdateHandler;
   }
   
@@ -1204,6 +1266,38 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
     return solrCoreState;
   }
 
+  /**
+   * Returns the executor used to search the segments of a single query concurrently,
+   * or null if <code>searchThreads</code> is not configured for this core.
+   */
+  public ExecutorService getSegmentSearchExecutor() {
+    return segmentSearchExecutor;
+  }
+
+  /**
+   * Returns the executor shared by all /export requests of this core to sort segments concurrently,
+   * or null if <code>exportThreads</code> is 0.
+   */
+  public ExecutorService getExportExecutor() {
+    return exportExecutor;
+  }
+
+  /**
+   * Returns the cache of the per-segment results of <code>{!join method=segment}</code> queries,
+   * which is shared by all searchers of this core.
+   */
+  public SegmentDocIdSetCache getSegmentJoinCache() {
+    return segmentJoinCache;
+  }
+
+  /**
+   * Returns the cache of the per-segment results of filters, which is shared by all searchers of
+   * this core, or null if <code>segmentFilterCacheRamMB</code> is not configured.
+   */
+  public SegmentDocIdSetCache getSegmentFilterCache() {
+    return segmentFilterCache;
+  }
+
   /**
    * @return an update processor registered to the given name.  Throw an exception if this chain is undefined
    */
@@ -1285,6 +1379,11 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
       }
     }
 
+    // the reporters may have been taken over by a reloaded core, in which case they are left open
+    for (SolrMetricReporter reporter : metricReporters) {
+      metricManager.closeReporter(metricRegistryName, reporter);
+    }
+
     if(reqHandlers != null) reqHandlers.close();
     responseWriters.close();
     searchComponents.close();
@@ -1353,6 +1452,28 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
       }
     }
 
+    if (segmentSearchExecutor != null) {
+      try {
+        ExecutorUtil.shutdownAndAwaitTermination(segmentSearchExecutor);
+      } catch (Throwable e) {
+        SolrException.log(log, e);
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      }
+    }
+
+    if (exportExecutor != null) {
+      try {
+        ExecutorUtil.shutdownAndAwaitTermination(exportExecutor);
+      } catch (Throwable e) {
+        SolrException.log(log, e);
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      }
+    }
+
     try {
       infoRegistry.clear();
     } catch (Throwable e) {
@@ -1558,6 +1679,12 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
 
   final ExecutorService searcherExecutor = ExecutorUtil.newMDCAwareSingleThreadExecutor(
       new DefaultSolrThreadFactory("searcherExecutor"));
+  // searches the segments of a single query concurrently, null unless query/searchThreads is configured
+  private final ExecutorService segmentSearchExecutor;
+  // sorts the segments of /export requests concurrently, threads are only started when used
+  private final ExecutorService exportExecutor;
+  private final SegmentDocIdSetCache segmentJoinCache;
+  private final SegmentDocIdSetCache segmentFilterCache;
   private int onDeckSearchers;  // number of searchers preparing
   // Lock ordering: one can acquire the openSearcherLock and then the searcherLock, but not vice-versa.
   private Object searcherLock = new Object();  // the sync object for the searcher
@@ -16,10 +16,13 @@
  */
 package org.apache.solr.core;
 
+import com.codahale.metrics.Gauge;
 import com.google.common.collect.Lists;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.logging.MDCLoggingContext;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.util.DefaultSolrThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,7 +42,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 
-class SolrCores {
+class SolrCores implements SolrMetricProducer {
 
   private static Object modifyLock = new Object(); // for locking around manipulating any of the core maps.
   private final Map<String, SolrCore> cores = new LinkedHashMap<>(); // For "permanent" cores
@@ -67,6 +70,21 @@ class SolrCores {
     this.container = container;
   }
 
+  @Override
+  public void initializeMetrics(SolrMetricManager manager, String registry, String scope) {
+    manager.register(registry, (Gauge<Integer>) () -> {
+      synchronized (modifyLock) {
+        return cores.size();
+      }
+    }, true, "loaded", scope);
+    manager.register(registry, (Gauge<Integer>) () -> {
+      synchronized (modifyLock) {
+        return transientCores.size();
+      }
+    }, true, "lazy", scope);
+    manager.register(registry, (Gauge<Integer>) () -> getAllCoreNames().size(), true, "total", scope);
+  }
+
   // Trivial helper method for load, note it implements LRU on transient cores. Also note, if
   // there is no setting for max size, nothing is done and all cores go in the regular "cores" list
   protected void allocateLazyCores(final int cacheSize, final SolrResourceLoader loader) {
@@ -96,6 +96,7 @@ public class SolrXmlConfig {
     if (cloudConfig != null)
       configBuilder.setCloudConfig(cloudConfig);
     configBuilder.setBackupRepositoryPlugins((getBackupRepositoryPluginInfos(config)));
+    configBuilder.setMetricReporterPlugins(getMetricReporterPluginInfos(config));
     return fillSolrSection(configBuilder, entries);
   }
 
@@ -156,6 +157,7 @@ public class SolrXmlConfig {
     assertSingleInstance("logging", config);
     assertSingleInstance("logging/watcher", config);
     assertSingleInstance("backup", config);
+    assertSingleInstance("metrics", config);
   }
 
   private static void assertSingleInstance(String section, Config config) {
@@ -436,5 +438,15 @@ public class SolrXmlConfig {
     }
     return configs;
   }
-}
 
+  private static PluginInfo[] getMetricReporterPluginInfos(Config config) {
+    NodeList nodes = (NodeList) config.evaluate("solr/metrics/reporter", XPathConstants.NODESET);
+    if (nodes == null || nodes.getLength() == 0)
+      return new PluginInfo[0];
+    PluginInfo[] configs = new PluginInfo[nodes.getLength()];
+    for (int i = 0; i < nodes.getLength(); i++) {
+      configs[i] = new PluginInfo(nodes.item(i), "SolrMetricReporter", true, true);
+    }
+    return configs;
+  }
+}
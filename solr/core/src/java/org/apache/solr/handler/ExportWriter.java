@@ -24,8 +24,14 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexableField;
@@ -44,6 +50,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.PriorityQueue;
 import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.common.IteratorWriter;
 import org.apache.solr.common.MapWriter;
@@ -81,6 +88,21 @@ import static org.apache.solr.common.util.Utils.makeMap;
 
 public class ExportWriter implements SolrCore.RawWriter, Closeable {
   private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Number of documents sorted per pass over the matching documents. */
+  public static final String BATCH_SIZE_PARAM = "export.batchSize";
+  /** If true, sort the matching documents of each segment independently and merge the sorted segments. */
+  public static final String SEGMENTED_PARAM = "export.segmented";
+  /** Maximum number of sort entries held in memory across all segments when {@link #SEGMENTED_PARAM} is true. */
+  public static final String MAX_SORT_DOCS_PARAM = "export.maxSortDocs";
+  /**
+   * Maximum number of segments of a request sorted concurrently when {@link #SEGMENTED_PARAM} is true,
+   * on the executor the core shares between all export requests.
+   */
+  public static final String THREADS_PARAM = "export.threads";
+
+  public static final int DEFAULT_BATCH_SIZE = 30000;
+  public static final int DEFAULT_MAX_SORT_DOCS = 1000000;
   private OutputStreamWriter respWriter;
   final SolrQueryRequest req;
   final SolrQueryResponse res;
@@ -222,11 +244,15 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   }
 
   protected void writeDocs(SolrQueryRequest req, IteratorWriter.ItemWriter writer, Sort sort) throws IOException {
+    if (req.getParams().getBool(SEGMENTED_PARAM, false)) {
+      writeDocsSegmented(req, writer, sort);
+      return;
+    }
     //Write the data.
     List<LeafReaderContext> leaves = req.getSearcher().getTopReaderContext().leaves();
     SortDoc sortDoc = getSortDoc(req.getSearcher(), sort.getSort());
     int count = 0;
-    int queueSize = 30000;
+    int queueSize = Math.max(1, req.getParams().getInt(BATCH_SIZE_PARAM, DEFAULT_BATCH_SIZE));
     SortQueue queue = new SortQueue(queueSize, sortDoc);
     SortDoc[] outDocs = new SortDoc[queueSize];
 
@@ -269,22 +295,252 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
           });
         }
       } catch(Throwable e) {
-        Throwable ex = e;
-        e.printStackTrace();
-        while(ex != null) {
-          String m = ex.getMessage();
-          if(m != null && m.contains("Broken pipe")) {
-            throw new IgnoreException();
+        handleWriteException(e);
+      }
+    }
+  }
+
+  private void handleWriteException(Throwable e) throws IOException {
+    Throwable ex = e;
+    e.printStackTrace();
+    while(ex != null) {
+      String m = ex.getMessage();
+      if(m != null && m.contains("Broken pipe")) {
+        throw new IgnoreException();
+      }
+      ex = ex.getCause();
+    }
+
+    if(e instanceof IOException) {
+      throw ((IOException)e);
+    } else {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Sorts the matching documents of every segment independently, possibly in
+   * parallel, and then merges the sorted segments. Each segment is sorted in a
+   * single pass over its matching documents if its share of the
+   * {@link #MAX_SORT_DOCS_PARAM} budget allows it, so that the number of passes
+   * over the doc values does not grow with the total number of hits.
+   */
+  protected void writeDocsSegmented(SolrQueryRequest req, IteratorWriter.ItemWriter writer, Sort sort) throws IOException {
+    SolrIndexSearcher searcher = req.getSearcher();
+    List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    SortField[] sortFields = sort.getSort();
+    SolrParams params = req.getParams();
+    long maxSortDocs = Math.max(1, params.getLong(MAX_SORT_DOCS_PARAM, DEFAULT_MAX_SORT_DOCS));
+
+    List<SegmentIterator> segments = new ArrayList<>();
+    for (int i = 0; i < leaves.size(); i++) {
+      int numHits = sets[i].cardinality();
+      if (numHits > 0) {
+        segments.add(new SegmentIterator(searcher, leaves.get(i), sets[i], sortFields, numHits));
+      }
+    }
+    if (segments.isEmpty()) {
+      return;
+    }
+
+    // split the budget across segments, small segments give what they don't need to larger ones
+    segments.sort(Comparator.comparingInt(seg -> seg.remaining));
+    long budget = maxSortDocs;
+    for (int i = 0; i < segments.size(); i++) {
+      SegmentIterator segment = segments.get(i);
+      long share = Math.max(1, budget / (segments.size() - i));
+      segment.batchSize = (int) Math.min(segment.remaining, share);
+      budget -= segment.batchSize;
+    }
+
+    fillSegments(req.getCore().getExportExecutor(), segments,
+        Math.min(segments.size(), params.getInt(THREADS_PARAM, Runtime.getRuntime().availableProcessors())));
+
+    SegmentQueue queue = new SegmentQueue(segments.size());
+    for (SegmentIterator segment : segments) {
+      queue.add(segment);
+    }
+
+    int count = 0;
+    try {
+      while (queue.size() > 0 && count < totalHits) {
+        SegmentIterator top = queue.top();
+        SortDoc s = top.current();
+        writer.add((MapWriter) ew -> {
+          writeDoc(s, leaves, ew);
+          s.reset();
+        });
+        ++count;
+        if (top.next()) {
+          queue.updateTop();
+        } else {
+          queue.pop();
+        }
+      }
+    } catch (Throwable e) {
+      handleWriteException(e);
+    }
+  }
+
+  /**
+   * Sorts the first batch of every segment. The segments are split into at most
+   * {@code numThreads} tasks on the shared executor, the last one runs in the
+   * calling thread, so a request never uses more threads than it asked for and
+   * the number of threads of all requests together is bounded by the executor.
+   * <p>
+   * Later batches are sorted in the calling thread when the merge runs out of a
+   * segment's documents: the merge can not go on without them, and sorting them
+   * ahead of time would need a second buffer per segment, which would double
+   * the memory bounded by {@link #MAX_SORT_DOCS_PARAM}.
+   */
+  private void fillSegments(ExecutorService executor, List<SegmentIterator> segments, int numThreads) throws IOException {
+    if (executor == null || numThreads <= 1) {
+      for (SegmentIterator segment : segments) {
+        segment.fill();
+      }
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<>(numThreads - 1);
+    for (int t = 0; t < numThreads - 1; t++) {
+      final int task = t;
+      futures.add(executor.submit((Callable<Void>) () -> {
+        fillSegments(segments, task, numThreads);
+        return null;
+      }));
+    }
+    Throwable failure = null;
+    try {
+      fillSegments(segments, numThreads - 1, numThreads);
+    } catch (Throwable e) {
+      failure = e;
+    }
+    // wait for all of the tasks, even after a failure, since they still read the segments
+    boolean interrupted = false;
+    for (Future<Void> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
           }
-          ex = ex.getCause();
+          break;
         }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new IOException(failure);
+    }
+  }
 
-        if(e instanceof IOException) {
-          throw ((IOException)e);
-        } else {
-          throw new IOException(e);
+  private static void fillSegments(List<SegmentIterator> segments, int task, int numTasks) throws IOException {
+    for (int i = task; i < segments.size(); i += numTasks) {
+      segments.get(i).fill();
+    }
+  }
+
+  /**
+   * Iterates over the matching documents of a single segment in sort order,
+   * sorting at most {@code batchSize} documents per pass.
+   */
+  class SegmentIterator {
+
+    private final SolrIndexSearcher searcher;
+    private final LeafReaderContext context;
+    private final FixedBitSet set;
+    private final SortField[] sortFields;
+    int remaining;
+    int batchSize;
+    private SortQueue queue;
+    private SortDoc[] buffer;
+    private int index = -1;
+
+    SegmentIterator(SolrIndexSearcher searcher, LeafReaderContext context, FixedBitSet set, SortField[] sortFields, int numHits) {
+      this.searcher = searcher;
+      this.context = context;
+      this.set = set;
+      this.sortFields = sortFields;
+      this.remaining = numHits;
+    }
+
+    /** Sort the next batch of documents, the best document ends up last in the buffer. */
+    void fill() throws IOException {
+      // doc values iterators can't go backwards, so get fresh ones for every pass
+      SortDoc sortDoc = getSortDoc(searcher, sortFields);
+      sortDoc.setNextReader(context);
+      if (queue == null) {
+        queue = new SortQueue(batchSize, sortDoc);
+        buffer = new SortDoc[batchSize];
+      }
+      queue.reset();
+      SortDoc top = queue.top();
+      DocIdSetIterator it = new BitSetIterator(set, 0); // cost is not useful here
+      int docId;
+      while ((docId = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        sortDoc.setValues(docId);
+        if (top.lessThan(sortDoc)) {
+          top.setValues(sortDoc);
+          top = queue.updateTop();
         }
       }
+
+      index = -1;
+      for (int i = 0; i < batchSize; i++) {
+        SortDoc s = queue.pop();
+        if (s.docId > -1) {
+          buffer[++index] = s;
+          set.clear(s.docId);
+        }
+      }
+      remaining -= index + 1;
+    }
+
+    SortDoc current() {
+      return buffer[index];
+    }
+
+    /** Move to the next document and return false if this segment is exhausted. */
+    boolean next() throws IOException {
+      if (--index >= 0) {
+        return true;
+      }
+      if (remaining <= 0) {
+        return false;
+      }
+      fill();
+      return index >= 0;
+    }
+  }
+
+  class SegmentQueue extends PriorityQueue<SegmentIterator> {
+
+    SegmentQueue(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected boolean lessThan(SegmentIterator a, SegmentIterator b) {
+      // the top of the queue is the segment whose current document must be written next
+      SortDoc docA = a.current();
+      SortDoc docB = b.current();
+      if (docB.lessThan(docA)) {
+        return true;
+      } else if (docA.lessThan(docB)) {
+        return false;
+      }
+      return docA.ord < docB.ord;
     }
   }
 
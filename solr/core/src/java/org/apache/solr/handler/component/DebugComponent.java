@@ -72,6 +72,7 @@ public class DebugComponent extends SearchComponent
       map.put(ResponseBuilder.STAGE_START, "START");
       map.put(ResponseBuilder.STAGE_PARSE_QUERY, "PARSE_QUERY");
       map.put(ResponseBuilder.STAGE_TOP_GROUPS, "TOP_GROUPS");
+      map.put(ResponseBuilder.STAGE_PAGE_THRESHOLD, "PAGE_THRESHOLD");
       map.put(ResponseBuilder.STAGE_EXECUTE_QUERY, "EXECUTE_QUERY");
       map.put(ResponseBuilder.STAGE_GET_FIELDS, "GET_FIELDS");
       map.put(ResponseBuilder.STAGE_DONE, "DONE");
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.CursorMark;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.SortSpec;
+import org.apache.solr.search.SortSpecParsing;
+
+/**
+ * Pages deep into the results of a distributed query without asking every shard for the top
+ * <code>start+rows</code> ids.
+ * <p>
+ * The first pass asks every shard for a small window of ids, with their sort values, around the
+ * position the first document of the page would have on it if the matching documents were
+ * evenly spread over the shards. The sort is made total with a uniqueKey tie breaker, so that
+ * every one of those ids is a threshold for which the number of documents sorted at or before it
+ * is known exactly on every shard whose window has documents both at or before and after it.
+ * The last threshold that has no more than <code>start</code> documents at or before it becomes
+ * the cursorMark of the second pass, which only asks every shard for the documents after it
+ * that can make it into the page.
+ * <p>
+ * Documents that have the same sort values are ordered by their uniqueKey. When no threshold is
+ * known exactly, eg. because the documents are not spread evenly enough over the shards, the
+ * regular top ids request is used.
+ */
+class DistributedDeepPaging {
+
+  /** the sort of the shard requests, with a uniqueKey tie breaker */
+  final String sort;
+  final SortSpec sortSpec;
+  final int windowStart;
+  final int windowRows;
+
+  private final int start;
+  private final int rows;
+
+  // set once the windows of the shards are merged
+  private CursorMark threshold;
+  private SortSpec mergeSortSpec;
+
+  private DistributedDeepPaging(String sort, SortSpec sortSpec, int start, int rows, int windowStart, int windowRows) {
+    this.sort = sort;
+    this.sortSpec = sortSpec;
+    this.start = start;
+    this.rows = rows;
+    this.windowStart = windowStart;
+    this.windowRows = windowRows;
+  }
+
+  /**
+   * Returns the deep paging of the given distributed request, or null if it was not asked for or
+   * would not fetch fewer ids than the regular top ids request.
+   */
+  static DistributedDeepPaging create(ResponseBuilder rb) {
+    SolrParams params = rb.req.getParams();
+    if (!params.getBool(ShardParams.DISTRIB_DEEP_PAGING, false)
+        || rb.getCursorMark() != null || rb.getRankQuery() != null || rb.getMergeStrategies() != null
+        || rb.shards_start > -1 || rb.shards_rows > -1 || params.get(CommonParams.TIME_ALLOWED) != null) {
+      return null;
+    }
+
+    // the shards must sort by the sort param, and page by the start and rows params
+    QParser parser = rb.getQparser();
+    SolrParams localParams = parser == null ? null : parser.getLocalParams();
+    if (localParams != null && (localParams.get(CommonParams.SORT) != null
+        || localParams.get(CommonParams.START) != null || localParams.get(CommonParams.ROWS) != null)) {
+      return null;
+    }
+
+    SortSpec ss = rb.getSortSpec();
+    int numShards = rb.shards.length;
+    if (numShards == 0 || ss.getCount() <= 0) {
+      return null;
+    }
+
+    // the number of top documents a shard has is binomial, look a few standard deviations around its mean
+    int perShard = ss.getOffset() / numShards;
+    int margin = (int) Math.ceil(4 * Math.sqrt(perShard * (1 - 1.0 / numShards))) + 1;
+    int windowStart = Math.max(0, perShard - margin);
+    int windowRows = perShard + margin + 1 - windowStart;
+    if (windowRows >= ss.getOffset()) {
+      return null;
+    }
+
+    IndexSchema schema = rb.req.getSchema();
+    String keyFieldName = schema.getUniqueKeyField().getName();
+    String sortParam = params.get(CommonParams.SORT);
+    try {
+      SortSpec userSortSpec = SortSpecParsing.parseSortSpec(sortParam, rb.req);
+      if (!equals(userSortSpec.getSort(), ss.getSort())) {
+        return null; // the sort was changed by another component
+      }
+
+      String sort = sortParam == null || sortParam.trim().isEmpty() ? "score desc" : sortParam;
+      if (!userSortSpec.getSchemaFields().contains(schema.getUniqueKeyField())) {
+        sort = sort + "," + keyFieldName + " asc";
+      }
+      SortSpec parsed = SortSpecParsing.parseSortSpec(sort, rb.req);
+      SortSpec sortSpec = new SortSpec(parsed.getSort(), parsed.getSchemaFields(), ss.getCount(), 0);
+      new CursorMark(schema, sortSpec); // eg. _docid_ can not be used as a threshold
+      return new DistributedDeepPaging(sort, sortSpec, ss.getOffset(), ss.getCount(), windowStart, windowRows);
+    } catch (SolrException e) {
+      return null;
+    }
+  }
+
+  private static boolean equals(Sort a, Sort b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  /**
+   * Picks the threshold from the windows returned by the shards, if one is known exactly.
+   */
+  @SuppressWarnings("unchecked")
+  void setWindows(QueryComponent component, ResponseBuilder rb, ShardRequest sreq) {
+    IndexSchema schema = rb.req.getSchema();
+    String keyFieldName = schema.getUniqueKeyField().getName();
+
+    int numShards = sreq.responses.size();
+    int[] windowSizes = new int[numShards];
+    boolean[] exhausted = new boolean[numShards];
+    // ShardDocs are equal by id, and the same id may be on several shards
+    Map<ShardDoc,Integer> shardIndexes = new IdentityHashMap<>();
+    List<ShardDoc> samples = new ArrayList<>();
+    for (int i = 0; i < numShards; i++) {
+      ShardResponse srsp = sreq.responses.get(i);
+      if (srsp.getException() != null) {
+        return;
+      }
+      NamedList<Object> response = srsp.getSolrResponse().getResponse();
+      SolrDocumentList docs = (SolrDocumentList) response.get("response");
+      NamedList sortFieldValues = (NamedList) response.get("sort_values");
+      NamedList unmarshalledSortFieldValues = sortFieldValues == null
+          ? new NamedList() : component.unmarshalSortValues(sortSpec, sortFieldValues, schema);
+
+      windowSizes[i] = docs.size();
+      exhausted[i] = windowStart + docs.size() >= docs.getNumFound();
+      int order = 0;
+      for (SolrDocument doc : docs) {
+        ShardDoc shardDoc = new ShardDoc();
+        shardDoc.id = doc.getFieldValue(keyFieldName);
+        shardDoc.shard = srsp.getShard();
+        shardDoc.orderInShard = order++;
+        shardDoc.score = ShardIdsMerger.toScore(doc.getFieldValue("score"));
+        shardDoc.sortFieldValues = unmarshalledSortFieldValues;
+        shardIndexes.put(shardDoc, i);
+        samples.add(shardDoc);
+      }
+    }
+
+    ShardFieldSortedHitQueue queue = new ShardFieldSortedHitQueue(sortSpec.getSort().getSort(), 1, rb.req.getSearcher());
+    samples.sort((a, b) -> queue.lessThan(a, b) ? 1 : queue.lessThan(b, a) ? -1 : 0);
+
+    // sweep the thresholds in order, counting the documents of every shard at or before them
+    int[] before = new int[numShards];
+    int inexact = 0;
+    for (int i = 0; i < numShards; i++) {
+      if (!isExact(before[i], windowSizes[i], exhausted[i])) inexact++;
+    }
+    long count = (long) windowStart * numShards;
+    ShardDoc thresholdDoc = null;
+    long thresholdCount = 0;
+    for (ShardDoc doc : samples) {
+      int i = shardIndexes.get(doc);
+      boolean wasExact = isExact(before[i], windowSizes[i], exhausted[i]);
+      before[i]++;
+      boolean exact = isExact(before[i], windowSizes[i], exhausted[i]);
+      inexact += (wasExact ? 0 : -1) + (exact ? 0 : 1);
+      count++;
+      if (count > start) {
+        break;
+      }
+      if (inexact == 0) {
+        thresholdDoc = doc;
+        thresholdCount = count;
+      }
+    }
+
+    // too far before the page, eg. when there are fewer matches than start
+    if (thresholdDoc == null || start - thresholdCount >= windowRows) {
+      return;
+    }
+
+    SortField[] sortFields = sortSpec.getSort().getSort();
+    List<Object> values = new ArrayList<>(sortFields.length);
+    for (SortField sf : sortFields) {
+      if (sf.getType().equals(SortField.Type.SCORE)) {
+        values.add(thresholdDoc.score);
+      } else {
+        List<Object> fieldVals = (List<Object>) thresholdDoc.sortFieldValues.get(sf.getField());
+        values.add(fieldVals.get(thresholdDoc.orderInShard));
+      }
+    }
+    int offset = (int) (start - thresholdCount);
+    threshold = new CursorMark(schema, sortSpec).createNext(values);
+    mergeSortSpec = new SortSpec(sortSpec.getSort(), sortSpec.getSchemaFields(), rows, offset);
+  }
+
+  /**
+   * Is the number of documents of a shard at or before a threshold known, given the number of
+   * documents of its window that are at or before it?
+   */
+  private boolean isExact(int before, int windowSize, boolean exhausted) {
+    if (before == 0) {
+      return windowStart == 0;
+    }
+    return before < windowSize || exhausted;
+  }
+
+  /** Returns the cursorMark of the second pass, or null if the regular top ids request is used. */
+  CursorMark getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Returns the sort of the second pass, where the offset is the number of documents after the
+   * threshold that come before the page.
+   */
+  SortSpec getMergeSortSpec() {
+    return mergeSortSpec;
+  }
+}
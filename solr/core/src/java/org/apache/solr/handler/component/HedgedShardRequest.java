@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.solr.client.solrj.ResponseParser;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Sends a shard request to the replicas of a shard, in order, until one of them answers.
+ * <p>
+ * The request is sent to the next replica when the previous one failed, or when it did not
+ * answer within the hedging delay. The first successful response wins, and the requests that are
+ * still running are aborted. The responses of the replicas are read with parsers of their own, so
+ * a parser that has side effects must tolerate being run for more than one replica of a shard.
+ * <p>
+ * The requests are usually sent from a thread of the executor they run on. A request that the
+ * executor rejects, or that did not start yet when the calling thread would wait for it, is run
+ * by the calling thread, so that requests never wait for threads that wait for them.
+ */
+class HedgedShardRequest {
+
+  private final SolrRequest request;
+  private final List<String> urls;
+  private final Supplier<ResponseParser> parsers;
+  private final HttpClient httpClient;
+  private final Executor executor;
+  private final long delayNanos;
+  private final ShardLatencyTracker tracker;
+
+  private final BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+
+  private Attempt winner;
+
+  /**
+   * @param delayNanos how long to wait for a replica before sending the request to the next one
+   */
+  HedgedShardRequest(SolrRequest request, List<String> urls, Supplier<ResponseParser> parsers, HttpClient httpClient,
+                     Executor executor, long delayNanos, ShardLatencyTracker tracker) {
+    this.request = request;
+    this.urls = urls;
+    this.parsers = parsers;
+    this.httpClient = httpClient;
+    this.executor = executor;
+    this.delayNanos = delayNanos;
+    this.tracker = tracker;
+  }
+
+  /** Returns the url of the replica that answered, once {@link #process()} returned. */
+  String getServer() {
+    return winner == null ? null : winner.url;
+  }
+
+  NamedList<Object> process() throws Exception {
+    final List<Attempt> attempts = new ArrayList<>(urls.size());
+    try {
+      start(attempts);
+      int running = 1;
+      boolean hedged = false;
+      Exception failure = null;
+      while (running > 0) {
+        final Attempt attempt;
+        if (hedged || attempts.size() == urls.size()) {
+          // the current thread would be waiting anyway
+          runUnstarted(attempts);
+          attempt = completed.take();
+        } else {
+          attempt = completed.poll(delayNanos, TimeUnit.NANOSECONDS);
+          if (attempt == null) {
+            if (runUnstarted(attempts)) {
+              // the executor is saturated, a hedged request would not start either
+              continue;
+            }
+            // the replica is slower than usual, send the same request to the next one
+            hedged = true;
+            start(attempts);
+            running++;
+            continue;
+          }
+        }
+        running--;
+
+        if (attempt.exception == null) {
+          winner = attempt;
+          return attempt.response;
+        }
+        if (failure == null) {
+          failure = attempt.exception;
+        }
+        if (running == 0 && attempts.size() < urls.size()) {
+          start(attempts);
+          running++;
+        }
+      }
+      throw failure;
+    } finally {
+      for (Attempt attempt : attempts) {
+        if (attempt != winner) {
+          attempt.aborted = true;
+          attempt.method.abort();
+        }
+        attempt.client.close();
+      }
+    }
+  }
+
+  /** Sends the request to the next replica. */
+  private void start(List<Attempt> attempts) throws IOException, SolrServerException {
+    final Attempt attempt = new Attempt(urls.get(attempts.size()));
+    attempts.add(attempt);
+    try {
+      executor.execute(attempt.task);
+    } catch (RejectedExecutionException e) {
+      attempt.task.run();
+    }
+  }
+
+  /** Runs the requests that the executor did not start yet, returns whether there were any. */
+  private boolean runUnstarted(List<Attempt> attempts) {
+    boolean ran = false;
+    for (Attempt attempt : attempts) {
+      if (!attempt.started) {
+        // does nothing if a thread of the executor started it in the meantime
+        attempt.task.run();
+        ran = true;
+      }
+    }
+    return ran;
+  }
+
+  /** The request to a single replica */
+  private class Attempt implements Callable<Attempt> {
+
+    final String url;
+    final AbortableHttpSolrClient client;
+    final ResponseParser parser;
+    final HttpRequestBase method;
+    final FutureTask<Attempt> task;
+
+    NamedList<Object> response;
+    Exception exception;
+    volatile boolean started;
+    volatile boolean aborted;
+
+    Attempt(String url) throws IOException, SolrServerException {
+      this.url = url;
+      this.client = new AbortableHttpSolrClient(url, httpClient);
+      this.parser = parsers.get();
+      this.method = client.newMethod(request);
+      this.task = new FutureTask<Attempt>(this) {
+        @Override
+        protected void done() {
+          completed.add(Attempt.this);
+        }
+      };
+    }
+
+    @Override
+    public Attempt call() {
+      started = true;
+      if (aborted) {
+        // another replica answered before this request was sent
+        exception = new SolrServerException("Aborted request to " + url);
+        return this;
+      }
+      tracker.requestStarted(url);
+      final long startTime = System.nanoTime();
+      ShardLatencyTracker.Outcome outcome = ShardLatencyTracker.Outcome.FAILURE;
+      try {
+        response = client.execute(method, parser);
+        outcome = ShardLatencyTracker.Outcome.SUCCESS;
+      } catch (Exception e) {
+        exception = e;
+        if (aborted) {
+          // another replica answered first
+          outcome = ShardLatencyTracker.Outcome.ABORTED;
+        }
+      } finally {
+        tracker.requestFinished(url, System.nanoTime() - startTime, outcome);
+      }
+      return this;
+    }
+  }
+
+  /** Exposes the http method of a request, so that it can be aborted from another thread. */
+  private static class AbortableHttpSolrClient extends HttpSolrClient {
+
+    @SuppressWarnings("deprecation")
+    AbortableHttpSolrClient(String baseURL, HttpClient client) {
+      super(baseURL, client);
+    }
+
+    HttpRequestBase newMethod(SolrRequest request) throws IOException, SolrServerException {
+      return createMethod(request, null);
+    }
+
+    NamedList<Object> execute(HttpRequestBase method, ResponseParser processor) throws SolrServerException {
+      return executeMethod(method, processor);
+    }
+  }
+}
@@ -36,6 +36,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrResponse;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.client.solrj.impl.HttpSolrClient.Builder;
 import org.apache.solr.client.solrj.impl.LBHttpSolrClient;
 import org.apache.solr.client.solrj.request.QueryRequest;
@@ -66,8 +67,13 @@ public class HttpShardHandler extends ShardHandler {
   private CompletionService<ShardResponse> completionService;
   private Set<Future<ShardResponse>> pending;
   private Map<String,List<String>> shardToURLs;
+  private Map<String,String> shardToSlice;
   private HttpClient httpClient;
 
+  // set by prepDistributed: the collection whose shard latencies are tracked, and when to hedge
+  private String collection;
+  private double hedgePercentile = -1;
+
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   public HttpShardHandler(HttpShardHandlerFactory httpShardHandlerFactory, HttpClient httpClient) {
@@ -81,6 +87,8 @@ public class HttpShardHandler extends ShardHandler {
     // so that we use the same replica for all phases of a distributed request.
     shardToURLs = new HashMap<>();
 
+    // maps the | delimited list of replicas of a slice back to the slice, set by prepDistributed
+    shardToSlice = new HashMap<>();
   }
 
 
@@ -159,6 +167,7 @@ public class HttpShardHandler extends ShardHandler {
   public void submit(final ShardRequest sreq, final String shard, final ModifiableSolrParams params, String preferredHostAddress) {
     // do this outside of the callable for thread safety reasons
     final List<String> urls = getURLs(shard, preferredHostAddress);
+    final String slice = shardToSlice.get(shard);
 
     Callable<ShardResponse> task = () -> {
 
@@ -181,6 +190,10 @@ public class HttpShardHandler extends ShardHandler {
 
         // no need to set the response parser as binary is the default
         // req.setResponseParser(new BinaryResponseParser());
+        // unless the request wants to process the responses while they are read
+        if (sreq.responseParserFactory != null) {
+          req.setResponseParser(sreq.responseParserFactory.apply(shard));
+        }
 
         // if there are no shards available for a slice, urls.size()==0
         if (urls.size()==0) {
@@ -189,16 +202,47 @@ public class HttpShardHandler extends ShardHandler {
           throw new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "no servers hosting shard: " + shard);
         }
 
-        if (urls.size() <= 1) {
-          String url = urls.get(0);
-          srsp.setShardAddress(url);
-          try (SolrClient client = new Builder(url).withHttpClient(httpClient).build()) {
-            ssr.nl = client.request(req);
-          }
+        final ShardLatencyTracker tracker = httpShardHandlerFactory.getLatencyTracker();
+        final long hedgeDelayNanos = (hedgePercentile > 0 && urls.size() > 1)
+            ? tracker.getLatencyPercentile(collection, hedgePercentile) : -1;
+
+        if (hedgeDelayNanos >= 0) {
+          HedgedShardRequest hedgedReq = new HedgedShardRequest(req, urls,
+              () -> sreq.responseParserFactory != null ? sreq.responseParserFactory.apply(shard) : new BinaryResponseParser(),
+              httpClient, httpShardHandlerFactory.getThreadPoolExecutor(), hedgeDelayNanos, tracker);
+          ssr.nl = hedgedReq.process();
+          srsp.setShardAddress(hedgedReq.getServer());
         } else {
-          LBHttpSolrClient.Rsp rsp = httpShardHandlerFactory.makeLoadBalancedRequest(req, urls);
-          ssr.nl = rsp.getResponse();
-          srsp.setShardAddress(rsp.getServer());
+          // the load balancer usually sends the request to the first url
+          final String url = urls.get(0);
+          tracker.requestStarted(url);
+          if (urls.size() <= 1) {
+            srsp.setShardAddress(url);
+            ShardLatencyTracker.Outcome outcome = ShardLatencyTracker.Outcome.FAILURE;
+            try (SolrClient client = new Builder(url).withHttpClient(httpClient).build()) {
+              ssr.nl = client.request(req);
+              outcome = ShardLatencyTracker.Outcome.SUCCESS;
+            } finally {
+              tracker.requestFinished(url, System.nanoTime() - startTime, outcome);
+            }
+          } else {
+            // the load balancer does not tell which replicas failed or were skipped before the one
+            // that answered, so only an answer of the first replica is a sample of its latency
+            boolean sampled = false;
+            try {
+              LBHttpSolrClient.Rsp rsp = httpShardHandlerFactory.makeLoadBalancedRequest(req, urls);
+              ssr.nl = rsp.getResponse();
+              srsp.setShardAddress(rsp.getServer());
+              if (ShardLatencyTracker.getKey(url).equals(ShardLatencyTracker.getKey(rsp.getServer()))) {
+                tracker.requestFinished(url, System.nanoTime() - startTime, ShardLatencyTracker.Outcome.SUCCESS);
+                sampled = true;
+              }
+            } finally {
+              if (!sampled) {
+                tracker.requestFinished(url);
+              }
+            }
+          }
         }
       }
       catch( ConnectException cex ) {
@@ -212,7 +256,12 @@ public class HttpShardHandler extends ShardHandler {
         }
       }
 
-      ssr.elapsedTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+      long elapsedNanos = System.nanoTime() - startTime;
+      ssr.elapsedTime = TimeUnit.MILLISECONDS.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+      httpShardHandlerFactory.updateRequestMetrics(collection, slice, elapsedNanos, srsp.getException() != null);
+      if (collection != null && srsp.getException() == null) {
+        httpShardHandlerFactory.getLatencyTracker().recordLatency(collection, elapsedNanos);
+      }
 
       return transfomResponse(sreq, srsp, shard);
     };
@@ -314,6 +363,15 @@ public class HttpShardHandler extends ShardHandler {
     CloudDescriptor cloudDescriptor = coreDescriptor.getCloudDescriptor();
     ZkController zkController = coreDescriptor.getCoreContainer().getZkController();
 
+    collection = cloudDescriptor != null ? cloudDescriptor.getCollectionName() : req.getCore().getName();
+    if (params.getBool(ShardParams.SHARDS_HEDGE, false)) {
+      hedgePercentile = params.getDouble(ShardParams.SHARDS_HEDGE_PERCENTILE, 95);
+      if (!(hedgePercentile > 0 && hedgePercentile <= 100)) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            ShardParams.SHARDS_HEDGE_PERCENTILE + " must be in (0, 100]: " + hedgePercentile);
+      }
+    }
+
     if (params.getBool(CommonParams.PREFER_LOCAL_SHARDS, false)) {
       rb.preferredHostAddress = (zkController != null) ? zkController.getBaseUrl() : null;
       if (rb.preferredHostAddress == null) {
@@ -467,6 +525,9 @@ public class HttpShardHandler extends ShardHandler {
           sliceShardsStr.append(shardUrl);
         }
         rb.shards[i] = sliceShardsStr.toString();
+        if (rb.slices[i] != null) {
+          shardToSlice.put(rb.shards[i], rb.slices[i]);
+        }
       }
     }
     String shards_rows = params.get(ShardParams.SHARDS_ROWS);
@@ -16,6 +16,8 @@
  */
 package org.apache.solr.handler.component;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -25,11 +27,14 @@ import org.apache.solr.client.solrj.impl.LBHttpSolrClient;
 import org.apache.solr.client.solrj.impl.LBHttpSolrClient.Builder;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.common.util.URLUtil;
 import org.apache.solr.core.PluginInfo;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.update.UpdateShardHandlerConfig;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.util.DefaultSolrThreadFactory;
@@ -38,7 +43,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -49,7 +56,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 
-public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.apache.solr.util.plugin.PluginInfoInitialized {
+public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.apache.solr.util.plugin.PluginInfoInitialized, SolrMetricProducer {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private static final String DEFAULT_SCHEME = "http";
   
@@ -84,8 +91,35 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
 
   private final Random r = new Random();
 
+  // replaced with registered metrics in initializeMetrics
+  private volatile Timer requestTimes = new Timer();
+  private volatile Meter requestErrors = new Meter();
+
+  // collection and shard -> metrics of the requests sent to it, registered as shards show up.
+  // Least recently used shards are unregistered so that deleted collections don't pile up.
+  static final int MAX_SHARD_METRICS = 1000;
+  private final Map<ShardKey, ShardRequestMetrics> shardRequestMetrics = new LinkedHashMap<ShardKey, ShardRequestMetrics>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ShardKey, ShardRequestMetrics> eldest) {
+      if (size() > MAX_SHARD_METRICS) {
+        unregisterShardMetrics(eldest.getKey());
+        return true;
+      }
+      return false;
+    }
+  };
+
+  // set in initializeMetrics
+  private volatile SolrMetricManager metricManager;
+  private volatile String metricRegistry;
+  private volatile String metricScope;
+
   private final ReplicaListTransformer shufflingReplicaListTransformer = new ShufflingReplicaListTransformer(r);
 
+  private final ShardLatencyTracker latencyTracker = new ShardLatencyTracker();
+
+  private final ReplicaListTransformer latencyRankingReplicaListTransformer = new LatencyRankingReplicaListTransformer(r, latencyTracker);
+
   // URL scheme to be used in distributed search.
   static final String INIT_URL_SCHEME = "urlScheme";
 
@@ -199,6 +233,98 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   }
 
 
+  @Override
+  public void initializeMetrics(SolrMetricManager manager, String registry, String scope) {
+    requestTimes = manager.timer(registry, "requestTimes", "QUERY", scope);
+    requestErrors = manager.meter(registry, "errors", "QUERY", scope);
+    this.metricManager = manager;
+    this.metricRegistry = registry;
+    this.metricScope = scope;
+    synchronized (shardRequestMetrics) {
+      shardRequestMetrics.forEach(this::registerShardMetrics);
+    }
+  }
+
+  private void registerShardMetrics(ShardKey key, ShardRequestMetrics metrics) {
+    SolrMetricManager manager = metricManager;
+    if (manager == null) {
+      return;
+    }
+    manager.register(metricRegistry, metrics.requestTimes, true, "requestTimes", "QUERY", metricScope, key.collection, key.shard);
+    manager.register(metricRegistry, metrics.errors, true, "errors", "QUERY", metricScope, key.collection, key.shard);
+  }
+
+  private void unregisterShardMetrics(ShardKey key) {
+    SolrMetricManager manager = metricManager;
+    if (manager == null) {
+      return;
+    }
+    manager.remove(metricRegistry, "requestTimes", "QUERY", metricScope, key.collection, key.shard);
+    manager.remove(metricRegistry, "errors", "QUERY", metricScope, key.collection, key.shard);
+  }
+
+  /**
+   * Records the outcome of a single request sent to a shard, both in the metrics of all the
+   * shard requests and in those of the shard.
+   * @param collection the collection of the shard
+   * @param shard the name of the shard, or null if the request was sent to explicit urls,
+   *              which are not tracked on their own
+   */
+  void updateRequestMetrics(String collection, String shard, long elapsedNanos, boolean error) {
+    requestTimes.update(elapsedNanos, TimeUnit.NANOSECONDS);
+    if (error) {
+      requestErrors.mark();
+    }
+    if (collection == null || shard == null) {
+      return;
+    }
+
+    final ShardKey key = new ShardKey(collection, shard);
+    final ShardRequestMetrics metrics;
+    synchronized (shardRequestMetrics) {
+      ShardRequestMetrics existing = shardRequestMetrics.get(key);
+      if (existing == null) {
+        existing = new ShardRequestMetrics();
+        shardRequestMetrics.put(key, existing);
+        registerShardMetrics(key, existing);
+      }
+      metrics = existing;
+    }
+    metrics.requestTimes.update(elapsedNanos, TimeUnit.NANOSECONDS);
+    if (error) {
+      metrics.errors.mark();
+    }
+  }
+
+  private static class ShardKey {
+    final String collection;
+    final String shard;
+
+    ShardKey(String collection, String shard) {
+      this.collection = collection;
+      this.shard = shard;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ShardKey)) {
+        return false;
+      }
+      ShardKey other = (ShardKey) o;
+      return collection.equals(other.collection) && shard.equals(other.shard);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * collection.hashCode() + shard.hashCode();
+    }
+  }
+
+  private static class ShardRequestMetrics {
+    final Timer requestTimes = new Timer();
+    final Meter errors = new Meter();
+  }
+
   @Override
   public void close() {
     try {
@@ -247,9 +373,17 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
 
   ReplicaListTransformer getReplicaListTransformer(final SolrQueryRequest req)
   {
+    if (req.getParams().getBool(ShardParams.SHARDS_LATENCY_RANKING, false)) {
+      return latencyRankingReplicaListTransformer;
+    }
     return shufflingReplicaListTransformer;
   }
 
+  /** Returns the latencies of the shard requests sent by this factory's shard handlers. */
+  ShardLatencyTracker getLatencyTracker() {
+    return latencyTracker;
+  }
+
   /**
    * Creates a new completion service for use by a single set of distributed requests.
    */
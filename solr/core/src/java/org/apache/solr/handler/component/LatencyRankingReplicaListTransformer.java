@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.solr.common.cloud.Replica;
+
+/**
+ * Orders the replicas by their expected cost, see {@link ShardLatencyTracker#getCost}, so that
+ * requests go to the replica that answered the fastest recently and has the fewest requests in
+ * flight. Replicas with the same cost are shuffled.
+ */
+class LatencyRankingReplicaListTransformer implements ReplicaListTransformer {
+
+  private final Random r;
+  private final ShardLatencyTracker tracker;
+
+  public LatencyRankingReplicaListTransformer(Random r, ShardLatencyTracker tracker)
+  {
+    this.r = r;
+    this.tracker = tracker;
+  }
+
+  @SuppressWarnings("unchecked")
+  public void transform(List<?> choices)
+  {
+    if (choices.size() > 1) {
+      Collections.shuffle(choices, r);
+      final long now = System.nanoTime();
+      final Map<Object,Double> costs = new IdentityHashMap<>();
+      for (Object choice : choices) {
+        final String url = getUrl(choice);
+        costs.put(choice, url == null ? 0 : tracker.getCost(url, now));
+      }
+      // the sort is stable, so the shuffled order is kept for the same costs
+      ((List<Object>) choices).sort(Comparator.comparingDouble(costs::get));
+    }
+  }
+
+  private static String getUrl(Object choice) {
+    if (choice instanceof String) {
+      return (String) choice;
+    } else if (choice instanceof Replica) {
+      return ((Replica) choice).getCoreUrl();
+    }
+    return null;
+  }
+
+}
@@ -378,6 +378,7 @@ public class QueryComponent extends SearchComponent
     if (cmd.getSegmentTerminateEarly()) {
       result.setSegmentTerminatedEarly(Boolean.FALSE);
     }
+    cmd.setParallelSearch(params.getBool(CommonParams.PARALLEL_SEARCH, CommonParams.PARALLEL_SEARCH_DEFAULT));
 
     //
     // grouping / field collapsing
@@ -719,6 +720,12 @@ public class QueryComponent extends SearchComponent
       return ResponseBuilder.STAGE_PARSE_QUERY;
     if (rb.stage == ResponseBuilder.STAGE_PARSE_QUERY) {
       createDistributedStats(rb);
+      rb._deepPaging = DistributedDeepPaging.create(rb);
+      return rb._deepPaging != null ? ResponseBuilder.STAGE_PAGE_THRESHOLD : ResponseBuilder.STAGE_EXECUTE_QUERY;
+    }
+    if (rb.stage < ResponseBuilder.STAGE_PAGE_THRESHOLD && rb._deepPaging != null) return ResponseBuilder.STAGE_PAGE_THRESHOLD;
+    if (rb.stage == ResponseBuilder.STAGE_PAGE_THRESHOLD && rb._deepPaging != null) {
+      createPageThresholdQuery(rb);
       return ResponseBuilder.STAGE_EXECUTE_QUERY;
     }
     if (rb.stage < ResponseBuilder.STAGE_EXECUTE_QUERY) return ResponseBuilder.STAGE_EXECUTE_QUERY;
@@ -767,6 +774,13 @@ public class QueryComponent extends SearchComponent
       updateStats(rb, sreq);
     }
 
+    if ((sreq.purpose & ShardRequest.PURPOSE_GET_PAGE_THRESHOLD) != 0) {
+      rb._deepPaging.setWindows(this, rb, sreq);
+      if (rb.isDebugTrack() && rb._deepPaging.getThreshold() != null) {
+        rb.addDebug(rb._deepPaging.getThreshold().getSerializedTotem(), "track", "pageThreshold");
+      }
+    }
+
     if ((sreq.purpose & ShardRequest.PURPOSE_GET_FIELDS) != 0) {
       returnFields(rb, sreq);
     }
@@ -850,6 +864,35 @@ public class QueryComponent extends SearchComponent
     cache.mergeToGlobalStats(rb.req, sreq.responses);
   }
 
+  /**
+   * Asks every shard for the window of ids the threshold of a deep page is picked from.
+   *
+   * @see DistributedDeepPaging
+   */
+  protected void createPageThresholdQuery(ResponseBuilder rb) {
+    DistributedDeepPaging deepPaging = rb._deepPaging;
+    ShardRequest sreq = new ShardRequest();
+    sreq.purpose = ShardRequest.PURPOSE_GET_PAGE_THRESHOLD;
+
+    sreq.params = new ModifiableSolrParams(rb.req.getParams());
+    sreq.params.remove(ShardParams.SHARDS);
+    sreq.params.set(CommonParams.SORT, deepPaging.sort);
+    sreq.params.set(CommonParams.START, deepPaging.windowStart);
+    sreq.params.set(CommonParams.ROWS, deepPaging.windowRows);
+    sreq.params.set(ResponseBuilder.FIELD_SORT_VALUES, "true");
+
+    String keyFieldName = rb.req.getSchema().getUniqueKeyField().getName();
+    if (deepPaging.sortSpec.includesScore()) {
+      sreq.params.set(CommonParams.FL, keyFieldName + ",score");
+      StatsCache statsCache = rb.req.getCore().getStatsCache();
+      statsCache.sendGlobalStats(rb, sreq);
+    } else {
+      sreq.params.set(CommonParams.FL, keyFieldName);
+    }
+
+    rb.addRequest(this, sreq);
+  }
+
   protected void createMainQuery(ResponseBuilder rb) {
     ShardRequest sreq = new ShardRequest();
     sreq.purpose = ShardRequest.PURPOSE_GET_TOP_IDS;
@@ -875,9 +918,16 @@ public class QueryComponent extends SearchComponent
     // don't pass through any shards param
     sreq.params.remove(ShardParams.SHARDS);
 
+    CursorMark pageThreshold = rb._deepPaging == null ? null : rb._deepPaging.getThreshold();
+
     // set the start (offset) to 0 for each shard request so we can properly merge
     // results from the start.
-    if(rb.shards_start > -1) {
+    if (pageThreshold != null) {
+      // only the documents after the threshold are left to merge
+      sreq.params.set(CommonParams.SORT, rb._deepPaging.sort);
+      sreq.params.set(CursorMarkParams.CURSOR_MARK_PARAM, pageThreshold.getSerializedTotem());
+      sreq.params.set(CommonParams.START, "0");
+    } else if(rb.shards_start > -1) {
       // if the client set shards.start set this explicitly
       sreq.params.set(CommonParams.START,rb.shards_start);
     } else {
@@ -887,7 +937,10 @@ public class QueryComponent extends SearchComponent
     // perhaps we shouldn't attempt to parse the query at this level?
     // Alternate Idea: instead of specifying all these things at the upper level,
     // we could just specify that this is a shard request.
-    if(rb.shards_rows > -1) {
+    if (pageThreshold != null) {
+      SortSpec mergeSortSpec = rb._deepPaging.getMergeSortSpec();
+      sreq.params.set(CommonParams.ROWS, mergeSortSpec.getOffset() + mergeSortSpec.getCount());
+    } else if(rb.shards_rows > -1) {
       // if the client set shards.rows set this explicity
       sreq.params.set(CommonParams.ROWS,rb.shards_rows);
     } else {
@@ -932,6 +985,12 @@ public class QueryComponent extends SearchComponent
 
     if (additionalAdded) sreq.params.add(CommonParams.FL, additionalFL.toString());
 
+    // merge the ids while the shard responses are read, unless something else needs their documents
+    if (!rb.onePassDistributedQuery && rb.getMergeStrategies() == null && !rb.isDebug()
+        && rb.req.getParams().getBool(ShardParams.SHARDS_STREAMING_MERGE, false)) {
+      sreq.responseParserFactory = new ShardIdsMerger(this, rb, getMergeSortSpec(rb));
+    }
+
     rb.addRequest(this, sreq);
   }
   
@@ -959,24 +1018,11 @@ public class QueryComponent extends SearchComponent
       }
 
       SortSpec ss = rb.getSortSpec();
-      Sort sort = ss.getSort();
-
-      SortField[] sortFields = null;
-      if(sort != null) sortFields = sort.getSort();
-      else {
-        sortFields = new SortField[]{SortField.FIELD_SCORE};
-      }
- 
-      IndexSchema schema = rb.req.getSchema();
-      SchemaField uniqueKeyField = schema.getUniqueKeyField();
-
+      SortSpec mergeSortSpec = getMergeSortSpec(rb);
 
-      // id to shard mapping, to eliminate any accidental dups
-      HashMap<Object,String> uniqueDoc = new HashMap<>();
-
-      // Merge the docs via a priority queue so we don't have to sort *all* of the
-      // documents... we only need to order the top (rows+start)
-      final ShardFieldSortedHitQueue queue = new ShardFieldSortedHitQueue(sortFields, ss.getOffset() + ss.getCount(), rb.req.getSearcher());
+      // the ids may already have been merged while the shard responses were read
+      final ShardIdsMerger merger = sreq.responseParserFactory instanceof ShardIdsMerger
+          ? (ShardIdsMerger) sreq.responseParserFactory : new ShardIdsMerger(this, rb, mergeSortSpec);
 
       NamedList<Object> shardInfo = null;
       if(rb.req.getParams().getBool(ShardParams.SHARDS_INFO, false)) {
@@ -1059,54 +1105,19 @@ public class QueryComponent extends SearchComponent
         }
         numFound += docs.getNumFound();
 
-        NamedList sortFieldValues = (NamedList)(srsp.getSolrResponse().getResponse().get("sort_values"));
-        NamedList unmarshalledSortFieldValues = unmarshalSortValues(ss, sortFieldValues, schema);
-
-        // go through every doc in this response, construct a ShardDoc, and
-        // put it in the priority queue so it can be ordered.
-        for (int i=0; i<docs.size(); i++) {
-          SolrDocument doc = docs.get(i);
-          Object id = doc.getFieldValue(uniqueKeyField.getName());
-
-          String prevShard = uniqueDoc.put(id, srsp.getShard());
-          if (prevShard != null) {
-            // duplicate detected
-            numFound--;
-
-            // For now, just always use the first encountered since we can't currently
-            // remove the previous one added to the priority queue.  If we switched
-            // to the Java5 PriorityQueue, this would be easier.
-            continue;
-            // make which duplicate is used deterministic based on shard
-            // if (prevShard.compareTo(srsp.shard) >= 0) {
-            //  TODO: remove previous from priority queue
-            //  continue;
-            // }
-          }
-
-          ShardDoc shardDoc = new ShardDoc();
-          shardDoc.id = id;
-          shardDoc.shard = srsp.getShard();
-          shardDoc.orderInShard = i;
-          Object scoreObj = doc.getFieldValue("score");
-          if (scoreObj != null) {
-            if (scoreObj instanceof String) {
-              shardDoc.score = Float.parseFloat((String)scoreObj);
-            } else {
-              shardDoc.score = (Float)scoreObj;
-            }
-          }
-
-          shardDoc.sortFieldValues = unmarshalledSortFieldValues;
-
-          queue.insertWithOverflow(shardDoc);
-        } // end for-each-doc-in-response
+        if (!merger.isMerged(srsp.getShard())) {
+          NamedList sortFieldValues = (NamedList)(srsp.getSolrResponse().getResponse().get("sort_values"));
+          merger.merge(srsp.getShard(), docs, sortFieldValues);
+        }
       } // end for-each-response
-      
+      numFound -= merger.getDuplicates();
+      final ShardFieldSortedHitQueue queue = merger.getQueue();
+
       // The queue now has 0 -> queuesize docs, where queuesize <= start + rows
+      // (or the docs after the page threshold, when deep paging)
       // So we want to pop the last documents off the queue to get
       // the docs offset -> queuesize
-      int resultSize = queue.size() - ss.getOffset();
+      int resultSize = queue.size() - mergeSortSpec.getOffset();
       resultSize = Math.max(0, resultSize);  // there may not be any docs in range
 
       Map<Object,ShardDoc> resultIds = new HashMap<>();
@@ -1153,6 +1164,17 @@ public class QueryComponent extends SearchComponent
       }
   }
 
+  /**
+   * Returns the sort the top ids of the shards are merged with, whose offset is the number of
+   * merged ids that come before the page.
+   */
+  protected SortSpec getMergeSortSpec(ResponseBuilder rb) {
+    if (rb._deepPaging != null && rb._deepPaging.getThreshold() != null) {
+      return rb._deepPaging.getMergeSortSpec();
+    }
+    return rb.getSortSpec();
+  }
+
   /**
    * Inspects the state of the {@link ResponseBuilder} and populates the next 
    * {@link ResponseBuilder#setNextCursorMark} as appropriate based on the merged 
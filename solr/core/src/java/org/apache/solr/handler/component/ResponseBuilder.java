@@ -122,6 +122,7 @@ public class ResponseBuilder
   public static int STAGE_START = 0;
   public static int STAGE_PARSE_QUERY = 1000;
   public static int STAGE_TOP_GROUPS = 1500;
+  public static int STAGE_PAGE_THRESHOLD = 1800;
   public static int STAGE_EXECUTE_QUERY = 2000;
   public static int STAGE_GET_FIELDS = 3000;
   public static int STAGE_DONE = Integer.MAX_VALUE;
@@ -174,6 +175,7 @@ public class ResponseBuilder
   StatsInfo _statsInfo;
   TermsComponent.TermsHelper _termsHelper;
   SimpleOrderedMap<List<NamedList<Object>>> _pivots;
+  DistributedDeepPaging _deepPaging;
 
   // Context fields for grouping
   public final Map<String, Collection<SearchGroup<BytesRef>>> mergedSearchGroups = new HashMap<>();
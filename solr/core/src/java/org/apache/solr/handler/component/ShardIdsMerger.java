@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.solr.client.solrj.ResponseParser;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.JavaBinReader;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.SortSpec;
+
+/**
+ * Merges the top ids returned by the shards of a distributed query into a
+ * {@link ShardFieldSortedHitQueue}.
+ * <p>
+ * When it is used as the {@link ShardRequest#responseParserFactory} of the
+ * {@link ShardRequest#PURPOSE_GET_TOP_IDS} request, the response of each shard is merged as soon
+ * as it has been read, in the thread that read it: only the ids and scores of the documents are
+ * extracted from the javabin stream, the documents themselves are never materialized, and the
+ * "response" of the {@link ShardResponse} is left as an empty {@link SolrDocumentList} that
+ * only has the numFound, start and maxScore of the shard. Responses that were not read by
+ * this merger, eg. because they came from another {@link ShardHandler}, are merged by
+ * {@link QueryComponent#mergeIds} the same way.
+ * <p>
+ * When the documents are sorted by score only, the documents of a shard that come after the
+ * first one that did not make it into the full queue cannot make it either, so they are only
+ * checked for duplicates. Other sorts do not have this cutoff, since the order of the shard
+ * is not guaranteed to be the order of the queue, eg. for missing values.
+ */
+class ShardIdsMerger implements Function<String,ResponseParser> {
+
+  private final QueryComponent component;
+  private final SortSpec sortSpec;
+  private final IndexSchema schema;
+  private final String uniqueKeyField;
+  private final boolean sortByScoreOnly;
+
+  // guarded by this
+  private final ShardFieldSortedHitQueue queue;
+  // id to shard mapping, to eliminate any accidental dups
+  private final Map<Object,String> uniqueDoc = new HashMap<>();
+  private final Set<String> mergedShards = new HashSet<>();
+  private int duplicates;
+
+  ShardIdsMerger(QueryComponent component, ResponseBuilder rb, SortSpec sortSpec) {
+    this.component = component;
+    this.sortSpec = sortSpec;
+    this.schema = rb.req.getSchema();
+    this.uniqueKeyField = schema.getUniqueKeyField().getName();
+
+    Sort sort = sortSpec.getSort();
+    SortField[] sortFields = sort != null ? sort.getSort() : new SortField[]{SortField.FIELD_SCORE};
+    boolean scoreOnly = true;
+    for (SortField sortField : sortFields) {
+      scoreOnly &= sortField.getType() == SortField.Type.SCORE;
+    }
+    this.sortByScoreOnly = scoreOnly;
+
+    // Merge the docs via a priority queue so we don't have to sort *all* of the
+    // documents... we only need to order the top (rows+start)
+    this.queue = new ShardFieldSortedHitQueue(sortFields, sortSpec.getOffset() + sortSpec.getCount(), rb.req.getSearcher());
+  }
+
+  /** Returns a parser that merges the response of the given shard while it is read. */
+  @Override
+  public ResponseParser apply(String shard) {
+    return new BinaryResponseParser() {
+      @Override
+      public NamedList<Object> processResponse(InputStream body, String encoding) {
+        try {
+          return read(shard, new JavaBinReader(body, stringCache));
+        } catch (IOException e) {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "parsing error", e);
+        }
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private NamedList<Object> read(String shard, JavaBinReader reader) throws IOException {
+    if (reader.next() != JavaBinReader.Event.START_MAP
+        || (reader.getTag() != JavaBinCodec.ORDERED_MAP && reader.getTag() != JavaBinCodec.NAMED_LST)) {
+      return (NamedList<Object>) reader.readValue();
+    }
+
+    NamedList<Object> rsp = reader.getTag() == JavaBinCodec.ORDERED_MAP ? new SimpleOrderedMap<>() : new NamedList<>();
+    List<Object> ids = null;
+    float[] scores = null;
+    while (reader.next() != JavaBinReader.Event.END_MAP) {
+      String name = reader.getName();
+      if (ids != null || reader.getEvent() != JavaBinReader.Event.START_DOCUMENT_LIST || !"response".equals(name)) {
+        rsp.add(name, reader.readValue());
+        continue;
+      }
+
+      SolrDocumentList docs = new SolrDocumentList();
+      docs.setNumFound(reader.getNumFound());
+      docs.setStart(reader.getStart());
+      docs.setMaxScore(reader.getMaxScore());
+      rsp.add(name, docs);
+
+      ids = new ArrayList<>();
+      scores = new float[16];
+      while (reader.next() != JavaBinReader.Event.END_DOCUMENT_LIST) {
+        if (reader.getEvent() != JavaBinReader.Event.START_DOCUMENT) {
+          reader.skipValue();
+          continue;
+        }
+        Object id = null;
+        float score = Float.NaN;
+        while (reader.next() != JavaBinReader.Event.END_DOCUMENT) {
+          if (reader.getKey() == null) {
+            reader.skipValue(); // a child document
+          } else if (uniqueKeyField.equals(reader.getName())) {
+            id = reader.readValue();
+          } else if ("score".equals(reader.getName())) {
+            score = toScore(reader.readValue());
+          } else {
+            reader.skipValue();
+          }
+        }
+        scores = ArrayUtil.grow(scores, ids.size() + 1);
+        scores[ids.size()] = score;
+        ids.add(id);
+      }
+    }
+
+    if (ids != null) {
+      merge(shard, ids, scores, (NamedList) rsp.get("sort_values"));
+    }
+    return rsp;
+  }
+
+  /** Merges a response that was not read by this merger. */
+  void merge(String shard, SolrDocumentList docs, NamedList sortFieldValues) {
+    List<Object> ids = new ArrayList<>(docs.size());
+    float[] scores = new float[docs.size()];
+    for (SolrDocument doc : docs) {
+      scores[ids.size()] = toScore(doc.getFieldValue("score"));
+      ids.add(doc.getFieldValue(uniqueKeyField));
+    }
+    merge(shard, ids, scores, sortFieldValues);
+  }
+
+  private void merge(String shard, List<Object> ids, float[] scores, NamedList sortFieldValues) {
+    NamedList unmarshalledSortFieldValues = sortFieldValues == null
+        ? new NamedList() : component.unmarshalSortValues(sortSpec, sortFieldValues, schema);
+
+    synchronized (this) {
+      if (mergedShards.add(shard) == false) {
+        return; // the response of another replica of the shard, when the request was hedged
+      }
+      boolean competitive = true;
+      for (int i = 0; i < ids.size(); i++) {
+        Object id = ids.get(i);
+        if (uniqueDoc.put(id, shard) != null) {
+          // duplicate detected
+          // For now, just always use the first encountered since we can't currently
+          // remove the previous one added to the priority queue.
+          duplicates++;
+          continue;
+        }
+        if (competitive == false) {
+          continue;
+        }
+
+        ShardDoc shardDoc = new ShardDoc();
+        shardDoc.id = id;
+        shardDoc.shard = shard;
+        shardDoc.orderInShard = i;
+        shardDoc.score = scores[i];
+        shardDoc.sortFieldValues = unmarshalledSortFieldValues;
+
+        if (queue.insertWithOverflow(shardDoc) == shardDoc && sortByScoreOnly) {
+          // the queue is full and the next documents of this shard have lower scores
+          competitive = false;
+        }
+      }
+    }
+  }
+
+  static float toScore(Object scoreObj) {
+    if (scoreObj == null) {
+      return Float.NaN;
+    } else if (scoreObj instanceof String) {
+      return Float.parseFloat((String) scoreObj);
+    }
+    return (Float) scoreObj;
+  }
+
+  /** Returns true if the response of the given shard has already been merged. */
+  synchronized boolean isMerged(String shard) {
+    return mergedShards.contains(shard);
+  }
+
+  /** Returns the number of documents that were ignored because another shard returned them first. */
+  synchronized int getDuplicates() {
+    return duplicates;
+  }
+
+  synchronized ShardFieldSortedHitQueue getQueue() {
+    return queue;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import org.apache.solr.common.util.URLUtil;
+
+/**
+ * Tracks the latency and the number of in-flight requests of each replica that shard requests
+ * are sent to, and the distribution of the latencies of the shard requests of each collection.
+ * <p>
+ * The latency of a replica is an exponentially weighted moving average of its latencies. It is
+ * also decayed over time, so that a replica that was slow once gets requests again later. Only
+ * successful requests are samples of the latency: a failed request counts as a slow one, so that
+ * a replica that fails fast is not preferred, and an aborted request only tells that the latency
+ * was at least the time it ran for.
+ */
+class ShardLatencyTracker {
+
+  /** The weight of a new sample in the moving average of the latency of a replica */
+  static final double ALPHA = 0.3;
+
+  /** How long it takes for the latency of a replica that gets no requests to be divided by e */
+  static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  /** The number of latencies a collection needs before its percentiles are used */
+  static final int MIN_SAMPLES = 10;
+
+  /** The latency a failed request counts as, unless it took longer */
+  static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** How a request to a replica finished */
+  enum Outcome {
+    /** the replica answered */
+    SUCCESS,
+    /** the request failed */
+    FAILURE,
+    /** the request was aborted before the replica answered, because another replica answered first */
+    ABORTED
+  }
+
+  private static class ReplicaStats {
+    final AtomicInteger inFlight = new AtomicInteger();
+    // guarded by this
+    double latencyNanos = -1;
+    long lastUpdateNanos;
+  }
+
+  private final ConcurrentMap<String,ReplicaStats> replicas = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String,Histogram> collections = new ConcurrentHashMap<>();
+
+  /** Normalizes a replica url, so that the same replica always gets the same stats. */
+  static String getKey(String url) {
+    String key = URLUtil.hasScheme(url) ? URLUtil.removeScheme(url) : url;
+    return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+  }
+
+  private ReplicaStats getStats(String url) {
+    return replicas.computeIfAbsent(getKey(url), k -> new ReplicaStats());
+  }
+
+  /** Records that a request was sent to the given replica. */
+  void requestStarted(String url) {
+    getStats(url).inFlight.incrementAndGet();
+  }
+
+  /** Records that a request that was sent to the given replica finished after the given time. */
+  void requestFinished(String url, long elapsedNanos, Outcome outcome) {
+    getStats(url).inFlight.decrementAndGet();
+    recordOutcome(url, elapsedNanos, outcome);
+  }
+
+  /** Records that a request that was sent to the given replica finished, without updating its latency. */
+  void requestFinished(String url) {
+    getStats(url).inFlight.decrementAndGet();
+  }
+
+  /**
+   * Updates the latency of the given replica with a request that finished after the given time,
+   * without changing the number of requests in flight.
+   */
+  void recordOutcome(String url, long elapsedNanos, Outcome outcome) {
+    ReplicaStats stats = getStats(url);
+    final long nowNanos = System.nanoTime();
+    synchronized (stats) {
+      final double sampleNanos;
+      switch (outcome) {
+        case SUCCESS:
+          sampleNanos = elapsedNanos;
+          break;
+        case FAILURE:
+          sampleNanos = Math.max(elapsedNanos, FAILURE_PENALTY_NANOS);
+          break;
+        case ABORTED:
+          // the replica would have answered later, this only matters if it is slower than we thought
+          double decayedNanos = stats.latencyNanos < 0 ? -1
+              : stats.latencyNanos * Math.exp(-(nowNanos - stats.lastUpdateNanos) / (double) DECAY_NANOS);
+          if (elapsedNanos <= decayedNanos) {
+            return;
+          }
+          sampleNanos = elapsedNanos;
+          break;
+        default:
+          throw new AssertionError(outcome);
+      }
+      stats.latencyNanos = stats.latencyNanos < 0 ? sampleNanos : ALPHA * sampleNanos + (1 - ALPHA) * stats.latencyNanos;
+      stats.lastUpdateNanos = nowNanos;
+    }
+  }
+
+  /**
+   * Returns the expected cost of sending a request to the given replica: its decayed latency
+   * multiplied by the number of requests that would be in flight. Unknown replicas cost 0.
+   */
+  double getCost(String url, long nowNanos) {
+    ReplicaStats stats = replicas.get(getKey(url));
+    if (stats == null) {
+      return 0;
+    }
+    double latencyNanos;
+    synchronized (stats) {
+      if (stats.latencyNanos < 0) {
+        return 0;
+      }
+      latencyNanos = stats.latencyNanos * Math.exp(-(nowNanos - stats.lastUpdateNanos) / (double) DECAY_NANOS);
+    }
+    return latencyNanos * (stats.inFlight.get() + 1);
+  }
+
+  /** Records the latency of a successful shard request of the given collection. */
+  void recordLatency(String collection, long elapsedNanos) {
+    collections.computeIfAbsent(collection, k -> new Histogram(new ExponentiallyDecayingReservoir())).update(elapsedNanos);
+  }
+
+  /**
+   * Returns the given percentile of the recent latencies of the shard requests of the given
+   * collection, or -1 if not enough requests were recorded yet.
+   */
+  long getLatencyPercentile(String collection, double percentile) {
+    Histogram histogram = collections.get(collection);
+    if (histogram == null || histogram.getCount() < MIN_SAMPLES) {
+      return -1;
+    }
+    return (long) histogram.getSnapshot().getValue(percentile / 100);
+  }
+}
@@ -16,10 +16,12 @@
  */
 package org.apache.solr.handler.component;
 
+import org.apache.solr.client.solrj.ResponseParser;
 import org.apache.solr.common.params.ModifiableSolrParams;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 
 // todo... when finalized make accessors
@@ -42,6 +44,7 @@ public class ShardRequest {
   public final static int PURPOSE_REFINE_PIVOT_FACETS =0x2000;
   public final static int PURPOSE_SET_TERM_STATS  =0x4000;
   public final static int PURPOSE_GET_TERM_STATS  = 0x8000;
+  public final static int PURPOSE_GET_PAGE_THRESHOLD = 0x10000;
 
   public int purpose;  // the purpose of this request
 
@@ -59,6 +62,9 @@ public class ShardRequest {
   /** may be null */
   public String nodeName;
 
+  /** creates the parser of the response of each shard, may be null for the default one */
+  public Function<String,ResponseParser> responseParserFactory;
+
   // TODO: one could store a list of numbers to correlate where returned docs
   // go in the top-level response rather than looking up by id...
   // this would work well if we ever transitioned to using internal ids and
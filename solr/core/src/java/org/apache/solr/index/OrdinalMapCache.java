@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.index;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * Keeps the last {@link OrdinalMap} that was built for every field, so that it can be updated
+ * rather than rebuilt from scratch when the index is reopened: the mappings of the segments
+ * that are still part of the new reader are reused, and only the terms of the new segments
+ * need to be merged, see {@link OrdinalMap#build(Object, OrdinalMap, int[], SortedDocValues[], float)}.
+ * When segments are only added, like with NRT reopens between merges, the cost of building
+ * the map depends on the new segments rather than on the whole index. If any segment of the
+ * previous map is gone, the map is built from scratch.
+ * <p>
+ * Segments are identified by their core cache key, which is only weakly referenced so that
+ * closed segments can be garbage collected. Since they are shared across readers, maps are
+ * built with a <code>null</code> owner.
+ *
+ * @see SlowCompositeReaderWrapper#wrap(IndexReader, OrdinalMapCache)
+ */
+public final class OrdinalMapCache {
+
+  private interface Builder {
+    /** Builds a map from scratch if <code>previous</code> is null, or by updating it otherwise. */
+    OrdinalMap build(OrdinalMap previous, int[] previousSegments) throws IOException;
+  }
+
+  private static final class Entry {
+    final WeakReference<Object>[] coreKeys;
+    final OrdinalMap map;
+
+    @SuppressWarnings("unchecked")
+    Entry(List<LeafReaderContext> leaves, OrdinalMap map) {
+      this.coreKeys = new WeakReference[leaves.size()];
+      for (int i = 0; i < coreKeys.length; ++i) {
+        coreKeys[i] = new WeakReference<>(leaves.get(i).reader().getCoreCacheKey());
+      }
+      this.map = map;
+    }
+
+    /** Returns the index of every segment of this entry in the new reader, or null if one of them is gone. */
+    int[] findSegments(Map<Object,Integer> segmentsByKey) {
+      final int[] segments = new int[coreKeys.length];
+      for (int i = 0; i < coreKeys.length; ++i) {
+        final Object coreKey = coreKeys[i].get();
+        final Integer segment = coreKey == null ? null : segmentsByKey.get(coreKey);
+        if (segment == null) {
+          return null;
+        }
+        segments[i] = segment;
+      }
+      return segments;
+    }
+  }
+
+  private final Map<String,Entry> sortedMaps = new HashMap<>();
+  private final Map<String,Entry> sortedSetMaps = new HashMap<>();
+
+  // package private for testing
+  final LongAdder fullBuilds = new LongAdder();
+  final LongAdder incrementalBuilds = new LongAdder();
+
+  /**
+   * Returns the ordinal map of the {@link SortedDocValues} of <code>field</code> across the
+   * leaves of <code>reader</code>, or null if no leaf has such values.
+   */
+  public OrdinalMap getSortedOrdinalMap(IndexReader reader, String field) throws IOException {
+    final List<LeafReaderContext> leaves = reader.leaves();
+    final SortedDocValues[] values = new SortedDocValues[leaves.size()];
+    boolean anyReal = false;
+    for (int i = 0; i < values.length; ++i) {
+      SortedDocValues v = leaves.get(i).reader().getSortedDocValues(field);
+      if (v == null) {
+        v = DocValues.emptySorted();
+      } else {
+        anyReal = true;
+      }
+      values[i] = v;
+    }
+    if (anyReal == false) {
+      return null;
+    }
+    return getOrdinalMap(sortedMaps, field, leaves, (previous, previousSegments) -> previous == null
+        ? OrdinalMap.build(null, values, PackedInts.DEFAULT)
+        : OrdinalMap.build(null, previous, previousSegments, values, PackedInts.DEFAULT));
+  }
+
+  /**
+   * Returns the ordinal map of the {@link SortedSetDocValues} of <code>field</code> across the
+   * leaves of <code>reader</code>, or null if no leaf has such values.
+   */
+  public OrdinalMap getSortedSetOrdinalMap(IndexReader reader, String field) throws IOException {
+    final List<LeafReaderContext> leaves = reader.leaves();
+    final SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+    boolean anyReal = false;
+    for (int i = 0; i < values.length; ++i) {
+      SortedSetDocValues v = leaves.get(i).reader().getSortedSetDocValues(field);
+      if (v == null) {
+        v = DocValues.emptySortedSet();
+      } else {
+        anyReal = true;
+      }
+      values[i] = v;
+    }
+    if (anyReal == false) {
+      return null;
+    }
+    return getOrdinalMap(sortedSetMaps, field, leaves, (previous, previousSegments) -> previous == null
+        ? OrdinalMap.build(null, values, PackedInts.DEFAULT)
+        : OrdinalMap.build(null, previous, previousSegments, values, PackedInts.DEFAULT));
+  }
+
+  private OrdinalMap getOrdinalMap(Map<String,Entry> maps, String field, List<LeafReaderContext> leaves, Builder builder) throws IOException {
+    final Map<Object,Integer> segmentsByKey = new IdentityHashMap<>();
+    for (LeafReaderContext context : leaves) {
+      segmentsByKey.put(context.reader().getCoreCacheKey(), context.ord);
+    }
+    if (segmentsByKey.size() != leaves.size()) {
+      // the same segment appears several times, we could not tell them apart
+      fullBuilds.increment();
+      return builder.build(null, null);
+    }
+
+    final Entry previous;
+    synchronized (maps) {
+      previous = maps.get(field);
+    }
+    final int[] previousSegments = previous == null ? null : previous.findSegments(segmentsByKey);
+    final OrdinalMap map;
+    if (previousSegments == null) {
+      fullBuilds.increment();
+      map = builder.build(null, null);
+    } else if (isIdentity(previousSegments, leaves.size())) {
+      // only deletions changed
+      map = previous.map;
+    } else {
+      incrementalBuilds.increment();
+      map = builder.build(previous.map, previousSegments);
+    }
+
+    synchronized (maps) {
+      maps.put(field, new Entry(leaves, map));
+    }
+    return map;
+  }
+
+  private static boolean isIdentity(int[] segments, int numSegments) {
+    if (segments.length != numSegments) {
+      return false;
+    }
+    for (int i = 0; i < segments.length; ++i) {
+      if (segments[i] != i) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -48,14 +48,23 @@ public final class SlowCompositeReaderWrapper extends LeafReader {
   private final CompositeReader in;
   private final Fields fields;
   private final boolean merging;
+  private final OrdinalMapCache ordinalMapCache;
   
   /** This method is sugar for getting an {@link LeafReader} from
    * an {@link IndexReader} of any kind. If the reader is already atomic,
    * it is returned unchanged, otherwise wrapped by this class.
    */
   public static LeafReader wrap(IndexReader reader) throws IOException {
+    return wrap(reader, null);
+  }
+
+  /** Like {@link #wrap(IndexReader)}, but ordinal maps are taken from
+   * the given cache, which updates them incrementally across reopens.
+   * @param ordinalMapCache the cache to get ordinal maps from, or null
+   */
+  public static LeafReader wrap(IndexReader reader, OrdinalMapCache ordinalMapCache) throws IOException {
     if (reader instanceof CompositeReader) {
-      return new SlowCompositeReaderWrapper((CompositeReader) reader, false);
+      return new SlowCompositeReaderWrapper((CompositeReader) reader, false, ordinalMapCache);
     } else {
       assert reader instanceof LeafReader;
       return (LeafReader) reader;
@@ -63,6 +72,10 @@ public final class SlowCompositeReaderWrapper extends LeafReader {
   }
 
   SlowCompositeReaderWrapper(CompositeReader reader, boolean merging) throws IOException {
+    this(reader, merging, null);
+  }
+
+  SlowCompositeReaderWrapper(CompositeReader reader, boolean merging, OrdinalMapCache ordinalMapCache) throws IOException {
     super();
     in = reader;
     if (getFieldInfos().hasPointValues()) {
@@ -71,6 +84,7 @@ public final class SlowCompositeReaderWrapper extends LeafReader {
     fields = MultiFields.getFields(in);
     in.registerParentReader(this);
     this.merging = merging;
+    this.ordinalMapCache = ordinalMapCache;
   }
 
   @Override
@@ -118,6 +132,12 @@ public final class SlowCompositeReaderWrapper extends LeafReader {
     OrdinalMap map = null;
     synchronized (cachedOrdMaps) {
       map = cachedOrdMaps.get(field);
+      if (map == null && ordinalMapCache != null && merging == false && in.leaves().size() > 1) {
+        map = ordinalMapCache.getSortedOrdinalMap(in, field);
+        if (map != null) {
+          cachedOrdMaps.put(field, map);
+        }
+      }
       if (map == null) {
         // uncached, or not a multi dv
         SortedDocValues dv = MultiDocValues.getSortedValues(in, field);
@@ -159,6 +179,12 @@ public final class SlowCompositeReaderWrapper extends LeafReader {
     OrdinalMap map = null;
     synchronized (cachedOrdMaps) {
       map = cachedOrdMaps.get(field);
+      if (map == null && ordinalMapCache != null && merging == false && in.leaves().size() > 1) {
+        map = ordinalMapCache.getSortedSetOrdinalMap(in, field);
+        if (map != null) {
+          cachedOrdMaps.put(field, map);
+        }
+      }
       if (map == null) {
         // uncached, or not a multi dv
         SortedSetDocValues dv = MultiDocValues.getSortedSetValues(in, field);
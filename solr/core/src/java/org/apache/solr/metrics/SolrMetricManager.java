@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.metrics;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.core.SolrResourceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class maintains a repository of named {@link MetricRegistry} instances, and provides several
+ * helper methods for managing various aspects of metrics reporting:
+ * <ul>
+ *   <li>registry creation, clearing and removal,</li>
+ *   <li>creation of most common metric implementations,</li>
+ *   <li>management of {@link SolrMetricReporter}-s specific to a named registry.</li>
+ * </ul>
+ * Registries are named after the {@link Group} they belong to, eg. <code>solr.node</code>
+ * for node-wide metrics or <code>solr.core.collection1</code> for the metrics of a core. In
+ * SolrCloud mode core registries are named <code>solr.core.&lt;collection&gt;.&lt;shard&gt;.&lt;replica&gt;</code>
+ * so that the registries of all replicas of a collection share a common prefix.
+ */
+public class SolrMetricManager {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Common prefix for all registry names that Solr uses. */
+  public static final String REGISTRY_NAME_PREFIX = "solr.";
+
+  /** Groups of registries, used to select which reporters apply to a registry. */
+  public enum Group { node, core }
+
+  private final ConcurrentMap<String, MetricRegistry> registries = new ConcurrentHashMap<>();
+
+  // registry name -> reporter name -> reporter, guarded by itself
+  private final Map<String, Map<String, SolrMetricReporter>> reporters = new HashMap<>();
+
+  /**
+   * Return the name of the registry for the given group, eg. <code>solr.core.collection1</code>.
+   * @param group registry group
+   * @param names optional child names, joined with dots
+   */
+  public static String getRegistryName(Group group, String... names) {
+    StringBuilder sb = new StringBuilder(REGISTRY_NAME_PREFIX).append(group.name());
+    for (String name : names) {
+      if (name != null && !name.isEmpty()) {
+        sb.append('.').append(name);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Build a metric name from a base name and an optional path, eg.
+   * <code>mkName("requestTimes", "QUERYHANDLER", "/select")</code> returns
+   * <code>QUERYHANDLER./select.requestTimes</code>.
+   */
+  public static String mkName(String name, String... path) {
+    if (path == null || path.length == 0) {
+      return name;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String p : path) {
+      if (p != null && !p.isEmpty()) {
+        sb.append(p).append('.');
+      }
+    }
+    return sb.append(name).toString();
+  }
+
+  /** Return the names of all registries currently managed by this instance. */
+  public Set<String> registryNames() {
+    return Collections.unmodifiableSet(registries.keySet());
+  }
+
+  /**
+   * Get (or create if absent) a named registry.
+   * @param registry name of the registry
+   */
+  public MetricRegistry registry(String registry) {
+    return registries.computeIfAbsent(registry, name -> new MetricRegistry());
+  }
+
+  /** Check whether a registry with the given name already exists. */
+  public boolean hasRegistry(String registry) {
+    return registries.containsKey(registry);
+  }
+
+  /**
+   * Remove a named registry and close the reporters that were attached to it.
+   * @param registry name of the registry to remove
+   */
+  public void removeRegistry(String registry) {
+    closeReporters(registry);
+    registries.remove(registry);
+  }
+
+  /**
+   * Remove all metrics from a registry, while keeping the registry and its reporters.
+   * @param registry name of the registry
+   */
+  public void clearRegistry(String registry) {
+    MetricRegistry metricRegistry = registries.get(registry);
+    if (metricRegistry != null) {
+      metricRegistry.removeMatching((name, metric) -> true);
+    }
+  }
+
+  /**
+   * Register a metric, eg. a gauge.
+   * @param registry registry name
+   * @param metric metric to register
+   * @param force if true, an existing metric with the same name is replaced, otherwise
+   *              an exception is thrown if such metric already exists
+   * @param metricName metric name, see {@link #mkName(String, String...)}
+   * @param metricPath optional path elements prepended to the metric name
+   */
+  public void register(String registry, Metric metric, boolean force, String metricName, String... metricPath) {
+    MetricRegistry metricRegistry = registry(registry);
+    String fullName = mkName(metricName, metricPath);
+    synchronized (metricRegistry) {
+      if (force && metricRegistry.getMetrics().containsKey(fullName)) {
+        metricRegistry.remove(fullName);
+      }
+      metricRegistry.register(fullName, metric);
+    }
+  }
+
+  /**
+   * Remove a metric.
+   * @param registry registry name
+   * @param metricName metric name, see {@link #mkName(String, String...)}
+   * @param metricPath optional path elements prepended to the metric name
+   * @return true if the metric existed and was removed
+   */
+  public boolean remove(String registry, String metricName, String... metricPath) {
+    MetricRegistry metricRegistry = registries.get(registry);
+    return metricRegistry != null && metricRegistry.remove(mkName(metricName, metricPath));
+  }
+
+  /** Get or create a {@link Timer}, which tracks rates and a histogram of durations. */
+  public Timer timer(String registry, String metricName, String... metricPath) {
+    return registry(registry).timer(mkName(metricName, metricPath));
+  }
+
+  /** Get or create a {@link Meter}, which tracks a count and rates of events. */
+  public Meter meter(String registry, String metricName, String... metricPath) {
+    return registry(registry).meter(mkName(metricName, metricPath));
+  }
+
+  /** Get or create a {@link Counter}. */
+  public Counter counter(String registry, String metricName, String... metricPath) {
+    return registry(registry).counter(mkName(metricName, metricPath));
+  }
+
+  /** Get or create a {@link Histogram}. */
+  public Histogram histogram(String registry, String metricName, String... metricPath) {
+    return registry(registry).histogram(mkName(metricName, metricPath));
+  }
+
+  /**
+   * Create and start the reporters that apply to the given group, and attach them to a registry.
+   * Reporters apply to a group if their <code>group</code> attribute is equal to the group name,
+   * reporters without a <code>group</code> attribute apply to {@link Group#node}.
+   * An already existing reporter with the same name for the same registry is closed and replaced.
+   * @param pluginInfos reporter configurations, may be null
+   * @param loader resource loader used to load the reporter classes
+   * @param group group of the registry
+   * @param registry name of the registry
+   * @return the reporters that were started
+   */
+  public List<SolrMetricReporter> loadReporters(PluginInfo[] pluginInfos, SolrResourceLoader loader, Group group, String registry) {
+    if (pluginInfos == null || pluginInfos.length == 0) {
+      return Collections.emptyList();
+    }
+    List<SolrMetricReporter> loaded = new ArrayList<>();
+    for (PluginInfo info : pluginInfos) {
+      String target = info.attributes.get("group");
+      if (target == null) {
+        target = Group.node.name();
+      }
+      if (!group.name().equals(target) || !info.isEnabled()) {
+        continue;
+      }
+      try {
+        loaded.add(loadReporter(registry, loader, info));
+      } catch (Exception e) {
+        log.warn("Error loading metrics reporter " + info + " for registry " + registry, e);
+      }
+    }
+    return loaded;
+  }
+
+  /**
+   * Create, start and attach a single reporter to a registry.
+   * @param registry name of the registry
+   * @param loader resource loader used to load the reporter class
+   * @param pluginInfo reporter configuration
+   */
+  public SolrMetricReporter loadReporter(String registry, SolrResourceLoader loader, PluginInfo pluginInfo) {
+    if (pluginInfo.name == null) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Metrics reporters must have a name: " + pluginInfo);
+    }
+    SolrMetricReporter reporter = loader.newInstance(
+        pluginInfo.className,
+        SolrMetricReporter.class,
+        new String[0],
+        new Class[] { SolrMetricManager.class, String.class },
+        new Object[] { this, registry }
+    );
+    reporter.init(pluginInfo);
+    SolrMetricReporter previous;
+    synchronized (reporters) {
+      previous = reporters.computeIfAbsent(registry, r -> new HashMap<>()).put(pluginInfo.name, reporter);
+    }
+    if (previous != null) {
+      closeQuietly(previous);
+    }
+    log.info("Started metrics reporter " + pluginInfo.name + " for registry " + registry);
+    return reporter;
+  }
+
+  /**
+   * Close a reporter and detach it from a registry, unless it has been replaced by another reporter
+   * with the same name in the meantime.
+   */
+  public void closeReporter(String registry, SolrMetricReporter reporter) {
+    synchronized (reporters) {
+      Map<String, SolrMetricReporter> perRegistry = reporters.get(registry);
+      if (perRegistry == null || perRegistry.get(reporter.getPluginInfo().name) != reporter) {
+        return;
+      }
+      perRegistry.remove(reporter.getPluginInfo().name);
+      if (perRegistry.isEmpty()) {
+        reporters.remove(registry);
+      }
+    }
+    closeQuietly(reporter);
+  }
+
+  /** Close all reporters attached to a registry. */
+  public void closeReporters(String registry) {
+    Map<String, SolrMetricReporter> perRegistry;
+    synchronized (reporters) {
+      perRegistry = reporters.remove(registry);
+    }
+    if (perRegistry != null) {
+      perRegistry.values().forEach(SolrMetricManager::closeQuietly);
+    }
+  }
+
+  /** Close all reporters of all registries. */
+  public void closeReporters() {
+    List<String> names;
+    synchronized (reporters) {
+      names = new ArrayList<>(reporters.keySet());
+    }
+    names.forEach(this::closeReporters);
+  }
+
+  /** Return the reporters currently attached to a registry, by name. */
+  public Map<String, SolrMetricReporter> getReporters(String registry) {
+    synchronized (reporters) {
+      Map<String, SolrMetricReporter> perRegistry = reporters.get(registry);
+      return perRegistry == null ? Collections.emptyMap() : new HashMap<>(perRegistry);
+    }
+  }
+
+  private static void closeQuietly(SolrMetricReporter reporter) {
+    try {
+      reporter.close();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Error closing metrics reporter " + reporter, e);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.metrics;
+
+import java.io.Closeable;
+
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.util.SolrPluginUtils;
+import org.apache.solr.util.plugin.PluginInfoInitialized;
+
+/**
+ * Base class for reporters that periodically publish the metrics of one
+ * registry of a {@link SolrMetricManager}. Reporters are configured in the
+ * <code>&lt;metrics&gt;</code> section of <code>solr.xml</code>, and their
+ * init args are applied through setters.
+ */
+public abstract class SolrMetricReporter implements Closeable, PluginInfoInitialized {
+
+  protected final String registryName;
+  protected final SolrMetricManager metricManager;
+  protected PluginInfo pluginInfo;
+
+  /**
+   * Create a reporter for metrics managed by a {@link SolrMetricManager}.
+   * @param metricManager metric manager instance that manages the selected registry
+   * @param registryName registry to use, one of the names returned by {@link SolrMetricManager#registryNames()}
+   */
+  protected SolrMetricReporter(SolrMetricManager metricManager, String registryName) {
+    this.registryName = registryName;
+    this.metricManager = metricManager;
+  }
+
+  /**
+   * Initialize this reporter: apply the init args through setters, validate
+   * the configuration and start reporting.
+   * @param pluginInfo plugin configuration
+   */
+  @Override
+  public void init(PluginInfo pluginInfo) {
+    this.pluginInfo = pluginInfo;
+    if (pluginInfo.initArgs != null) {
+      SolrPluginUtils.invokeSetters(this, pluginInfo.initArgs);
+    }
+    validate();
+    start();
+  }
+
+  /**
+   * Get the effective {@link PluginInfo} instance that was used for
+   * initialization of this plugin.
+   */
+  public PluginInfo getPluginInfo() {
+    return pluginInfo;
+  }
+
+  /**
+   * Validate that the reporter has been fully configured.
+   * @throws IllegalStateException if the configuration is invalid or incomplete
+   */
+  protected abstract void validate() throws IllegalStateException;
+
+  /**
+   * Start reporting the metrics of {@link #registryName}.
+   */
+  protected abstract void start();
+
+  @Override
+  public String toString() {
+    return getClass().getName() + "{registryName='" + registryName + "', pluginInfo=" + pluginInfo + "}";
+  }
+}
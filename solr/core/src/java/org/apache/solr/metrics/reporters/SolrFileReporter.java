@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.metrics.reporters;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.CsvReporter;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricReporter;
+
+/**
+ * A {@link SolrMetricReporter} that periodically appends the metrics of a registry
+ * to CSV files in a local directory, one file per metric. This is useful to collect
+ * time series when no external metrics system (eg. Graphite) is available.
+ * <p>Supported init args:</p>
+ * <ul>
+ *   <li><code>dir</code> - directory where files are written, required,</li>
+ *   <li><code>period</code> - reporting period in seconds, 60 by default.</li>
+ * </ul>
+ */
+public class SolrFileReporter extends SolrMetricReporter {
+
+  private String dir;
+  private int period = 60;
+  private CsvReporter reporter;
+
+  public SolrFileReporter(SolrMetricManager metricManager, String registryName) {
+    super(metricManager, registryName);
+  }
+
+  public void setDir(String dir) {
+    this.dir = dir;
+  }
+
+  public void setPeriod(int period) {
+    this.period = period;
+  }
+
+  @Override
+  protected void validate() throws IllegalStateException {
+    if (dir == null || dir.isEmpty()) {
+      throw new IllegalStateException("Init argument 'dir' is required");
+    }
+    if (period < 1) {
+      throw new IllegalStateException("period must be at least 1 second, got " + period);
+    }
+  }
+
+  @Override
+  protected void start() {
+    File directory = new File(dir, registryName);
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IllegalStateException("Could not create directory " + directory);
+    }
+    reporter = CsvReporter.forRegistry(metricManager.registry(registryName))
+        .formatFor(Locale.ROOT)
+        .convertRatesTo(TimeUnit.SECONDS)
+        .convertDurationsTo(TimeUnit.MILLISECONDS)
+        .build(directory);
+    reporter.start(period, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void close() {
+    if (reporter != null) {
+      reporter.close();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.metrics.reporters;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import com.codahale.metrics.JmxReporter;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricReporter;
+
+/**
+ * A {@link SolrMetricReporter} that registers the metrics of a registry as JMX MBeans.
+ * <p>Supported init args:</p>
+ * <ul>
+ *   <li><code>domain</code> - JMX domain, defaults to the registry name,</li>
+ *   <li><code>agentId</code> - id of the MBean server to use, defaults to the first
+ *   MBean server found, or the platform MBean server if there is none.</li>
+ * </ul>
+ */
+public class SolrJmxReporter extends SolrMetricReporter {
+
+  private String domain;
+  private String agentId;
+  private JmxReporter reporter;
+
+  public SolrJmxReporter(SolrMetricManager metricManager, String registryName) {
+    super(metricManager, registryName);
+  }
+
+  public void setDomain(String domain) {
+    this.domain = domain;
+  }
+
+  public void setAgentId(String agentId) {
+    this.agentId = agentId;
+  }
+
+  @Override
+  protected void validate() throws IllegalStateException {
+    if (domain == null || domain.isEmpty()) {
+      domain = registryName;
+    }
+  }
+
+  @Override
+  protected void start() {
+    reporter = JmxReporter.forRegistry(metricManager.registry(registryName))
+        .registerWith(findMBeanServer())
+        .inDomain(domain)
+        .build();
+    reporter.start();
+  }
+
+  private MBeanServer findMBeanServer() {
+    List<MBeanServer> servers = MBeanServerFactory.findMBeanServer(agentId);
+    if (servers == null || servers.isEmpty()) {
+      if (agentId != null) {
+        throw new IllegalStateException("No JMX servers found with agentId: " + agentId);
+      }
+      return ManagementFactory.getPlatformMBeanServer();
+    }
+    return servers.get(0);
+  }
+
+  @Override
+  public void close() {
+    if (reporter != null) {
+      reporter.close();
+    }
+  }
+}
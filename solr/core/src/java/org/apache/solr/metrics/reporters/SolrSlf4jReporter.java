@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.metrics.reporters;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Slf4jReporter;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricReporter;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SolrMetricReporter} that periodically logs the metrics of a registry.
+ * <p>Supported init args:</p>
+ * <ul>
+ *   <li><code>period</code> - reporting period in seconds, 60 by default,</li>
+ *   <li><code>logger</code> - name of the logger to use, defaults to the registry name.</li>
+ * </ul>
+ */
+public class SolrSlf4jReporter extends SolrMetricReporter {
+
+  private int period = 60;
+  private String logger;
+  private Slf4jReporter reporter;
+
+  public SolrSlf4jReporter(SolrMetricManager metricManager, String registryName) {
+    super(metricManager, registryName);
+  }
+
+  public void setPeriod(int period) {
+    this.period = period;
+  }
+
+  public void setLogger(String logger) {
+    this.logger = logger;
+  }
+
+  @Override
+  protected void validate() throws IllegalStateException {
+    if (period < 1) {
+      throw new IllegalStateException("period must be at least 1 second, got " + period);
+    }
+    if (logger == null || logger.isEmpty()) {
+      logger = registryName;
+    }
+  }
+
+  @Override
+  protected void start() {
+    reporter = Slf4jReporter.forRegistry(metricManager.registry(registryName))
+        .outputTo(LoggerFactory.getLogger(logger))
+        .convertRatesTo(TimeUnit.SECONDS)
+        .convertDurationsTo(TimeUnit.MILLISECONDS)
+        .build();
+    reporter.start(period, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void close() {
+    if (reporter != null) {
+      reporter.close();
+    }
+  }
+}
@@ -162,7 +162,8 @@ public class SolrRequestInfo {
 
       @Override
       public void clean(AtomicReference ctx) {
-        SolrRequestInfo.clearRequestInfo();
+        // the request may still be running, its own thread runs the close hooks once it is done
+        threadLocal.remove();
       }
     };
   }
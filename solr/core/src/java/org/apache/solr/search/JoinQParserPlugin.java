@@ -60,6 +60,13 @@ import org.apache.solr.util.RefCounted;
 public class JoinQParserPlugin extends QParserPlugin {
   public static final String NAME = "join";
 
+  /** Local param that selects how the join is executed, either {@link #METHOD_INDEX} or {@link #METHOD_SEGMENT}. */
+  public static final String METHOD = "method";
+  /** Joins the whole index at once, this is the default. */
+  public static final String METHOD_INDEX = "index";
+  /** Joins one segment at a time and caches the result of every segment, see {@link SegmentDocIdSetCache}. */
+  public static final String METHOD_SEGMENT = "segment";
+
   @Override
   public QParser createParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
     return new QParser(qstr, localParams, params, req) {
@@ -78,8 +85,13 @@ public class JoinQParserPlugin extends QParserPlugin {
         final String fromIndex = getParam("fromIndex");
         final String toField = getParam("to");
         final String v = localParams.get("v");
+        final String method = localParams.get(METHOD, METHOD_INDEX);
         final String coreName;
 
+        if (!METHOD_INDEX.equals(method) && !METHOD_SEGMENT.equals(method)) {
+          throw new SyntaxError("Unknown join method: " + method);
+        }
+
         Query fromQuery;
         long fromCoreOpenTime = 0;
 
@@ -114,7 +126,10 @@ public class JoinQParserPlugin extends QParserPlugin {
           fromQuery = fromQueryParser.getQuery();
         }
 
-        JoinQuery jq = new JoinQuery(fromField, toField, coreName == null ? fromIndex : coreName, fromQuery);
+        final String joinIndex = coreName == null ? fromIndex : coreName;
+        JoinQuery jq = METHOD_SEGMENT.equals(method)
+            ? new SegmentJoinQuery(fromField, toField, joinIndex, fromQuery)
+            : new JoinQuery(fromField, toField, joinIndex, fromQuery);
         jq.fromCoreOpenTime = fromCoreOpenTime;
         return jq;
       }
@@ -151,7 +166,7 @@ class JoinQuery extends Query {
     return new JoinQueryWeight((SolrIndexSearcher)searcher, boost);
   }
 
-  private class JoinQueryWeight extends ConstantScoreWeight {
+  class JoinQueryWeight extends ConstantScoreWeight {
     SolrIndexSearcher fromSearcher;
     RefCounted<SolrIndexSearcher> fromRef;
     SolrIndexSearcher toSearcher;
@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.util.BufferFreer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-only {@link DocSet} that keeps its bits outside of the Java heap, in a direct
+ * {@link ByteBuffer}. Iteration, membership tests and the counting operations
+ * (intersection, union and andNot sizes) work directly against the off-heap words;
+ * operations that produce a new set return a regular on-heap {@link BitDocSet}.
+ * <p>
+ * The off-heap memory is reference counted: a new set holds one reference, {@link #tryIncRef()}
+ * acquires another one and {@link #decRef()} releases one. The memory is freed as soon as the
+ * last reference is released, rather than when the garbage collector gets to the buffer,
+ * unless the JVM does not allow to free direct buffers explicitly. A set must only be used
+ * while holding a reference: using a set after its memory was freed throws an
+ * {@link IllegalStateException} only if the memory was freed before the use started, eg. by the
+ * same thread. The memory may also be freed by another thread while the set is being read,
+ * which may crash the JVM.
+ *
+ * @see OffHeapFilterCache
+ */
+public class OffHeapBitDocSet extends DocSetBase {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapBitDocSet.class)
+      + 2 * RamUsageEstimator.shallowSizeOfInstance(ByteBuffer.class) // the direct buffer and its long view
+      + RamUsageEstimator.shallowSizeOfInstance(AtomicInteger.class);
+
+  private final ByteBuffer buffer;
+  private final AtomicInteger refCount = new AtomicInteger(1);
+  private volatile LongBuffer words; // null once the memory was freed
+  private final int numWords;
+  private final int numBits;
+  private final int size;
+
+  /**
+   * Copy the bits of a {@link FixedBitSet} to off-heap memory.
+   * @param bits the bits to copy, not modified
+   * @param size the number of set bits, or -1 if unknown
+   */
+  public OffHeapBitDocSet(FixedBitSet bits, int size) {
+    this.numBits = bits.length();
+    this.numWords = FixedBitSet.bits2words(numBits);
+    this.buffer = ByteBuffer.allocateDirect(numWords << 3).order(ByteOrder.nativeOrder());
+    LongBuffer words = buffer.asLongBuffer();
+    words.put(bits.getBits(), 0, numWords);
+    words.rewind(); // reads are absolute, except for the bulk copy in getBits()
+    this.words = words;
+    this.size = size >= 0 ? size : (int) bits.cardinality();
+  }
+
+  /** Copy a {@link BitDocSet} to off-heap memory. */
+  public OffHeapBitDocSet(BitDocSet set) {
+    this(set.getBits(), set.size());
+  }
+
+  /**
+   * Acquires a reference to the memory of this set.
+   * @return false if the memory was already freed, in which case no reference was acquired
+   */
+  public boolean tryIncRef() {
+    for (;;) {
+      int count = refCount.get();
+      if (count <= 0) {
+        return false;
+      }
+      if (refCount.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /** Releases a reference to the memory of this set, and frees it if it was the last one. */
+  public void decRef() {
+    int count = refCount.decrementAndGet();
+    assert count >= 0 : "decRef() was called more often than tryIncRef()";
+    if (count == 0) {
+      words = null;
+      try {
+        BufferFreer.free(buffer);
+      } catch (IOException e) {
+        log.warn("Could not free the off-heap memory of a DocSet, it is left to the garbage collector", e);
+      }
+    }
+  }
+
+  /** Returns the number of references to the memory of this set, 0 once it was freed. */
+  public int getRefCount() {
+    return refCount.get();
+  }
+
+  private LongBuffer words() {
+    LongBuffer words = this.words;
+    if (words == null) {
+      throw new IllegalStateException("The off-heap memory of this DocSet was already freed");
+    }
+    return words;
+  }
+
+  /** Returns the number of bytes that this set holds outside of the heap. */
+  public long offHeapBytesUsed() {
+    return (long) numWords << 3;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    return doc < numBits && (words().get(doc >> 6) & (1L << doc)) != 0;
+  }
+
+  /** Returns the index of the first set bit at or after <code>index</code>, or {@link DocIdSetIterator#NO_MORE_DOCS}. */
+  int nextSetBit(int index) {
+    if (index >= numBits) {
+      return DocIdSetIterator.NO_MORE_DOCS;
+    }
+    final LongBuffer words = words();
+    int i = index >> 6;
+    long word = words.get(i) >> index; // skip all the bits to the right of index
+    if (word != 0) {
+      return index + Long.numberOfTrailingZeros(word);
+    }
+    while (++i < numWords) {
+      word = words.get(i);
+      if (word != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private int pos = nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return nextDoc();
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = nextSetBit(old + 1);
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  /**
+   * Returns a new <b>on-heap</b> copy of the bits of this set.
+   */
+  @Override
+  protected FixedBitSet getBits() {
+    long[] copy = new long[numWords];
+    words().duplicate().get(copy);
+    return new FixedBitSet(copy, numBits);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    final LongBuffer words = words();
+    if (other instanceof OffHeapBitDocSet) {
+      OffHeapBitDocSet o = (OffHeapBitDocSet) other;
+      final LongBuffer oWords = o.words();
+      int count = 0;
+      for (int i = Math.min(numWords, o.numWords) - 1; i >= 0; i--) {
+        count += Long.bitCount(words.get(i) & oWords.get(i));
+      }
+      return count;
+    } else if (other instanceof BitDocSet) {
+      long[] o = ((BitDocSet) other).getBits().getBits();
+      int count = 0;
+      for (int i = Math.min(numWords, o.length) - 1; i >= 0; i--) {
+        count += Long.bitCount(words.get(i) & o[i]);
+      }
+      return count;
+    } else {
+      // the small sets are probed through exists(), they won't call us back
+      return other.intersectionSize(this);
+    }
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    final LongBuffer words = words();
+    if (other instanceof OffHeapBitDocSet) {
+      OffHeapBitDocSet o = (OffHeapBitDocSet) other;
+      final LongBuffer oWords = o.words();
+      for (int i = Math.min(numWords, o.numWords) - 1; i >= 0; i--) {
+        if ((words.get(i) & oWords.get(i)) != 0) return true;
+      }
+      return false;
+    } else if (other instanceof BitDocSet) {
+      long[] o = ((BitDocSet) other).getBits().getBits();
+      for (int i = Math.min(numWords, o.length) - 1; i >= 0; i--) {
+        if ((words.get(i) & o[i]) != 0) return true;
+      }
+      return false;
+    } else {
+      return other.intersects(this);
+    }
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof OffHeapBitDocSet || other instanceof BitDocSet) {
+      FixedBitSet newbits = getBits();
+      if (other instanceof BitDocSet) {
+        newbits.and(((BitDocSet) other).getBits());
+      } else {
+        OffHeapBitDocSet o = (OffHeapBitDocSet) other;
+        final LongBuffer oWords = o.words();
+        long[] arr = newbits.getBits();
+        for (int i = 0; i < numWords; i++) {
+          arr[i] &= i < o.numWords ? oWords.get(i) : 0L;
+        }
+      }
+      return new BitDocSet(newbits);
+    } else {
+      return other.intersection(this);
+    }
+  }
+
+  @Override
+  public int unionSize(DocSet other) {
+    return size + other.size() - intersectionSize(other);
+  }
+
+  @Override
+  public int andNotSize(DocSet other) {
+    return size - intersectionSize(other);
+  }
+
+  @Override
+  public void addAllTo(DocSet target) {
+    if (target instanceof BitDocSet) {
+      final LongBuffer words = words();
+      FixedBitSet bits = ((BitDocSet) target).getBits();
+      long[] arr = bits.getBits();
+      for (int i = Math.min(numWords, arr.length) - 1; i >= 0; i--) {
+        arr[i] |= words.get(i);
+      }
+      ((BitDocSet) target).invalidateSize();
+    } else {
+      super.addAllTo(target);
+    }
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      final OffHeapBitDocSet set = OffHeapBitDocSet.this;
+
+      @Override
+      public DocIdSet getDocIdSet(final LeafReaderContext context, final Bits acceptDocs) {
+        LeafReader reader = context.reader();
+        // all Solr DocSets that are used as filters only include live docs
+        final Bits acceptDocs2 = acceptDocs == null ? null : (reader.getLiveDocs() == acceptDocs ? null : acceptDocs);
+
+        final int base = context.docBase;
+        final int max = base + reader.maxDoc();   // one past the max doc in this segment.
+
+        return BitsFilteredDocIdSet.wrap(new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+              int adjustedDoc = -1;
+
+              @Override
+              public int docID() {
+                return adjustedDoc;
+              }
+
+              @Override
+              public int nextDoc() {
+                return advance(adjustedDoc + 1);
+              }
+
+              @Override
+              public int advance(int target) {
+                if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+                int adjusted = target + base;
+                if (adjusted >= max) {
+                  return adjustedDoc = NO_MORE_DOCS;
+                }
+                int pos = set.nextSetBit(adjusted);
+                return adjustedDoc = pos < max ? pos - base : NO_MORE_DOCS;
+              }
+
+              @Override
+              public long cost() {
+                // pro-rate the cardinality of the set for the segment
+                return (long) (set.size * ((max - base) / (float) Math.max(1, set.numBits)));
+              }
+            };
+          }
+
+          @Override
+          public long ramBytesUsed() {
+            return set.ramBytesUsed();
+          }
+
+          @Override
+          public Bits bits() {
+            return new Bits() {
+              @Override
+              public boolean get(int index) {
+                return set.exists(index + base);
+              }
+
+              @Override
+              public int length() {
+                return max - base;
+              }
+            };
+          }
+
+        }, context.isTopLevel ? acceptDocs : acceptDocs2);
+      }
+
+      @Override
+      public String toString(String field) {
+        return "OffHeapBitSetDocTopFilter";
+      }
+
+      @Override
+      public boolean equals(Object other) {
+        return sameClassAs(other) && set == getClass().cast(other).set;
+      }
+
+      @Override
+      public int hashCode() {
+        return classHash() * 31 + System.identityHashCode(set);
+      }
+    };
+  }
+
+  /** Returns the on-heap bytes used by this set, see {@link #offHeapBytesUsed()} for the off-heap part. */
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+}
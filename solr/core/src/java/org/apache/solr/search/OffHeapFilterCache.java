@@ -0,0 +1,384 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.metrics.SolrMetricProducer;
+import org.apache.solr.request.SolrRequestInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An LRU {@link SolrCache} for {@link DocSet}s, meant to be used as the <code>filterCache</code>,
+ * that keeps the large (bitset based) sets outside of the Java heap. Every {@link BitDocSet}
+ * that is put in the cache is copied to an {@link OffHeapBitDocSet}, which is what subsequent
+ * lookups return. Small sets (eg. {@link SortedIntDocSet}) are cheap to keep on the heap and
+ * are cached as they are.
+ * <p>
+ * Besides the usual <code>size</code> and <code>initialSize</code>, this cache supports a
+ * <code>maxSizeMB</code> parameter which bounds the total number of bytes (both on and off
+ * heap) used by the cached entries.
+ * <p>
+ * The off-heap memory of an evicted set is freed as soon as it is not used anymore: the cache
+ * holds a reference to every set it contains, and every lookup acquires a reference that is
+ * released when the request that did the lookup is done (see {@link SolrRequestInfo#addCloseHook}).
+ * This includes lookups done by the threads of Solr's executors, eg. facet or segment search
+ * threads, which belong to the request that submitted their work. Nothing would release the
+ * reference of a lookup that no request owns, so such lookups get an on-heap copy of the set
+ * instead. Sets whose memory the JVM does not allow to free explicitly are left to the garbage
+ * collector.
+ * <code>-XX:MaxDirectMemorySize</code> should leave some headroom above <code>maxSizeMB</code>
+ * multiplied by the number of caches that may be alive at the same time (ie. during warming).
+ * <pre class="prettyprint">
+ * &lt;filterCache class="solr.OffHeapFilterCache" size="4096" maxSizeMB="8192" autowarmCount="128"/&gt;
+ * </pre>
+ */
+public class OffHeapFilterCache<K> extends SolrCacheBase implements SolrCache<K,DocSet>, SolrMetricProducer, Accountable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapFilterCache.class);
+
+  /* An instance of this class will be shared across multiple instances
+   * of an OffHeapFilterCache at the same time.  Make sure everything is thread safe.
+   */
+  private static class CumulativeStats {
+    LongAdder lookups = new LongAdder();
+    LongAdder hits = new LongAdder();
+    LongAdder inserts = new LongAdder();
+    LongAdder evictions = new LongAdder();
+  }
+
+  private CumulativeStats stats;
+
+  // per instance stats, guarded by the map like the bytes counters below
+  private long lookups;
+  private long hits;
+  private long inserts;
+  private long evictions;
+
+  private long warmupTime = 0;
+
+  private LinkedHashMap<K,DocSet> map;
+  private int limit;
+  private long maxBytes = Long.MAX_VALUE;
+  private long bytesUsed = 0;
+  private long offHeapBytesUsed = 0;
+  private String description = "Off-heap Filter Cache";
+
+  @Override
+  public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
+    super.init(args, regenerator);
+    String str = (String) args.get("size");
+    limit = str == null ? 1024 : Integer.parseInt(str);
+    str = (String) args.get("initialSize");
+    final int initialSize = Math.min(str == null ? 1024 : Integer.parseInt(str), limit);
+    str = (String) args.get("maxSizeMB");
+    maxBytes = str == null ? Long.MAX_VALUE : (long) (Double.parseDouble(str) * 1024L * 1024L);
+    if (maxBytes <= 0) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "maxSizeMB must be positive, got: " + str);
+    }
+    description = generateDescription(initialSize);
+
+    map = new LinkedHashMap<>(initialSize, 0.75f, true);
+
+    if (persistence == null) {
+      // must be the first time a cache of this type is being created
+      persistence = new CumulativeStats();
+    }
+    stats = (CumulativeStats) persistence;
+    return persistence;
+  }
+
+  private String generateDescription(int initialSize) {
+    String description = "Off-heap Filter Cache(maxSize=" + limit + ", initialSize=" + initialSize;
+    if (isAutowarmingOn()) {
+      description += ", " + getAutowarmDescription();
+    }
+    if (maxBytes != Long.MAX_VALUE) {
+      description += ", maxSizeMB=" + (maxBytes / 1024L / 1024L);
+    }
+    description += ')';
+    return description;
+  }
+
+  private static long keyBytes(Object key) {
+    return key instanceof Accountable ? ((Accountable) key).ramBytesUsed() : LRUCache.DEFAULT_RAM_BYTES_USED;
+  }
+
+  private static long valueBytes(DocSet value) {
+    if (value == null) {
+      return 0;
+    }
+    long bytes = value.ramBytesUsed();
+    if (value instanceof OffHeapBitDocSet) {
+      bytes += ((OffHeapBitDocSet) value).offHeapBytesUsed();
+    }
+    return bytes;
+  }
+
+  private static long entryBytes(Object key, DocSet value) {
+    return keyBytes(key) + valueBytes(value) + LRUCache.LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY;
+  }
+
+  private static long offHeapBytes(DocSet value) {
+    return value instanceof OffHeapBitDocSet ? ((OffHeapBitDocSet) value).offHeapBytesUsed() : 0;
+  }
+
+  @Override
+  public int size() {
+    synchronized (map) {
+      return map.size();
+    }
+  }
+
+  // the cache's own reference to the sets it holds
+  private static void acquire(DocSet value) {
+    if (value instanceof OffHeapBitDocSet && !((OffHeapBitDocSet) value).tryIncRef()) {
+      throw new IllegalStateException("The off-heap memory of this DocSet was already freed");
+    }
+  }
+
+  private static void release(DocSet value) {
+    if (value instanceof OffHeapBitDocSet) {
+      ((OffHeapBitDocSet) value).decRef();
+    }
+  }
+
+  @Override
+  public DocSet put(K key, DocSet value) {
+    // copy outside of the lock, this is the expensive part
+    DocSet cached;
+    if (value instanceof BitDocSet) {
+      cached = new OffHeapBitDocSet((BitDocSet) value); // comes with the reference of the cache
+    } else {
+      cached = value;
+      acquire(cached);
+    }
+    synchronized (map) {
+      if (getState() == State.LIVE) {
+        stats.inserts.increment();
+      }
+      inserts++;
+
+      DocSet old = map.put(key, cached);
+      bytesUsed += entryBytes(key, cached);
+      offHeapBytesUsed += offHeapBytes(cached);
+      if (old != null) {
+        bytesUsed -= entryBytes(key, old);
+        offHeapBytesUsed -= offHeapBytes(old);
+        release(old);
+      }
+      evictIfNeeded();
+      return old;
+    }
+  }
+
+  // must be called with the map lock held
+  private void evictIfNeeded() {
+    Iterator<Map.Entry<K,DocSet>> iterator = map.entrySet().iterator();
+    // never evict the entry that was just inserted, even if it is larger than maxBytes
+    while (map.size() > 1 && (map.size() > limit || bytesUsed > maxBytes)) {
+      Map.Entry<K,DocSet> eldest = iterator.next();
+      bytesUsed -= entryBytes(eldest.getKey(), eldest.getValue());
+      offHeapBytesUsed -= offHeapBytes(eldest.getValue());
+      release(eldest.getValue());
+      iterator.remove();
+      evictions++;
+      stats.evictions.increment();
+    }
+  }
+
+  @Override
+  public DocSet get(K key) {
+    DocSet val;
+    synchronized (map) {
+      val = map.get(key);
+      if (getState() == State.LIVE) {
+        // only increment lookups and hits if we are live.
+        lookups++;
+        stats.lookups.increment();
+        if (val != null) {
+          hits++;
+          stats.hits.increment();
+        }
+      }
+      // the set can't be freed while the cache holds it, acquire the reference of the caller
+      acquire(val);
+    }
+    if (val instanceof OffHeapBitDocSet) {
+      final OffHeapBitDocSet set = (OffHeapBitDocSet) val;
+      SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+      if (info == null) {
+        // not done for a request, nothing would release the reference
+        try {
+          return new BitDocSet(set.getBits(), set.size());
+        } finally {
+          set.decRef();
+        }
+      }
+      info.addCloseHook(set::decRef);
+    }
+    return val;
+  }
+
+  @Override
+  public void clear() {
+    synchronized (map) {
+      for (DocSet value : map.values()) {
+        release(value);
+      }
+      map.clear();
+      bytesUsed = 0;
+      offHeapBytesUsed = 0;
+    }
+  }
+
+  @Override
+  public void warm(SolrIndexSearcher searcher, SolrCache<K,DocSet> old) {
+    if (regenerator == null) return;
+    long warmingStartTime = System.nanoTime();
+    OffHeapFilterCache<K> other = (OffHeapFilterCache<K>) old;
+
+    // warm entries
+    if (isAutowarmingOn()) {
+      Object[] keys, vals;
+
+      // Don't do the autowarming in the synchronized block, just pull out the keys and values.
+      synchronized (other.map) {
+        int sz = autowarm.getWarmCount(other.map.size());
+        keys = new Object[sz];
+        vals = new Object[sz];
+
+        Iterator<Map.Entry<K,DocSet>> iter = other.map.entrySet().iterator();
+
+        // iteration goes from oldest (least recently used) to most recently used,
+        // so we need to skip over the oldest entries.
+        int skip = other.map.size() - sz;
+        for (int i = 0; i < skip; i++) iter.next();
+
+        for (int i = 0; i < sz; i++) {
+          Map.Entry<K,DocSet> entry = iter.next();
+          keys[i] = entry.getKey();
+          vals[i] = entry.getValue();
+          // the old cache may still evict the set while it is regenerated
+          acquire((DocSet) vals[i]);
+        }
+      }
+
+      // autowarm from the oldest to the newest entries so that the ordering will be
+      // correct in the new cache.
+      try {
+        for (int i = 0; i < keys.length; i++) {
+          try {
+            boolean continueRegen = regenerator.regenerateItem(searcher, this, old, keys[i], vals[i]);
+            if (!continueRegen) break;
+          } catch (Exception e) {
+            SolrException.log(log, "Error during auto-warming of key:" + keys[i], e);
+          }
+        }
+      } finally {
+        for (Object val : vals) {
+          release((DocSet) val);
+        }
+      }
+    }
+
+    warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void close() {
+    clear();
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+
+  @Override
+  public String getName() {
+    return OffHeapFilterCache.class.getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  @Override
+  public String getSource() {
+    return null;
+  }
+
+  @Override
+  public NamedList getStatistics() {
+    NamedList lst = new SimpleOrderedMap();
+    synchronized (map) {
+      lst.add("lookups", lookups);
+      lst.add("hits", hits);
+      lst.add("hitratio", calcHitRatio(lookups, hits));
+      lst.add("inserts", inserts);
+      lst.add("evictions", evictions);
+      lst.add("size", map.size());
+      if (maxBytes != Long.MAX_VALUE) {
+        lst.add("maxSizeMB", maxBytes / 1024L / 1024L);
+      }
+      lst.add("bytesUsed", bytesUsed);
+      lst.add("offHeapBytesUsed", offHeapBytesUsed);
+    }
+    lst.add("warmupTime", warmupTime);
+
+    long clookups = stats.lookups.longValue();
+    long chits = stats.hits.longValue();
+    lst.add("cumulative_lookups", clookups);
+    lst.add("cumulative_hits", chits);
+    lst.add("cumulative_hitratio", calcHitRatio(clookups, chits));
+    lst.add("cumulative_inserts", stats.inserts.longValue());
+    lst.add("cumulative_evictions", stats.evictions.longValue());
+
+    return lst;
+  }
+
+  @Override
+  public String toString() {
+    return name() + getStatistics().toString();
+  }
+
+  /** Returns the on-heap memory used by this cache, the off-heap part is reported as <code>offHeapBytesUsed</code>. */
+  @Override
+  public long ramBytesUsed() {
+    synchronized (map) {
+      return BASE_RAM_BYTES_USED + bytesUsed - offHeapBytesUsed;
+    }
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+}
@@ -219,4 +219,20 @@ public class QueryCommand {
     }
   }
 
+  public boolean getParallelSearch() {
+    return (flags & SolrIndexSearcher.PARALLEL_SEARCH) != 0;
+  }
+
+  /**
+   * Allow the segments of the index to be searched concurrently, if the core has been
+   * configured with <code>searchThreads</code>.
+   */
+  public QueryCommand setParallelSearch(boolean parallelSearch) {
+    if (parallelSearch) {
+      return setFlags(SolrIndexSearcher.PARALLEL_SEARCH);
+    } else {
+      return clearFlags(SolrIndexSearcher.PARALLEL_SEARCH);
+    }
+  }
+
 }
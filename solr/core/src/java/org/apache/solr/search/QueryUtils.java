@@ -20,8 +20,19 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.query.FilterQuery;
 
 import java.util.Collection;
 
@@ -129,4 +140,44 @@ public class QueryUtils {
     return new BoostQuery(newBq, boost);
   }
 
+  /** Returns true if the weight of this query may be used by several threads at once to
+   * search different segments. Weights of many Solr queries (joins, function queries, ...)
+   * lazily compute state on the first call to scorer() without synchronization, so only
+   * queries that are known to be safe, and compound queries made of them, qualify.
+   */
+  public static boolean isSafeForConcurrentSegmentSearch(Query q) {
+    if (q instanceof WrappedQuery) {
+      return isSafeForConcurrentSegmentSearch(((WrappedQuery)q).getWrappedQuery());
+    }
+    if (q instanceof BoostQuery) {
+      return isSafeForConcurrentSegmentSearch(((BoostQuery)q).getQuery());
+    }
+    if (q instanceof ConstantScoreQuery) {
+      return isSafeForConcurrentSegmentSearch(((ConstantScoreQuery)q).getQuery());
+    }
+    if (q instanceof BooleanQuery) {
+      for (BooleanClause clause : (BooleanQuery)q) {
+        if (!isSafeForConcurrentSegmentSearch(clause.getQuery())) return false;
+      }
+      return true;
+    }
+    if (q instanceof DisjunctionMaxQuery) {
+      for (Query disjunct : (DisjunctionMaxQuery)q) {
+        if (!isSafeForConcurrentSegmentSearch(disjunct)) return false;
+      }
+      return true;
+    }
+    // a FilterQuery computes its DocSet when its weight is created, on the calling thread
+    return q instanceof FilterQuery
+        || q instanceof TermQuery
+        || q instanceof SynonymQuery
+        || q instanceof PhraseQuery
+        || q instanceof MultiPhraseQuery
+        || q instanceof MultiTermQuery
+        || q instanceof PointRangeQuery
+        || q instanceof PointInSetQuery
+        || q instanceof MatchAllDocsQuery
+        || q instanceof MatchNoDocsQuery;
+  }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.queries.TermsQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Caches the documents that a query matches in every segment of the index, like the per-segment
+ * results of joins or of filters.
+ * <p>
+ * Entries are keyed on the core cache key of the segment rather than on a searcher, so the
+ * entries of the segments that are still part of the index are reused when a new searcher is
+ * opened, and only the new segments need to be evaluated. Cached sets ignore deleted documents,
+ * which must be filtered out by the caller with the live docs of the segment. Entries are
+ * evicted in least-recently-used order once the cache uses more than its RAM budget, and all
+ * the entries of a segment are removed when its core is closed.
+ *
+ * @see SegmentJoinQuery
+ * @see SolrIndexSearcher#getDocSet(Query)
+ */
+public final class SegmentDocIdSetCache {
+
+  // rough overhead of an entry in the map, besides its key and value
+  private static final long ENTRY_RAM_BYTES_USED = 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+  // same default as LRUQueryCache for keys that do not report their RAM usage
+  private static final long DEFAULT_KEY_RAM_BYTES_USED = 1024;
+
+  private static final class Key {
+    final Object coreKey;
+    final Object key;
+
+    Key(Object coreKey, Object key) {
+      this.coreKey = coreKey;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof Key == false) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return coreKey == other.coreKey && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(coreKey) + key.hashCode();
+    }
+  }
+
+  private final long maxRamBytesUsed;
+  // access-ordered, so that iteration starts from the least recently used entry
+  private final Map<Key,DocIdSet> cache = new LinkedHashMap<>(16, 0.75f, true);
+  // the cores that we registered a closed listener on
+  private final Set<Object> cores = Collections.newSetFromMap(new IdentityHashMap<>());
+  private long ramBytesUsed;
+
+  // package private for testing
+  final LongAdder hits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+
+  /** Creates a cache that uses at most <code>maxRamBytesUsed</code> bytes, 0 disables caching. */
+  public SegmentDocIdSetCache(long maxRamBytesUsed) {
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0, got " + maxRamBytesUsed);
+    }
+    this.maxRamBytesUsed = maxRamBytesUsed;
+  }
+
+  /** Returns the cached set of <code>key</code> for the segment of <code>reader</code>, or null if it is not cached. */
+  public synchronized DocIdSet get(LeafReader reader, Object key) {
+    final DocIdSet set = cache.get(new Key(reader.getCoreCacheKey(), key));
+    if (set == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return set;
+  }
+
+  /**
+   * Caches the set of <code>key</code> for the segment of <code>reader</code>. The RAM usage of
+   * the key is taken from {@link Accountable#ramBytesUsed()} if it implements it, and estimated
+   * otherwise.
+   */
+  public synchronized void put(LeafReader reader, Object key, DocIdSet set) {
+    final long entryRamBytesUsed = ramBytesUsed(key, set);
+    if (entryRamBytesUsed > maxRamBytesUsed) {
+      return;
+    }
+    final Object coreKey = reader.getCoreCacheKey();
+    if (cores.add(coreKey)) {
+      reader.addCoreClosedListener(this::onClose);
+    }
+    final Key cacheKey = new Key(coreKey, key);
+    final DocIdSet previous = cache.put(cacheKey, set);
+    if (previous != null) {
+      ramBytesUsed -= ramBytesUsed(key, previous);
+    }
+    ramBytesUsed += entryRamBytesUsed;
+
+    for (Iterator<Map.Entry<Key,DocIdSet>> it = cache.entrySet().iterator(); ramBytesUsed > maxRamBytesUsed && it.hasNext(); ) {
+      final Map.Entry<Key,DocIdSet> entry = it.next();
+      ramBytesUsed -= ramBytesUsed(entry.getKey().key, entry.getValue());
+      it.remove();
+    }
+  }
+
+  private synchronized void onClose(Object coreKey) {
+    cores.remove(coreKey);
+    for (Iterator<Map.Entry<Key,DocIdSet>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+      final Map.Entry<Key,DocIdSet> entry = it.next();
+      if (entry.getKey().coreKey == coreKey) {
+        ramBytesUsed -= ramBytesUsed(entry.getKey().key, entry.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  private static long ramBytesUsed(Object key, DocIdSet set) {
+    long bytes = ENTRY_RAM_BYTES_USED + set.ramBytesUsed();
+    if (key instanceof Accountable) {
+      bytes += ((Accountable) key).ramBytesUsed();
+    } else {
+      bytes += DEFAULT_KEY_RAM_BYTES_USED;
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns true if the documents that <code>query</code> matches in a segment only depend on that
+   * segment, so that they can be cached per segment and reused across searchers. This is only
+   * known for a few well-known queries: others, like joins or function queries, may depend on the
+   * whole index.
+   */
+  public static boolean isSegmentLocal(Query query) {
+    if (query instanceof BooleanQuery) {
+      for (BooleanClause clause : (BooleanQuery) query) {
+        if (!isSegmentLocal(clause.getQuery())) {
+          return false;
+        }
+      }
+      return true;
+    } else if (query instanceof BoostQuery) {
+      return isSegmentLocal(((BoostQuery) query).getQuery());
+    } else if (query instanceof ConstantScoreQuery) {
+      return isSegmentLocal(((ConstantScoreQuery) query).getQuery());
+    } else if (query instanceof WrappedQuery) {
+      return isSegmentLocal(((WrappedQuery) query).getWrappedQuery());
+    } else if (query instanceof MultiTermQuery) {
+      // top terms rewrites select terms across the whole index
+      final MultiTermQuery.RewriteMethod rewriteMethod = ((MultiTermQuery) query).getRewriteMethod();
+      return rewriteMethod == MultiTermQuery.CONSTANT_SCORE_REWRITE
+          || rewriteMethod == MultiTermQuery.CONSTANT_SCORE_BOOLEAN_REWRITE
+          || rewriteMethod == MultiTermQuery.SCORING_BOOLEAN_REWRITE;
+    }
+    return query instanceof TermQuery
+        || query instanceof TermsQuery
+        || query instanceof PhraseQuery
+        || query instanceof MultiPhraseQuery
+        || query instanceof PointRangeQuery
+        || query instanceof PointInSetQuery;
+  }
+
+  /** Returns the number of cached sets. */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /** Returns the RAM that the cached sets use, in bytes. */
+  public synchronized long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+}
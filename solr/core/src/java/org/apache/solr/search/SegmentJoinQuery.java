@@ -0,0 +1,499 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues.OrdinalMap;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.DocIdSetBuilder;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.StringHelper;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.index.OrdinalMapCache;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.util.RTimer;
+
+/**
+ * A {@link JoinQuery} that joins one segment of the "to" index at a time, selected with
+ * <code>{!join method=segment}</code>.
+ * <p>
+ * The terms of the "from" field that occur in the documents matching the "from" query are
+ * collected first, through the global ordinals of the field if it has sorted doc values, and
+ * by intersecting the postings of every segment otherwise. Every segment of the "to" index is
+ * then joined on its own by seeking these terms, in order, in the "to" field. The result of a
+ * segment only depends on the segment and on the joined terms, so it is cached in the
+ * {@link SegmentDocIdSetCache} of the core: as long as the "from" query yields the same terms, the
+ * segments that did not change since the last searcher are not joined again.
+ * <p>
+ * If the request sets {@link CommonParams#PARALLEL_SEARCH} and the core has
+ * <code>searchThreads</code> configured, the segments are joined concurrently.
+ */
+class SegmentJoinQuery extends JoinQuery {
+
+  public SegmentJoinQuery(String fromField, String toField, String fromIndex, Query subQuery) {
+    super(fromField, toField, fromIndex, subQuery);
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher, boolean needsScores, float boost) throws IOException {
+    return new SegmentJoinWeight((SolrIndexSearcher) searcher, boost);
+  }
+
+  @Override
+  public String toString(String field) {
+    return "{!join from="+fromField+" to="+toField
+        + (fromIndex != null ? " fromIndex="+fromIndex : "")
+        + " method=" + JoinQParserPlugin.METHOD_SEGMENT
+        +"}"+q.toString();
+  }
+
+  /**
+   * The sorted, distinct terms of the "from" field that are joined, packed in a single array so
+   * that they can be compared and hashed cheaply when they are part of a cache key.
+   */
+  static final class JoinTerms implements Accountable {
+
+    static final JoinTerms EMPTY = new Builder().build();
+
+    static final class Builder {
+      private byte[] bytes = new byte[16];
+      private int[] offsets = new int[] {0, 0};
+      private int size;
+
+      /** Adds a term, terms must be added in sorted order. */
+      void add(BytesRef term) {
+        final int start = offsets[size];
+        bytes = ArrayUtil.grow(bytes, start + term.length);
+        System.arraycopy(term.bytes, term.offset, bytes, start, term.length);
+        offsets = ArrayUtil.grow(offsets, size + 2);
+        offsets[++size] = start + term.length;
+      }
+
+      JoinTerms build() {
+        return new JoinTerms(Arrays.copyOf(bytes, offsets[size]), Arrays.copyOf(offsets, size + 1));
+      }
+    }
+
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final int hash;
+
+    private JoinTerms(byte[] bytes, int[] offsets) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+      this.hash = 31 * StringHelper.murmurhash3_x86_32(bytes, 0, bytes.length, 0) + Arrays.hashCode(offsets);
+    }
+
+    int size() {
+      return offsets.length - 1;
+    }
+
+    /** Sets <code>term</code> to the term at <code>index</code>. */
+    void get(int index, BytesRef term) {
+      term.bytes = bytes;
+      term.offset = offsets[index];
+      term.length = offsets[index + 1] - offsets[index];
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return 2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.sizeOf(bytes) + RamUsageEstimator.sizeOf(offsets);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof JoinTerms == false) {
+        return false;
+      }
+      final JoinTerms other = (JoinTerms) obj;
+      return hash == other.hash && Arrays.equals(offsets, other.offsets) && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /** The key of the documents that the terms match in the "to" field of a segment. */
+  private static final class CacheKey implements Accountable {
+    final String toField;
+    final JoinTerms terms;
+
+    CacheKey(String toField, JoinTerms terms) {
+      this.toField = toField;
+      this.terms = terms;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      // the field name is shared with the schema
+      return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + terms.ramBytesUsed();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof CacheKey == false) {
+        return false;
+      }
+      final CacheKey other = (CacheKey) obj;
+      return toField.equals(other.toField) && terms.equals(other.terms);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * toField.hashCode() + terms.hashCode();
+    }
+  }
+
+  class SegmentJoinWeight extends JoinQueryWeight {
+    private final ExecutorService executor;
+    private final boolean debug;
+
+    private CacheKey key;            // null until the first segment is scored
+    private DocIdSet[] segmentSets;  // the joined documents of every segment of the "to" index, including deleted ones
+
+    private int fromSetSize;
+    private int fromTermCount;
+    // package private for testing
+    final AtomicInteger cachedSegments = new AtomicInteger();
+    final AtomicInteger joinedSegments = new AtomicInteger();
+
+    SegmentJoinWeight(SolrIndexSearcher searcher, float boost) {
+      super(searcher, boost);
+      final SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+      final boolean parallel = info != null
+          && info.getReq().getParams().getBool(CommonParams.PARALLEL_SEARCH, CommonParams.PARALLEL_SEARCH_DEFAULT);
+      this.executor = parallel ? toSearcher.getCore().getSegmentSearchExecutor() : null;
+      this.debug = rb != null && rb.isDebug();
+    }
+
+    @Override
+    public Scorer scorer(LeafReaderContext context) throws IOException {
+      final DocIdSet set = getSegmentSet(context);
+      // cached sets include deleted documents
+      final DocIdSet liveSet = BitsFilteredDocIdSet.wrap(set, context.reader().getLiveDocs());
+      if (liveSet == null) {
+        return null;
+      }
+      final DocIdSetIterator iterator = liveSet.iterator();
+      if (iterator == null) {
+        return null;
+      }
+      return new ConstantScoreScorer(this, score(), iterator);
+    }
+
+    private synchronized DocIdSet getSegmentSet(LeafReaderContext context) throws IOException {
+      if (key == null) {
+        init();
+      }
+      assert segmentSets.length == toSearcher.getTopReaderContext().leaves().size();
+      DocIdSet set = segmentSets[context.ord];
+      if (set == null) {
+        set = joinSegment(context);
+        segmentSets[context.ord] = set;
+      }
+      return set;
+    }
+
+    private void init() throws IOException {
+      final RTimer timer = debug ? new RTimer() : null;
+
+      final DocSet fromSet = fromSearcher.getDocSet(q);
+      fromSetSize = fromSet.size();
+      final JoinTerms terms = fromSetSize == 0 ? JoinTerms.EMPTY : collectFromTerms(fromSet);
+      fromTermCount = terms.size();
+      key = new CacheKey(toField, terms);
+
+      final List<LeafReaderContext> leaves = toSearcher.getTopReaderContext().leaves();
+      segmentSets = new DocIdSet[leaves.size()];
+      if (executor != null && leaves.size() > 1) {
+        joinSegments(leaves);
+      } else if (debug) {
+        // the debug info covers all segments
+        for (LeafReaderContext leaf : leaves) {
+          segmentSets[leaf.ord] = joinSegment(leaf);
+        }
+      }
+
+      if (debug) {
+        timer.stop();
+        long toSetSize = 0;
+        for (LeafReaderContext leaf : leaves) {
+          final DocIdSet liveSet = BitsFilteredDocIdSet.wrap(segmentSets[leaf.ord], leaf.reader().getLiveDocs());
+          final DocIdSetIterator iterator = liveSet == null ? null : liveSet.iterator();
+          if (iterator != null) {
+            while (iterator.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+              toSetSize++;
+            }
+          }
+        }
+
+        SimpleOrderedMap<Object> dbg = new SimpleOrderedMap<>();
+        dbg.add("time", (long) timer.getTime());
+        dbg.add("fromSetSize", fromSetSize);
+        dbg.add("toSetSize", toSetSize);
+        dbg.add("fromTermCount", fromTermCount);
+        dbg.add("segments", leaves.size());
+        dbg.add("cachedSegments", cachedSegments.get());
+        dbg.add("joinedSegments", joinedSegments.get());
+        rb.addDebug(dbg, "join", SegmentJoinQuery.this.toString());
+      }
+    }
+
+    private JoinTerms collectFromTerms(DocSet fromSet) throws IOException {
+      final SchemaField sf = fromSearcher.getSchema().getFieldOrNull(fromField);
+      final FieldInfo fi = fromSearcher.getSlowAtomicReader().getFieldInfos().fieldInfo(fromField);
+      // fields without doc values are uninverted by the searcher, their postings are cheaper to use
+      if (sf != null && sf.hasDocValues() && fi != null) {
+        if (fi.getDocValuesType() == DocValuesType.SORTED) {
+          return collectFromOrdinals(fromSet, false);
+        } else if (fi.getDocValuesType() == DocValuesType.SORTED_SET) {
+          return collectFromOrdinals(fromSet, true);
+        }
+      }
+      return collectFromPostings(fromSet);
+    }
+
+    private SortedSetDocValues getValues(LeafReader reader, boolean multiValued) throws IOException {
+      if (multiValued) {
+        return reader.getSortedSetDocValues(fromField);
+      }
+      final SortedDocValues values = reader.getSortedDocValues(fromField);
+      return values == null ? null : DocValues.singleton(values);
+    }
+
+    /** Collects the global ordinals of the values of the matching documents, which are in term order. */
+    private JoinTerms collectFromOrdinals(DocSet fromSet, boolean multiValued) throws IOException {
+      final IndexReader reader = fromSearcher.getIndexReader();
+      final OrdinalMapCache ordinalMapCache = fromSearcher.getCore().getOrdinalMapCache();
+      final OrdinalMap map = multiValued
+          ? ordinalMapCache.getSortedSetOrdinalMap(reader, fromField)
+          : ordinalMapCache.getSortedOrdinalMap(reader, fromField);
+      if (map == null || map.getValueCount() == 0) {
+        return JoinTerms.EMPTY;
+      }
+
+      final List<LeafReaderContext> leaves = reader.leaves();
+      final Filter filter = fromSet.getTopFilter();
+      final LongBitSet globalOrds = new LongBitSet(map.getValueCount());
+      for (LeafReaderContext leaf : leaves) {
+        final DocIdSet docs = filter.getDocIdSet(leaf, null);
+        final DocIdSetIterator iterator = docs == null ? null : docs.iterator();
+        final SortedSetDocValues values = getValues(leaf.reader(), multiValued);
+        if (iterator == null || values == null) {
+          continue;
+        }
+        final LongValues toGlobal = map.getGlobalOrds(leaf.ord);
+        for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+          if (values.advanceExact(doc)) {
+            for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+              globalOrds.set(toGlobal.get(ord));
+            }
+          }
+        }
+      }
+
+      final SortedSetDocValues[] lookups = new SortedSetDocValues[leaves.size()];
+      final JoinTerms.Builder builder = new JoinTerms.Builder();
+      for (long ord = globalOrds.nextSetBit(0); ord != -1; ) {
+        final int segment = map.getFirstSegmentNumber(ord);
+        if (lookups[segment] == null) {
+          lookups[segment] = getValues(leaves.get(segment).reader(), multiValued);
+        }
+        builder.add(lookups[segment].lookupOrd(map.getFirstSegmentOrd(ord)));
+        ord = ord + 1 < globalOrds.length() ? globalOrds.nextSetBit(ord + 1) : -1;
+      }
+      return builder.build();
+    }
+
+    /** Collects the terms whose postings intersect the matching documents, segment by segment. */
+    private JoinTerms collectFromPostings(DocSet fromSet) throws IOException {
+      final String prefixStr = TrieField.getMainValuePrefix(fromSearcher.getSchema().getFieldType(fromField));
+      final BytesRef prefix = prefixStr == null ? null : new BytesRef(prefixStr);
+
+      final BytesRefHash terms = new BytesRefHash();
+      final Filter filter = fromSet.getTopFilter();
+      PostingsEnum postingsEnum = null;
+      for (LeafReaderContext leaf : fromSearcher.getIndexReader().leaves()) {
+        final Terms fromTerms = leaf.reader().terms(fromField);
+        final DocIdSet docs = filter.getDocIdSet(leaf, null);
+        final DocIdSetIterator iterator = docs == null ? null : docs.iterator();
+        if (fromTerms == null || iterator == null) {
+          continue;
+        }
+        final FixedBitSet matches = new FixedBitSet(leaf.reader().maxDoc());
+        matches.or(iterator);
+
+        final TermsEnum termsEnum = fromTerms.iterator();
+        BytesRef term;
+        if (prefix == null) {
+          term = termsEnum.next();
+        } else {
+          term = termsEnum.seekCeil(prefix) == TermsEnum.SeekStatus.END ? null : termsEnum.term();
+        }
+        for (; term != null; term = termsEnum.next()) {
+          if (prefix != null && !StringHelper.startsWith(term, prefix)) {
+            break;
+          }
+          if (terms.find(term) >= 0) {
+            continue;
+          }
+          // deleted documents are not part of the matches
+          postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+          for (int doc = postingsEnum.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postingsEnum.nextDoc()) {
+            if (matches.get(doc)) {
+              terms.add(term);
+              break;
+            }
+          }
+        }
+      }
+
+      final int[] sorted = terms.sort();
+      final JoinTerms.Builder builder = new JoinTerms.Builder();
+      final BytesRef term = new BytesRef();
+      for (int i = 0; i < terms.size(); i++) {
+        builder.add(terms.get(sorted[i], term));
+      }
+      return builder.build();
+    }
+
+    /** Returns the documents of the segment that match the joined terms, from the cache if possible. */
+    private DocIdSet joinSegment(LeafReaderContext context) throws IOException {
+      final SegmentDocIdSetCache cache = toSearcher.getCore().getSegmentJoinCache();
+      final LeafReader reader = context.reader();
+      DocIdSet set = cache.get(reader, key);
+      if (set != null) {
+        cachedSegments.incrementAndGet();
+        return set;
+      }
+      joinedSegments.incrementAndGet();
+      set = joinTerms(reader);
+      cache.put(reader, key, set);
+      return set;
+    }
+
+    private DocIdSet joinTerms(LeafReader reader) throws IOException {
+      final Terms toTerms = reader.terms(toField);
+      if (toTerms == null || key.terms.size() == 0) {
+        return DocIdSet.EMPTY;
+      }
+      final DocIdSetBuilder builder = new DocIdSetBuilder(reader.maxDoc(), toTerms);
+      final TermsEnum termsEnum = toTerms.iterator();
+      final BytesRef term = new BytesRef();
+      PostingsEnum postingsEnum = null;
+      // the segment term that the enum is positioned on, joined terms before it are not in the segment
+      BytesRef current = null;
+      for (int i = 0; i < key.terms.size(); i++) {
+        key.terms.get(i, term);
+        if (current != null && term.compareTo(current) < 0) {
+          continue;
+        }
+        final TermsEnum.SeekStatus status = termsEnum.seekCeil(term);
+        if (status == TermsEnum.SeekStatus.END) {
+          break;
+        } else if (status == TermsEnum.SeekStatus.FOUND) {
+          postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+          builder.add(postingsEnum);
+          current = null;
+        } else {
+          current = termsEnum.term();
+        }
+      }
+      return builder.build();
+    }
+
+    /**
+     * Joins all segments concurrently. Segments that no thread of the executor picked up are joined
+     * by the calling thread, which may itself be a thread of the executor.
+     */
+    private void joinSegments(List<LeafReaderContext> leaves) throws IOException {
+      final List<FutureTask<DocIdSet>> tasks = new ArrayList<>(leaves.size());
+      for (LeafReaderContext leaf : leaves) {
+        tasks.add(new FutureTask<>(() -> joinSegment(leaf)));
+      }
+      for (int i = 1; i < tasks.size(); i++) {
+        try {
+          executor.execute(tasks.get(i));
+        } catch (RejectedExecutionException e) {
+          // joined by the calling thread below
+        }
+      }
+      for (FutureTask<DocIdSet> task : tasks) {
+        // no-op if the task was started by the executor
+        task.run();
+      }
+
+      for (int i = 0; i < tasks.size(); i++) {
+        try {
+          segmentSets[i] = tasks.get(i).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while joining segments concurrently", e);
+        } catch (ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, cause);
+        }
+      }
+    }
+  }
+}
@@ -20,9 +20,16 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Gauge;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoMBean.Category;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.search.SolrCache.State;
 
 import static org.apache.solr.common.params.CommonParams.NAME;
@@ -109,6 +116,43 @@ public abstract class SolrCacheBase {
   public URL[] getDocs() {
     return null;
   }
+
+  public abstract NamedList getStatistics();
+
+  /**
+   * Exposes each entry of {@link #getStatistics()} as a gauge. A new searcher creates new cache
+   * instances, so the gauges are always re-registered to point at the live cache.
+   * Subclasses whose statistics are not side-effect free should not expose this
+   * through {@link SolrMetricProducer}.
+   */
+  public void initializeMetrics(SolrMetricManager manager, String registry, String scope) {
+    registerStatistics(manager, registry, scope, getCategory(), this::getStatistics);
+  }
+
+  /**
+   * Registers a gauge for each entry of the statistics of a cache, except the
+   * <code>item_*</code> entries of <code>showItems</code>, which change with the
+   * content of the cache. A reporter reads all of the gauges at once, so the
+   * statistics are computed once per read and shared by the gauges for a second,
+   * rather than once per gauge.
+   */
+  static void registerStatistics(SolrMetricManager manager, String registry, String scope,
+                                 Category category, Supplier<NamedList> statistics) {
+    final CachedGauge<NamedList> snapshot = new CachedGauge<NamedList>(1, TimeUnit.SECONDS) {
+      @Override
+      protected NamedList loadValue() {
+        return statistics.get();
+      }
+    };
+    NamedList stats = snapshot.getValue();
+    for (int i = 0; i < stats.size(); i++) {
+      final String key = stats.getName(i);
+      if (key.startsWith("item_")) {
+        continue;
+      }
+      manager.register(registry, (Gauge<Object>) () -> snapshot.getValue().get(key), true, key, category.toString(), scope);
+    }
+  }
   
   public void init(Map<String, String> args, CacheRegenerator regenerator) {
     this.regenerator = regenerator;
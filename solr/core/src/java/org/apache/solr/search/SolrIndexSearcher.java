@@ -35,7 +35,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -78,6 +83,7 @@ import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.DocIdSetBuilder;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.common.SolrDocumentBase;
 import org.apache.solr.common.SolrException;
@@ -90,6 +96,7 @@ import org.apache.solr.core.DirectoryFactory.DirContext;
 import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoMBean;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.index.SlowCompositeReaderWrapper;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
@@ -145,6 +152,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private final int queryResultMaxDocsCached;
   private final boolean useFilterForSortedQuery;
   public final boolean enableLazyFieldLoading;
+  // contiguous groups of leaves that are searched concurrently, null if concurrent search is disabled
+  private final List<List<LeafReaderContext>> leafSlices;
 
   private final boolean cachingEnabled;
   private final SolrCache<Query,DocSet> filterCache;
@@ -258,6 +267,213 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
   }
 
+  /**
+   * Splits the leaves in at most <code>n</code> slices of contiguous leaves with roughly the same number of
+   * documents. Since slices are contiguous, merging per-slice results in slice order preserves the docid
+   * tie-breaking of a sequential search.
+   */
+  private static List<List<LeafReaderContext>> sliceLeaves(List<LeafReaderContext> leaves, int n) {
+    long totalDocs = 0;
+    for (LeafReaderContext ctx : leaves) {
+      totalDocs += ctx.reader().maxDoc();
+    }
+    final long docsPerSlice = Math.max(1, (totalDocs + n - 1) / n);
+    final List<List<LeafReaderContext>> slices = new ArrayList<>(n);
+    List<LeafReaderContext> current = new ArrayList<>();
+    long currentDocs = 0;
+    for (LeafReaderContext ctx : leaves) {
+      current.add(ctx);
+      currentDocs += ctx.reader().maxDoc();
+      if (currentDocs >= docsPerSlice && slices.size() < n - 1) {
+        slices.add(current);
+        current = new ArrayList<>();
+        currentDocs = 0;
+      }
+    }
+    if (!current.isEmpty()) {
+      slices.add(current);
+    }
+    return slices;
+  }
+
+  /**
+   * Returns the executor to search the slices of this searcher with, or null if the command must be executed
+   * sequentially. Post filters and early termination rely on seeing all segments in order through a single
+   * collector chain, and rank queries bring their own collectors, so these are never searched concurrently.
+   * Neither are queries whose weights are not known to be thread-safe, see
+   * {@link QueryUtils#isSafeForConcurrentSegmentSearch(Query)}.
+   */
+  private ExecutorService getSegmentSearchExecutor(QueryCommand cmd, DelegatingCollector postFilter) {
+    if (leafSlices == null || leafSlices.size() < 2 || !cmd.getParallelSearch() || postFilter != null
+        || cmd.getTerminateEarly() || cmd.getSegmentTerminateEarly() || cmd.getQuery() instanceof RankQuery
+        || !QueryUtils.isSafeForConcurrentSegmentSearch(cmd.getQuery())) {
+      return null;
+    }
+    if (cmd.getFilterList() != null) {
+      // cached filters are turned into DocSets up front, the others are searched with their own weights
+      for (Query q : cmd.getFilterList()) {
+        boolean cached = filterCache != null && (!(q instanceof ExtendedQuery) || ((ExtendedQuery) q).getCache());
+        if (!cached && !QueryUtils.isSafeForConcurrentSegmentSearch(q)) {
+          return null;
+        }
+      }
+    }
+    return core.getSegmentSearchExecutor();
+  }
+
+  /**
+   * Concurrent counterpart of {@link #buildAndRunCollectorChain}: searches each of the {@link #leafSlices}
+   * with its own collector, the caller is responsible for merging the collected results in slice order.
+   * The last slice is searched by the calling thread.
+   */
+  private void searchSlices(QueryResult qr, Query query, QueryCommand cmd, ExecutorService executor,
+      Collector[] sliceCollectors) throws IOException {
+    assert sliceCollectors.length == leafSlices.size();
+    // the weight is created by the calling thread, where request-scoped thread locals are available
+    final Weight weight = createNormalizedWeight(query, sliceCollectors[0].needsScores());
+    final long timeAllowed = cmd.getTimeAllowed();
+    final Long timeoutAt = SolrQueryTimeoutImpl.get();
+    final AtomicBoolean partialResults = new AtomicBoolean();
+
+    final List<Future<?>> futures = new ArrayList<>(leafSlices.size() - 1);
+    for (int i = 0; i < leafSlices.size(); i++) {
+      final List<LeafReaderContext> leaves = leafSlices.get(i);
+      final Collector collector = timeAllowed > 0
+          ? new TimeLimitingCollector(sliceCollectors[i], TimeLimitingCollector.getGlobalCounter(), timeAllowed)
+          : sliceCollectors[i];
+      final boolean callerRuns = i == leafSlices.size() - 1;
+      final Callable<Void> task = () -> {
+        if (!callerRuns && timeoutAt != null) {
+          SolrQueryTimeoutImpl.timeoutAt.set(timeoutAt);
+        }
+        try {
+          search(leaves, weight, collector);
+        } catch (TimeLimitingCollector.TimeExceededException | ExitableDirectoryReader.ExitingReaderException x) {
+          log.warn("Query: [{}]; {}", query, x.getMessage());
+          partialResults.set(true);
+        } finally {
+          if (!callerRuns && timeoutAt != null) {
+            SolrQueryTimeoutImpl.reset();
+          }
+        }
+        return null;
+      };
+      if (callerRuns) {
+        try {
+          task.call();
+        } catch (IOException | RuntimeException e) {
+          cancelAll(futures);
+          throw e;
+        } catch (Exception e) {
+          cancelAll(futures);
+          throw new SolrException(ErrorCode.SERVER_ERROR, e);
+        }
+      } else {
+        futures.add(executor.submit(task));
+      }
+    }
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        cancelAll(futures);
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVER_ERROR, "Interrupted while searching segments concurrently", e);
+      } catch (ExecutionException e) {
+        cancelAll(futures);
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new SolrException(ErrorCode.SERVER_ERROR, cause);
+      }
+    }
+
+    if (partialResults.get()) {
+      qr.setPartialResults(true);
+    }
+  }
+
+  private static void cancelAll(List<Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(false);
+    }
+  }
+
+  /**
+   * Merges the DocSets collected from the {@link #leafSlices}, in slice order.
+   */
+  private static DocSet mergeSliceDocSets(DocSetCollector[] sliceCollectors, int maxDoc) {
+    final DocSet[] sets = new DocSet[sliceCollectors.length];
+    int size = 0;
+    for (int i = 0; i < sets.length; i++) {
+      sets[i] = sliceCollectors[i].getDocSet();
+      size += sets[i].size();
+    }
+    if (size <= DocSetUtil.smallSetSize(maxDoc)) {
+      // slices are contiguous and in docid order, so concatenating them keeps the ids sorted
+      final int[] docs = new int[size];
+      int pos = 0;
+      for (DocSet set : sets) {
+        for (DocIterator iter = set.iterator(); iter.hasNext();) {
+          docs[pos++] = iter.nextDoc();
+        }
+      }
+      return new SortedIntDocSet(docs, size);
+    }
+    final FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (DocSet set : sets) {
+      if (set instanceof BitDocSet) {
+        bits.or(((BitDocSet) set).getBits());
+      } else {
+        for (DocIterator iter = set.iterator(); iter.hasNext();) {
+          bits.set(iter.nextDoc());
+        }
+      }
+    }
+    return new BitDocSet(bits, size);
+  }
+
+  /**
+   * Merges the top docs collected from the {@link #leafSlices}, in slice order.
+   */
+  private static TopDocs mergeSliceTopDocs(TopDocsCollector[] sliceCollectors, Sort weightedSort, int len)
+      throws IOException {
+    if (weightedSort == null) {
+      final TopDocs[] topDocs = new TopDocs[sliceCollectors.length];
+      for (int i = 0; i < topDocs.length; i++) {
+        topDocs[i] = sliceCollectors[i].topDocs(0, len);
+      }
+      return TopDocs.merge(len, topDocs);
+    } else {
+      final TopFieldDocs[] topDocs = new TopFieldDocs[sliceCollectors.length];
+      for (int i = 0; i < topDocs.length; i++) {
+        topDocs[i] = (TopFieldDocs) sliceCollectors[i].topDocs(0, len);
+      }
+      return TopDocs.merge(weightedSort, len, topDocs);
+    }
+  }
+
+  /**
+   * Creates one top docs collector per slice. Sort values are always filled in, they are needed to merge
+   * the per-slice results.
+   */
+  private TopDocsCollector[] buildSliceTopDocsCollectors(int len, QueryCommand cmd, Sort weightedSort)
+      throws IOException {
+    final TopDocsCollector[] collectors = new TopDocsCollector[leafSlices.size()];
+    for (int i = 0; i < collectors.length; i++) {
+      collectors[i] = weightedSort == null
+          ? TopScoreDocCollector.create(len)
+          : buildTopFieldCollector(len, cmd, weightedSort, true);
+    }
+    return collectors;
+  }
+
   public SolrIndexSearcher(SolrCore core, String path, IndexSchema schema, SolrIndexConfig config, String name,
       boolean enableCache, DirectoryFactory directoryFactory) throws IOException {
     // We don't need to reserve the directory because we get it from the factory
@@ -276,7 +492,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     this.directoryFactory = directoryFactory;
     this.reader = (DirectoryReader) super.readerContext.reader();
     this.rawReader = r;
-    this.leafReader = SlowCompositeReaderWrapper.wrap(this.reader);
+    this.leafReader = SlowCompositeReaderWrapper.wrap(this.reader, core.getOrdinalMapCache());
     this.core = core;
     this.schema = schema;
     this.name = "Searcher@" + Integer.toHexString(hashCode()) + "[" + core.getName() + "]"
@@ -303,6 +519,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     this.queryResultMaxDocsCached = solrConfig.queryResultMaxDocsCached;
     this.useFilterForSortedQuery = solrConfig.useFilterForSortedQuery;
     this.enableLazyFieldLoading = solrConfig.enableLazyFieldLoading;
+    this.leafSlices = solrConfig.searchThreads > 0 ? sliceLeaves(leafContexts, solrConfig.searchThreads) : null;
 
     this.cachingEnabled = enableCache;
     if (cachingEnabled) {
@@ -461,6 +678,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     for (SolrCache cache : cacheList) {
       cache.setState(SolrCache.State.LIVE);
       infoRegistry.put(cache.name(), cache);
+      if (cache instanceof SolrMetricProducer) {
+        ((SolrMetricProducer) cache).initializeMetrics(core.getMetricManager(), core.getMetricRegistryName(), cache.name());
+      }
     }
     registerTime = new Date();
   }
@@ -1085,7 +1305,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       }
     }
 
-    DocSet absAnswer = getDocSetNC(absQ, null);
+    DocSet absAnswer = getFilterDocSet(absQ);
     DocSet answer = positive ? absAnswer : getLiveDocs().andNot(absAnswer);
 
     if (filterCache != null) {
@@ -1103,7 +1323,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       answer = filterCache.get(q);
       if (answer != null) return answer;
     }
-    answer = getDocSetNC(q, null);
+    answer = getFilterDocSet(q);
     if (filterCache != null) filterCache.put(q, answer);
     return answer;
   }
@@ -1428,6 +1648,48 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return DocSetUtil.createDocSet(this, query, filter);
   }
 
+  /**
+   * Computes the DocSet of a positive query that is about to be put in the filterCache. If the core has a
+   * {@link SolrCore#getSegmentFilterCache() segment filter cache} and the matches of the query only depend on
+   * the segment they are computed on, the matches of every segment are taken from, or added to, that cache.
+   * Since it outlives searchers, filterCache autowarming after a commit only evaluates the query on the new
+   * segments and re-applies the deletes of the others.
+   */
+  private DocSet getFilterDocSet(Query query) throws IOException {
+    final SegmentDocIdSetCache segmentCache = core.getSegmentFilterCache();
+    if (segmentCache == null || !SegmentDocIdSetCache.isSegmentLocal(query)) {
+      return getDocSetNC(query, null);
+    }
+
+    final Weight weight = createNormalizedWeight(query, false);
+    final DocSetCollector collector = new DocSetCollector(maxDoc());
+    for (LeafReaderContext leaf : leafContexts) {
+      final LeafReader reader = leaf.reader();
+      DocIdSet set = segmentCache.get(reader, query);
+      if (set == null) {
+        // scorers do not look at deletes, so the set is valid as long as the segment is
+        final DocIdSetBuilder builder = new DocIdSetBuilder(reader.maxDoc());
+        final Scorer scorer = weight.scorer(leaf);
+        if (scorer != null) {
+          builder.add(scorer.iterator());
+        }
+        set = builder.build();
+        segmentCache.put(reader, query, set);
+      }
+
+      final DocIdSet liveSet = BitsFilteredDocIdSet.wrap(set, reader.getLiveDocs());
+      final DocIdSetIterator iterator = liveSet == null ? null : liveSet.iterator();
+      if (iterator == null) {
+        continue;
+      }
+      final LeafCollector leafCollector = collector.getLeafCollector(leaf);
+      for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+        leafCollector.collect(doc);
+      }
+    }
+    return collector.getDocSet();
+  }
+
   /**
    * Returns the set of document ids matching both the query and the filter. This method is cache-aware and attempts to
    * retrieve the answer from the cache if possible. If the answer was not cached, it may have been inserted into the
@@ -1460,7 +1722,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     if (filterCache != null) {
       first = filterCache.get(absQ);
       if (first == null) {
-        first = getDocSetNC(absQ, null);
+        first = getFilterDocSet(absQ);
         filterCache.put(absQ, first);
       }
       return positive ? first.intersection(filter) : filter.andNot(first);
@@ -1541,6 +1803,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   public static final int GET_DOCSET = 0x40000000;
   static final int NO_CHECK_FILTERCACHE = 0x20000000;
   static final int NO_SET_QCACHE = 0x10000000;
+  static final int PARALLEL_SEARCH = 0x10;
   static final int SEGMENT_TERMINATE_EARLY = 0x08;
   public static final int TERMINATE_EARLY = 0x04;
   public static final int GET_DOCLIST = 0x02; // get the documents actually returned in a response
@@ -1575,8 +1838,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     if (queryResultCache != null && cmd.getFilter() == null
         && (flags & (NO_CHECK_QCACHE | NO_SET_QCACHE)) != ((NO_CHECK_QCACHE | NO_SET_QCACHE))) {
       // all of the current flags can be reused during warming,
-      // so set all of them on the cache key.
-      key = new QueryResultKey(q, cmd.getFilterList(), cmd.getSort(), flags);
+      // so set all of them on the cache key, except for the one that does not change the results.
+      key = new QueryResultKey(q, cmd.getFilterList(), cmd.getSort(), flags & ~PARALLEL_SEARCH);
       if ((flags & NO_CHECK_QCACHE) == 0) {
         superset = queryResultCache.get(key);
 
@@ -1763,18 +2026,21 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       return TopScoreDocCollector.create(len);
     } else {
       // we have a sort
-      final boolean needScores = (cmd.getFlags() & GET_SCORES) != 0;
-      final Sort weightedSort = weightSort(cmd.getSort());
-      final CursorMark cursor = cmd.getCursorMark();
-
       // :TODO: make fillFields its own QueryCommand flag? ...
       // ... see comments in populateNextCursorMarkFromTopDocs for cache issues (SOLR-5595)
-      final boolean fillFields = (null != cursor);
-      final FieldDoc searchAfter = (null != cursor ? cursor.getSearchAfterFieldDoc() : null);
-      return TopFieldCollector.create(weightedSort, len, searchAfter, fillFields, needScores, needScores);
+      final boolean fillFields = (null != cmd.getCursorMark());
+      return buildTopFieldCollector(len, cmd, weightSort(cmd.getSort()), fillFields);
     }
   }
 
+  private TopFieldCollector buildTopFieldCollector(int len, QueryCommand cmd, Sort weightedSort, boolean fillFields)
+      throws IOException {
+    final boolean needScores = (cmd.getFlags() & GET_SCORES) != 0;
+    final CursorMark cursor = cmd.getCursorMark();
+    final FieldDoc searchAfter = (null != cursor ? cursor.getSearchAfterFieldDoc() : null);
+    return TopFieldCollector.create(weightedSort, len, searchAfter, fillFields, needScores, needScores);
+  }
+
   private void getDocListNC(QueryResult qr, QueryCommand cmd) throws IOException {
     int len = cmd.getSupersetMaxDoc();
     int last = len;
@@ -1801,8 +2067,19 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       final int[] numHits = new int[1];
 
       Collector collector;
+      final ExecutorService executor = needScores ? null : getSegmentSearchExecutor(cmd, pf.postFilter);
 
-      if (!needScores) {
+      if (executor != null) {
+        final TotalHitCountCollector[] sliceCollectors = new TotalHitCountCollector[leafSlices.size()];
+        for (int i = 0; i < sliceCollectors.length; i++) {
+          sliceCollectors[i] = new TotalHitCountCollector();
+        }
+        searchSlices(qr, query, cmd, executor, sliceCollectors);
+        for (TotalHitCountCollector sliceCollector : sliceCollectors) {
+          numHits[0] += sliceCollector.getTotalHits();
+        }
+        collector = null;
+      } else if (!needScores) {
         collector = new SimpleCollector() {
           @Override
           public void collect(int doc) {
@@ -1837,7 +2114,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         };
       }
 
-      buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
+      if (collector != null) {
+        buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
+      }
 
       nDocsReturned = 0;
       ids = new int[nDocsReturned];
@@ -1847,12 +2126,22 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       // no docs on this page, so cursor doesn't change
       qr.setNextCursorMark(cmd.getCursorMark());
     } else {
-      final TopDocsCollector topCollector = buildTopDocsCollector(len, cmd);
-      Collector collector = topCollector;
-      buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
+      final ExecutorService executor = getSegmentSearchExecutor(cmd, pf.postFilter);
+      TopDocs topDocs;
+      if (executor != null) {
+        final Sort weightedSort = cmd.getSort() == null ? null : weightSort(cmd.getSort());
+        final TopDocsCollector[] sliceCollectors = buildSliceTopDocsCollectors(len, cmd, weightedSort);
+        searchSlices(qr, query, cmd, executor, sliceCollectors);
+        topDocs = mergeSliceTopDocs(sliceCollectors, weightedSort, len);
+        totalHits = topDocs.totalHits;
+      } else {
+        final TopDocsCollector topCollector = buildTopDocsCollector(len, cmd);
+        Collector collector = topCollector;
+        buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
 
-      totalHits = topCollector.getTotalHits();
-      TopDocs topDocs = topCollector.topDocs(0, len);
+        totalHits = topCollector.getTotalHits();
+        topDocs = topCollector.topDocs(0, len);
+      }
       populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
 
       maxScore = totalHits > 0 ? topDocs.getMaxScore() : 0.0f;
@@ -1900,8 +2189,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
       Collector collector;
       final DocSetCollector setCollector = new DocSetCollector(maxDoc);
+      final ExecutorService executor = needScores ? null : getSegmentSearchExecutor(cmd, pf.postFilter);
 
-      if (!needScores) {
+      if (executor != null) {
+        collector = null;
+      } else if (!needScores) {
         collector = setCollector;
       } else {
         final Collector topScoreCollector = new SimpleCollector() {
@@ -1928,9 +2220,17 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         collector = MultiCollector.wrap(setCollector, topScoreCollector);
       }
 
-      buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
-
-      set = setCollector.getDocSet();
+      if (executor != null) {
+        final DocSetCollector[] sliceCollectors = new DocSetCollector[leafSlices.size()];
+        for (int i = 0; i < sliceCollectors.length; i++) {
+          sliceCollectors[i] = new DocSetCollector(maxDoc);
+        }
+        searchSlices(qr, query, cmd, executor, sliceCollectors);
+        set = mergeSliceDocSets(sliceCollectors, maxDoc);
+      } else {
+        buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
+        set = setCollector.getDocSet();
+      }
 
       nDocsReturned = 0;
       ids = new int[nDocsReturned];
@@ -1941,18 +2241,36 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       qr.setNextCursorMark(cmd.getCursorMark());
     } else {
 
-      final TopDocsCollector topCollector = buildTopDocsCollector(len, cmd);
-      DocSetCollector setCollector = new DocSetCollector(maxDoc);
-      Collector collector = MultiCollector.wrap(topCollector, setCollector);
+      final ExecutorService executor = getSegmentSearchExecutor(cmd, pf.postFilter);
+      TopDocs topDocs;
+      if (executor != null) {
+        final Sort weightedSort = cmd.getSort() == null ? null : weightSort(cmd.getSort());
+        final TopDocsCollector[] topCollectors = buildSliceTopDocsCollectors(len, cmd, weightedSort);
+        final DocSetCollector[] setCollectors = new DocSetCollector[topCollectors.length];
+        final Collector[] sliceCollectors = new Collector[topCollectors.length];
+        for (int i = 0; i < sliceCollectors.length; i++) {
+          setCollectors[i] = new DocSetCollector(maxDoc);
+          sliceCollectors[i] = MultiCollector.wrap(topCollectors[i], setCollectors[i]);
+        }
+        searchSlices(qr, query, cmd, executor, sliceCollectors);
+
+        set = mergeSliceDocSets(setCollectors, maxDoc);
+        topDocs = mergeSliceTopDocs(topCollectors, weightedSort, len);
+        totalHits = topDocs.totalHits;
+      } else {
+        final TopDocsCollector topCollector = buildTopDocsCollector(len, cmd);
+        DocSetCollector setCollector = new DocSetCollector(maxDoc);
+        Collector collector = MultiCollector.wrap(topCollector, setCollector);
 
-      buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
+        buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter);
 
-      set = setCollector.getDocSet();
+        set = setCollector.getDocSet();
 
-      totalHits = topCollector.getTotalHits();
+        totalHits = topCollector.getTotalHits();
+        topDocs = topCollector.topDocs(0, len);
+      }
       assert (totalHits == set.size());
 
-      TopDocs topDocs = topCollector.topDocs(0, len);
       populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
       maxScore = totalHits > 0 ? topDocs.getMaxScore() : 0.0f;
       nDocsReturned = topDocs.scoreDocs.length;
@@ -52,6 +52,19 @@ public class AddUpdateCommand extends UpdateCommand implements Iterable<Document
    public boolean isLastDocInBatch = false;
 
    public int pollQueueTime = 0;
+
+   /**
+    * If true, only the docValues-only numeric fields of {@link #solrDoc} (and the version) changed since the
+    * previous version of the document, so they can be updated in place instead of re-indexing the document.
+    * {@link #solrDoc} still holds the whole resolved document.
+    */
+   public boolean isInPlaceUpdate = false;
+
+   /**
+    * For an in-place update, the version of the document the update was resolved against. Only the docValues
+    * changed since that version are applied, so a replica must have exactly this version to update in place.
+    */
+   public long prevVersion = -1;
    
    public AddUpdateCommand(SolrQueryRequest req) {
      super(req);
@@ -68,6 +81,8 @@ public class AddUpdateCommand extends UpdateCommand implements Iterable<Document
      indexedId = null;
      updateTerm = null;
      isLastDocInBatch = false;
+     isInPlaceUpdate = false;
+     prevVersion = -1;
      version = 0;
    }
 
@@ -26,10 +26,16 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.LongAdder;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.index.CodecReader;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SlowCodecReaderWrapper;
 import org.apache.lucene.index.Term;
@@ -42,15 +48,21 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.BytesRefHash;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputField;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.SolrConfig.UpdateHandlerInfo;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoMBean;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumericValueFieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.FunctionRangeQuery;
 import org.apache.solr.search.QParser;
@@ -69,7 +81,7 @@ import org.slf4j.LoggerFactory;
  * <p>
  * TODO: add soft commitWithin support
  */
-public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState.IndexWriterCloser {
+public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState.IndexWriterCloser, SolrMetricProducer {
   protected final SolrCoreState solrCoreState;
 
   // stats
@@ -88,6 +100,9 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
   LongAdder numErrors = new LongAdder();
   LongAdder numErrorsCumulative = new LongAdder();
 
+  // replaced with a registered metric in initializeMetrics
+  Timer commitTimes = new Timer();
+
   // tracks when auto-commit should occur
   protected final CommitTracker commitTracker;
   protected final CommitTracker softCommitTracker;
@@ -238,6 +253,7 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
   }
 
   private void allowDuplicateUpdate(AddUpdateCommand cmd) throws IOException {
+    cmd.isInPlaceUpdate = false;
     RefCounted<IndexWriter> iw = solrCoreState.getIndexWriter(core);
     try {
       IndexWriter writer = iw.get();
@@ -273,6 +289,8 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
 
       if (cmd.isBlock()) {
         writer.updateDocuments(updateTerm, cmd);
+      } else if (cmd.isInPlaceUpdate) {
+        writer.updateDocValues(idTerm, getInPlaceUpdateFields(cmd));
       } else {
         Document luceneDocument = cmd.getLuceneDocument();
         // SolrCore.verbose("updateDocument",updateTerm,luceneDocument,writer);
@@ -306,7 +324,31 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
 
   }
 
+  /**
+   * Returns the docValues to update for an in-place update: the values of all the docValues-only
+   * numeric fields of the resolved document, which includes the new version.
+   */
+  private Field[] getInPlaceUpdateFields(AddUpdateCommand cmd) {
+    IndexSchema schema = cmd.getReq().getSchema();
+    List<Field> fields = new ArrayList<>();
+    for (SolrInputField sif : cmd.getSolrInputDocument()) {
+      SchemaField sf = schema.getFieldOrNull(sif.getName());
+      if (sf == null || sf.multiValued() || !sf.hasDocValues() || sf.indexed() || sf.stored()
+          || !(sf.getType() instanceof NumericValueFieldType) || sif.getValue() == null) {
+        continue;
+      }
+      for (IndexableField f : sf.getType().createFields(sf, sif.getFirstValue(), 1f)) {
+        if (f != null && f.fieldType().docValuesType() == DocValuesType.NUMERIC) {
+          fields.add((Field) f);
+        }
+      }
+    }
+    return fields.toArray(new Field[fields.size()]);
+  }
+
   private void addAndDelete(AddUpdateCommand cmd, List<UpdateLog.DBQ> deletesAfter) throws IOException {
+    // the reordered deletes may have removed the document, index it all over again
+    cmd.isInPlaceUpdate = false;
 
     log.info("Reordered DBQs detected.  Update=" + cmd + " DBQs="
         + deletesAfter);
@@ -557,6 +599,7 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     }
 
     boolean error=true;
+    Timer.Context commitTimer = commitTimes.time();
     try {
       // only allow one hard commit to proceed at once
       if (!cmd.softCommit) {
@@ -668,6 +711,7 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
       deleteByIdCommands.reset();
       deleteByQueryCommands.reset();
       if (error) numErrors.increment();
+      commitTimer.stop();
     }
 
     // if we are supposed to wait for the searcher to be registered, then we should do it
@@ -864,6 +908,21 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     return null;
   }
 
+  @Override
+  public void initializeMetrics(SolrMetricManager manager, String registry, String scope) {
+    String category = SolrInfoMBean.Category.UPDATEHANDLER.toString();
+    commitTimes = manager.timer(registry, "commitTimes", category, scope);
+    // gauges are re-registered on core reload so that they point at the new handler instance
+    manager.register(registry, (Gauge<Long>) () -> commitCommands.longValue(), true, "commits", category, scope);
+    manager.register(registry, (Gauge<Long>) () -> optimizeCommands.longValue(), true, "optimizes", category, scope);
+    manager.register(registry, (Gauge<Long>) () -> rollbackCommands.longValue(), true, "rollbacks", category, scope);
+    manager.register(registry, (Gauge<Long>) () -> numDocsPending.longValue(), true, "docsPending", category, scope);
+    manager.register(registry, (Gauge<Long>) () -> addCommandsCumulative.longValue(), true, "cumulativeAdds", category, scope);
+    manager.register(registry, (Gauge<Long>) () -> deleteByIdCommandsCumulative.longValue(), true, "cumulativeDeletesById", category, scope);
+    manager.register(registry, (Gauge<Long>) () -> deleteByQueryCommandsCumulative.longValue(), true, "cumulativeDeletesByQuery", category, scope);
+    manager.register(registry, (Gauge<Long>) () -> numErrorsCumulative.longValue(), true, "cumulativeErrors", category, scope);
+  }
+
   @Override
   public NamedList getStatistics() {
     NamedList lst = new SimpleOrderedMap();
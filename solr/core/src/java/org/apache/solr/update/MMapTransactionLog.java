@@ -0,0 +1,688 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.DataInputInputStream;
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.FastOutputStream;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.ObjectReleaseTracker;
+import org.apache.solr.util.BufferFreer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A transaction log that appends into memory-mapped segments of a pre-allocated file, and that
+ * checksums each record.
+ * <p>
+ * Records have the same layout as in {@link TransactionLog}, except that a CRC32 of the record
+ * is written between the record and its size: <code>record, crc, size</code>, where the size
+ * covers the record and its checksum. The header has version 2.
+ * <p>
+ * The file grows one segment at a time and is only truncated to its actual size when the log is
+ * closed. When an existing log is opened after a crash, its end is found by looking for the last
+ * record with a valid checksum, and reading the log stops at the first record that is corrupt
+ * (typically a partial last record), which makes replaying it safe.
+ */
+public class MMapTransactionLog extends TransactionLog {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static boolean debug = log.isDebugEnabled();
+  private static boolean trace = log.isTraceEnabled();
+
+  /** The header version of checksummed logs. */
+  static final int VERSION = 2;
+
+  public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+
+  private final int segmentSize;
+  private final SegmentOutputStream sink = new SegmentOutputStream();
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+  private int syncedSegments;  // number of segments when the file length was last synced
+
+  MMapTransactionLog(File tlogFile, Collection<String> globalStrings, int segmentSize) {
+    this(tlogFile, globalStrings, false, segmentSize);
+  }
+
+  MMapTransactionLog(File tlogFile, Collection<String> globalStrings, boolean openExisting, int segmentSize) {
+    super();
+    this.segmentSize = segmentSize;
+    boolean success = false;
+    try {
+      if (debug) {
+        log.debug("New MMapTransactionLog file=" + tlogFile + ", exists=" + tlogFile.exists() + ", size=" + tlogFile.length() + ", openExisting=" + openExisting);
+      }
+
+      // Parse tlog id from the filename
+      String filename = tlogFile.getName();
+      id = Long.parseLong(filename.substring(filename.indexOf('.') + 1, filename.indexOf('.') + 20));
+
+      this.tlogFile = tlogFile;
+      raf = new RandomAccessFile(this.tlogFile, "rw");
+      long length = raf.length();
+      channel = raf.getChannel();
+      os = sink;
+      fos = new FastOutputStream(sink, new byte[65536], 0);
+
+      if (openExisting) {
+        long start = 0;
+        if (length > 0) {
+          segment((int) ((length - 1) / segmentSize));
+          sink.position = length;  // the whole file can be read while looking for its end
+          start = findEnd(length);
+          sink.position = start;
+        }
+        if (start > 0) {
+          readHeader(new SegmentInputStream(0, start));
+          fos.setWritten(start);    // reflect that we aren't starting at the beginning
+          syncedPosition = start;
+        } else {
+          addGlobalStrings(globalStrings);
+        }
+      } else {
+        if (length > 0) {
+          log.warn("New transaction log already exists:" + tlogFile + " size=" + length);
+          return;
+        }
+        addGlobalStrings(globalStrings);
+      }
+
+      success = true;
+
+      assert ObjectReleaseTracker.track(this);
+
+    } catch (IOException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    } finally {
+      if (!success && raf != null) {
+        try {
+          raf.close();
+        } catch (Exception e) {
+          log.error("Error closing tlog file (after error opening)", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns true if the given file is a checksummed log, as written by this class, and false if it is
+   * empty or was written by a {@link TransactionLog}, or if its header can't be parsed.
+   * @throws IOException if the file can't be read
+   */
+  public static boolean isChecksummed(File tlogFile) throws IOException {
+    if (tlogFile.length() == 0) return false;
+    try (InputStream is = new FileInputStream(tlogFile)) {
+      Object header;
+      try {
+        header = new JavaBinCodec().unmarshal(is);
+      } catch (EOFException | RuntimeException e) {
+        // a truncated or corrupt header, this was not written by this class
+        return false;
+      }
+      return header instanceof Map && Integer.valueOf(VERSION).equals(((Map) header).get("SOLR_TLOG"));
+    }
+  }
+
+  /** Returns the segment with the given index, mapping it (and growing the file) if needed. */
+  private MappedByteBuffer segment(int idx) throws IOException {
+    MappedByteBuffer[] segs = segments;
+    if (idx < segs.length) return segs[idx];
+
+    // pre-allocate the space of the new segments before mapping them
+    long length = (long) (idx + 1) * segmentSize;
+    if (raf.length() < length) {
+      raf.setLength(length);
+    }
+    int numSegments = segs.length;
+    segs = Arrays.copyOf(segs, idx + 1);
+    for (int i = numSegments; i <= idx; i++) {
+      segs[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize);
+    }
+    segments = segs;
+    return segs[idx];
+  }
+
+  /** Returns a view of the given range, which must be within a segment, that doesn't share its position with other threads. */
+  private ByteBuffer slice(long pos, int len) {
+    ByteBuffer buffer = segments[(int) (pos / segmentSize)].duplicate();
+    int offset = (int) (pos % segmentSize);
+    buffer.limit(offset + len);
+    buffer.position(offset);
+    return buffer;
+  }
+
+  private int checksum(long start, long end) {
+    CRC32 crc = new CRC32();
+    for (long pos = start; pos < end; ) {
+      int len = (int) Math.min(end - pos, segmentSize - pos % segmentSize);
+      crc.update(slice(pos, len));
+      pos += len;
+    }
+    return (int) crc.getValue();
+  }
+
+  private byte byteAt(long pos) {
+    return segments[(int) (pos / segmentSize)].get((int) (pos % segmentSize));
+  }
+
+  private int readInt(long pos) {
+    int v = 0;
+    for (int i = 0; i < 4; i++) {
+      v = (v << 8) | (byteAt(pos + i) & 0xff);
+    }
+    return v;
+  }
+
+  /** Returns true if a record with a valid checksum ends right before the given position. */
+  private boolean isRecordEnd(long end) {
+    if (end < 8) return false;
+    int size = readInt(end - 4);
+    long start = end - 4 - size;
+    return size > 4 && start >= 0 && readInt(end - 8) == checksum(start, end - 8);
+  }
+
+  /**
+   * Finds the end of the log. A log that was closed properly was truncated to its end. Otherwise
+   * the end of the file is pre-allocated space that is still zeroed, unless a partial record was
+   * written to it.
+   */
+  private long findEnd(long length) throws IOException {
+    if (isRecordEnd(length)) return length;
+
+    long lastNonZero = length - 1;
+    while (lastNonZero >= 0 && byteAt(lastNonZero) == 0) {
+      lastNonZero--;
+    }
+    // the size of the last record may end with zero bytes
+    for (long end = lastNonZero + 1; end <= Math.min(lastNonZero + 4, length); end++) {
+      if (isRecordEnd(end)) return end;
+    }
+
+    // the tail is garbage, read the records from the start until one is corrupt
+    long end = 0;
+    SegmentInputStream is = new SegmentInputStream(0, length);
+    LogCodec codec = new LogCodec(resolver);
+    try {
+      readHeader(is);  // the global strings are needed to read the other records
+      end = is.position();
+      for (;;) {
+        readRecord(is, codec, false);
+        end = is.position();
+      }
+    } catch (Exception | AssertionError e) {  // corrupt bytes can trip the assertions of the codec
+      log.warn("Ignoring the corrupt end of the transaction log " + tlogFile + " after position " + end + ": " + e);
+    }
+
+    // clear the garbage so that the end is found quickly if we have to look for it again
+    clear(end, lastNonZero + 1);
+    return end;
+  }
+
+  /** Zeroes the given range, so that the end of the log is not confused with the bytes that were there. */
+  private void clear(long start, long end) {
+    for (long pos = start; pos < end; pos++) {
+      segments[(int) (pos / segmentSize)].put((int) (pos % segmentSize), (byte) 0);
+    }
+  }
+
+  /** Reads a record and checks its size and checksum. The header is the only record that starts with the javabin version. */
+  private Object readRecord(FastInputStream is, LogCodec codec, boolean header) throws IOException {
+    long start = is.position();
+    Object o = header ? codec.unmarshal(is) : codec.readVal(is);
+    long end = is.position();
+    int crc = is.readInt();
+    int size = is.readInt();
+    if (size != end + 4 - start || crc != checksum(start, end)) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          "Corrupt transaction log record at position " + start + ": " + tlogFile);
+    }
+    return o;
+  }
+
+  private void readHeader(FastInputStream fis) throws IOException {
+    // read existing header
+    LogCodec codec = new LogCodec(resolver);
+    Map header = (Map) readRecord(fis, codec, true);
+
+    // needed to read other records
+
+    synchronized (this) {
+      globalStringList = (List<String>)header.get("strings");
+      globalStringMap = new HashMap<>(globalStringList.size());
+      for (int i=0; i<globalStringList.size(); i++) {
+        globalStringMap.put( globalStringList.get(i), i+1);
+      }
+    }
+  }
+
+  @Override
+  protected void writeLogHeader(LogCodec codec) throws IOException {
+    long pos = fos.size();
+    assert pos == 0;
+
+    Map header = new LinkedHashMap<String,Object>();
+    header.put("SOLR_TLOG",VERSION); // a magic string + version number
+    header.put("strings",globalStringList);
+    codec.marshal(header, fos);
+
+    endRecord(pos);
+  }
+
+  @Override
+  protected void endRecord(long startRecordPosition) throws IOException {
+    // the record is checksummed once it's in the mapped segments
+    fos.flushBuffer();
+    fos.writeInt(checksum(startRecordPosition, fos.size()));
+    super.endRecord(startRecordPosition);
+  }
+
+  @Override
+  public boolean endsWithCommit() throws IOException {
+    long size;
+    synchronized (this) {
+      fos.flushBuffer();
+      size = fos.size();
+    }
+
+    // the end of the file should have the end message (added during a commit) plus a 4 byte checksum and a 4 byte size
+    byte[] buf = new byte[ END_MESSAGE.length() ];
+    long pos = size - END_MESSAGE.length() - 8;
+    if (pos < 0) return false;
+    SegmentInputStream is = new SegmentInputStream(pos, size);
+    is.readFully(buf);
+    for (int i=0; i<buf.length; i++) {
+      if (buf[i] != END_MESSAGE.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  // This could mess with any readers or reverse readers that are open, or anything that might try to do a log lookup.
+  // This should only be used to roll back buffered updates, not actually applied updates.
+  @Override
+  public void rollback(long pos) throws IOException {
+    synchronized (syncLock) {  // don't let a concurrent sync mark the rolled back bytes as synced
+      synchronized (this) {
+        assert snapshot_size == pos;
+        fos.flush();
+        // the file is not truncated while it's mapped, zero the rolled back records so that a reopened
+        // log doesn't find its end after them
+        clear(pos, fos.size());
+        sink.position = pos;
+        fos.setWritten(pos);
+        assert fos.size() == pos;
+        numRecords = snapshot_numRecords;
+        syncedPosition = Math.min(syncedPosition, pos);
+      }
+    }
+  }
+
+  @Override
+  public long writeCommit(CommitUpdateCommand cmd, int flags) {
+    LogCodec codec = new LogCodec(resolver);
+    synchronized (this) {
+      try {
+        long pos = fos.size();
+
+        if (pos == 0) {
+          writeLogHeader(codec);
+          pos = fos.size();
+        }
+        codec.init(fos);
+        codec.writeTag(JavaBinCodec.ARR, 3);
+        codec.writeInt(UpdateLog.COMMIT | flags);  // should just take one byte
+        codec.writeLong(cmd.getVersion());
+        codec.writeStr(END_MESSAGE);  // ensure these bytes are (almost) last in the file
+
+        endRecord(pos);
+
+        fos.flush();  // flush since this will be the last record in a log fill
+        assert fos.size() == sink.position;
+
+        return pos;
+      } catch (IOException e) {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      }
+    }
+  }
+
+  /* This method is thread safe */
+  @Override
+  public Object lookup(long pos) {
+    // A negative position can result from a log replay (which does not re-log, but does
+    // update the version map.  This is OK since the node won't be ACTIVE when this happens.
+    if (pos < 0) return null;
+
+    try {
+      long end;
+      // make sure any unflushed buffer has been flushed
+      synchronized (this) {
+        fos.flushBuffer();
+        end = fos.size();
+      }
+
+      SegmentInputStream is = new SegmentInputStream(pos, end);
+      LogCodec codec = new LogCodec(resolver);
+      return codec.readVal(is);
+    } catch (IOException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    }
+  }
+
+  @Override
+  protected void sync() throws IOException {
+    MappedByteBuffer[] segs = segments;
+    for (int i = (int) (syncedPosition / segmentSize); i < segs.length; i++) {
+      segs[i].force();
+    }
+    if (syncedSegments != segs.length) {
+      // the file grew since the last sync, make its new length durable too
+      channel.force(true);
+      syncedSegments = segs.length;
+    }
+  }
+
+  @Override
+  public long getLogSize() {
+    synchronized (this) {
+      return fos.size();
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      if (debug) {
+        log.debug("Closing tlog" + this);
+      }
+
+      long size;
+      MappedByteBuffer[] segs;
+      synchronized (this) {
+        fos.flush();
+        size = fos.size();
+        segs = segments;
+        segments = new MappedByteBuffer[0];
+      }
+
+      // the log isn't referenced anymore, unmap it rather than waiting for the garbage collector
+      for (MappedByteBuffer segment : segs) {
+        try {
+          BufferFreer.free(segment);
+        } catch (IOException e) {
+          log.warn("Could not unmap tlog " + tlogFile + ", it is left to the garbage collector: " + e);
+          break;
+        }
+      }
+
+      if (!deleteOnClose) {
+        // drop the pre-allocated space that wasn't used
+        try {
+          raf.setLength(size);
+        } catch (IOException e) {
+          // some platforms don't allow to truncate a file while it's mapped, it will be truncated on the next open
+          log.warn("Could not truncate tlog " + tlogFile + " to " + size + ": " + e);
+        }
+      }
+      raf.close();
+
+      if (deleteOnClose) {
+        try {
+          Files.deleteIfExists(tlogFile.toPath());
+        } catch (IOException e) {
+          // TODO: should this class care if a file couldnt be deleted?
+          // this just emulates previous behavior, where only SecurityException would be handled.
+        }
+      }
+    } catch (IOException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    } finally {
+      assert ObjectReleaseTracker.release(this);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "mmap tlog{file=" + tlogFile.toString() + " refcount=" + refcount.get() + "}";
+  }
+
+  /** Returns a reader that can be used while a log is still in use.
+   * Currently only *one* LogReader may be outstanding, and that log may only
+   * be used from a single thread. */
+  @Override
+  public LogReader getReader(long startingPos) {
+    return new MMapLogReader(startingPos);
+  }
+
+  /** Returns a single threaded reverse reader */
+  @Override
+  public ReverseReader getReverseReader() throws IOException {
+    return new MMapReverseReader();
+  }
+
+  /** Writes into the mapped segments. All accesses are synchronized on the log, like for {@link #fos}. */
+  private class SegmentOutputStream extends OutputStream {
+    volatile long position;  // what was written so far, and can be read
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        MappedByteBuffer segment = segment((int) (position / segmentSize));
+        int offset = (int) (position % segmentSize);
+        int n = Math.min(len, segmentSize - offset);
+        segment.position(offset);
+        segment.put(b, off, n);
+        position += n;
+        off += n;
+        len -= n;
+      }
+    }
+  }
+
+  /** Reads from the mapped segments, up to the given limit. */
+  private class SegmentInputStream extends FastInputStream {
+    private final long limit;
+
+    SegmentInputStream(long position, long limit) {
+      super(null);
+      this.limit = limit;
+      readFromStream = position;
+    }
+
+    @Override
+    public int readWrappedStream(byte[] target, int offset, int len) throws IOException {
+      // never read what wasn't written yet, it would stay stale in the buffer
+      long available = Math.min(limit, sink.position) - readFromStream;
+      if (available <= 0) return -1;
+      int n = (int) Math.min(Math.min(len, available), segmentSize - readFromStream % segmentSize);
+      slice(readFromStream, n).get(target, offset, n);
+      return n;
+    }
+
+    public void seek(long position) {
+      readFromStream = position;
+      end = pos = 0;
+    }
+  }
+
+  public class MMapLogReader extends LogReader {
+    private SegmentInputStream is;
+    private LogCodec codec = new LogCodec(resolver);
+
+    public MMapLogReader(long startingPos) {
+      super();
+      incref();
+      is = new SegmentInputStream(startingPos, Long.MAX_VALUE);
+    }
+
+    /** Returns the next object from the log, or null if none available.
+     *
+     * @return The log record, or null if EOF
+     * @throws IOException If there is a low-level I/O error.
+     */
+    @Override
+    public Object next() throws IOException, InterruptedException {
+      long pos = is.position();
+
+      synchronized (MMapTransactionLog.this) {
+        if (trace) {
+          log.trace("Reading log record.  pos="+pos+" currentSize="+fos.size());
+        }
+
+        if (pos >= fos.size()) {
+          return null;
+        }
+
+        fos.flushBuffer();
+      }
+
+      if (pos == 0) {
+        readHeader(is);
+
+        // shouldn't currently happen - header and first record are currently written at the same time
+        synchronized (MMapTransactionLog.this) {
+          if (is.position() >= fos.size()) {
+            return null;
+          }
+        }
+      }
+
+      return readRecord(is, codec, false);
+    }
+
+    @Override
+    public String toString() {
+      synchronized (MMapTransactionLog.this) {
+        return "LogReader{" + "file=" + tlogFile + ", position=" + is.position() + ", end=" + fos.size() + "}";
+      }
+    }
+
+    @Override
+    public long currentPos() {
+      return is.position();
+    }
+
+    @Override
+    public long currentSize() {
+      return getLogSize();
+    }
+  }
+
+  public class MMapReverseReader extends ReverseReader {
+    SegmentInputStream is;
+    private LogCodec codec = new LogCodec(resolver) {
+      @Override
+      public SolrInputDocument readSolrInputDocument(DataInputInputStream dis) {
+        // Given that the SolrInputDocument is last in an add record, it's OK to just skip
+        // reading it completely.
+        return null;
+      }
+    };
+
+    int nextLength;  // length of the next record (the next one closer to the start of the log file)
+    long prevPos;    // where we started reading from last time (so prevPos - nextLength == start of next record)
+
+    public MMapReverseReader() throws IOException {
+      incref();
+
+      long sz;
+      synchronized (MMapTransactionLog.this) {
+        fos.flushBuffer();
+        sz = fos.size();
+      }
+
+      is = new SegmentInputStream(0, sz);
+      if (sz >=4) {
+        prevPos = sz - 4;
+        is.seek(prevPos);
+        nextLength = is.readInt();
+      }
+    }
+
+    /** Returns the next object from the log, or null if none available.
+     *
+     * @return The log record, or null if EOF
+     * @throws IOException If there is a low-level I/O error.
+     */
+    @Override
+    public Object next() throws IOException {
+      if (prevPos <= 0) return null;
+
+      long recordStart = prevPos - nextLength;  // back up to the beginning of the next record
+      prevPos = recordStart - 4;  // back up 4 more to read the length of the next record
+
+      if (prevPos <= 0) return null;  // this record is the header
+
+      // the codec skips the document, so check the checksum of the whole record before reading it
+      long crcPos = recordStart + nextLength - 4;
+      if (nextLength <= 4 || readInt(crcPos) != checksum(recordStart, crcPos)) {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+            "Corrupt transaction log record at position " + recordStart + ": " + tlogFile);
+      }
+
+      // the log is in memory, no need to position a buffer around the record
+      is.seek(prevPos);
+      nextLength = is.readInt();     // this is the length of the *next* record (i.e. closer to the beginning)
+
+      return codec.readVal(is);
+    }
+
+    /* returns the position in the log file of the last record returned by next() */
+    @Override
+    public long position() {
+      return prevPos + 4;  // skip the length
+    }
+
+    @Override
+    public void close() {
+      decref();
+    }
+
+    @Override
+    public String toString() {
+      synchronized (MMapTransactionLog.this) {
+        return "LogReader{" + "file=" + tlogFile + ", position=" + is.position() + ", end=" + fos.size() + "}";
+      }
+    }
+  }
+
+}
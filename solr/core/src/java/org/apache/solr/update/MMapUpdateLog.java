@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Collection;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.PluginInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link UpdateLog} that writes its transaction logs with {@link MMapTransactionLog}: records are appended
+ * to memory-mapped segments of pre-allocated files and checksummed, so that a partial last record is detected
+ * when replaying a log after a crash.
+ * <p>
+ * It is enabled with <code>&lt;updateLog class="solr.MMapUpdateLog"&gt;</code>, and the size of the segments
+ * can be configured with the <code>segmentSizeMB</code> init arg (16 by default).
+ * Logs that were written by an {@link UpdateLog} before switching to this implementation are still read.
+ */
+public class MMapUpdateLog extends UpdateLog {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private int segmentSize = MMapTransactionLog.DEFAULT_SEGMENT_SIZE;
+
+  @Override
+  public void init(PluginInfo info) {
+    super.init(info);
+
+    int segmentSizeMB = objToInt(info.initArgs.get("segmentSizeMB"), MMapTransactionLog.DEFAULT_SEGMENT_SIZE >> 20);
+    if (segmentSizeMB <= 0 || segmentSizeMB > 1024)
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          "The segment size of memory-mapped transaction logs must be between 1 and 1024 MB!");
+    segmentSize = segmentSizeMB << 20;
+
+    log.info("Initializing MMapUpdateLog: segmentSizeMB={}", segmentSizeMB);
+  }
+
+  @Override
+  public TransactionLog newTransactionLog(File tlogFile, Collection<String> globalStrings, boolean openExisting) {
+    try {
+      if (openExisting && tlogFile.length() > 0 && !MMapTransactionLog.isChecksummed(tlogFile)) {
+        // the log was written before switching to memory-mapped logs
+        return new TransactionLog(tlogFile, globalStrings, openExisting);
+      }
+    } catch (IOException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    }
+    return new MMapTransactionLog(tlogFile, globalStrings, openExisting, segmentSize);
+  }
+}
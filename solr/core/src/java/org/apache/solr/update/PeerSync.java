@@ -740,7 +740,8 @@ public class PeerSync  {
           log.debug(msg() + "raw update record " + o);
         }
 
-        int oper = (Integer)entry.get(0) & UpdateLog.OPERATION_MASK;
+        int operationAndFlags = (Integer)entry.get(0);
+        int oper = operationAndFlags & UpdateLog.OPERATION_MASK;
         long version = (Long) entry.get(1);
         if (version == lastVersion && version != 0) continue;
         lastVersion = version;
@@ -755,6 +756,11 @@ public class PeerSync  {
             cmd.solrDoc = sdoc;
             cmd.setVersion(version);
             cmd.setFlags(UpdateCommand.PEER_SYNC | UpdateCommand.IGNORE_AUTOCOMMIT);
+            // the update processor falls back to a full add unless we have the version it was resolved against
+            cmd.isInPlaceUpdate = (operationAndFlags & UpdateLog.FLAG_IN_PLACE) != 0;
+            if (cmd.isInPlaceUpdate) {
+              cmd.prevVersion = (Long) entry.get(2);
+            }
             if (debug) {
               log.debug(msg() + "add " + cmd + " id " + sdoc.getField("id"));
             }
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.solr.client.solrj.SolrRequest;
+
+/**
+ * Tracks the updates that this node streams to a single replica, across all the update
+ * requests that are distributed concurrently: how many of them are queued, how long the
+ * oldest one has been waiting, and how many were sent or failed.
+ * <p>
+ * Every {@link StreamingSolrClients} instance registers a queue per replica, mapping each
+ * queued request to the time ({@link System#nanoTime()}) it was queued at.
+ *
+ * @see UpdateShardHandler#getReplicaUpdateStats(String)
+ */
+public class ReplicaUpdateStats {
+
+  private final Set<Map<SolrRequest, Long>> queues = ConcurrentHashMap.newKeySet();
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+
+  void register(Map<SolrRequest, Long> queue) {
+    queues.add(queue);
+  }
+
+  void unregister(Map<SolrRequest, Long> queue) {
+    queues.remove(queue);
+  }
+
+  void sent() {
+    sent.increment();
+  }
+
+  void error() {
+    errors.increment();
+  }
+
+  /** Returns the number of requests that are queued and not yet sent to the replica. */
+  public int getQueueDepth() {
+    int depth = 0;
+    for (Map<SolrRequest, Long> queue : queues) {
+      depth += queue.size();
+    }
+    return depth;
+  }
+
+  /** Returns how long the oldest queued request has been waiting, in milliseconds, or 0 if nothing is queued. */
+  public long getLagMillis() {
+    long now = System.nanoTime();
+    long oldest = now;
+    for (Map<SolrRequest, Long> queue : queues) {
+      for (Long queuedAt : queue.values()) {
+        oldest = Math.min(oldest, queuedAt);
+      }
+    }
+    return TimeUnit.MILLISECONDS.convert(now - oldest, TimeUnit.NANOSECONDS);
+  }
+
+  /** Returns the total number of requests that were sent to the replica. */
+  public long getSent() {
+    return sent.longValue();
+  }
+
+  /** Returns the total number of errors reported while streaming to the replica. */
+  public long getErrors() {
+    return errors.longValue();
+  }
+}
@@ -42,7 +42,9 @@ import java.net.ConnectException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
@@ -66,6 +68,12 @@ public class SolrCmdDistributor {
   
   private final CompletionService<Object> completionService;
   private final Set<Future<Object>> pending = new HashSet<>();
+
+  // max number of documents sent to a replica in a single update request. Batching is off by default (1),
+  // it is enabled by setting -Dsolr.cloud.replication.batchSize to a larger value, eg. 100
+  private int maxBatchSize = Integer.getInteger("solr.cloud.replication.batchSize", 1);
+  // replica url -> adds that are not sent yet
+  private final Map<String, Req> batches = new LinkedHashMap<>();
   
   public static interface AbortCheck {
     public boolean abortCheck();
@@ -178,6 +186,8 @@ public class SolrCmdDistributor {
   public void distribDelete(DeleteUpdateCommand cmd, List<Node> nodes, ModifiableSolrParams params, boolean sync) throws IOException {
     
     for (Node node : nodes) {
+      // the delete must not overtake the adds that were sent before
+      flushBatch(node);
       UpdateRequest uReq = new UpdateRequest();
       uReq.setParams(params);
       uReq.setCommitWithin(cmd.commitWithin);
@@ -201,6 +211,11 @@ public class SolrCmdDistributor {
   
   public void distribAdd(AddUpdateCommand cmd, List<Node> nodes, ModifiableSolrParams params, boolean synchronous, RequestReplicationTracker rrt) throws IOException {  
     for (Node node : nodes) {
+      if (isBatchable(node, synchronous, rrt)) {
+        batchAdd(cmd, node, params);
+        continue;
+      }
+      flushBatch(node);
       UpdateRequest uReq = new UpdateRequest();
       if (cmd.isLastDocInBatch)
         uReq.lastDocInBatch();
@@ -211,6 +226,54 @@ public class SolrCmdDistributor {
     
   }
 
+  /**
+   * Only asynchronous adds to replicas are batched: requests forwarded to a leader ({@link RetryNode}s)
+   * are retried one by one, and the achieved replication factor is tracked per request.
+   */
+  private boolean isBatchable(Node node, boolean synchronous, RequestReplicationTracker rrt) {
+    return maxBatchSize > 1 && !synchronous && rrt == null && !(node instanceof RetryNode);
+  }
+
+  private void batchAdd(AddUpdateCommand cmd, Node node, ModifiableSolrParams params) {
+    Req batch = batches.get(node.getUrl());
+    if (batch != null && !batch.uReq.getParams().toNamedList().equals(params.toNamedList())) {
+      // the params apply to the whole request
+      flushBatch(node);
+      batch = null;
+    }
+    if (batch == null) {
+      UpdateRequest uReq = new UpdateRequest();
+      uReq.setParams(params);
+      batch = new Req(cmd, node, uReq, false, null, cmd.pollQueueTime);
+      batch.batchCmds = new ArrayList<>();
+      batches.put(node.getUrl(), batch);
+    }
+    batch.uReq.add(cmd.solrDoc, cmd.commitWithin, cmd.overwrite);
+    batch.batchCmds.add(cmd);
+    batch.cmd = cmd;
+    if (cmd.isLastDocInBatch) {
+      batch.uReq.lastDocInBatch();
+    }
+    if (cmd.isLastDocInBatch || batch.uReq.getDocumentsMap().size() >= maxBatchSize) {
+      flushBatch(node);
+    }
+  }
+
+  private void flushBatch(Node node) {
+    Req batch = batches.remove(node.getUrl());
+    if (batch != null) {
+      submit(batch, false);
+    }
+  }
+
+  private void flushBatches() {
+    List<Req> toSend = new ArrayList<>(batches.values());
+    batches.clear();
+    for (Req batch : toSend) {
+      submit(batch, false);
+    }
+  }
+
   public void distribCommit(CommitUpdateCommand cmd, List<Node> nodes,
       ModifiableSolrParams params) throws IOException {
     
@@ -231,6 +294,7 @@ public class SolrCmdDistributor {
   }
 
   public void blockAndDoRetries() {
+    flushBatches();
     clients.blockUntilFinished();
     
     // wait for any async commits to complete
@@ -293,14 +357,35 @@ public class SolrCmdDistributor {
       solrClient.request(req.uReq);
     } catch (Exception e) {
       SolrException.log(log, e);
+      errors.addAll(getErrors(req, e));
+    }
+  }
+
+  /**
+   * Returns the errors to report for a failed request. A batch of adds fails as a whole, so
+   * there is one error per add of the batch, each with a request of its own.
+   */
+  static List<Error> getErrors(Req req, Exception e) {
+    List<Req> reqs;
+    if (req.batchCmds == null) {
+      reqs = Collections.singletonList(req);
+    } else {
+      reqs = new ArrayList<>(req.batchCmds.size());
+      for (UpdateCommand cmd : req.batchCmds) {
+        reqs.add(new Req(cmd, req.node, req.uReq, req.synchronous, req.rfTracker, req.pollQueueTime));
+      }
+    }
+    List<Error> errors = new ArrayList<>(reqs.size());
+    for (Req r : reqs) {
       Error error = new Error();
       error.e = e;
-      error.req = req;
+      error.req = r;
       if (e instanceof SolrException) {
         error.statusCode = ((SolrException) e).code();
       }
       errors.add(error);
     }
+    return errors;
   }
   
   public static class Req {
@@ -311,6 +396,8 @@ public class SolrCmdDistributor {
     public UpdateCommand cmd;
     public RequestReplicationTracker rfTracker;
     public int pollQueueTime;
+    // the adds of a batch, cmd is the last one; null if this request is not a batch
+    public List<UpdateCommand> batchCmds;
 
     public Req(UpdateCommand cmd, Node node, UpdateRequest uReq, boolean synchronous) {
       this(cmd, node, uReq, synchronous, null, 0);
@@ -381,7 +468,8 @@ public class SolrCmdDistributor {
      * NOTE: This is the request that happened to be executed when this error was <b>triggered</b> the error, 
      * but because of how {@link StreamingSolrClients} uses {@link ConcurrentUpdateSolrClient} it might not 
      * actaully be the request that <b>caused</b> the error -- multiple requests are merged &amp; processed as 
-     * a sequential batch.
+     * a sequential batch.  Adds to replicas may also be batched before they are sent, in which case a
+     * failed batch is reported as one error per add.
      */
     public Req req;
     
@@ -16,6 +16,8 @@
  */
 package org.apache.solr.update;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -24,15 +26,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
 import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
-import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.update.SolrCmdDistributor.Error;
 import org.apache.solr.update.processor.DistributedUpdateProcessor;
 import org.apache.solr.update.processor.DistributingUpdateProcessorFactory;
@@ -43,15 +48,20 @@ public class StreamingSolrClients {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private final int runnerCount = Integer.getInteger("solr.cloud.replication.runners", 1);
+  // max number of requests queued per replica, adding to a full queue blocks until there is room again
+  private final int queueSize = Integer.getInteger("solr.cloud.replication.queueSize", 100);
   
   private HttpClient httpClient;
   
-  private Map<String, ConcurrentUpdateSolrClient> solrClients = new HashMap<>();
+  private Map<String, ErrorReportingConcurrentUpdateSolrClient> solrClients = new HashMap<>();
   private List<Error> errors = Collections.synchronizedList(new ArrayList<Error>());
 
   private ExecutorService updateExecutor;
 
+  private final UpdateShardHandler updateShardHandler;
+
   public StreamingSolrClients(UpdateShardHandler updateShardHandler) {
+    this.updateShardHandler = updateShardHandler;
     this.updateExecutor = updateShardHandler.getUpdateExecutor();
     
     httpClient = updateShardHandler.getHttpClient();
@@ -65,16 +75,21 @@ public class StreamingSolrClients {
     errors.clear();
   }
 
+  /**
+   * Returns the client to send the request of the given {@link SolrCmdDistributor.Req} with, errors of
+   * this request are reported against the Req.
+   */
   public synchronized SolrClient getSolrClient(final SolrCmdDistributor.Req req) {
     String url = getFullUrl(req.node.getUrl());
-    ConcurrentUpdateSolrClient client = solrClients.get(url);
+    ErrorReportingConcurrentUpdateSolrClient client = solrClients.get(url);
     if (client == null) {
       // NOTE: increasing to more than 1 threadCount for the client could cause updates to be reordered
       // on a greater scale since the current behavior is to only increase the number of connections/Runners when
       // the queue is more than half full.
-      client = new ErrorReportingConcurrentUpdateSolrClient(url, httpClient, 100, runnerCount, updateExecutor, true, req);
+      client = new ErrorReportingConcurrentUpdateSolrClient(url, httpClient, queueSize, runnerCount, getUpdateExecutor(), true, req,
+          updateShardHandler.getReplicaUpdateStats(url));
       client.setParser(new BinaryResponseParser());
-      client.setRequestWriter(new BinaryRequestWriter());
+      client.setRequestWriter(client.new TrackingRequestWriter());
       client.setPollQueueTime(req.pollQueueTime);
       Set<String> queryParams = new HashSet<>(2);
       queryParams.add(DistributedUpdateProcessor.DISTRIB_FROM);
@@ -82,10 +97,16 @@ public class StreamingSolrClients {
       client.setQueryParams(queryParams);
       solrClients.put(url, client);
     }
+    client.reqs.put(req.uReq, req);
 
     return client;
   }
 
+  /** Returns the statistics of the updates streamed to the given replica. */
+  public ReplicaUpdateStats getReplicaUpdateStats(SolrCmdDistributor.Node node) {
+    return updateShardHandler.getReplicaUpdateStats(getFullUrl(node.getUrl()));
+  }
+
   public synchronized void blockUntilFinished() {
     for (ConcurrentUpdateSolrClient client : solrClients.values()) {
       client.blockUntilFinished();
@@ -93,8 +114,10 @@ public class StreamingSolrClients {
   }
   
   public synchronized void shutdown() {
-    for (ConcurrentUpdateSolrClient client : solrClients.values()) {
+    for (ErrorReportingConcurrentUpdateSolrClient client : solrClients.values()) {
       client.close();
+      // anything left was not sent because of errors, which are reported separately
+      client.stats.unregister(client.queued);
     }
   }
   
@@ -118,28 +141,74 @@ public class StreamingSolrClients {
   
   class ErrorReportingConcurrentUpdateSolrClient extends ConcurrentUpdateSolrClient {
     private final SolrCmdDistributor.Req req;
+    private final ReplicaUpdateStats stats;
+    // requests that are queued but not written yet, with the time they were queued at
+    private final Map<SolrRequest, Long> queued = new ConcurrentHashMap<>();
+    // the Req of each request that is not written yet
+    private final Map<SolrRequest, SolrCmdDistributor.Req> reqs = new ConcurrentHashMap<>();
+    // the Reqs written by the runner of the current thread since it last got a response, a failed
+    // response is reported against all of them
+    private final ThreadLocal<List<SolrCmdDistributor.Req>> written = ThreadLocal.withInitial(ArrayList::new);
     
     public ErrorReportingConcurrentUpdateSolrClient(String solrServerUrl, HttpClient client, int queueSize,
-        int threadCount, ExecutorService es, boolean streamDeletes, SolrCmdDistributor.Req req) {
+        int threadCount, ExecutorService es, boolean streamDeletes, SolrCmdDistributor.Req req, ReplicaUpdateStats stats) {
       super(solrServerUrl, client, queueSize, threadCount, es, streamDeletes);
       this.req = req;
+      this.stats = stats;
+      stats.register(queued);
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+      queued.put(request, System.nanoTime());
+      boolean streamed = false;
+      try {
+        NamedList<Object> rsp = super.request(request, collection);
+        // queued requests are removed once they are written, see TrackingRequestWriter
+        streamed = rsp.get("NOTE") != null;
+        return rsp;
+      } finally {
+        if (!streamed) {
+          // sent directly (eg. a commit), or failed
+          queued.remove(request);
+          reqs.remove(request);
+        }
+      }
     }
     
     @Override
     public void handleError(Throwable ex) {
+      stats.error();
       req.trackRequestResult(null, false);
       log.error("error", ex);
-      Error error = new Error();
-      error.e = (Exception) ex;
-      if (ex instanceof SolrException) {
-        error.statusCode = ((SolrException) ex).code();
+      List<SolrCmdDistributor.Req> failed = new ArrayList<>(written.get());
+      written.get().clear();
+      if (failed.isEmpty()) {
+        // nothing was written, eg. we could not connect
+        failed.add(req);
+      }
+      for (SolrCmdDistributor.Req r : failed) {
+        errors.addAll(SolrCmdDistributor.getErrors(r, (Exception) ex));
       }
-      error.req = req;
-      errors.add(error);
     }
     @Override
     public void onSuccess(HttpResponse resp) {
+      written.get().clear();
       req.trackRequestResult(resp, true);
     }
+
+    /** Writes requests to the update stream and keeps track of what is left in the queue. */
+    class TrackingRequestWriter extends BinaryRequestWriter {
+      @Override
+      public void write(SolrRequest request, OutputStream os) throws IOException {
+        queued.remove(request);
+        SolrCmdDistributor.Req r = reqs.remove(request);
+        if (r != null) {
+          written.get().add(r);
+        }
+        stats.sent();
+        super.write(request, os);
+      }
+    }
   }
 }
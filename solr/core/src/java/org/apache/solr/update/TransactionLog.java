@@ -86,6 +86,10 @@ public class TransactionLog implements Closeable {
   long snapshot_size;
   int snapshot_numRecords;
 
+  // group commit: requests that ask for a fsync concurrently share a single one
+  final Object syncLock = new Object();
+  volatile long syncedPosition;  // everything before this position has been synced to disk
+
   // write a BytesRef as a byte array
   static final JavaBinCodec.ObjectResolver resolver = new JavaBinCodec.ObjectResolver() {
     @Override
@@ -244,13 +248,16 @@ public class TransactionLog implements Closeable {
   // This could mess with any readers or reverse readers that are open, or anything that might try to do a log lookup.
   // This should only be used to roll back buffered updates, not actually applied updates.
   public void rollback(long pos) throws IOException {
-    synchronized (this) {
-      assert snapshot_size == pos;
-      fos.flush();
-      raf.setLength(pos);
-      fos.setWritten(pos);
-      assert fos.size() == pos;
-      numRecords = snapshot_numRecords;
+    synchronized (syncLock) {  // don't let a concurrent sync mark the rolled back bytes as synced
+      synchronized (this) {
+        assert snapshot_size == pos;
+        fos.flush();
+        raf.setLength(pos);
+        fos.setWritten(pos);
+        assert fos.size() == pos;
+        numRecords = snapshot_numRecords;
+        syncedPosition = Math.min(syncedPosition, pos);
+      }
     }
   }
 
@@ -355,9 +362,14 @@ public class TransactionLog implements Closeable {
 
       MemOutputStream out = new MemOutputStream(new byte[bufSize]);
       codec.init(out);
-      codec.writeTag(JavaBinCodec.ARR, 3);
+      // in-place updates also log the version they were resolved against, the document always comes last
+      boolean inPlace = (flags & UpdateLog.FLAG_IN_PLACE) != 0;
+      codec.writeTag(JavaBinCodec.ARR, inPlace ? 4 : 3);
       codec.writeInt(UpdateLog.ADD | flags);  // should just take one byte
       codec.writeLong(cmd.getVersion());
+      if (inPlace) {
+        codec.writeLong(cmd.prevVersion);
+      }
       codec.writeSolrInputDocument(cmd.getSolrInputDocument());
       lastAddSize = (int)out.size();
 
@@ -528,15 +540,17 @@ public class TransactionLog implements Closeable {
   public void finish(UpdateLog.SyncLevel syncLevel) {
     if (syncLevel == UpdateLog.SyncLevel.NONE) return;
     try {
+      long pos;
       synchronized (this) {
         fos.flushBuffer();
+        pos = fos.size();
       }
 
       if (syncLevel == UpdateLog.SyncLevel.FSYNC) {
         // Since fsync is outside of synchronized block, we can end up with a partial
         // last record on power failure (which is OK, and does not represent an error...
         // we just need to be aware of it when reading).
-        raf.getFD().sync();
+        syncUpTo(pos);
       }
 
     } catch (IOException e) {
@@ -544,6 +558,31 @@ public class TransactionLog implements Closeable {
     }
   }
 
+  /**
+   * Makes sure everything written before the given position is on disk. Concurrent callers are
+   * committed as a group: only one of them syncs at a time, and it syncs everything that was
+   * logged so far, so the callers that waited for it usually find their records already synced.
+   */
+  private void syncUpTo(long pos) throws IOException {
+    if (syncedPosition >= pos) return;
+    synchronized (syncLock) {
+      if (syncedPosition >= pos) return;  // synced by another request while we were waiting
+
+      long end;
+      synchronized (this) {
+        fos.flushBuffer();
+        end = fos.size();
+      }
+      sync();
+      syncedPosition = end;
+    }
+  }
+
+  /** Forces everything that was flushed so far to disk. */
+  protected void sync() throws IOException {
+    raf.getFD().sync();
+  }
+
   public void close() {
     try {
       if (debug) {
@@ -608,7 +647,8 @@ public class TransactionLog implements Closeable {
 
     public LogReader(long startingPos) {
       incref();
-      fis = new ChannelFastInputStream(channel, startingPos);
+      // readers scan the log sequentially (e.g. to replay it), use a bigger buffer than for lookups
+      fis = new ChannelFastInputStream(channel, startingPos, new byte[65536]);
     }
 
     // for classes that extend
@@ -805,6 +845,12 @@ class ChannelFastInputStream extends FastInputStream {
     super.readFromStream = chPosition;
   }
 
+  public ChannelFastInputStream(FileChannel ch, long chPosition, byte[] buffer) {
+    super(null, buffer, 0, 0);
+    this.ch = ch;
+    super.readFromStream = chPosition;
+  }
+
   @Override
   public int readWrappedStream(byte[] target, int offset, int len) throws IOException {
     ByteBuffer bb = ByteBuffer.wrap(target, offset, len);
@@ -109,6 +109,10 @@ public class UpdateLog implements PluginInfoInitialized {
   // be set to indicate that replaying the log would not bring us into sync (i.e. peersync should
   // fail if this flag is set on the last update in the tlog).
   public static final int FLAG_GAP = 0x10;
+  // Flag indicating that an add only changed docValues-only numeric fields and was applied in place
+  // (see AddUpdateCommand.isInPlaceUpdate).  The logged document is still the whole resolved document,
+  // preceded by the version it was resolved against: [ADD|FLAG_IN_PLACE, version, prevVersion, doc]
+  public static final int FLAG_IN_PLACE = 0x20;
   public static final int OPERATION_MASK = 0x0f;  // mask off flags to get the operation
 
   public static class RecoveryInfo {
@@ -341,6 +345,14 @@ public class UpdateLog implements PluginInfoInitialized {
    * change the implementation of the transaction log.
    */
   public TransactionLog newTransactionLog(File tlogFile, Collection<String> globalStrings, boolean openExisting) {
+    try {
+      if (openExisting && MMapTransactionLog.isChecksummed(tlogFile)) {
+        // the log was written by a MMapUpdateLog
+        return new MMapTransactionLog(tlogFile, globalStrings, true, MMapTransactionLog.DEFAULT_SEGMENT_SIZE);
+      }
+    } catch (IOException e) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, e);
+    }
     return new TransactionLog(tlogFile, globalStrings, openExisting);
   }
 
@@ -426,7 +438,7 @@ public class UpdateLog implements PluginInfoInitialized {
       // don't log if we are replaying from another log
       if ((cmd.getFlags() & UpdateCommand.REPLAY) == 0) {
         ensureLog();
-        pos = tlog.write(cmd, operationFlags);
+        pos = tlog.write(cmd, operationFlags | (cmd.isInPlaceUpdate ? FLAG_IN_PLACE : 0));
       }
 
       if (!clearCaches) {
@@ -1385,6 +1397,10 @@ public class UpdateLog implements PluginInfoInitialized {
                 cmd.solrDoc = sdoc;
                 cmd.setVersion(version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
+                cmd.isInPlaceUpdate = (operationAndFlags & FLAG_IN_PLACE) != 0;
+                if (cmd.isInPlaceUpdate) {
+                  cmd.prevVersion = (Long) entry.get(2);
+                }
                 if (debug) log.debug("add " + cmd);
 
                 proc.processAdd(cmd);
@@ -1469,7 +1485,7 @@ public class UpdateLog implements PluginInfoInitialized {
 
           // if the last operation we replayed had FLAG_GAP set, we want to use that again so we don't lose it
           // as the flag on the last operation.
-          translog.writeCommit(cmd, operationFlags | (operationAndFlags & ~OPERATION_MASK));
+          translog.writeCommit(cmd, operationFlags | (operationAndFlags & FLAG_GAP));
         }
 
         try {
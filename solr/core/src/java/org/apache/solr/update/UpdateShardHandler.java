@@ -17,8 +17,11 @@
 package org.apache.solr.update;
 
 import java.lang.invoke.MethodHandles;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
+import com.codahale.metrics.Gauge;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
@@ -28,10 +31,12 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.SolrjNamedThreadFactory;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class UpdateShardHandler {
+public class UpdateShardHandler implements SolrMetricProducer {
   
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -52,6 +57,25 @@ public class UpdateShardHandler {
 
   private final PoolingHttpClientConnectionManager clientConnectionManager;
 
+  // replica url -> stats of the updates streamed to it. Least recently used replicas are
+  // unregistered so that the stats of replicas that went away don't pile up.
+  static final int MAX_REPLICA_STATS = 1000;
+  private final Map<String, ReplicaUpdateStats> replicaUpdateStats = new LinkedHashMap<String, ReplicaUpdateStats>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ReplicaUpdateStats> eldest) {
+      if (size() > MAX_REPLICA_STATS) {
+        unregisterReplicaMetrics(eldest.getKey());
+        return true;
+      }
+      return false;
+    }
+  };
+
+  // set in initializeMetrics, the per replica metrics are registered as replicas show up
+  private volatile SolrMetricManager metricManager;
+  private volatile String metricRegistry;
+  private volatile String metricScope;
+
   public UpdateShardHandler(UpdateShardHandlerConfig cfg) {
     clientConnectionManager = new PoolingHttpClientConnectionManager(HttpClientUtil.getSchemaRegisteryProvider().getSchemaRegistry());
     if (cfg != null ) {
@@ -78,6 +102,55 @@ public class UpdateShardHandler {
   public HttpClient getHttpClient() {
     return client;
   }
+
+  @Override
+  public void initializeMetrics(SolrMetricManager manager, String registry, String scope) {
+    this.metricManager = manager;
+    this.metricRegistry = registry;
+    this.metricScope = scope;
+    synchronized (replicaUpdateStats) {
+      replicaUpdateStats.forEach(this::registerReplicaMetrics);
+    }
+  }
+
+  private void registerReplicaMetrics(String url, ReplicaUpdateStats stats) {
+    SolrMetricManager manager = metricManager;
+    if (manager == null) {
+      return;
+    }
+    manager.register(metricRegistry, (Gauge<Integer>) stats::getQueueDepth, true, "queueDepth", "UPDATE", metricScope, url);
+    manager.register(metricRegistry, (Gauge<Long>) stats::getLagMillis, true, "lagMs", "UPDATE", metricScope, url);
+    manager.register(metricRegistry, (Gauge<Long>) stats::getSent, true, "sent", "UPDATE", metricScope, url);
+    manager.register(metricRegistry, (Gauge<Long>) stats::getErrors, true, "errors", "UPDATE", metricScope, url);
+  }
+
+  private void unregisterReplicaMetrics(String url) {
+    SolrMetricManager manager = metricManager;
+    if (manager == null) {
+      return;
+    }
+    manager.remove(metricRegistry, "queueDepth", "UPDATE", metricScope, url);
+    manager.remove(metricRegistry, "lagMs", "UPDATE", metricScope, url);
+    manager.remove(metricRegistry, "sent", "UPDATE", metricScope, url);
+    manager.remove(metricRegistry, "errors", "UPDATE", metricScope, url);
+  }
+
+  /**
+   * Returns the stats of the updates that this node streams to a replica. Only the stats of the
+   * {@value #MAX_REPLICA_STATS} most recently used replicas are kept and registered as metrics.
+   * @param url the core url of the replica
+   */
+  public ReplicaUpdateStats getReplicaUpdateStats(String url) {
+    synchronized (replicaUpdateStats) {
+      ReplicaUpdateStats stats = replicaUpdateStats.get(url);
+      if (stats == null) {
+        stats = new ReplicaUpdateStats();
+        replicaUpdateStats.put(url, stats);
+        registerReplicaMetrics(url, stats);
+      }
+      return stats;
+    }
+  }
   
   /**
    * This method returns an executor that is not meant for disk IO and that will
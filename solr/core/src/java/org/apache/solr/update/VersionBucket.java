@@ -16,6 +16,8 @@
  */
 package org.apache.solr.update;
 
+import java.util.concurrent.TimeUnit;
+
 // TODO: make inner?
 // TODO: store the highest possible in the index on a commit (but how to not block adds?)
 // TODO: could also store highest possible in the transaction log after a commit.
@@ -29,4 +31,24 @@ public class VersionBucket {
       highest = Math.max(highest, Math.abs(val));
     }
   }
+
+  /** Wakes up the threads waiting for an update of this bucket, the caller must hold the monitor of this bucket */
+  public void wakeUpAll() {
+    notifyAll();
+  }
+
+  /**
+   * Waits until another update of this bucket wakes us up or the timeout elapses, the caller must hold the
+   * monitor of this bucket, which is released while waiting.
+   */
+  public void awaitNanos(long nanosTimeout) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanosTimeout);
+    if (millis > 0) {
+      try {
+        wait(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 }
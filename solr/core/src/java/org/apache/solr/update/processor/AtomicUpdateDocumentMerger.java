@@ -33,8 +33,10 @@ import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumericValueFieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.VersionInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,7 +69,72 @@ public class AtomicUpdateDocumentMerger {
     
     return false;
   }
-  
+
+  /**
+   * Returns true if the given field can be updated in place, ie. without re-indexing the whole document:
+   * it must be a single valued numeric field that only has docValues (not indexed, not stored) and that
+   * doesn't take part in any copyField.
+   */
+  public boolean isSupportedFieldForInPlaceUpdate(SchemaField sf) {
+    return sf != null
+        && !sf.multiValued()
+        && sf.hasDocValues()
+        && !sf.indexed()
+        && !sf.stored()
+        && sf.getType() instanceof NumericValueFieldType
+        && schema.getCopySources(sf.getName()).isEmpty()
+        && schema.getCopyFieldsList(sf.getName()).isEmpty();
+  }
+
+  /**
+   * Given an atomic update document and the current version of the document it applies to, returns true
+   * if the update only consists of "set" and "inc" operations on fields that can be updated in place
+   * (see {@link #isSupportedFieldForInPlaceUpdate(SchemaField)}) and that already have a value in the
+   * current document.
+   *
+   * @param fromDoc the atomic update document
+   * @param oldDoc the current version of the document, may be null if it doesn't exist
+   */
+  public boolean isInPlaceUpdate(final SolrInputDocument fromDoc, final SolrInputDocument oldDoc) {
+    if (oldDoc == null || fromDoc.hasChildDocuments() || oldDoc.hasChildDocuments()) {
+      return false;
+    }
+    if (!isSupportedFieldForInPlaceUpdate(schema.getFieldOrNull(VersionInfo.VERSION_FIELD))) {
+      // the version has to be updated along with the other fields
+      return false;
+    }
+    boolean hasUpdates = false;
+    for (SolrInputField sif : fromDoc.values()) {
+      String name = sif.getName();
+      if (name.equals(idField.getName()) || name.equals(VersionInfo.VERSION_FIELD)) {
+        continue;
+      }
+      if (!(sif.getValue() instanceof Map)) {
+        // a plain value replaces the whole field, this could also be a "set" but keep it simple
+        return false;
+      }
+      // docValues can only be updated for fields that already exist in the document
+      if (!isSupportedFieldForInPlaceUpdate(schema.getFieldOrNull(name)) || oldDoc.getFieldValue(name) == null) {
+        return false;
+      }
+      for (Entry<String,Object> entry : ((Map<String,Object>) sif.getValue()).entrySet()) {
+        Object fieldVal = entry.getValue();
+        switch (entry.getKey()) {
+          case "set":
+          case "inc":
+            if (fieldVal == null || fieldVal instanceof Collection) {
+              return false;
+            }
+            break;
+          default:
+            return false;
+        }
+      }
+      hasUpdates = true;
+    }
+    return hasUpdates;
+  }
+
   /**
    * Merges the fromDoc into the toDoc using the atomic update syntax.
    * 
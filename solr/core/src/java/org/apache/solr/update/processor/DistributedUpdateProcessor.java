@@ -98,6 +98,11 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
   public static final String DISTRIB_FROM_COLLECTION = "distrib.from.collection";
   public static final String DISTRIB_FROM_PARENT = "distrib.from.parent";
   public static final String DISTRIB_FROM = "distrib.from";
+  /**
+   * Set by the leader when the forwarded document only changed docValues that can be updated in place, to the
+   * version of the document the update was resolved against
+   */
+  public static final String DISTRIB_INPLACE_PREVVERSION = "distrib.inplace.prevVersion";
   private static final String TEST_DISTRIB_SKIP_SERVERS = "test.distrib.skip.servers";
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -271,6 +276,9 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
   // are custom and may modify the SolrInputDocument racing with its serialization for replication
   private final boolean cloneRequiredOnLeader;
 
+  // how long a replica waits for the update an in-place update depends on before it indexes the whole document
+  private final long inPlaceUpdateWaitMs = Long.getLong("solr.cloud.inPlaceUpdate.waitMs", 5000);
+
   public DistributedUpdateProcessor(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
     this(req, rsp, new AtomicUpdateDocumentMerger(req), next);
   }
@@ -785,6 +793,10 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
       
       if (replicationTracker != null && minRf > 1)
         params.set(UpdateRequest.MIN_REPFACT, String.valueOf(minRf));
+
+      if (cmd.isInPlaceUpdate) {
+        params.set(DISTRIB_INPLACE_PREVVERSION, String.valueOf(cmd.prevVersion));
+      }
       
       cmdDistrib.distribAdd(cmd, nodes, params, false, replicationTracker);
     }
@@ -816,6 +828,7 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     // TODO - we may need to tell about more than one error...
 
     List<Error> errorsForClient = new ArrayList<>(errors.size());
+    Set<String> replicasToRecover = new HashSet<>();
     
     for (final SolrCmdDistributor.Error error : errors) {
       
@@ -861,6 +874,11 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
         continue;
       }
 
+      if (!replicasToRecover.add(replicaUrl)) {
+        // the adds of a failed batch are reported one by one, the replica only needs to be told to recover once
+        continue;
+      }
+
       String collection = null;
       String shardId = null;
 
@@ -1072,6 +1090,12 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
           } else {
             // The leader forwarded us this update.
             cmd.setVersion(versionOnUpdate);
+            if (!isReplayOrPeersync) {
+              // replayed commands get the previous version from the transaction log
+              String prevVersion = cmd.getReq().getParams().get(DISTRIB_INPLACE_PREVVERSION);
+              cmd.isInPlaceUpdate = prevVersion != null;
+              cmd.prevVersion = prevVersion == null ? -1 : Long.parseLong(prevVersion);
+            }
 
             if (ulog.getState() != UpdateLog.State.ACTIVE && isReplayOrPeersync == false) {
               // we're not in an active state, and this update isn't from a replay, so buffer it.
@@ -1098,6 +1122,18 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
               // also need to re-apply newer deleteByQuery commands
               checkDeleteByQueries = true;
             }
+
+            if (cmd.isInPlaceUpdate) {
+              // the leader resolved the update against the previous version of the document, we can only update
+              // the docValues in place if we have that very version too, otherwise index the whole document
+              Long lastVersion = waitForPreviousVersion(cmd, bucket, isReplayOrPeersync);
+              if (lastVersion != null && Math.abs(lastVersion) >= versionOnUpdate) {
+                // a newer update was applied while we were waiting for the previous one
+                log.debug("Dropping in-place update due to version {}", idBytes.utf8ToString());
+                return true;
+              }
+              cmd.isInPlaceUpdate = lastVersion != null && lastVersion == cmd.prevVersion;
+            }
           }
         }
         
@@ -1110,6 +1146,9 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
 
         // TODO: possibly set checkDeleteByQueries as a flag on the command?
         doLocalAdd(cmd);
+
+        // in-place updates that depend on this one may be waiting for it
+        bucket.wakeUpAll();
         
         if (willDistrib && cloneRequiredOnLeader) {
           cmd.solrDoc = clonedDoc;
@@ -1122,6 +1161,31 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     return false;
   }
 
+  /**
+   * Returns the current version of the document of the given in-place update, waiting up to
+   * {@link #inPlaceUpdateWaitMs} for the update the leader resolved it against if we don't have it yet:
+   * updates are sent to replicas concurrently and may arrive out of order. The caller must hold the
+   * monitor of the bucket. Replayed and peer-synced updates are applied in order, so they never wait.
+   */
+  private Long waitForPreviousVersion(AddUpdateCommand cmd, VersionBucket bucket, boolean isReplayOrPeersync) {
+    Long lastVersion = vinfo.lookupVersion(cmd.getIndexedId());
+    if (isReplayOrPeersync) {
+      return lastVersion;
+    }
+    long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(inPlaceUpdateWaitMs);
+    while (lastVersion == null || Math.abs(lastVersion) < cmd.prevVersion) {
+      long remaining = waitUntil - System.nanoTime();
+      if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+        log.info("Update {} of {} was resolved against version {} which was not received, indexing the whole document",
+            cmd.getVersion(), cmd.getPrintableId(), cmd.prevVersion);
+        break;
+      }
+      bucket.awaitNanos(remaining);
+      lastVersion = vinfo.lookupVersion(cmd.getIndexedId());
+    }
+    return lastVersion;
+  }
+
   // TODO: may want to switch to using optimistic locking in the future for better concurrency
   // that's why this code is here... need to retry in a loop closely around/in versionAdd
   boolean getUpdatedDocument(AddUpdateCommand cmd, long versionOnUpdate) throws IOException {
@@ -1140,9 +1204,14 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
         throw new SolrException(ErrorCode.CONFLICT, "Document not found for update.  id=" + cmd.getPrintableId());
       }
     } else {
+      Object prevVersion = oldDoc.getFieldValue(VERSION_FIELD);
+      cmd.prevVersion = prevVersion == null ? -1 : ((Number) prevVersion).longValue();
       oldDoc.remove(VERSION_FIELD);
     }
-    
+
+    // decide before merging, the merge mutates oldDoc
+    cmd.isInPlaceUpdate = !cmd.isBlock() && cmd.updateTerm == null && cmd.prevVersion > 0
+        && docMerger.isInPlaceUpdate(sdoc, oldDoc);
 
     cmd.solrDoc = docMerger.merge(sdoc, oldDoc);
     return true;
@@ -1611,6 +1680,9 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
         }
 
         doLocalDelete(cmd);
+
+        // in-place updates that wait for a previous version have to check again
+        bucket.wakeUpAll();
         return false;
       }  // end synchronized (bucket)
 
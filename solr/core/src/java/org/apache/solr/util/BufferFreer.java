@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import org.apache.solr.common.util.SuppressForbidden;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Frees the memory of direct and memory mapped {@link ByteBuffer}s explicitly, rather than when the
+ * garbage collector gets to them. A buffer must not be accessed once it was freed, not even through
+ * its duplicates or slices; doing so can crash the JVM.
+ */
+public final class BufferFreer {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  @FunctionalInterface
+  private interface Freer {
+    void free(ByteBuffer buffer) throws Exception;
+  }
+
+  private static final Freer FREER = AccessController.doPrivileged((PrivilegedAction<Freer>) BufferFreer::lookupFreer);
+
+  private BufferFreer() {}
+
+  @SuppressForbidden(reason = "Needs access to the cleaner of direct buffers to free them explicitly")
+  private static Freer lookupFreer() {
+    try {
+      try {
+        // Java 9+
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        Object unsafe = theUnsafe.get(null);
+        return buffer -> invokeCleaner.invoke(unsafe, buffer);
+      } catch (NoSuchMethodException e) {
+        // Java 8
+        Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+        cleaner.setAccessible(true);
+        Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+        clean.setAccessible(true);
+        return buffer -> {
+          Object c = cleaner.invoke(buffer);
+          if (c != null) {
+            clean.invoke(c);
+          }
+        };
+      }
+    } catch (Exception | LinkageError e) {
+      log.warn("Direct buffers can not be freed explicitly and are left to the garbage collector: " + e);
+      return null;
+    }
+  }
+
+  /** Returns true if the JVM allows to free buffers explicitly. */
+  public static boolean isSupported() {
+    return FREER != null;
+  }
+
+  /**
+   * Frees the memory of the given direct or mapped buffer, which must not be a duplicate or a slice.
+   * Does nothing if the JVM does not allow it, the buffer is then left to the garbage collector.
+   * @throws IOException if the buffer could not be freed
+   */
+  public static void free(ByteBuffer buffer) throws IOException {
+    if (FREER == null) return;
+    try {
+      FREER.free(buffer);
+    } catch (Exception e) {
+      throw new IOException("Could not free " + buffer, e);
+    }
+  }
+}
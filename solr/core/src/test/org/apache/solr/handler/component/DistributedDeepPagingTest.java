@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+/**
+ * Test for paging deep into distributed results with a page threshold
+ *
+ * @see org.apache.solr.handler.component.DistributedDeepPaging
+ */
+public class DistributedDeepPagingTest extends BaseDistributedSearchTestCase {
+
+  private static final String i1 = "a_i1";
+  private static final String tlong = "other_tl1";
+  private static final String t1 = "a_t";
+
+  public DistributedDeepPagingTest() {
+    stress = 0;
+  }
+
+  @Test
+  @ShardsFixed(num = 3)
+  public void test() throws Exception {
+    del("*:*");
+    for (int i = 0; i < 300; i++) {
+      index(id, i, i1, i % 7, tlong, 1000 + i * 37 % 300, t1, i % 3 == 0 ? "quick fox" : "lazy dog");
+    }
+    commit();
+
+    handle.clear();
+    handle.put("timestamp", SKIPVAL);
+    handle.put("_version_", SKIPVAL);
+    handle.put("maxScore", SKIPVAL);
+
+    for (String deepPaging : new String[] {"false", "true"}) {
+      // field sorts, with and without a uniqueKey tie breaker
+      query("q", "*:*", "sort", tlong + " desc", "start", "150", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "*:*", "sort", tlong + " asc", "fl", "id," + tlong, "start", "201", "rows", "7", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "*:*", "sort", i1 + " desc," + id + " asc", "start", "120", "rows", "15", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", t1 + ":fox", "sort", tlong + " desc", "start", "60", "rows", "5", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+
+      // score sorts, with distinct scores
+      query("q", "{!func}" + tlong, "fl", "*,score", "start", "100", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "{!func}" + tlong, "fl", "id,score", "start", "250", "rows", "3", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "{!func}" + tlong, "sort", "score asc", "fl", "id", "start", "180", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+
+      // the page is at the end of, or after, the results
+      query("q", "*:*", "sort", tlong + " desc", "start", "295", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "*:*", "sort", tlong + " desc", "start", "300", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "*:*", "sort", tlong + " desc", "start", "1000", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "matchesnothing", "start", "100", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+
+      // with the page threshold merged while the shard responses are read
+      query("q", "*:*", "sort", tlong + " asc", "start", "170", ShardParams.DISTRIB_DEEP_PAGING, deepPaging,
+          ShardParams.SHARDS_STREAMING_MERGE, "true");
+    }
+
+    // the documents are spread evenly enough for the second pass to start from a threshold
+    assertNotNull(pageThreshold("q", "*:*", "sort", tlong + " desc", "start", "150"));
+    assertNotNull(pageThreshold("q", "*:*", "sort", tlong + " asc", "start", "170"));
+    assertNotNull(pageThreshold("q", "*:*", "sort", tlong + " desc", "start", "295"));
+
+    // documents that are not spread evenly over the shards
+    for (int i = 0; i < 200; i++) {
+      index_specific(0, id, 1000 + i, i1, i % 7, tlong, 5000 + i, t1, "lazy fox");
+    }
+    commit();
+    for (String deepPaging : new String[] {"false", "true"}) {
+      query("q", "*:*", "sort", tlong + " desc", "start", "150", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+      query("q", "*:*", "sort", tlong + " desc", "start", "400", ShardParams.DISTRIB_DEEP_PAGING, deepPaging);
+    }
+
+    // the top documents are all on one shard, so no threshold is known exactly
+    assertNull(pageThreshold("q", "*:*", "sort", tlong + " desc", "start", "150"));
+    assertNull(pageThreshold("q", "*:*", "sort", tlong + " desc", "start", "400"));
+  }
+
+  /**
+   * Returns the cursorMark the second pass of a deep paging request started from, or null if the
+   * regular top ids request was used.
+   */
+  @SuppressWarnings("unchecked")
+  private String pageThreshold(String... q) throws Exception {
+    ModifiableSolrParams params = params(q);
+    params.set("shards", shards);
+    params.set(ShardParams.DISTRIB_DEEP_PAGING, "true");
+    params.set(CommonParams.DEBUG, CommonParams.TRACK);
+    NamedList<Object> track = (NamedList<Object>) queryServer(params).getDebugMap().get("track");
+    assertNotNull("the threshold windows were not requested: " + track, track.get("PAGE_THRESHOLD"));
+    return (String) track.get("pageThreshold");
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+/**
+ * Test for hedged shard requests: one replica never answers, and the request must be
+ * sent to the other replica of its shard, and the request to the slow replica aborted.
+ *
+ * @see org.apache.solr.handler.component.HedgedShardRequest
+ */
+public class DistributedHedgedRequestTest extends BaseDistributedSearchTestCase {
+
+  public DistributedHedgedRequestTest() {
+    stress = 0;
+  }
+
+  @Test
+  @ShardsFixed(num = 2)
+  public void test() throws Exception {
+    del("*:*");
+    for (int i = 0; i < 20; i++) {
+      index(id, i, "a_t", "doc " + i);
+    }
+    commit();
+
+    // learn the usual latency of the shard requests of the collection
+    for (int i = 0; i < 2 * ShardLatencyTracker.MIN_SAMPLES; i++) {
+      clients.get(0).query(params("q", "*:*", "shards", shards));
+    }
+
+    // a replica that accepts connections, but never answers
+    final List<Socket> accepted = new CopyOnWriteArrayList<>();
+    try (ServerSocket blackhole = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      Thread acceptor = new Thread(() -> {
+        try {
+          while (true) {
+            accepted.add(blackhole.accept());
+          }
+        } catch (Exception e) {
+          // closed
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+
+      final String slowReplica = "127.0.0.1:" + blackhole.getLocalPort() + "/solr/" + DEFAULT_TEST_CORENAME;
+      final String slowShard = slowReplica + "|" + shardsArr[0];
+      // the slow replica was never queried, so latency ranking sends the request to it first,
+      // whatever order the replicas are listed in
+      final ModifiableSolrParams params = params("q", "*:*", "rows", "20",
+          "shards", slowShard + "," + shardsArr[1], ShardParams.SHARDS_INFO, "true",
+          ShardParams.SHARDS_LATENCY_RANKING, "true",
+          ShardParams.SHARDS_HEDGE, "true", ShardParams.SHARDS_HEDGE_PERCENTILE, "99");
+      final QueryResponse rsp = clients.get(0).query(params);
+      assertEquals(20, rsp.getResults().getNumFound());
+      assertEquals(20, rsp.getResults().size());
+
+      // the request was sent to the slow replica, and hedged to the other one, which answered
+      final NamedList<?> shardInfo = (NamedList<?>) rsp.getResponse().get(ShardParams.SHARDS_INFO);
+      final NamedList<?> slowShardInfo = (NamedList<?>) shardInfo.get(slowShard);
+      assertNotNull(shardInfo.toString(), slowShardInfo);
+      assertNull(slowShardInfo.toString(), slowShardInfo.get("error"));
+      assertEquals(ShardLatencyTracker.getKey(shardsArr[0]),
+          ShardLatencyTracker.getKey((String) slowShardInfo.get("shardAddress")));
+      for (int i = 0; i < 100 && accepted.isEmpty(); i++) {
+        // the connection may be established before it is accepted
+        Thread.sleep(100);
+      }
+      assertFalse(accepted.isEmpty());
+
+      // the requests to the slow replica were aborted: their connections are closed or reset
+      for (Socket socket : accepted) {
+        try (Socket s = socket) {
+          s.setSoTimeout(30000);
+          InputStream in = s.getInputStream();
+          while (in.read() != -1) {
+            // the request
+          }
+        } catch (SocketTimeoutException e) {
+          fail("The request to the slow replica was not aborted");
+        } catch (SocketException e) {
+          // reset
+        }
+      }
+
+      ignoreException(ShardParams.SHARDS_HEDGE_PERCENTILE);
+      params.set(ShardParams.SHARDS_HEDGE_PERCENTILE, "0");
+      expectThrows(Exception.class, () -> clients.get(0).query(params));
+      unIgnoreException(ShardParams.SHARDS_HEDGE_PERCENTILE);
+    }
+  }
+}
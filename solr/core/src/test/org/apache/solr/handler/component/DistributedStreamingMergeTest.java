@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+/**
+ * Test for merging the top ids of the shards while their responses are read
+ *
+ * @see org.apache.solr.handler.component.ShardIdsMerger
+ */
+public class DistributedStreamingMergeTest extends BaseDistributedSearchTestCase {
+
+  private static final String i1 = "a_i1";
+  private static final String tlong = "other_tl1";
+  private static final String t1 = "a_t";
+
+  public DistributedStreamingMergeTest() {
+    stress = 0;
+  }
+
+  @Test
+  @ShardsFixed(num = 3)
+  public void test() throws Exception {
+    del("*:*");
+    for (int i = 0; i < 60; i++) {
+      index(id, i, i1, i % 7, tlong, 1000 + i, t1, i % 3 == 0 ? "quick fox" : "lazy dog");
+    }
+    commit();
+
+    handle.clear();
+    handle.put("timestamp", SKIPVAL);
+    handle.put("_version_", SKIPVAL);
+    handle.put("maxScore", SKIPVAL);
+
+    for (String streaming : new String[] {"false", "true"}) {
+      // field sorts
+      query("q", "*:*", "sort", i1 + " desc," + id + " asc", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+      query("q", "*:*", "sort", i1 + " asc," + tlong + " desc", "rows", "7", "start", "11", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+      query("q", t1 + ":fox", "sort", tlong + " desc", "rows", "3", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+
+      // score sorts, with distinct scores, where each shard has more hits than the page
+      query("q", "{!func}" + tlong, "fl", "*,score", "rows", "5", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+      query("q", "{!func}" + tlong, "fl", "id,score", "rows", "5", "start", "20", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+      query("q", "{!func}" + tlong, "fl", "id", "rows", "100", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+      query("q", "{!func}" + tlong, "sort", "score asc", "fl", "id,score", "rows", "4", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+
+      query("q", "matchesnothing", "fl", "*,score", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+    }
+
+    // the shards still report their own numFound
+    ModifiableSolrParams params = params("q", "*:*", "rows", "5", "shards", shards,
+        ShardParams.SHARDS_INFO, "true", ShardParams.SHARDS_STREAMING_MERGE, "true");
+    QueryResponse rsp = queryServer(params);
+    NamedList<?> shardsInfo = (NamedList<?>) rsp.getResponse().get(ShardParams.SHARDS_INFO);
+    long numFound = 0;
+    for (int i = 0; i < shardsInfo.size(); i++) {
+      numFound += (Long) ((NamedList<?>) shardsInfo.getVal(i)).get("numFound");
+    }
+    assertEquals(60, numFound);
+    assertEquals(60, rsp.getResults().getNumFound());
+    assertEquals(5, rsp.getResults().size());
+
+    // the same document on all of the shards is only counted once
+    for (int i = 0; i < clients.size(); i++) {
+      index_specific(i, id, 100, i1, 107, tlong, 2000, t1, "oh no, a duplicate!");
+    }
+    commit();
+    for (String streaming : new String[] {"false", "true"}) {
+      query("q", "*:*", "sort", i1 + " desc," + id + " asc", "rows", "100", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+      query("q", "{!func}" + tlong, "fl", "id,score", "rows", "5", ShardParams.SHARDS_STREAMING_MERGE, streaming);
+    }
+  }
+}
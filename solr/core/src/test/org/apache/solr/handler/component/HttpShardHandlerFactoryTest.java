@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.Map;
+
+import com.codahale.metrics.Timer;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.Test;
+
+public class HttpShardHandlerFactoryTest extends LuceneTestCase {
+
+  @Test
+  public void testShardRequestMetrics() throws Exception {
+    SolrMetricManager manager = new SolrMetricManager();
+    String registry = "solr.test.shardRequests";
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    try {
+      factory.initializeMetrics(manager, registry, "shardHandler");
+
+      factory.updateRequestMetrics("collection1", "shard1", 1000, false);
+      factory.updateRequestMetrics("collection1", "shard1", 1000, true);
+      // requests to explicit urls are only counted in the metrics of all the requests
+      factory.updateRequestMetrics("collection1", null, 1000, false);
+
+      Map<String, Timer> timers = manager.registry(registry).getTimers();
+      assertEquals(3, timers.get("QUERY.shardHandler.requestTimes").getCount());
+      assertEquals(2, timers.get("QUERY.shardHandler.collection1.shard1.requestTimes").getCount());
+      assertEquals(1, manager.registry(registry).getMeters().get("QUERY.shardHandler.collection1.shard1.errors").getCount());
+      assertEquals(2, timers.size());
+
+      // the least recently used shards are unregistered
+      for (int i = 0; i < HttpShardHandlerFactory.MAX_SHARD_METRICS; i++) {
+        factory.updateRequestMetrics("collection2", "shard" + i, 1000, false);
+      }
+      timers = manager.registry(registry).getTimers();
+      assertEquals(1 + HttpShardHandlerFactory.MAX_SHARD_METRICS, timers.size());
+      assertFalse(timers.containsKey("QUERY.shardHandler.collection1.shard1.requestTimes"));
+      assertFalse(manager.registry(registry).getMeters().containsKey("QUERY.shardHandler.collection1.shard1.errors"));
+      assertTrue(timers.containsKey("QUERY.shardHandler.collection2.shard0.requestTimes"));
+    } finally {
+      factory.close();
+    }
+  }
+}
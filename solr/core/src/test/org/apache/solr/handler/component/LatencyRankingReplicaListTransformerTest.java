@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.junit.Test;
+
+public class LatencyRankingReplicaListTransformerTest extends LuceneTestCase {
+
+  private final ShardLatencyTracker tracker = new ShardLatencyTracker();
+  private final LatencyRankingReplicaListTransformer transformer = new LatencyRankingReplicaListTransformer(random(), tracker);
+
+  private void request(String url, long millis) {
+    tracker.requestStarted(url);
+    tracker.requestFinished(url, TimeUnit.MILLISECONDS.toNanos(millis), ShardLatencyTracker.Outcome.SUCCESS);
+  }
+
+  @Test
+  public void testTransformUrls() throws Exception {
+    request("http://host1:8983/solr/c_shard1_replica1/", 50);
+    request("host2:8983/solr/c_shard1_replica2", 5);
+    request("http://host3:8983/solr/c_shard1_replica3", 500);
+
+    final List<String> urls = new ArrayList<>(Arrays.asList(
+        "host3:8983/solr/c_shard1_replica3", "host1:8983/solr/c_shard1_replica1", "http://host2:8983/solr/c_shard1_replica2"));
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(
+        "http://host2:8983/solr/c_shard1_replica2", "host1:8983/solr/c_shard1_replica1", "host3:8983/solr/c_shard1_replica3"), urls);
+
+    // a replica that was never queried goes first, so that it gets some requests
+    urls.add("host4:8983/solr/c_shard1_replica4");
+    transformer.transform(urls);
+    assertEquals("host4:8983/solr/c_shard1_replica4", urls.get(0));
+  }
+
+  @Test
+  public void testTransformReplicas() throws Exception {
+    final List<Replica> replicas = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      final Map<String,Object> props = new HashMap<>();
+      props.put(ZkStateReader.BASE_URL_PROP, "http://host" + i + ":8983/solr");
+      props.put(ZkStateReader.CORE_NAME_PROP, "c_shard1_replica" + i);
+      replicas.add(new Replica("core_node" + i, props));
+    }
+    request("http://host1:8983/solr/c_shard1_replica1", 10);
+    request("http://host2:8983/solr/c_shard1_replica2", 20);
+    request("http://host3:8983/solr/c_shard1_replica3", 30);
+
+    // in-flight requests make a replica more expensive
+    for (int i = 0; i < 4; i++) {
+      tracker.requestStarted("http://host1:8983/solr/c_shard1_replica1");
+    }
+
+    transformer.transform(replicas);
+    assertEquals("core_node2", replicas.get(0).getName());
+    assertEquals("core_node3", replicas.get(1).getName());
+    assertEquals("core_node1", replicas.get(2).getName());
+  }
+
+  @Test
+  public void testFailedAndAbortedRequests() throws Exception {
+    final String fast = "http://host1:8983/solr/c_shard1_replica1";
+    final String failing = "http://host2:8983/solr/c_shard1_replica2";
+    request(fast, 50);
+    request(failing, 50);
+
+    // a replica that fails fast is not preferred
+    tracker.requestStarted(failing);
+    tracker.requestFinished(failing, TimeUnit.MILLISECONDS.toNanos(1), ShardLatencyTracker.Outcome.FAILURE);
+    List<String> urls = new ArrayList<>(Arrays.asList(failing, fast));
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(fast, failing), urls);
+
+    // an aborted request that ran for less than the latency tells nothing
+    final String aborted = "http://host3:8983/solr/c_shard1_replica3";
+    request(aborted, 10);
+    tracker.recordOutcome(aborted, TimeUnit.MILLISECONDS.toNanos(5), ShardLatencyTracker.Outcome.ABORTED);
+    urls = new ArrayList<>(Arrays.asList(fast, aborted));
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(aborted, fast), urls);
+
+    // but one that ran for longer makes the replica slower
+    tracker.recordOutcome(aborted, TimeUnit.SECONDS.toNanos(10), ShardLatencyTracker.Outcome.ABORTED);
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(fast, aborted), urls);
+  }
+
+  @Test
+  public void testLatencyPercentile() throws Exception {
+    assertEquals(-1, tracker.getLatencyPercentile("c", 95));
+    for (int i = 1; i < ShardLatencyTracker.MIN_SAMPLES; i++) {
+      tracker.recordLatency("c", i);
+    }
+    assertEquals(-1, tracker.getLatencyPercentile("c", 95));
+    tracker.recordLatency("c", 1000);
+    assertEquals(1000, tracker.getLatencyPercentile("c", 100));
+    assertTrue(tracker.getLatencyPercentile("c", 50) < 1000);
+    assertEquals(-1, tracker.getLatencyPercentile("other", 95));
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.index;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestOrdinalMapCache extends LuceneTestCase {
+
+  private static void addSegment(IndexWriter w, int maxTermLength) throws IOException {
+    final int numDocs = TestUtil.nextInt(random(), 1, 100);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      // make sure that every segment has both fields
+      if (i == 0 || random().nextBoolean()) {
+        doc.add(new SortedDocValuesField("sdv", new BytesRef(TestUtil.randomSimpleString(random(), maxTermLength))));
+      }
+      final int numValues = i == 0 ? 1 : random().nextInt(3);
+      for (int j = 0; j < numValues; ++j) {
+        doc.add(new SortedSetDocValuesField("ssdv", new BytesRef(TestUtil.randomSimpleString(random(), maxTermLength))));
+      }
+      w.addDocument(doc);
+    }
+    w.commit();
+  }
+
+  /** Checks that the cached reader returns the same values as an uncached one. */
+  private static void assertSameValues(DirectoryReader reader, OrdinalMapCache cache) throws IOException {
+    final LeafReader expected = SlowCompositeReaderWrapper.wrap(reader);
+    final LeafReader actual = SlowCompositeReaderWrapper.wrap(reader, cache);
+
+    final SortedDocValues expectedSorted = expected.getSortedDocValues("sdv");
+    final SortedDocValues actualSorted = actual.getSortedDocValues("sdv");
+    if (expectedSorted == null) {
+      assertNull(actualSorted);
+    } else {
+      assertEquals(expectedSorted.getValueCount(), actualSorted.getValueCount());
+      for (int doc = expectedSorted.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = expectedSorted.nextDoc()) {
+        assertEquals(doc, actualSorted.nextDoc());
+        assertEquals(expectedSorted.ordValue(), actualSorted.ordValue());
+        assertEquals(expectedSorted.binaryValue(), actualSorted.binaryValue());
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, actualSorted.nextDoc());
+    }
+
+    final SortedSetDocValues expectedSortedSet = expected.getSortedSetDocValues("ssdv");
+    final SortedSetDocValues actualSortedSet = actual.getSortedSetDocValues("ssdv");
+    if (expectedSortedSet == null) {
+      assertNull(actualSortedSet);
+    } else {
+      assertEquals(expectedSortedSet.getValueCount(), actualSortedSet.getValueCount());
+      for (int doc = expectedSortedSet.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = expectedSortedSet.nextDoc()) {
+        assertEquals(doc, actualSortedSet.nextDoc());
+        for (long ord = expectedSortedSet.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = expectedSortedSet.nextOrd()) {
+          assertEquals(ord, actualSortedSet.nextOrd());
+          assertEquals(expectedSortedSet.lookupOrd(ord), actualSortedSet.lookupOrd(ord));
+        }
+        assertEquals(SortedSetDocValues.NO_MORE_ORDS, actualSortedSet.nextOrd());
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, actualSortedSet.nextDoc());
+    }
+  }
+
+  public void testIncrementalUpdates() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final int maxTermLength = TestUtil.nextInt(random(), 1, 3);
+    addSegment(w, maxTermLength);
+    addSegment(w, maxTermLength);
+
+    OrdinalMapCache cache = new OrdinalMapCache();
+    DirectoryReader reader = DirectoryReader.open(w);
+    assertSameValues(reader, cache);
+    final long fullBuilds = cache.fullBuilds.sum();
+    assertTrue(fullBuilds > 0);
+    assertEquals(0, cache.incrementalBuilds.sum());
+
+    // new segments only need to be merged into the previous maps
+    final int numReopens = TestUtil.nextInt(random(), 1, 5);
+    for (int i = 0; i < numReopens; ++i) {
+      addSegment(w, maxTermLength);
+      DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+      assertNotNull(newReader);
+      reader.close();
+      reader = newReader;
+      assertSameValues(reader, cache);
+      assertEquals(fullBuilds, cache.fullBuilds.sum());
+    }
+    assertTrue(cache.incrementalBuilds.sum() > 0);
+
+    // segments of the previous maps are gone, so they are rebuilt
+    final long incrementalBuilds = cache.incrementalBuilds.sum();
+    w.deleteAll();
+    addSegment(w, maxTermLength);
+    addSegment(w, maxTermLength);
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+    assertNotNull(newReader);
+    reader.close();
+    reader = newReader;
+    assertSameValues(reader, cache);
+    assertTrue(cache.fullBuilds.sum() > fullBuilds);
+    assertEquals(incrementalBuilds, cache.incrementalBuilds.sum());
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+}
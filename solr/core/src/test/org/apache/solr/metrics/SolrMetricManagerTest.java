@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.LFUCache;
+import org.apache.solr.search.SolrCache;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SolrMetricManagerTest extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @Test
+  public void testNames() {
+    assertEquals("solr.node", SolrMetricManager.getRegistryName(SolrMetricManager.Group.node));
+    assertEquals("solr.core.c1.shard1", SolrMetricManager.getRegistryName(SolrMetricManager.Group.core, "c1", null, "shard1"));
+    assertEquals("requests", SolrMetricManager.mkName("requests"));
+    assertEquals("QUERYHANDLER./select.requests", SolrMetricManager.mkName("requests", "QUERYHANDLER", "/select"));
+  }
+
+  @Test
+  public void testRegister() {
+    SolrMetricManager manager = new SolrMetricManager();
+    String registry = "solr.test.register";
+    Counter counter = manager.counter(registry, "c", "TEST");
+    counter.inc();
+    assertSame(counter, manager.counter(registry, "c", "TEST"));
+
+    manager.register(registry, (Gauge<Integer>) () -> 1, false, "g", "TEST");
+    expectThrows(IllegalArgumentException.class,
+        () -> manager.register(registry, (Gauge<Integer>) () -> 2, false, "g", "TEST"));
+    manager.register(registry, (Gauge<Integer>) () -> 3, true, "g", "TEST");
+    assertEquals(3, manager.registry(registry).getGauges().get("TEST.g").getValue());
+    assertTrue(manager.remove(registry, "g", "TEST"));
+    assertFalse(manager.registry(registry).getGauges().containsKey("TEST.g"));
+    assertFalse(manager.remove(registry, "g", "TEST"));
+
+    manager.clearRegistry(registry);
+    assertTrue(manager.hasRegistry(registry));
+    assertTrue(manager.registry(registry).getMetrics().isEmpty());
+    manager.removeRegistry(registry);
+    assertFalse(manager.hasRegistry(registry));
+  }
+
+  @Test
+  public void testReporters() throws Exception {
+    SolrMetricManager manager = new SolrMetricManager();
+    String registry = "solr.test.reporters";
+    PluginInfo[] infos = new PluginInfo[] {
+        createPluginInfo("nodeReporter", null),
+        createPluginInfo("coreReporter", "core")
+    };
+    assertEquals(1, manager.loadReporters(infos, h.getCore().getResourceLoader(), SolrMetricManager.Group.node, registry).size());
+    Map<String, SolrMetricReporter> reporters = manager.getReporters(registry);
+    assertEquals(1, reporters.size());
+    MockReporter first = (MockReporter) reporters.get("nodeReporter");
+    assertTrue(first.started);
+    assertEquals("bar", first.foo);
+
+    // loading a reporter with the same name replaces and closes the previous one
+    manager.loadReporters(infos, h.getCore().getResourceLoader(), SolrMetricManager.Group.node, registry);
+    assertTrue(first.closed);
+    MockReporter second = (MockReporter) manager.getReporters(registry).get("nodeReporter");
+    assertNotSame(first, second);
+
+    // closing a stale reporter is a no-op
+    manager.closeReporter(registry, first);
+    assertFalse(second.closed);
+
+    manager.removeRegistry(registry);
+    assertTrue(second.closed);
+    assertTrue(manager.getReporters(registry).isEmpty());
+  }
+
+  @Test
+  public void testCoreMetrics() throws Exception {
+    SolrCore core = h.getCore();
+    MetricRegistry registry = core.getMetricManager().registry(core.getMetricRegistryName());
+
+    assertQ(req("q", "*:*"), "//result[@numFound='0']");
+    long queryRequests = 0;
+    for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+      if (entry.getKey().startsWith("QUERYHANDLER.")) {
+        queryRequests += entry.getValue().getCount();
+      }
+    }
+    assertTrue(registry.getTimers().keySet().toString(), queryRequests > 0);
+
+    assertU(adoc("id", "1"));
+    assertU(commit());
+    assertTrue(registry.getTimers().get("UPDATEHANDLER.updateHandler.commitTimes").getCount() > 0);
+    assertNotNull(registry.getGauges().get("CACHE.filterCache.lookups"));
+  }
+
+  @Test
+  public void testLFUCacheMetrics() {
+    SolrMetricManager manager = new SolrMetricManager();
+    String registry = "solr.test.lfu";
+    Map<String, String> args = new HashMap<>();
+    args.put("name", "lfuCache");
+    args.put("size", "10");
+    args.put("showItems", "2");
+    LFUCache<String, String> cache = new LFUCache<>();
+    cache.init(args, null, null);
+    cache.setState(SolrCache.State.LIVE);
+    cache.put("a", "1");
+    cache.get("a");
+    cache.get("b");
+
+    cache.initializeMetrics(manager, registry, "lfuCache");
+    Map<String, Gauge> gauges = manager.registry(registry).getGauges();
+    assertEquals(2L, gauges.get("CACHE.lfuCache.lookups").getValue());
+    assertEquals(1L, gauges.get("CACHE.lfuCache.hits").getValue());
+    assertEquals(1L, gauges.get("CACHE.lfuCache.size").getValue());
+    // items come and go with the content of the cache
+    for (String name : gauges.keySet()) {
+      assertFalse(name, name.contains("item_"));
+    }
+    cache.close();
+  }
+
+  private static PluginInfo createPluginInfo(String name, String group) {
+    Map<String, String> attrs = new HashMap<>();
+    attrs.put("name", name);
+    attrs.put("class", MockReporter.class.getName());
+    if (group != null) {
+      attrs.put("group", group);
+    }
+    Map<String, Object> initArgs = new HashMap<>();
+    initArgs.put("foo", "bar");
+    return new PluginInfo("reporter", attrs, new NamedList<>(initArgs), null);
+  }
+
+  public static class MockReporter extends SolrMetricReporter {
+    String foo;
+    volatile boolean started;
+    volatile boolean closed;
+
+    public MockReporter(SolrMetricManager metricManager, String registryName) {
+      super(metricManager, registryName);
+    }
+
+    public void setFoo(String foo) {
+      this.foo = foo;
+    }
+
+    @Override
+    protected void validate() throws IllegalStateException {
+      if (foo == null) {
+        throw new IllegalStateException("foo must be set");
+      }
+    }
+
+    @Override
+    protected void start() {
+      started = true;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -173,6 +173,41 @@ public class TestExportWriter extends SolrTestCaseJ4 {
     assertJsonEquals(s, "{\"responseHeader\": {\"status\": 0}, \"response\":{\"numFound\":1, \"docs\":[{\"stringdv\":\"chello \\\"world\\\"\"}]}}");
   }
 
+  @Test
+  public void testSegmentedSort() throws Exception {
+    // sort each segment independently with tiny batches to force several passes and merges
+    String[][] sorts = {
+        {"intdv asc", "id:(1 2 3 7 8)"},
+        {"intdv desc", "id:(1 2 3 7 8)"},
+        {"doubledv desc,intdv asc", "*:*"},
+        {"stringdv asc,intdv desc", "*:*"},
+        {"floatdv asc,stringdv desc,intdv asc", "*:*"}
+    };
+    for (String[] sort : sorts) {
+      String expected = h.query(req("q", sort[1], "qt", "/export", "fl", "intdv", "sort", sort[0]));
+      for (String maxSortDocs : new String[] {"1", "2", "1000"}) {
+        for (String threads : new String[] {"1", "2", "3"}) {
+          String actual = h.query(req("q", sort[1], "qt", "/export", "fl", "intdv", "sort", sort[0],
+              "export.segmented", "true", "export.maxSortDocs", maxSortDocs, "export.threads", threads));
+          assertJsonEquals(actual, expected);
+        }
+      }
+    }
+
+    String s = h.query(req("q", "id:(1 2 3)", "qt", "/export", "fl", "intdv", "sort", "doubledv desc",
+        "export.segmented", "true", "export.maxSortDocs", "1"));
+    assertJsonEquals(s, "{\"responseHeader\": {\"status\": 0}, \"response\":{\"numFound\":3, \"docs\":[{\"intdv\":3},{\"intdv\":1},{\"intdv\":2}]}}");
+
+    // all export requests share the executor of the core
+    assertNotNull(h.getCore().getExportExecutor());
+  }
+
+  @Test
+  public void testBatchSize() throws Exception {
+    String s = h.query(req("q", "id:(1 2 3)", "qt", "/export", "fl", "intdv", "sort", "doubledv desc", "export.batchSize", "1"));
+    assertJsonEquals(s, "{\"responseHeader\": {\"status\": 0}, \"response\":{\"numFound\":3, \"docs\":[{\"intdv\":3},{\"intdv\":1},{\"intdv\":2}]}}");
+  }
+
   private void assertJsonEquals(String actual, String expected) {
     assertEquals(Utils.toJSONString(Utils.fromJSONString(expected)), Utils.toJSONString(Utils.fromJSONString(actual)));
   }
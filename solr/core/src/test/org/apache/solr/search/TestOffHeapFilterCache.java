@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+
+/**
+ * Test for {@link OffHeapFilterCache} and {@link OffHeapBitDocSet}
+ */
+public class TestOffHeapFilterCache extends LuceneTestCase {
+
+  private BitDocSet randomBitDocSet(int maxDoc) {
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    int density = 1 + random().nextInt(10);
+    for (int i = 0; i < maxDoc; i++) {
+      if (random().nextInt(density) == 0) {
+        bits.set(i);
+      }
+    }
+    return new BitDocSet(bits);
+  }
+
+  private void assertSameDocs(DocSet expected, DocSet actual) {
+    assertEquals(expected.size(), actual.size());
+    DocIterator i1 = expected.iterator();
+    DocIterator i2 = actual.iterator();
+    while (i1.hasNext()) {
+      assertTrue(i2.hasNext());
+      assertEquals(i1.nextDoc(), i2.nextDoc());
+    }
+    assertFalse(i2.hasNext());
+  }
+
+  public void testOffHeapBitDocSet() {
+    for (int iter = 0; iter < 50; iter++) {
+      int maxDoc = 3 + random().nextInt(1000);
+      BitDocSet a = randomBitDocSet(maxDoc);
+      BitDocSet b = randomBitDocSet(maxDoc);
+      OffHeapBitDocSet offA = new OffHeapBitDocSet(a);
+      OffHeapBitDocSet offB = new OffHeapBitDocSet(b);
+
+      assertSameDocs(a, offA);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        assertEquals(a.exists(doc), offA.exists(doc));
+      }
+
+      // against on-heap sets, in both directions
+      assertEquals(a.intersectionSize(b), offA.intersectionSize(b));
+      assertEquals(a.intersectionSize(b), b.intersectionSize(offA));
+      assertEquals(a.intersects(b), offA.intersects(b));
+      assertEquals(a.unionSize(b), offA.unionSize(b));
+      assertEquals(a.andNotSize(b), offA.andNotSize(b));
+      assertEquals(b.andNotSize(a), b.andNotSize(offA));
+      assertSameDocs(a.intersection(b), offA.intersection(b));
+      assertSameDocs(a.intersection(b), b.intersection(offA));
+      assertSameDocs(a.union(b), offA.union(b));
+      assertSameDocs(a.andNot(b), offA.andNot(b));
+      assertSameDocs(b.andNot(a), b.andNot(offA));
+
+      // between off-heap sets
+      assertEquals(a.intersectionSize(b), offA.intersectionSize(offB));
+      assertEquals(a.intersects(b), offA.intersects(offB));
+      assertSameDocs(a.intersection(b), offA.intersection(offB));
+
+      // against small sets
+      DocSet small = new SortedIntDocSet(new int[] {0, maxDoc / 2, maxDoc - 1});
+      assertEquals(a.intersectionSize(small), offA.intersectionSize(small));
+      assertSameDocs(a.intersection(small), offA.intersection(small));
+
+      BitDocSet target = new BitDocSet(new FixedBitSet(maxDoc));
+      offA.addAllTo(target);
+      assertSameDocs(a, target);
+    }
+  }
+
+  public void testEvictionBySize() {
+    OffHeapFilterCache<Object> cache = new OffHeapFilterCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    params.put("maxSizeMB", "1");
+    cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+
+    int maxDoc = 1 << 20; // 128KB per set
+    for (int i = 0; i < 20; i++) {
+      FixedBitSet bits = new FixedBitSet(maxDoc);
+      bits.set(i);
+      cache.put(i, new BitDocSet(bits, 1));
+    }
+    assertTrue(cache.size() < 10);
+    assertNull(cache.get(0));
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(null, null));
+    try {
+      DocSet last = cache.get(19);
+      assertTrue(last instanceof OffHeapBitDocSet);
+      assertTrue(last.exists(19));
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+
+    NamedList stats = cache.getStatistics();
+    assertTrue(((Number) stats.get("evictions")).longValue() > 0);
+    long offHeap = ((Number) stats.get("offHeapBytesUsed")).longValue();
+    assertEquals(cache.size() * (maxDoc / 8L), offHeap);
+    assertTrue(((Number) stats.get("bytesUsed")).longValue() <= 1024 * 1024);
+    assertTrue(cache.ramBytesUsed() < offHeap);
+
+    // small sets stay on the heap
+    cache.put("small", new SortedIntDocSet(new int[] {1, 2, 3}));
+    assertTrue(cache.get("small") instanceof SortedIntDocSet);
+
+    cache.clear();
+    assertEquals(0L, ((Number) cache.getStatistics().get("offHeapBytesUsed")).longValue());
+    cache.close();
+  }
+
+  public void testAutowarm() {
+    OffHeapFilterCache<Object> cache = new OffHeapFilterCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "10");
+    params.put("autowarmCount", "5");
+    CacheRegenerator cr = new NoOpRegenerator();
+    Object persistence = cache.init(params, null, cr);
+    cache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 10; i++) {
+      FixedBitSet bits = new FixedBitSet(128);
+      bits.set(i);
+      cache.put(i, new BitDocSet(bits));
+    }
+
+    OffHeapFilterCache<Object> newCache = new OffHeapFilterCache<>();
+    newCache.init(params, persistence, cr);
+    newCache.warm(null, cache);
+    newCache.setState(SolrCache.State.LIVE);
+    assertEquals(5, newCache.size());
+    assertNull(newCache.get(4));
+    assertTrue(newCache.get(9).exists(9));
+    assertEquals(10L, ((Number) newCache.getStatistics().get("cumulative_inserts")).longValue());
+  }
+
+  public void testEvictedSetsAreFreed() {
+    OffHeapFilterCache<Object> cache = new OffHeapFilterCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "1");
+    cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+
+    // a set that nobody looked up is freed as soon as it is evicted
+    FixedBitSet bits = new FixedBitSet(1024);
+    bits.set(3);
+    cache.put(0, new BitDocSet(bits, 1));
+    OffHeapBitDocSet first;
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(null, null));
+    try {
+      first = (OffHeapBitDocSet) cache.get(0);
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+    assertEquals(1, first.getRefCount());
+    cache.put(1, new BitDocSet(bits, 1));
+    assertEquals(0, first.getRefCount());
+    expectThrows(IllegalStateException.class, () -> first.exists(3));
+
+    // a set that is evicted while a request uses it is freed when the request is done
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(null, null));
+    OffHeapBitDocSet second;
+    try {
+      second = (OffHeapBitDocSet) cache.get(1);
+      assertEquals(2, second.getRefCount());
+      cache.put(2, new BitDocSet(bits, 1));
+      assertEquals(1, second.getRefCount());
+      assertTrue(second.exists(3));
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+    assertEquals(0, second.getRefCount());
+
+    // the same set cached twice holds two references
+    OffHeapBitDocSet third;
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(null, null));
+    try {
+      third = (OffHeapBitDocSet) cache.get(2);
+      cache.put(3, third);
+      // one reference for the request and one for the entry of key 3, the entry of key 2 was evicted
+      assertEquals(2, third.getRefCount());
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+    assertEquals(1, third.getRefCount());
+    assertTrue(third.exists(3));
+
+    // a lookup outside of a request gets a copy, and does not keep the cached set alive
+    DocSet copy = cache.get(3);
+    assertTrue(copy instanceof BitDocSet);
+    assertTrue(copy.exists(3));
+    assertEquals(1, third.getRefCount());
+    cache.put(4, new BitDocSet(bits, 1));
+    assertEquals(0, third.getRefCount());
+    assertEquals(1024 / 8L, ((Number) cache.getStatistics().get("offHeapBytesUsed")).longValue());
+    assertTrue(copy.exists(3));
+
+    // closing the cache frees what it holds
+    OffHeapBitDocSet fourth;
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(null, null));
+    try {
+      fourth = (OffHeapBitDocSet) cache.get(4);
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+    cache.close();
+    assertEquals(0, fourth.getRefCount());
+  }
+
+  public void testLookupByExecutorThreadOfRequest() throws Exception {
+    ExecutorUtil.addThreadLocalProvider(SolrRequestInfo.getInheritableThreadLocalProvider());
+    OffHeapFilterCache<Object> cache = new OffHeapFilterCache<>();
+    cache.init(new HashMap<>(), null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    FixedBitSet bits = new FixedBitSet(1024);
+    bits.set(3);
+    cache.put(0, new BitDocSet(bits, 1));
+
+    ExecutorService executor = ExecutorUtil.newMDCAwareFixedThreadPool(1, new DefaultSolrThreadFactory("testOffHeapFilterCache"));
+    try {
+      // the thread works for the request that submitted the lookup, which releases the reference when it is done
+      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(null, null));
+      DocSet set;
+      try {
+        set = executor.submit(() -> cache.get(0)).get();
+        assertTrue(set instanceof OffHeapBitDocSet);
+        assertEquals(2, ((OffHeapBitDocSet) set).getRefCount());
+        // the request is not done when the thread is
+        executor.submit(() -> {}).get();
+        assertEquals(2, ((OffHeapBitDocSet) set).getRefCount());
+        assertTrue(set.exists(3));
+      } finally {
+        SolrRequestInfo.clearRequestInfo();
+      }
+      assertEquals(1, ((OffHeapBitDocSet) set).getRefCount());
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+      cache.close();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.LogDocMergePolicyFactory;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Checks that searching the segments of the index concurrently returns the same
+ * results as a sequential search.
+ */
+public class TestParallelSegmentSearch extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // we need several segments to search concurrently
+    systemSetPropertySolrTestsMergePolicy(LogDocMergePolicy.class.getName());
+    systemSetPropertySolrTestsMergePolicyFactory(LogDocMergePolicyFactory.class.getName());
+    System.setProperty("solr.tests.searchThreads", "3");
+
+    initCore("solrconfig.xml", "schema.xml");
+
+    int id = 0;
+    for (int seg = 0; seg < 5; seg++) {
+      int numDocs = 1 + random().nextInt(100);
+      for (int i = 0; i < numDocs; i++) {
+        assertU(adoc("id", Integer.toString(id++),
+            "cat_s", Character.toString((char) ('a' + random().nextInt(4))),
+            "val_i1", Integer.toString(random().nextInt(10))));
+      }
+      assertU(commit());
+    }
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    systemClearPropertySolrTestsMergePolicy();
+    systemClearPropertySolrTestsMergePolicyFactory();
+    System.clearProperty("solr.tests.searchThreads");
+  }
+
+  public void testSameResults() throws Exception {
+    // the join and function queries are not safe to search concurrently and must fall back to a sequential search
+    String[] queries = {"*:*", "cat_s:a", "cat_s:a OR cat_s:b^2", "val_i1:[3 TO 7] OR cat_s:c", "cat_s:z",
+        "{!join from=id to=id}cat_s:a", "cat_s:a OR {!func}val_i1"};
+    String[] sorts = {null, "val_i1 asc, id desc", "score desc, val_i1 desc"};
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      assertTrue(searcher.getTopReaderContext().leaves().size() > 1);
+
+      for (String q : queries) {
+        for (String s : sorts) {
+          for (int len : new int[] {0, 5, 1000}) {
+            for (boolean needDocSet : new boolean[] {false, true}) {
+              Query query = QParser.getParser(q, req).getQuery();
+              Sort sort = s == null ? null : SortSpecParsing.parseSortSpec(s, req).getSort();
+              QueryResult sequential = search(searcher, query, sort, len, needDocSet, false);
+              QueryResult parallel = search(searcher, query, sort, len, needDocSet, true);
+              String msg = "q=" + q + " sort=" + s + " len=" + len + " needDocSet=" + needDocSet;
+              assertSameDocList(msg, sequential.getDocList(), parallel.getDocList());
+              if (needDocSet) {
+                assertSameDocSet(msg, sequential.getDocSet(), parallel.getDocSet());
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      req.close();
+    }
+  }
+
+  public void testSafeForConcurrentSegmentSearch() throws Exception {
+    SolrQueryRequest req = req();
+    try {
+      for (String q : new String[] {"*:*", "cat_s:a", "cat_s:a OR cat_s:b^2", "val_i1:[3 TO 7] OR cat_s:c",
+          "cat_s:a*", "{!dismax qf=cat_s}a", "filter(cat_s:a) OR cat_s:b"}) {
+        assertTrue(q, QueryUtils.isSafeForConcurrentSegmentSearch(QParser.getParser(q, req).getQuery()));
+      }
+      for (String q : new String[] {"{!join from=id to=id}cat_s:a", "{!func}val_i1", "cat_s:a OR {!func}val_i1",
+          "+cat_s:a +{!join from=id to=id}cat_s:b"}) {
+        assertFalse(q, QueryUtils.isSafeForConcurrentSegmentSearch(QParser.getParser(q, req).getQuery()));
+      }
+    } finally {
+      req.close();
+    }
+  }
+
+  private static QueryResult search(SolrIndexSearcher searcher, Query query, Sort sort, int len,
+      boolean needDocSet, boolean parallelSearch) throws Exception {
+    QueryCommand cmd = new QueryCommand()
+        .setQuery(query)
+        .setSort(sort)
+        .setLen(len)
+        .setNeedDocSet(needDocSet)
+        .setFlags(SolrIndexSearcher.GET_SCORES | SolrIndexSearcher.NO_CHECK_QCACHE | SolrIndexSearcher.NO_SET_QCACHE)
+        .setParallelSearch(parallelSearch);
+    QueryResult result = new QueryResult();
+    searcher.search(result, cmd);
+    return result;
+  }
+
+  private static void assertSameDocList(String msg, DocList expected, DocList actual) {
+    assertEquals(msg, expected.matches(), actual.matches());
+    assertEquals(msg, expected.size(), actual.size());
+    assertEquals(msg, expected.maxScore(), actual.maxScore(), 0f);
+    DocIterator it1 = expected.iterator();
+    DocIterator it2 = actual.iterator();
+    while (it1.hasNext()) {
+      assertEquals(msg, it1.nextDoc(), it2.nextDoc());
+      assertEquals(msg, it1.score(), it2.score(), 0f);
+    }
+  }
+
+  private static void assertSameDocSet(String msg, DocSet expected, DocSet actual) {
+    assertEquals(msg, expected.size(), actual.size());
+    DocIterator it1 = expected.iterator();
+    DocIterator it2 = actual.iterator();
+    while (it1.hasNext()) {
+      assertEquals(msg, it1.nextDoc(), it2.nextDoc());
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.search.Query;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.LogDocMergePolicyFactory;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Checks that filters that are computed from their per-segment results match the same documents
+ * as filters that are computed on the whole index, and that autowarming the filterCache only
+ * evaluates filters on new segments.
+ */
+public class TestSegmentFilterCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // we need several segments, that are not merged away by new commits
+    systemSetPropertySolrTestsMergePolicy(LogDocMergePolicy.class.getName());
+    systemSetPropertySolrTestsMergePolicyFactory(LogDocMergePolicyFactory.class.getName());
+    // one segment per commit
+    System.setProperty("solr.tests.maxBufferedDocs", "1000");
+    System.setProperty("solr.tests.ramBufferSizeMB", "100");
+
+    initCore("solrconfig-segmentfiltercache.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    systemClearPropertySolrTestsMergePolicy();
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
+  private static List<Integer> toList(DocSet set) {
+    List<Integer> docs = new ArrayList<>();
+    for (DocIterator it = set.iterator(); it.hasNext(); ) {
+      docs.add(it.nextDoc());
+    }
+    return docs;
+  }
+
+  public void testSameResults() throws Exception {
+    clearIndex();
+    int id = 0;
+    String[] filters = {"cat_s:a", "cat_s:(a OR b)", "val_i:[2 TO 5]", "cat_s:a*", "-cat_s:a",
+        "{!terms f=cat_s}a,c", "+cat_s:b +val_i:[0 TO 3]", "{!join from=cat_s to=cat_s}id:1", "cat_s:z"};
+    for (int commit = 0; commit < 5; commit++) {
+      int numDocs = 1 + random().nextInt(30);
+      for (int i = 0; i < numDocs; i++) {
+        assertU(adoc("id", Integer.toString(id++),
+            "cat_s", Character.toString((char) ('a' + random().nextInt(4))),
+            "val_i", Integer.toString(random().nextInt(10))));
+      }
+      if (random().nextBoolean()) {
+        assertU(delI(Integer.toString(random().nextInt(id))));
+      }
+      assertU(commit());
+
+      // the filters were autowarmed from their per-segment results, except on the first commit
+      SolrQueryRequest req = req();
+      try {
+        SolrIndexSearcher searcher = req.getSearcher();
+        for (String filter : filters) {
+          Query query = QParser.getParser(filter, req).getQuery();
+          List<Integer> expected = toList(searcher.getDocSetNC(QueryUtils.makeQueryable(query), null));
+          assertEquals(filter, expected, toList(searcher.getDocSet(query)));
+        }
+      } finally {
+        req.close();
+      }
+    }
+    assertTrue(h.getCore().getSegmentFilterCache().size() > 0);
+  }
+
+  public void testWarmNewSegmentsOnly() throws Exception {
+    clearIndex();
+    int id = 0;
+    for (int commit = 0; commit < 3; commit++) {
+      for (int i = 0; i < 10; i++) {
+        assertU(adoc("id", Integer.toString(id++), "cat_s", i % 2 == 0 ? "a" : "b"));
+      }
+      assertU(commit());
+    }
+
+    SegmentDocIdSetCache segmentCache = h.getCore().getSegmentFilterCache();
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      assertEquals(3, searcher.getTopReaderContext().leaves().size());
+      // only autowarm our filter
+      searcher.getFilterCache().clear();
+      Query query = QParser.getParser("cat_s:a", req).getQuery();
+      assertEquals(15, searcher.getDocSet(query).size());
+    } finally {
+      req.close();
+    }
+
+    long hits = segmentCache.hits.sum();
+    long misses = segmentCache.misses.sum();
+    assertU(adoc("id", Integer.toString(id++), "cat_s", "a"));
+    assertU(delI("0"));
+    assertU(commit());
+    // autowarming reused the three old segments, and only evaluated the new one
+    assertEquals(3, segmentCache.hits.sum() - hits);
+    assertEquals(1, segmentCache.misses.sum() - misses);
+
+    req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      assertEquals(4, searcher.getTopReaderContext().leaves().size());
+      // the deleted document is not part of the warmed result
+      assertEquals(15, searcher.getDocSet(QParser.getParser("cat_s:a", req).getQuery()).size());
+    } finally {
+      req.close();
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.search.Query;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.LogDocMergePolicyFactory;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Checks that <code>{!join method=segment}</code> matches the same documents as the default
+ * join, and that the results of unchanged segments are reused across searchers.
+ */
+public class TestSegmentJoin extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // we need several segments, that are not merged away by new commits
+    systemSetPropertySolrTestsMergePolicy(LogDocMergePolicy.class.getName());
+    systemSetPropertySolrTestsMergePolicyFactory(LogDocMergePolicyFactory.class.getName());
+    // one segment per commit
+    System.setProperty("solr.tests.maxBufferedDocs", "1000");
+    System.setProperty("solr.tests.ramBufferSizeMB", "100");
+
+    initCore("solrconfig-segmentjoin.xml", "schema-docValuesJoin.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    systemClearPropertySolrTestsMergePolicy();
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
+  private static String randomValue() {
+    return Character.toString((char) ('a' + random().nextInt(6)));
+  }
+
+  private static List<Integer> getDocs(SolrQueryRequest req, String q) throws Exception {
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, new SolrQueryResponse()));
+    try {
+      Query query = QParser.getParser(q, req).getQuery();
+      // bypass the filterCache
+      DocSet set = req.getSearcher().getDocSetNC(query, null);
+      List<Integer> docs = new ArrayList<>();
+      for (DocIterator it = set.iterator(); it.hasNext(); ) {
+        docs.add(it.nextDoc());
+      }
+      return docs;
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+  }
+
+  public void testSameResultsAsIndexJoin() throws Exception {
+    clearIndex();
+    int id = 0;
+    for (int seg = 0; seg < 4; seg++) {
+      int numDocs = 1 + random().nextInt(30);
+      for (int i = 0; i < numDocs; i++) {
+        // *_s and *_ss are copied to *_s_dv and *_ss_dv
+        assertU(adoc("id", Integer.toString(id++),
+            "a_s", randomValue(),
+            "b_ss", randomValue(), "b_ss", randomValue(),
+            "c_i", Integer.toString(random().nextInt(10))));
+      }
+      if (random().nextBoolean()) {
+        assertU(delI(Integer.toString(random().nextInt(id))));
+      }
+      assertU(commit());
+    }
+
+    String[][] fields = {
+        {"a_s", "a_s"}, {"a_s_dv", "a_s"}, {"a_s_dv", "b_ss"}, {"b_ss", "a_s_dv"},
+        {"b_ss_dv", "b_ss"}, {"b_ss_dv", "a_s_dv"}, {"c_i", "c_i"}, {"a_s", "noexist_s"}, {"noexist_s", "a_s"}};
+    String[] fromQueries = {"*:*", "a_s:a", "b_ss:(b OR c)", "id:1*", "a_s:z"};
+
+    int numLiveDocs, numSegments;
+    SolrQueryRequest allReq = req();
+    try {
+      numLiveDocs = allReq.getSearcher().getIndexReader().numDocs();
+      numSegments = allReq.getSearcher().getTopReaderContext().leaves().size();
+    } finally {
+      allReq.close();
+    }
+
+    for (String parallel : new String[] {"false", "true"}) {
+      SolrQueryRequest req = req("parallelSearch", parallel);
+      try {
+        for (String[] fromTo : fields) {
+          for (String fromQuery : fromQueries) {
+            String localParams = "{!join from=" + fromTo[0] + " to=" + fromTo[1];
+            List<Integer> expected = getDocs(req, localParams + "}" + fromQuery);
+            List<Integer> actual = getDocs(req, localParams + " method=segment}" + fromQuery);
+            assertEquals(localParams + "}" + fromQuery + " parallelSearch=" + parallel, expected, actual);
+          }
+        }
+      } finally {
+        req.close();
+      }
+    }
+
+    assertJQ(req("q", "{!join from=a_s_dv to=a_s method=segment}*:*", "fl", "id", "debugQuery", "true")
+        , "/debug/join/{!join from=a_s_dv to=a_s method=segment}*:*=={'_MATCH_':'fromSetSize,segments', 'fromSetSize':" + numLiveDocs + ", 'segments':" + numSegments + "}"
+    );
+  }
+
+  private static SegmentJoinQuery.SegmentJoinWeight join(SolrQueryRequest req, String q) throws Exception {
+    SolrIndexSearcher searcher = req.getSearcher();
+    Query query = QParser.getParser(q, req).getQuery();
+    SegmentJoinQuery.SegmentJoinWeight weight = (SegmentJoinQuery.SegmentJoinWeight) searcher.createNormalizedWeight(query, false);
+    for (LeafReaderContext context : searcher.getTopReaderContext().leaves()) {
+      weight.scorer(context);
+    }
+    return weight;
+  }
+
+  public void testReuseUnchangedSegments() throws Exception {
+    clearIndex();
+    int id = 0;
+    for (int seg = 0; seg < 3; seg++) {
+      for (int i = 0; i < 10; i++) {
+        assertU(adoc("id", Integer.toString(id++), "a_s", i % 2 == 0 ? "even" : "odd", "b_ss", Integer.toString(i)));
+      }
+      assertU(commit());
+    }
+
+    SolrQueryRequest req = req();
+    try {
+      assertEquals(3, req.getSearcher().getTopReaderContext().leaves().size());
+      SegmentJoinQuery.SegmentJoinWeight weight = join(req, "{!join from=a_s_dv to=b_ss_dv method=segment}a_s:odd");
+      assertEquals(3, weight.cachedSegments.get() + weight.joinedSegments.get());
+    } finally {
+      req.close();
+    }
+
+    // a new segment, and deletes in an old one, do not change the joined terms
+    assertU(adoc("id", Integer.toString(id++), "a_s", "even", "b_ss", "odd"));
+    assertU(delI("0"));
+    assertU(commit());
+
+    req = req();
+    try {
+      assertEquals(4, req.getSearcher().getTopReaderContext().leaves().size());
+      // a different query that joins the same terms
+      SegmentJoinQuery.SegmentJoinWeight weight = join(req, "{!join from=a_s_dv to=b_ss_dv method=segment}a_s:(odd OR missing)");
+      assertTrue(weight.cachedSegments.get() >= 3);
+      assertTrue(weight.joinedSegments.get() <= 1);
+      assertEquals(4, weight.cachedSegments.get() + weight.joinedSegments.get());
+    } finally {
+      req.close();
+    }
+
+    // the deleted document is not part of the results of its cached segment
+    assertJQ(req("q", "{!join from=a_s to=a_s method=segment}id:2", "fl", "id", "sort", "id asc", "rows", "0")
+        , "/response/numFound==15"
+    );
+  }
+
+  public void testUnknownMethod() throws Exception {
+    assertQEx("unknown join method", req("q", "{!join from=a_s to=a_s method=foo}*:*"), 400);
+  }
+}
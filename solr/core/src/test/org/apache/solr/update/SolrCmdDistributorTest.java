@@ -22,7 +22,13 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.index.LogDocMergePolicy;
@@ -40,6 +46,7 @@ import org.apache.solr.common.cloud.ZkNodeProps;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
@@ -52,6 +59,7 @@ import org.apache.solr.update.SolrCmdDistributor.Node;
 import org.apache.solr.update.SolrCmdDistributor.RetryNode;
 import org.apache.solr.update.SolrCmdDistributor.StdNode;
 import org.apache.solr.update.processor.DistributedUpdateProcessor;
+import org.apache.solr.util.DefaultSolrThreadFactory;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -327,6 +335,8 @@ public class SolrCmdDistributorTest extends BaseDistributedSearchTestCase {
     testOneRetry();
     testRetryNodeAgainstBadAddress();
     testRetryNodeWontRetrySocketError();
+    testBatchedAdds();
+    testFailedBatchReportsEveryAdd();
     
     testDistribOpenSearcher();
   }
@@ -408,6 +418,119 @@ public class SolrCmdDistributorTest extends BaseDistributedSearchTestCase {
     assertEquals(0, cmdDistrib.getErrors().size());
   }
 
+  private void testBatchedAdds() throws Exception {
+    final HttpSolrClient solrclient = (HttpSolrClient) clients.get(0);
+    long numFoundBefore = solrclient.query(new SolrQuery("*:*")).getResults().getNumFound();
+    final AtomicInteger requests = new AtomicInteger();
+    // holds back the runners that stream the queued requests
+    final CountDownLatch resume = new CountDownLatch(1);
+    final ExecutorService pausedExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<>(), new DefaultSolrThreadFactory("pausedUpdateExecutor")) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        try {
+          resume.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    StreamingSolrClients streamingClients = new StreamingSolrClients(updateShardHandler) {
+      @Override
+      public synchronized SolrClient getSolrClient(SolrCmdDistributor.Req req) {
+        requests.incrementAndGet();
+        return super.getSolrClient(req);
+      }
+
+      @Override
+      public ExecutorService getUpdateExecutor() {
+        return pausedExecutor;
+      }
+    };
+    SolrCmdDistributor cmdDistrib;
+    System.setProperty("solr.cloud.replication.batchSize", "100");
+    try {
+      cmdDistrib = new SolrCmdDistributor(streamingClients, 5, 0);
+    } finally {
+      System.clearProperty("solr.cloud.replication.batchSize");
+    }
+
+    ZkNodeProps nodeProps = new ZkNodeProps(ZkStateReader.BASE_URL_PROP, solrclient.getBaseURL(),
+        ZkStateReader.CORE_NAME_PROP, "");
+    List<Node> nodes = Collections.singletonList(new StdNode(new ZkCoreNodeProps(nodeProps)));
+    ReplicaUpdateStats stats = streamingClients.getReplicaUpdateStats(nodes.get(0));
+    long sentBefore = stats.getSent();
+
+    try {
+      int numDocs = 10;
+      for (int i = 0; i < numDocs; i++) {
+        AddUpdateCommand cmd = new AddUpdateCommand(null);
+        cmd.solrDoc = sdoc("id", id.incrementAndGet());
+        // the last document of the client batch flushes the batch
+        cmd.isLastDocInBatch = i == numDocs - 1;
+        cmdDistrib.distribAdd(cmd, nodes, new ModifiableSolrParams());
+        assertEquals("adds to replicas should be buffered", cmd.isLastDocInBatch ? 1 : 0, requests.get());
+      }
+
+      // the batch is queued until the runner is resumed
+      assertEquals(1, stats.getQueueDepth());
+      Thread.sleep(10);
+      assertTrue(stats.getLagMillis() > 0);
+      resume.countDown();
+
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      params.set(DistributedUpdateProcessor.COMMIT_END_POINT, true);
+      cmdDistrib.distribCommit(new CommitUpdateCommand(null, false), nodes, params);
+      cmdDistrib.finish();
+
+      // one request for all the adds, one for the commit
+      assertEquals(2, requests.get());
+      assertEquals(0, cmdDistrib.getErrors().size());
+      assertEquals(numFoundBefore + numDocs, solrclient.query(new SolrQuery("*:*")).getResults().getNumFound());
+
+      assertEquals(0, stats.getQueueDepth());
+      assertEquals(0, stats.getLagMillis());
+      assertTrue(stats.getSent() > sentBefore);
+    } finally {
+      resume.countDown();
+      ExecutorUtil.shutdownAndAwaitTermination(pausedExecutor);
+    }
+  }
+
+  private void testFailedBatchReportsEveryAdd() throws Exception {
+    final HttpSolrClient solrclient = (HttpSolrClient) clients.get(0);
+    final MockStreamingSolrClients streamingClients = new MockStreamingSolrClients(updateShardHandler);
+    SolrCmdDistributor cmdDistrib;
+    System.setProperty("solr.cloud.replication.batchSize", "100");
+    try {
+      cmdDistrib = new SolrCmdDistributor(streamingClients, 5, 0);
+    } finally {
+      System.clearProperty("solr.cloud.replication.batchSize");
+    }
+    streamingClients.setExp(Exp.CONNECT_EXCEPTION);
+
+    ZkNodeProps nodeProps = new ZkNodeProps(ZkStateReader.BASE_URL_PROP, solrclient.getBaseURL(),
+        ZkStateReader.CORE_NAME_PROP, "");
+    List<Node> nodes = Collections.singletonList(new StdNode(new ZkCoreNodeProps(nodeProps)));
+
+    Set<UpdateCommand> cmds = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      AddUpdateCommand cmd = new AddUpdateCommand(null);
+      cmd.solrDoc = sdoc("id", id.incrementAndGet());
+      cmdDistrib.distribAdd(cmd, nodes, new ModifiableSolrParams());
+      cmds.add(cmd);
+    }
+    cmdDistrib.finish();
+
+    // the batch failed as a whole, each of its adds is reported
+    assertEquals(3, cmdDistrib.getErrors().size());
+    Set<UpdateCommand> failed = new HashSet<>();
+    for (Error error : cmdDistrib.getErrors()) {
+      failed.add(error.req.cmd);
+    }
+    assertEquals(cmds, failed);
+  }
+
   private void testRetryNodeWontRetrySocketError() throws Exception {
     final HttpSolrClient solrclient = (HttpSolrClient) clients.get(0);
     long numFoundBefore = solrclient.query(new SolrQuery("*:*")).getResults()
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import static org.apache.solr.update.processor.DistributingUpdateProcessorFactory.DISTRIB_UPDATE_PARAM;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.update.processor.AtomicUpdateDocumentMerger;
+import org.apache.solr.update.processor.DistributedUpdateProcessor;
+import org.apache.solr.update.processor.DistributedUpdateProcessor.DistribPhase;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+/**
+ * Tests atomic updates that only touch docValues-only numeric fields, which are applied
+ * in place instead of re-indexing the whole document.
+ */
+public class TestInPlaceUpdates extends SolrTestCaseJ4 {
+
+  private static final String FROM_LEADER = DistribPhase.FROMLEADER.toString();
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema-minimal-atomic-stress.xml");
+  }
+
+  @Before
+  public void before() {
+    clearIndex();
+    assertU(commit());
+  }
+
+  public void testIsInPlaceUpdate() throws Exception {
+    SolrQueryRequest req = req();
+    try {
+      AtomicUpdateDocumentMerger merger = new AtomicUpdateDocumentMerger(req);
+      SolrInputDocument oldDoc = sdoc("id", "1", "long_dv", 5L, "long_dv_stored", 6L);
+
+      assertTrue(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("inc", 1)), oldDoc));
+      assertTrue(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("set", 42)), oldDoc));
+
+      // the old document doesn't exist or doesn't have the field yet
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("inc", 1)), null));
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("inc", 1)), sdoc("id", "1")));
+      // unsupported operations
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("set", null)), oldDoc));
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("add", 1)), oldDoc));
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("set", Collections.singletonList(1))), oldDoc));
+      // stored or indexed fields need the document to be re-indexed
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv_stored", map("inc", 1)), oldDoc));
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("inc", 1), "long_dv_stored", map("inc", 1)), oldDoc));
+      assertFalse(merger.isInPlaceUpdate(sdoc("id", "1", "long_dv", map("inc", 1), "other_s", "x"), oldDoc));
+    } finally {
+      req.close();
+    }
+  }
+
+  public void testInPlaceUpdates() throws Exception {
+    assertU(adoc("id", "0", "long_dv", "0"));
+    long version1 = addAndGetVersion(sdoc("id", "1", "long_dv", "10", "long_dv_stored", "100", "other_s", "foo"), null);
+    assertU(adoc("id", "2", "long_dv", "20"));
+    assertU(commit());
+    assertJQ(req("q", "id:1", "fl", "docid:[docid]"), "/response/docs/[0]/docid==1");
+
+    long version2 = addAndGetVersion(sdoc("id", "1", "long_dv", map("inc", 5)), null);
+    assertTrue(version2 > version1);
+    // realtime get sees the whole document, from the transaction log
+    assertJQ(req("qt", "/get", "id", "1", "fl", "id,long_dv,long_dv_stored,other_s,_version_"),
+        "=={'doc':{'id':'1','long_dv':15,'long_dv_stored':100,'other_s':'foo','_version_':" + version2 + "}}");
+
+    long version3 = addAndGetVersion(sdoc("id", "1", "long_dv", map("set", 42)), null);
+    assertTrue(version3 > version2);
+    assertU(commit());
+
+    // the document was not re-indexed, it kept its docid and its stored fields
+    assertJQ(req("q", "id:1", "fl", "docid:[docid],id,long_dv,long_dv_stored,other_s,_version_"),
+        "/response/docs/[0]/docid==1",
+        "/response/docs/[0]/long_dv==42",
+        "/response/docs/[0]/long_dv_stored==100",
+        "/response/docs/[0]/other_s=='foo'",
+        "/response/docs/[0]/_version_==" + version3);
+    assertJQ(req("qt", "/get", "id", "1", "fl", "id,long_dv,_version_"),
+        "=={'doc':{'id':'1','long_dv':42,'_version_':" + version3 + "}}");
+    // the other documents are untouched
+    assertJQ(req("q", "*:*", "fl", "id,long_dv", "sort", "id asc"),
+        "/response/docs==[{'id':'0','long_dv':0},{'id':'1','long_dv':42},{'id':'2','long_dv':20}]");
+    // optimistic concurrency works on the updated version
+    long version4 = addAndGetVersion(sdoc("id", "1", "_version_", version3, "long_dv", map("inc", -2)), null);
+    assertU(commit());
+    assertJQ(req("q", "id:1", "fl", "id,long_dv,_version_"),
+        "/response/docs/[0]/long_dv==40",
+        "/response/docs/[0]/_version_==" + version4);
+
+    // updating a stored field falls back to re-indexing the whole document
+    long version5 = addAndGetVersion(sdoc("id", "1", "long_dv_stored", map("inc", 1), "long_dv", map("inc", 1)), null);
+    assertU(commit());
+    assertJQ(req("q", "id:1", "fl", "id,long_dv,long_dv_stored,other_s,_version_"),
+        "/response/numFound==1",
+        "/response/docs/[0]/long_dv==41",
+        "/response/docs/[0]/long_dv_stored==101",
+        "/response/docs/[0]/other_s=='foo'",
+        "/response/docs/[0]/_version_==" + version5);
+  }
+
+  public void testFieldWithoutValue() throws Exception {
+    // docValues can't be updated in place if the document doesn't have a value yet
+    assertU(adoc("id", "1", "long_dv_stored", "100"));
+    assertU(commit());
+    addAndGetVersion(sdoc("id", "1", "long_dv", map("inc", 5)), null);
+    assertU(commit());
+    assertJQ(req("q", "id:1", "fl", "id,long_dv,long_dv_stored"),
+        "/response/docs==[{'id':'1','long_dv':5,'long_dv_stored':100}]");
+  }
+
+  public void testReorderedUpdatesOnReplica() throws Exception {
+    // versions newer than the deletes of the previous tests, so that these aren't applied again
+    final long v1 = h.getCore().getUpdateHandler().getUpdateLog().getVersionInfo().getNewClock();
+    final long v2 = v1 + 1, v3 = v1 + 2;
+
+    // v2 changes a stored field, v3 only changes docValues and was resolved by the leader against v2, the
+    // replica receives v3 before v2 (likewise for v4 and v5 of the second document)
+    for (String id : new String[] {"1", "2"}) {
+      addAndGetVersion(sdoc("id", id, "long_dv", "10", "other_s", "foo", "_version_", v1), params(DISTRIB_UPDATE_PARAM, FROM_LEADER));
+    }
+    assertU(commit());
+
+    // the missing update doesn't arrive in time: the whole document of v3 is indexed, v2 is dropped
+    System.setProperty("solr.cloud.inPlaceUpdate.waitMs", "100");
+    try {
+      addAndGetVersion(sdoc("id", "1", "long_dv", "11", "other_s", "bar", "_version_", v3), inPlaceParams(v2));
+      addAndGetVersion(sdoc("id", "1", "long_dv", "10", "other_s", "bar", "_version_", v2), params(DISTRIB_UPDATE_PARAM, FROM_LEADER));
+    } finally {
+      System.clearProperty("solr.cloud.inPlaceUpdate.waitMs");
+    }
+    // the transaction log has a regular add
+    assertJQ(req("qt", "/get", "getUpdates", Long.toString(v3)), "/updates/[0]/[0]==" + UpdateLog.ADD, "/updates/[0]/[1]==" + v3);
+
+    // the missing update arrives while v5 waits for it: v5 is then applied in place on top of v4
+    final long v4 = v1 + 3, v5 = v1 + 4;
+    final long waitMs = 30000;
+    System.setProperty("solr.cloud.inPlaceUpdate.waitMs", Long.toString(waitMs));
+    final long start = System.nanoTime();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread inPlace = new Thread(() -> {
+      try {
+        addAndGetVersion(sdoc("id", "2", "long_dv", "11", "other_s", "bar", "_version_", v5), inPlaceParams(v4));
+      } catch (Throwable t) {
+        failure.set(t);
+      }
+    });
+    try {
+      inPlace.start();
+      Thread.sleep(100);
+      addAndGetVersion(sdoc("id", "2", "long_dv", "10", "other_s", "bar", "_version_", v4), params(DISTRIB_UPDATE_PARAM, FROM_LEADER));
+      inPlace.join();
+    } finally {
+      System.clearProperty("solr.cloud.inPlaceUpdate.waitMs");
+    }
+    assertNull(failure.get());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < waitMs);
+    // the transaction log knows the version v5 was resolved against
+    assertJQ(req("qt", "/get", "getUpdates", Long.toString(v5)), "/updates/[0]/[0]==" + (UpdateLog.ADD | UpdateLog.FLAG_IN_PLACE),
+        "/updates/[0]/[1]==" + v5, "/updates/[0]/[2]==" + v4);
+
+    assertU(commit());
+    assertJQ(req("q", "id:(1 2)", "fl", "id,long_dv,other_s,_version_", "sort", "id asc"),
+        "/response/docs==[{'id':'1','long_dv':11,'other_s':'bar','_version_':" + v3 + "},"
+            + "{'id':'2','long_dv':11,'other_s':'bar','_version_':" + v5 + "}]");
+  }
+
+  private static ModifiableSolrParams inPlaceParams(long prevVersion) {
+    return params(DISTRIB_UPDATE_PARAM, FROM_LEADER,
+        DistributedUpdateProcessor.DISTRIB_INPLACE_PREVVERSION, Long.toString(prevVersion));
+  }
+}
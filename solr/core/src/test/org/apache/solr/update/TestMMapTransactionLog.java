@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+
+public class TestMMapTransactionLog extends SolrTestCaseJ4 {
+
+  private static final int SEGMENT_SIZE = 256;  // small enough for records to span segments
+
+  private File newLogFile(int id) throws IOException {
+    return new File(createTempDir().toFile(), String.format(Locale.ROOT, UpdateLog.LOG_FILENAME_PATTERN, UpdateLog.TLOG_NAME, id));
+  }
+
+  private static long add(TransactionLog tlog, int i) {
+    AddUpdateCommand cmd = new AddUpdateCommand(null);
+    cmd.solrDoc = sdoc("id", Integer.toString(i), "text_t", "some text to make records span segments " + i);
+    cmd.setVersion(i);
+    return tlog.write(cmd, 0);
+  }
+
+  private static long delete(TransactionLog tlog, int i) {
+    DeleteUpdateCommand cmd = new DeleteUpdateCommand(null);
+    cmd.setIndexedId(new BytesRef(Integer.toString(i)));
+    cmd.setVersion(-i);
+    return tlog.writeDelete(cmd, 0);
+  }
+
+  private static long version(Object record) {
+    return (Long) ((List) record).get(1);
+  }
+
+  private static List<Long> readVersions(TransactionLog tlog) throws Exception {
+    List<Long> versions = new ArrayList<>();
+    TransactionLog.LogReader reader = tlog.getReader(0);
+    try {
+      for (Object o = reader.next(); o != null; o = reader.next()) {
+        versions.add(version(o));
+      }
+    } finally {
+      reader.close();
+    }
+    return versions;
+  }
+
+  /** Writes adds with versions 1 to numAdds, and a delete after each tenth add. */
+  private static List<Long> writeRecords(TransactionLog tlog, int numAdds) {
+    List<Long> versions = new ArrayList<>();
+    for (int i = 1; i <= numAdds; i++) {
+      long pos = add(tlog, i);
+      versions.add((long) i);
+      assertEquals(i, version(tlog.lookup(pos)));
+      if (i % 10 == 0) {
+        delete(tlog, i);
+        versions.add((long) -i);
+      }
+    }
+    return versions;
+  }
+
+  public void testWriteAndRead() throws Exception {
+    File file = newLogFile(1);
+    MMapTransactionLog tlog = new MMapTransactionLog(file, Arrays.asList("id", "text_t"), SEGMENT_SIZE);
+    try {
+      List<Long> versions = writeRecords(tlog, 50);
+      assertEquals(versions, readVersions(tlog));
+      assertFalse(tlog.endsWithCommit());
+
+      TransactionLog.ReverseReader reverseReader = tlog.getReverseReader();
+      try {
+        for (int i = versions.size() - 1; i >= 0; i--) {
+          assertEquals(versions.get(i).longValue(), version(reverseReader.next()));
+          assertEquals(versions.get(i).longValue(), version(tlog.lookup(reverseReader.position())));
+        }
+        assertNull(reverseReader.next());
+      } finally {
+        reverseReader.close();
+      }
+
+      CommitUpdateCommand commit = new CommitUpdateCommand(null, false);
+      commit.setVersion(1000);
+      tlog.writeCommit(commit, 0);
+      assertTrue(tlog.endsWithCommit());
+      // the file is pre-allocated
+      assertTrue(file.length() >= tlog.getLogSize());
+      assertTrue(MMapTransactionLog.isChecksummed(file));
+
+      long size = tlog.getLogSize();
+      tlog.deleteOnClose = false;
+      tlog.decref();
+      tlog = null;
+      assertEquals(size, file.length());
+
+      tlog = new MMapTransactionLog(file, null, true, SEGMENT_SIZE);
+      assertEquals(size, tlog.position());
+      assertTrue(tlog.endsWithCommit());
+      versions.add(1000L);
+      assertEquals(versions, readVersions(tlog));
+    } finally {
+      if (tlog != null) tlog.decref();
+    }
+  }
+
+  public void testPlainLogIsNotChecksummed() throws Exception {
+    File file = newLogFile(1);
+    TransactionLog tlog = new TransactionLog(file, Arrays.asList("id", "text_t"));
+    try {
+      add(tlog, 1);
+      tlog.finish(UpdateLog.SyncLevel.FLUSH);
+      assertFalse(MMapTransactionLog.isChecksummed(file));
+    } finally {
+      tlog.decref();
+    }
+  }
+
+  /** Copies the log file as it is on disk while the log is still open, like after a crash. */
+  private File copyOpenLog(MMapTransactionLog tlog) throws IOException {
+    tlog.finish(UpdateLog.SyncLevel.FSYNC);
+    File copy = newLogFile(2);
+    Files.copy(tlog.tlogFile.toPath(), copy.toPath());
+    return copy;
+  }
+
+  public void testRecoverAfterCrash() throws Exception {
+    MMapTransactionLog tlog = new MMapTransactionLog(newLogFile(1), Arrays.asList("id", "text_t"), SEGMENT_SIZE);
+    MMapTransactionLog recovered = null;
+    try {
+      List<Long> versions = writeRecords(tlog, 30);
+      long end = tlog.position();
+
+      File copy = copyOpenLog(tlog);
+      assertTrue(copy.length() >= end);
+      // a partial record was written after the last complete one
+      try (RandomAccessFile raf = new RandomAccessFile(copy, "rw")) {
+        raf.seek(end);
+        raf.write(new byte[] {2, 3, 4, 5, 6});
+      }
+
+      recovered = new MMapTransactionLog(copy, null, true, SEGMENT_SIZE);
+      assertEquals(end, recovered.position());
+      assertEquals(versions, readVersions(recovered));
+
+      // new records are appended after the last complete one
+      add(recovered, 31);
+      versions.add(31L);
+      assertEquals(versions, readVersions(recovered));
+    } finally {
+      tlog.decref();
+      if (recovered != null) recovered.decref();
+    }
+  }
+
+  public void testCorruptRecord() throws Exception {
+    MMapTransactionLog tlog = new MMapTransactionLog(newLogFile(1), Arrays.asList("id", "text_t"), SEGMENT_SIZE);
+    MMapTransactionLog recovered = null;
+    try {
+      writeRecords(tlog, 5);
+      long lastPos = add(tlog, 6);
+
+      File copy = copyOpenLog(tlog);
+      // corrupt the last record
+      try (RandomAccessFile raf = new RandomAccessFile(copy, "rw")) {
+        raf.seek(tlog.position() - 12);
+        int b = raf.read();
+        raf.seek(tlog.position() - 12);
+        raf.write(b ^ 0xff);
+      }
+
+      recovered = new MMapTransactionLog(copy, null, true, SEGMENT_SIZE);
+      assertEquals(lastPos, recovered.position());
+      assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), readVersions(recovered));
+    } finally {
+      tlog.decref();
+      if (recovered != null) recovered.decref();
+    }
+  }
+
+  public void testRollback() throws Exception {
+    MMapTransactionLog tlog = new MMapTransactionLog(newLogFile(1), Arrays.asList("id", "text_t"), SEGMENT_SIZE);
+    MMapTransactionLog recovered = null;
+    try {
+      add(tlog, 1);
+      long snapshot = tlog.snapshot();
+      add(tlog, 2);
+      add(tlog, 3);
+      tlog.rollback(snapshot);
+      assertEquals(snapshot, tlog.position());
+
+      // the rolled back records are gone after a crash too
+      recovered = new MMapTransactionLog(copyOpenLog(tlog), null, true, SEGMENT_SIZE);
+      assertEquals(snapshot, recovered.position());
+      assertEquals(Arrays.asList(1L), readVersions(recovered));
+
+      add(tlog, 4);
+      assertEquals(Arrays.asList(1L, 4L), readVersions(tlog));
+    } finally {
+      tlog.decref();
+      if (recovered != null) recovered.decref();
+    }
+  }
+
+  public void testReverseReaderChecksCorruptRecord() throws Exception {
+    MMapTransactionLog tlog = new MMapTransactionLog(newLogFile(1), Arrays.asList("id", "text_t"), SEGMENT_SIZE);
+    try {
+      writeRecords(tlog, 5);
+      add(tlog, 6);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      // corrupt the document of the last record, which the reverse reader doesn't decode
+      try (RandomAccessFile raf = new RandomAccessFile(tlog.tlogFile, "rw")) {
+        raf.seek(tlog.position() - 12);
+        int b = raf.read();
+        raf.seek(tlog.position() - 12);
+        raf.write(b ^ 0xff);
+      }
+
+      TransactionLog.ReverseReader reverseReader = tlog.getReverseReader();
+      try {
+        expectThrows(SolrException.class, reverseReader::next);
+      } finally {
+        reverseReader.close();
+      }
+    } finally {
+      tlog.decref();
+    }
+  }
+
+  public void testGroupCommit() throws Exception {
+    final AtomicInteger syncs = new AtomicInteger();
+    final TransactionLog tlog = new TransactionLog(newLogFile(1), Arrays.asList("id", "text_t")) {
+      @Override
+      protected void sync() throws IOException {
+        syncs.incrementAndGet();
+        super.sync();
+      }
+    };
+    try {
+      add(tlog, 1);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(1, syncs.get());
+      // nothing was written since the last sync
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(1, syncs.get());
+
+      final int numThreads = 4;
+      final int numAdds = 50;
+      Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+        final int base = (t + 1) * 1000;
+        threads[t] = new Thread(() -> {
+          for (int i = 0; i < numAdds; i++) {
+            add(tlog, base + i);
+            tlog.finish(UpdateLog.SyncLevel.FSYNC);
+          }
+        });
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertTrue(syncs.get() <= 1 + numThreads * numAdds);
+      assertEquals(tlog.position(), tlog.syncedPosition);
+      assertEquals(1 + numThreads * numAdds, readVersions(tlog).size());
+    } finally {
+      tlog.decref();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.Map;
+
+import com.codahale.metrics.Gauge;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.Test;
+
+public class UpdateShardHandlerTest extends LuceneTestCase {
+
+  @Test
+  public void testReplicaUpdateStatsAreBounded() throws Exception {
+    SolrMetricManager manager = new SolrMetricManager();
+    String registry = "solr.test.replicaUpdates";
+    UpdateShardHandler handler = new UpdateShardHandler(UpdateShardHandlerConfig.DEFAULT);
+    try {
+      handler.initializeMetrics(manager, registry, "updateShardHandler");
+
+      ReplicaUpdateStats stats = handler.getReplicaUpdateStats("http://host0/solr/core0/");
+      assertSame(stats, handler.getReplicaUpdateStats("http://host0/solr/core0/"));
+      stats.sent();
+      Map<String, Gauge> gauges = manager.registry(registry).getGauges();
+      assertEquals(4, gauges.size());
+      assertEquals(1L, gauges.get("UPDATE.updateShardHandler.http://host0/solr/core0/.sent").getValue());
+
+      // the least recently used replicas are unregistered
+      for (int i = 1; i <= UpdateShardHandler.MAX_REPLICA_STATS; i++) {
+        handler.getReplicaUpdateStats("http://host" + i + "/solr/core" + i + "/");
+      }
+      gauges = manager.registry(registry).getGauges();
+      assertEquals(4 * UpdateShardHandler.MAX_REPLICA_STATS, gauges.size());
+      assertFalse(gauges.containsKey("UPDATE.updateShardHandler.http://host0/solr/core0/.sent"));
+      assertTrue(gauges.containsKey("UPDATE.updateShardHandler.http://host1/solr/core1/.sent"));
+      assertNotSame(stats, handler.getReplicaUpdateStats("http://host0/solr/core0/"));
+    } finally {
+      handler.close();
+    }
+  }
+}
@@ -32,7 +32,7 @@ import java.io.Reader;
 public class BinaryResponseParser extends ResponseParser {
   public static final String BINARY_CONTENT_TYPE = "application/octet-stream";
 
-  private JavaBinCodec.StringCache stringCache;
+  protected JavaBinCodec.StringCache stringCache;
 
   public BinaryResponseParser setStringCache(JavaBinCodec.StringCache cache) {
     this.stringCache = cache;
@@ -18,15 +18,19 @@ package org.apache.solr.client.solrj.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
-import org.apache.solr.common.util.DataInputInputStream;
 import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.JavaBinReader;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
 
 /**
  * A BinaryResponseParser that sends callback events rather then build
@@ -46,46 +50,59 @@ public class StreamingBinaryResponseParser extends BinaryResponseParser {
   @Override
   public NamedList<Object> processResponse(InputStream body, String encoding) {
     try {
-      JavaBinCodec codec = new JavaBinCodec() {
+      // documents are handed to the callback as soon as they are read, they are never
+      // accumulated in the response
+      JavaBinReader reader = new JavaBinReader(body, stringCache);
+      reader.next();
+      return (NamedList<Object>) read(reader);
+    }
+    catch (IOException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "parsing error", e);
+    }
+  }
 
-        @Override
-        public SolrDocument readSolrDocument(DataInputInputStream dis) throws IOException {
-          SolrDocument doc = super.readSolrDocument(dis);
-          callback.streamSolrDocument( doc );
-          return null;
+  private Object read(JavaBinReader reader) throws IOException {
+    switch (reader.getEvent()) {
+      case START_DOCUMENT:
+        callback.streamSolrDocument((SolrDocument) reader.readValue());
+        return null;
+      case START_DOCUMENT_LIST:
+        SolrDocumentList solrDocs = new SolrDocumentList();
+        solrDocs.setNumFound(reader.getNumFound());
+        solrDocs.setStart(reader.getStart());
+        solrDocs.setMaxScore(reader.getMaxScore());
+        callback.streamDocListInfo(
+            solrDocs.getNumFound(),
+            solrDocs.getStart(),
+            solrDocs.getMaxScore() );
+        while (reader.next() != JavaBinReader.Event.END_DOCUMENT_LIST) {
+          read(reader);
         }
-
-        @Override
-        public SolrDocumentList readSolrDocumentList(DataInputInputStream dis) throws IOException {
-          SolrDocumentList solrDocs = new SolrDocumentList();
-          List list = (List) readVal(dis);
-          solrDocs.setNumFound((Long) list.get(0));
-          solrDocs.setStart((Long) list.get(1));
-          solrDocs.setMaxScore((Float) list.get(2));
-
-          callback.streamDocListInfo( 
-              solrDocs.getNumFound(), 
-              solrDocs.getStart(), 
-              solrDocs.getMaxScore() );
-          
-          // Read the Array
-          tagByte = dis.readByte();
-          if( (tagByte >>> 5) != (ARR >>> 5) ) {
-            throw new RuntimeException( "doclist must have an array" );
-          } 
-          int sz = readSize(dis);
-          for (int i = 0; i < sz; i++) {
-            // must be a SolrDocument
-            readVal( dis ); 
+        return solrDocs;
+      case START_MAP:
+        if (reader.getTag() == JavaBinCodec.ORDERED_MAP || reader.getTag() == JavaBinCodec.NAMED_LST) {
+          NamedList<Object> nl = reader.getTag() == JavaBinCodec.ORDERED_MAP ? new SimpleOrderedMap<>() : new NamedList<>();
+          while (reader.next() != JavaBinReader.Event.END_MAP) {
+            String name = reader.getName();
+            nl.add(name, read(reader));
+          }
+          return nl;
+        } else {
+          Map<Object,Object> map = new LinkedHashMap<>();
+          while (reader.next() != JavaBinReader.Event.END_MAP) {
+            Object key = reader.getKey();
+            map.put(key, read(reader));
           }
-          return solrDocs;
+          return map;
         }
-      };
-      
-      return (NamedList<Object>) codec.unmarshal(body);
-    } 
-    catch (IOException e) {
-      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "parsing error", e);
+      case START_ARRAY:
+        List<Object> list = new ArrayList<>();
+        while (reader.next() != JavaBinReader.Event.END_ARRAY) {
+          list.add(read(reader));
+        }
+        return list;
+      default:
+        return reader.readValue();
     }
   }
 }
@@ -26,164 +26,146 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.solr.common.util.DataInputInputStream;
-import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.util.JavaBinCodec;
-
-public class JavabinTupleStreamParser extends JavaBinCodec implements TupleStreamParser {
-  private final InputStream is;
-  final FastInputStream fis;
-  private int arraySize = Integer.MAX_VALUE;
-  private boolean onlyJsonTypes = false;
-  int objectSize;
-
+import org.apache.solr.common.util.JavaBinReader;
+import org.apache.solr.common.util.JavaBinReader.Event;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * Reads the tuples of a javabin response one at a time, using a {@link JavaBinReader}:
+ * only the tuple that is returned by {@link #next()} is materialized.
+ */
+public class JavabinTupleStreamParser implements TupleStreamParser {
+  private final JavaBinReader reader;
+  private final boolean onlyJsonTypes;
+  private boolean done;
 
   public JavabinTupleStreamParser(InputStream is, boolean onlyJsonTypes) throws IOException {
     this.onlyJsonTypes = onlyJsonTypes;
-    this.is = is;
-    this.fis = initRead(is);
-    if (!readTillDocs()) arraySize = 0;
+    this.reader = new JavaBinReader(is);
+    this.done = !readTillDocs(reader.next());
   }
 
-
-  private boolean readTillDocs() throws IOException {
-    if (isObjectType(fis)) {
-      if (tagByte == SOLRDOCLST) {
-        readVal(fis);// this is the metadata, throw it away
-        tagByte = fis.readByte();
-        arraySize = readSize(fis);
+  /**
+   * Consumes the stream until the start of the docs, returns false if there are none.
+   */
+  private boolean readTillDocs(Event event) throws IOException {
+    switch (event) {
+      case START_DOCUMENT_LIST:
         return true;
-      }
-      for (int i = objectSize; i > 0; i--) {
-        Object k = readVal(fis);
-        if (k == END_OBJ) break;
-        if ("docs".equals(k)) {
-          tagByte = fis.readByte();
-          if (tagByte == ITERATOR) return true;//docs must be an iterator or
-          if (tagByte >>> 5 == ARR >>> 5) {// an array
-            arraySize = readSize(fis);
-            return true;
+      case START_MAP:
+        while ((event = reader.next()) != Event.END_MAP) {
+          if ("docs".equals(reader.getName())) {
+            if (event == Event.START_ARRAY || event == Event.START_DOCUMENT_LIST) {
+              return true; //docs must be an iterator or an array
+            }
+            reader.skipValue();
+            return false;
+          } else {
+            if (readTillDocs(event)) return true;
           }
-          return false;
-        } else {
-          if (readTillDocs()) return true;
         }
-      }
-    } else {
-      readObject(fis);
-      return false;
+        return false;
+      default:
+        reader.skipValue();
+        return false;
     }
-    return false;
 
     //here after it will be a stream of maps
   }
 
-  private boolean isObjectType(DataInputInputStream dis) throws IOException {
-    tagByte = dis.readByte();
-    if (tagByte >>> 5 == ORDERED_MAP >>> 5 ||
-        tagByte >>> 5 == NAMED_LST >>> 5) {
-      objectSize = readSize(dis);
-      return true;
-    }
-    if (tagByte == MAP) {
-      objectSize = readVInt(dis);
-      return true;
-    }
-    if (tagByte == MAP_ENTRY_ITER) {
-      objectSize = Integer.MAX_VALUE;
-      return true;
-    }
-    return tagByte == SOLRDOCLST;
-  }
-
-  private Map readAsMap(DataInputInputStream dis) throws IOException {
-    int sz = readSize(dis);
+  private Map<String, Object> readAsMap() throws IOException {
     Map m = new LinkedHashMap<>();
-    for (int i = 0; i < sz; i++) {
-      String name = (String) readVal(dis);
-      Object val = readVal(dis);
-      m.put(name, val);
+    while (reader.next() != Event.END_MAP) {
+      Object key = reader.getKey();
+      m.put(key, readVal());
     }
     return m;
   }
 
-  private Map readSolrDocumentAsMap(DataInputInputStream dis) throws IOException {
-    tagByte = dis.readByte();
-    int size = readSize(dis);
-    Map doc = new LinkedHashMap<>();
-    for (int i = 0; i < size; i++) {
-      String fieldName;
-      Object obj = readVal(dis); // could be a field name, or a child document
-      if (obj instanceof Map) {
+  private Map<String, Object> readSolrDocumentAsMap() throws IOException {
+    Map<String, Object> doc = new LinkedHashMap<>();
+    while (reader.next() != Event.END_DOCUMENT) {
+      if (reader.getName() == null) { // a child document
         List l = (List) doc.get("_childDocuments_");
         if (l == null) doc.put("_childDocuments_", l = new ArrayList());
-        l.add(obj);
+        l.add(readSolrDocumentAsMap());
         continue;
-      } else {
-        fieldName = (String) obj;
       }
-      Object fieldVal = readVal(dis);
-      doc.put(fieldName, fieldVal);
+      String fieldName = reader.getName();
+      doc.put(fieldName, readVal());
     }
     return doc;
   }
 
-  @Override
-  protected Object readObject(DataInputInputStream dis) throws IOException {
-    if (tagByte == SOLRDOC) {
-      return readSolrDocumentAsMap(dis);
-    }
-    if (onlyJsonTypes) {
-      switch (tagByte >>> 5) {
-        case SINT >>> 5:
-          int i = readSmallInt(dis);
-          return (long) i;
-        case ORDERED_MAP >>> 5:
-          return readAsMap(dis);
-        case NAMED_LST >>> 5:
-          return readAsMap(dis);
-      }
-
-      switch (tagByte) {
-        case INT: {
-          int i = dis.readInt();
-          return (long) i;
+  private Object readVal() throws IOException {
+    switch (reader.getEvent()) {
+      case START_DOCUMENT:
+        return readSolrDocumentAsMap();
+      case START_MAP:
+        byte tag = reader.getTag();
+        if (onlyJsonTypes || tag == JavaBinCodec.MAP || tag == JavaBinCodec.MAP_ENTRY_ITER) {
+          return readAsMap();
         }
-        case FLOAT: {
-          float v = dis.readFloat();
-          return (double) v;
+        NamedList<Object> nl = tag == JavaBinCodec.ORDERED_MAP ? new SimpleOrderedMap<>() : new NamedList<>();
+        while (reader.next() != Event.END_MAP) {
+          String name = reader.getName();
+          nl.add(name, readVal());
         }
-        case BYTE: {
-          byte b = dis.readByte();
-          return (long) b;
+        return nl;
+      case START_ARRAY: {
+        List<Object> l = new ArrayList<>();
+        while (reader.next() != Event.END_ARRAY) {
+          l.add(readVal());
         }
-        case SHORT: {
-          short s = dis.readShort();
-          return (long) s;
-        }
-
-        case DATE: {
-          return Instant.ofEpochMilli(dis.readLong()).toString();
+        return l;
+      }
+      case START_DOCUMENT_LIST: {
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.setNumFound(reader.getNumFound());
+        docs.setStart(reader.getStart());
+        docs.setMaxScore(reader.getMaxScore());
+        List l = docs;
+        while (reader.next() != Event.END_DOCUMENT_LIST) {
+          l.add(readVal());
         }
-
-        default:
-          return super.readObject(dis);
+        return docs;
       }
-    } else return super.readObject(dis);
+      case VALUE:
+        if (onlyJsonTypes) {
+          switch (reader.getTag()) {
+            case JavaBinCodec.BYTE:
+            case JavaBinCodec.SHORT:
+            case JavaBinCodec.INT:
+              return reader.getLong();
+            case JavaBinCodec.FLOAT:
+              return reader.getDouble();
+            case JavaBinCodec.DATE:
+              return Instant.ofEpochMilli(reader.getLong()).toString();
+          }
+        }
+        return reader.readValue();
+      default:
+        throw new IllegalStateException("Unexpected event " + reader.getEvent());
+    }
   }
 
 
   @Override
   public Map<String, Object> next() throws IOException {
-    if (arraySize == 0) return null;
-    Object o = readVal(fis);
-    arraySize--;
-    if (o == END_OBJ) return null;
-    return (Map<String, Object>) o;
+    if (done) return null;
+    Event event = reader.next();
+    if (event == Event.END_ARRAY || event == Event.END_DOCUMENT_LIST) {
+      done = true;
+      return null;
+    }
+    return (Map<String, Object>) readVal();
   }
 
   @Override
   public void close() throws IOException {
-    is.close();
+    reader.close();
   }
 }
@@ -160,6 +160,13 @@ public interface CommonParams {
   String SEGMENT_TERMINATE_EARLY = "segmentTerminateEarly";
   boolean SEGMENT_TERMINATE_EARLY_DEFAULT = false;
 
+  /**
+   * Whether the segments of the index may be searched concurrently. This requires
+   * <code>searchThreads</code> to be configured in the <code>query</code> section of solrconfig.xml.
+   */
+  String PARALLEL_SEARCH = "parallelSearch";
+  boolean PARALLEL_SEARCH_DEFAULT = false;
+
   /**
    * Timeout value in milliseconds.  If not set, or the value is &gt;= 0, there is no timeout.
    */
@@ -52,8 +52,23 @@ public interface ShardParams {
   /** query purpose for shard requests */
   public static final String SHARDS_PURPOSE = "shards.purpose";
 
+  /** Merge the top ids of each shard while its response is read? (true/false) */
+  public static final String SHARDS_STREAMING_MERGE = "shards.streamingMerge";
+
+  /** Send shard requests to the replicas with the lowest observed latency first? (true/false) */
+  public static final String SHARDS_LATENCY_RANKING = "shards.latencyRanking";
+
+  /** Send a shard request to another replica too if the first one is slower than usual? (true/false) */
+  public static final String SHARDS_HEDGE = "shards.hedge";
+
+  /** The percentile of the latencies of the shard requests of the collection after which requests are hedged */
+  public static final String SHARDS_HEDGE_PERCENTILE = "shards.hedge.percentile";
+
   public static final String _ROUTE_ = "_route_";
 
   /** Force a single-pass distributed query? (true/false) */
   public static final String DISTRIB_SINGLE_PASS = "distrib.singlePass";
+
+  /** Look up the threshold of a deep page on the shards before asking them for its top ids? (true/false) */
+  public static final String DISTRIB_DEEP_PAGING = "distrib.deepPaging";
 }
@@ -0,0 +1,563 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.noggit.CharArr;
+
+import static org.apache.solr.common.util.JavaBinCodec.*;
+
+/**
+ * A pull parser for the javabin format. Instead of materializing the whole response like
+ * {@link JavaBinCodec#unmarshal(InputStream)} does, the stream is consumed one {@link Event}
+ * at a time, so that large results (documents, tuples) can be processed as they are read,
+ * without building an intermediate tree of {@link NamedList}s and {@link SolrDocumentList}s.
+ * <p>
+ * Entries of maps, named lists and documents are reported as events that have a name,
+ * see {@link #getName()}. Scalar values are reported as {@link Event#VALUE} and are available
+ * through the typed getters, which do not box numbers. String values are decoded lazily:
+ * {@link #getCharSequence()} decodes into a buffer that is reused across events, while
+ * {@link #getString()} creates (or, with a {@link JavaBinCodec.StringCache}, interns) a String.
+ * Any value or container can still be materialized with {@link #readValue()}, or skipped with
+ * {@link #skipValue()}.
+ * <pre class="prettyprint">
+ * JavaBinReader reader = new JavaBinReader(in);
+ * for (Event e = reader.next(); e != Event.END_STREAM; e = reader.next()) {
+ *   if (e == Event.START_DOCUMENT) {
+ *     process((SolrDocument) reader.readValue());
+ *   }
+ * }
+ * </pre>
+ * Internal Solr use only, subject to change.
+ */
+public class JavaBinReader implements Closeable {
+
+  public enum Event {
+    /** A scalar value: a string, number, boolean, date, null, or any other type that is read as a whole */
+    VALUE,
+    /** The start of a {@link NamedList}, {@link SimpleOrderedMap} or {@link Map}, see {@link #getTag()} */
+    START_MAP,
+    END_MAP,
+    /** The start of an array or an iterator, see {@link #getTag()} */
+    START_ARRAY,
+    END_ARRAY,
+    /** The start of a {@link SolrDocument}, whose fields are reported as named events */
+    START_DOCUMENT,
+    END_DOCUMENT,
+    /** The start of a {@link SolrDocumentList}, see {@link #getNumFound()} and friends */
+    START_DOCUMENT_LIST,
+    END_DOCUMENT_LIST,
+    /** The end of the top level value has been reached */
+    END_STREAM
+  }
+
+  // the kinds of containers on the stack
+  private static final byte KIND_MAP = 0, KIND_ARRAY = 1, KIND_DOCUMENT = 2, KIND_DOCUMENT_LIST = 3;
+
+  private final InputStream is;
+  private final FastInputStream fis;
+  // only used for its extern strings table and helpers, it is never used to write
+  private final JavaBinCodec codec;
+  private final JavaBinCodec.StringCache stringCache;
+
+  // the stack of open containers: their kind, their tag and how many entries are left (-1 if END terminated)
+  private byte[] kinds = new byte[8];
+  private byte[] tags = new byte[8];
+  private int[] remaining = new int[8];
+  private int depth = 0;
+  private boolean started = false;
+
+  private Event event;
+  private byte tag;
+  private Object key;
+
+  // the current value, see the getters
+  private long longVal;
+  private double doubleVal;
+  private Object objVal;
+  private String strVal;
+  private byte[] strBytes = new byte[64];
+  private int strLen;
+  private final CharArr chars = new CharArr();
+  private final JavaBinCodec.StringBytes stringBytes = new JavaBinCodec.StringBytes(null, 0, 0);
+
+  // the header of the current document list
+  private long numFound;
+  private long start;
+  private Float maxScore;
+
+  public JavaBinReader(InputStream is) throws IOException {
+    this(is, null);
+  }
+
+  /**
+   * @param is the stream to read, it is closed by {@link #close()}
+   * @param stringCache if not null, used to intern all the strings returned by {@link #getString()}
+   */
+  public JavaBinReader(InputStream is, JavaBinCodec.StringCache stringCache) throws IOException {
+    this.is = is;
+    this.stringCache = stringCache;
+    this.codec = new JavaBinCodec(null, stringCache);
+    this.fis = codec.initRead(is);
+  }
+
+  /**
+   * Moves to the next event. For events that are entries of a map or a document, the name of
+   * the entry is available through {@link #getName()}.
+   */
+  public Event next() throws IOException {
+    key = null;
+    if (depth == 0) {
+      if (started) {
+        return event = Event.END_STREAM;
+      }
+      started = true;
+      return event = readEvent(fis.readByte());
+    }
+
+    final int level = depth - 1;
+    byte b;
+    if (remaining[level] == 0) {
+      return event = pop();
+    } else if (remaining[level] > 0) {
+      remaining[level]--;
+      b = fis.readByte();
+    } else {
+      b = fis.readByte();
+      if (b == END) {
+        return event = pop();
+      }
+    }
+
+    switch (kinds[level]) {
+      case KIND_MAP:
+        key = readKey(b);
+        b = fis.readByte();
+        break;
+      case KIND_DOCUMENT:
+        if (b == SOLRDOC) {
+          break; // a child document, it has no name
+        }
+        key = readKey(b);
+        b = fis.readByte();
+        break;
+    }
+    return event = readEvent(b);
+  }
+
+  private Object readKey(byte b) throws IOException {
+    codec.tagByte = b;
+    switch (b >>> 5) {
+      case EXTERN_STRING >>> 5:
+        return codec.readExternString(fis);
+      case STR >>> 5:
+        return codec.readStr(fis, stringCache);
+    }
+    return codec.readObject(fis);
+  }
+
+  private Event readEvent(byte b) throws IOException {
+    objVal = null;
+    strVal = null;
+    strLen = -1;
+    tag = b;
+    codec.tagByte = b;
+    switch (b >>> 5) {
+      case STR >>> 5:
+        strLen = codec.readSize(fis);
+        if (strBytes.length < strLen) {
+          strBytes = new byte[Math.max(strLen, strBytes.length << 1)];
+        }
+        fis.readFully(strBytes, 0, strLen);
+        tag = STR;
+        return Event.VALUE;
+      case EXTERN_STRING >>> 5:
+        strVal = codec.readExternString(fis);
+        tag = STR;
+        return Event.VALUE;
+      case SINT >>> 5:
+        longVal = codec.readSmallInt(fis);
+        tag = INT;
+        return Event.VALUE;
+      case SLONG >>> 5:
+        longVal = codec.readSmallLong(fis);
+        tag = LONG;
+        return Event.VALUE;
+      case ARR >>> 5:
+        push(KIND_ARRAY, ARR, codec.readSize(fis));
+        tag = ARR;
+        return Event.START_ARRAY;
+      case ORDERED_MAP >>> 5:
+        push(KIND_MAP, ORDERED_MAP, codec.readSize(fis));
+        tag = ORDERED_MAP;
+        return Event.START_MAP;
+      case NAMED_LST >>> 5:
+        push(KIND_MAP, NAMED_LST, codec.readSize(fis));
+        tag = NAMED_LST;
+        return Event.START_MAP;
+    }
+
+    switch (b) {
+      case NULL:
+        return Event.VALUE;
+      case BOOL_TRUE:
+        longVal = 1;
+        return Event.VALUE;
+      case BOOL_FALSE:
+        longVal = 0;
+        return Event.VALUE;
+      case BYTE:
+        longVal = fis.readByte();
+        return Event.VALUE;
+      case SHORT:
+        longVal = fis.readShort();
+        return Event.VALUE;
+      case INT:
+        longVal = fis.readInt();
+        return Event.VALUE;
+      case LONG:
+      case DATE:
+        longVal = fis.readLong();
+        return Event.VALUE;
+      case FLOAT:
+        doubleVal = fis.readFloat();
+        return Event.VALUE;
+      case DOUBLE:
+        doubleVal = fis.readDouble();
+        return Event.VALUE;
+      case MAP:
+        push(KIND_MAP, MAP, JavaBinCodec.readVInt(fis));
+        return Event.START_MAP;
+      case MAP_ENTRY_ITER:
+        push(KIND_MAP, MAP_ENTRY_ITER, -1);
+        return Event.START_MAP;
+      case ITERATOR:
+        push(KIND_ARRAY, ITERATOR, -1);
+        return Event.START_ARRAY;
+      case SOLRDOC:
+        // the fields of a document are written like an ordered map
+        codec.tagByte = fis.readByte();
+        push(KIND_DOCUMENT, SOLRDOC, codec.readSize(fis));
+        return Event.START_DOCUMENT;
+      case SOLRDOCLST:
+        List header = (List) codec.readVal(fis);
+        numFound = (Long) header.get(0);
+        start = (Long) header.get(1);
+        maxScore = (Float) header.get(2);
+        // the documents are written as an array
+        codec.tagByte = fis.readByte();
+        push(KIND_DOCUMENT_LIST, SOLRDOCLST, codec.tagByte == ITERATOR ? -1 : codec.readSize(fis));
+        return Event.START_DOCUMENT_LIST;
+      case END:
+        throw new RuntimeException("Unexpected end tag");
+    }
+
+    // anything else is rare enough to be read as a whole
+    objVal = codec.readObject(fis);
+    return Event.VALUE;
+  }
+
+  private void push(byte kind, byte containerTag, int size) {
+    if (depth == kinds.length) {
+      kinds = Arrays.copyOf(kinds, depth << 1);
+      tags = Arrays.copyOf(tags, depth << 1);
+      remaining = Arrays.copyOf(remaining, depth << 1);
+    }
+    kinds[depth] = kind;
+    tags[depth] = containerTag;
+    remaining[depth] = size;
+    depth++;
+  }
+
+  private Event pop() {
+    depth--;
+    tag = tags[depth];
+    switch (kinds[depth]) {
+      case KIND_MAP:
+        return Event.END_MAP;
+      case KIND_ARRAY:
+        return Event.END_ARRAY;
+      case KIND_DOCUMENT:
+        return Event.END_DOCUMENT;
+      default:
+        return Event.END_DOCUMENT_LIST;
+    }
+  }
+
+  /** Returns the current event, the one that was last returned by {@link #next()}. */
+  public Event getEvent() {
+    return event;
+  }
+
+  /**
+   * Returns the javabin tag of the current value or container, eg. {@link JavaBinCodec#STR},
+   * {@link JavaBinCodec#INT} or {@link JavaBinCodec#ORDERED_MAP}. Small ints and longs are
+   * reported as {@link JavaBinCodec#INT} and {@link JavaBinCodec#LONG}.
+   */
+  public byte getTag() {
+    return tag;
+  }
+
+  /** Returns the number of open containers. */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns the number of entries that are left to read in the current container,
+   * or -1 if the container is not sized (ie. an iterator).
+   */
+  public int getRemaining() {
+    return depth == 0 ? 0 : remaining[depth - 1];
+  }
+
+  /** Returns the name of the current entry, or null if the current event is not the entry of a map or document. */
+  public String getName() {
+    return key == null || key instanceof String ? (String) key : key.toString();
+  }
+
+  /** Returns the key of the current entry, which is not always a String for {@link Map}s. */
+  public Object getKey() {
+    return key;
+  }
+
+  public boolean isNull() {
+    return event == Event.VALUE && tag == NULL;
+  }
+
+  public boolean getBoolean() {
+    checkTag(tag == BOOL_TRUE || tag == BOOL_FALSE);
+    return longVal != 0;
+  }
+
+  public int getInt() {
+    return (int) getLong();
+  }
+
+  /** Returns the current numeric value as a long, or the number of milliseconds since the epoch for dates. */
+  public long getLong() {
+    switch (tag) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case DATE:
+        return longVal;
+      case FLOAT:
+      case DOUBLE:
+        return (long) doubleVal;
+    }
+    checkTag(false);
+    return 0;
+  }
+
+  public float getFloat() {
+    return (float) getDouble();
+  }
+
+  public double getDouble() {
+    switch (tag) {
+      case FLOAT:
+      case DOUBLE:
+        return doubleVal;
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        return longVal;
+    }
+    checkTag(false);
+    return 0;
+  }
+
+  /**
+   * Returns the current string value. The returned buffer is reused: it is only valid until the
+   * next call to {@link #next()}.
+   */
+  public CharSequence getCharSequence() {
+    checkTag(tag == STR);
+    if (strVal != null) {
+      return strVal;
+    }
+    chars.reset();
+    ByteUtils.UTF8toUTF16(strBytes, 0, strLen, chars);
+    return chars;
+  }
+
+  public String getString() {
+    checkTag(tag == STR);
+    if (strVal == null) {
+      if (stringCache != null) {
+        strVal = stringCache.get(stringBytes.reset(strBytes, 0, strLen));
+      } else {
+        chars.reset();
+        ByteUtils.UTF8toUTF16(strBytes, 0, strLen, chars);
+        strVal = chars.toString();
+      }
+    }
+    return strVal;
+  }
+
+  private void checkTag(boolean ok) {
+    if (event != Event.VALUE || !ok) {
+      throw new IllegalStateException("Unexpected value type for event " + event + ", tag " + tag);
+    }
+  }
+
+  /** Returns the total number of documents that matched, if the current event is {@link Event#START_DOCUMENT_LIST}. */
+  public long getNumFound() {
+    return numFound;
+  }
+
+  /** Returns the offset of the document list, if the current event is {@link Event#START_DOCUMENT_LIST}. */
+  public long getStart() {
+    return start;
+  }
+
+  /** Returns the maximum score of the document list, if the current event is {@link Event#START_DOCUMENT_LIST}. */
+  public Float getMaxScore() {
+    return maxScore;
+  }
+
+  /**
+   * Reads the current value as an object, the same way {@link JavaBinCodec} would. If the current
+   * event starts a container, the whole container is consumed and the current event becomes its end.
+   */
+  public Object readValue() throws IOException {
+    switch (event) {
+      case VALUE:
+        return getValue();
+      case START_MAP:
+        if (tag == MAP || tag == MAP_ENTRY_ITER) {
+          Map<Object,Object> map = new LinkedHashMap<>();
+          while (next() != Event.END_MAP) {
+            Object k = key;
+            map.put(k, readValue());
+          }
+          return map;
+        } else {
+          NamedList<Object> nl = tag == ORDERED_MAP ? new SimpleOrderedMap<>() : new NamedList<>();
+          while (next() != Event.END_MAP) {
+            String name = getName();
+            nl.add(name, readValue());
+          }
+          return nl;
+        }
+      case START_ARRAY: {
+        List<Object> list = getRemaining() > 0 ? new ArrayList<>(getRemaining()) : new ArrayList<>();
+        while (next() != Event.END_ARRAY) {
+          list.add(readValue());
+        }
+        return list;
+      }
+      case START_DOCUMENT: {
+        SolrDocument doc = new SolrDocument();
+        while (next() != Event.END_DOCUMENT) {
+          if (key == null) {
+            doc.addChildDocument((SolrDocument) readValue());
+          } else {
+            String name = getName();
+            doc.setField(name, readValue());
+          }
+        }
+        return doc;
+      }
+      case START_DOCUMENT_LIST: {
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.setNumFound(numFound);
+        docs.setStart(start);
+        docs.setMaxScore(maxScore);
+        while (next() != Event.END_DOCUMENT_LIST) {
+          docs.add((SolrDocument) readValue());
+        }
+        return docs;
+      }
+      default:
+        throw new IllegalStateException("No value to read for event " + event);
+    }
+  }
+
+  /**
+   * Skips the current value. If the current event starts a container, the whole container is
+   * consumed without materializing it and the current event becomes its end.
+   */
+  public void skipValue() throws IOException {
+    switch (event) {
+      case START_MAP:
+      case START_ARRAY:
+      case START_DOCUMENT:
+      case START_DOCUMENT_LIST:
+        final int target = depth - 1;
+        while (depth > target) {
+          next();
+        }
+        break;
+      case VALUE:
+        break;
+      default:
+        throw new IllegalStateException("No value to skip for event " + event);
+    }
+  }
+
+  /** Returns the current scalar value as an object, the same way {@link JavaBinCodec} would. */
+  private Object getValue() {
+    if (objVal != null) {
+      return objVal;
+    }
+    switch (tag) {
+      case NULL:
+        return null;
+      case STR:
+        return getString();
+      case BOOL_TRUE:
+        return Boolean.TRUE;
+      case BOOL_FALSE:
+        return Boolean.FALSE;
+      case BYTE:
+        return (byte) longVal;
+      case SHORT:
+        return (short) longVal;
+      case INT:
+        return (int) longVal;
+      case LONG:
+        return longVal;
+      case FLOAT:
+        return (float) doubleVal;
+      case DOUBLE:
+        return doubleVal;
+      case DATE:
+        return new Date(longVal);
+    }
+    return null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    is.close();
+  }
+}
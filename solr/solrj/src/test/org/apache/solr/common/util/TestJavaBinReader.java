@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.TestUtil;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
+import org.apache.solr.client.solrj.impl.StreamingBinaryResponseParser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.JavaBinReader.Event;
+
+public class TestJavaBinReader extends SolrTestCaseJ4 {
+
+  private static byte[] marshal(Object o) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new JavaBinCodec().marshal(o, os);
+    return os.toByteArray();
+  }
+
+  private static NamedList<Object> createResponse(int numDocs) {
+    NamedList<Object> response = new NamedList<>();
+    SimpleOrderedMap<Object> header = new SimpleOrderedMap<>();
+    header.add("status", 0);
+    header.add("QTime", 12);
+    response.add("responseHeader", header);
+
+    SolrDocumentList docs = new SolrDocumentList();
+    docs.setNumFound(100);
+    docs.setStart(10);
+    docs.setMaxScore(2.5f);
+    for (int i = 0; i < numDocs; i++) {
+      SolrDocument doc = new SolrDocument();
+      doc.setField("id", Integer.toString(i));
+      doc.setField("int_i", i);
+      doc.setField("long_l", (long) i << 40);
+      doc.setField("float_f", i * 1.5f);
+      doc.setField("double_d", i * 2.5d);
+      doc.setField("date_dt", new Date(1000L * i));
+      doc.setField("bool_b", i % 2 == 0);
+      doc.setField("str_s", TestUtil.randomUnicodeString(random()));
+      doc.setField("multi_ss", Arrays.asList("a", "b" + i));
+      if (i % 3 == 0) {
+        SolrDocument child = new SolrDocument();
+        child.setField("id", i + "-child");
+        doc.addChildDocument(child);
+      }
+      docs.add(doc);
+    }
+    response.add("response", docs);
+
+    Map<Object, Object> map = new LinkedHashMap<>();
+    map.put("string key", 1L);
+    map.put(42, "int key");
+    map.put("bytes", new byte[] {1, 2, 3});
+    map.put("null", null);
+    map.put("short", (short) 3);
+    map.put("byte", (byte) 4);
+    response.add("map", map);
+    response.add("iterator", Arrays.asList(1, 2, 3).iterator());
+    return response;
+  }
+
+  public void testReadValueIsEquivalentToUnmarshal() throws IOException {
+    byte[] bytes = marshal(createResponse(random().nextInt(20)));
+    Object expected = new JavaBinCodec().unmarshal(new ByteArrayInputStream(bytes));
+
+    JavaBinReader reader = new JavaBinReader(new ByteArrayInputStream(bytes));
+    assertEquals(Event.START_MAP, reader.next());
+    Object actual = reader.readValue();
+    assertEquals(Event.END_MAP, reader.getEvent());
+    assertEquals(Event.END_STREAM, reader.next());
+
+    // byte[] does not implement equals, compare the string representation instead
+    assertEquals(expected.toString().replaceAll("\\[B@\\w+", "bytes"), actual.toString().replaceAll("\\[B@\\w+", "bytes"));
+  }
+
+  public void testEvents() throws IOException {
+    JavaBinReader reader = new JavaBinReader(new ByteArrayInputStream(marshal(createResponse(3))));
+    assertEquals(Event.START_MAP, reader.next());
+    assertEquals(JavaBinCodec.NAMED_LST, reader.getTag());
+
+    assertEquals(Event.START_MAP, reader.next());
+    assertEquals("responseHeader", reader.getName());
+    assertEquals(JavaBinCodec.ORDERED_MAP, reader.getTag());
+    assertEquals(Event.VALUE, reader.next());
+    assertEquals("status", reader.getName());
+    assertEquals(0, reader.getInt());
+    assertEquals(Event.VALUE, reader.next());
+    assertEquals("QTime", reader.getName());
+    assertEquals(12L, reader.getLong());
+    assertEquals(Event.END_MAP, reader.next());
+
+    assertEquals(Event.START_DOCUMENT_LIST, reader.next());
+    assertEquals("response", reader.getName());
+    assertEquals(100, reader.getNumFound());
+    assertEquals(10, reader.getStart());
+    assertEquals(2.5f, reader.getMaxScore(), 0f);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Event.START_DOCUMENT, reader.next());
+      assertNull(reader.getName());
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals("id", reader.getName());
+      assertEquals(Integer.toString(i), reader.getCharSequence().toString());
+      assertEquals(Integer.toString(i), reader.getString());
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals("int_i", reader.getName());
+      assertEquals(i, reader.getInt());
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals((long) i << 40, reader.getLong());
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals(i * 1.5f, reader.getFloat(), 0f);
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals(i * 2.5d, reader.getDouble(), 0d);
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals(JavaBinCodec.DATE, reader.getTag());
+      assertEquals(1000L * i, reader.getLong());
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals(i % 2 == 0, reader.getBoolean());
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals("str_s", reader.getName());
+      assertEquals(Event.START_ARRAY, reader.next());
+      assertEquals("multi_ss", reader.getName());
+      assertEquals(2, reader.getRemaining());
+      reader.skipValue();
+      assertEquals(Event.END_ARRAY, reader.getEvent());
+      if (i % 3 == 0) {
+        assertEquals(Event.START_DOCUMENT, reader.next());
+        assertNull(reader.getName());
+        assertEquals(i + "-child", ((SolrDocument) reader.readValue()).getFieldValue("id"));
+      }
+      assertEquals(Event.END_DOCUMENT, reader.next());
+    }
+    assertEquals(Event.END_DOCUMENT_LIST, reader.next());
+
+    assertEquals(Event.START_MAP, reader.next());
+    assertEquals("map", reader.getName());
+    assertEquals(JavaBinCodec.MAP, reader.getTag());
+    reader.skipValue();
+
+    assertEquals(Event.START_ARRAY, reader.next());
+    assertEquals(JavaBinCodec.ITERATOR, reader.getTag());
+    assertEquals(-1, reader.getRemaining());
+    for (int i = 1; i <= 3; i++) {
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals(i, reader.getInt());
+    }
+    assertEquals(Event.END_ARRAY, reader.next());
+
+    assertEquals(Event.END_MAP, reader.next());
+    assertEquals(Event.END_STREAM, reader.next());
+  }
+
+  public void testStrings() throws IOException {
+    List<String> strings = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      strings.add(random().nextBoolean() ? TestUtil.randomUnicodeString(random()) : TestUtil.randomRealisticUnicodeString(random(), 200, 1000));
+    }
+    byte[] bytes = marshal(strings);
+
+    JavaBinReader reader = new JavaBinReader(new ByteArrayInputStream(bytes));
+    assertEquals(Event.START_ARRAY, reader.next());
+    for (String s : strings) {
+      assertEquals(Event.VALUE, reader.next());
+      assertEquals(s, reader.getCharSequence().toString());
+      assertEquals(s, reader.getString());
+    }
+    assertEquals(Event.END_ARRAY, reader.next());
+
+    // with a string cache, equal values are the same instance
+    JavaBinCodec.StringCache stringCache = new JavaBinCodec.StringCache(new MapBackedCache<>(new HashMap<>()));
+    reader = new JavaBinReader(new ByteArrayInputStream(marshal(Arrays.asList("abc", "abc"))), stringCache);
+    assertEquals(Event.START_ARRAY, reader.next());
+    reader.next();
+    String first = reader.getString();
+    reader.next();
+    assertSame(first, reader.getString());
+  }
+
+  public void testStreamingResponseParser() throws IOException {
+    int numDocs = random().nextInt(20);
+    byte[] bytes = marshal(createResponse(numDocs));
+    final List<SolrDocument> streamed = new ArrayList<>();
+    final long[] numFound = new long[1];
+    NamedList<Object> response = new StreamingBinaryResponseParser(new StreamingResponseCallback() {
+      @Override
+      public void streamSolrDocument(SolrDocument doc) {
+        streamed.add(doc);
+      }
+
+      @Override
+      public void streamDocListInfo(long nf, long start, Float maxScore) {
+        numFound[0] = nf;
+      }
+    }).processResponse(new ByteArrayInputStream(bytes), null);
+
+    assertEquals(100, numFound[0]);
+    assertEquals(numDocs, streamed.size());
+    for (int i = 0; i < numDocs; i++) {
+      assertEquals(Integer.toString(i), streamed.get(i).getFieldValue("id"));
+    }
+    SolrDocumentList docs = (SolrDocumentList) response.get("response");
+    assertEquals(100, docs.getNumFound());
+    assertTrue(docs.isEmpty());
+    assertEquals(12, ((NamedList) response.get("responseHeader")).get("QTime"));
+  }
+}